@@ -0,0 +1,97 @@
+-- =====================================================
+-- 会計登録RPC（checkout_order）適用SQL
+-- =====================================================
+--
+-- 実行方法: Supabase Dashboard > SQL Editor で実行
+--
+-- 注意事項:
+-- 1. /api/tables/checkout はこの関数で注文・明細・支払いを1トランザクションで登録します
+--    （明細の登録に失敗したら注文も残らないので、再送で取りこぼさない）
+-- 2. 端末からの再送は同じ伝票番号で届くため、(store_id, receipt_number) を一意にします
+--    既存データに重複があると制約を追加できないので、先に「0. 重複の確認」を実行してください
+-- 3. 適用前にアプリをデプロイしても会計は止まらず、従来どおり注文・明細・支払いを順に登録します
+--    （その間は同時に届いた再送を防げないので、なるべく早く適用してください）
+--
+-- =====================================================
+
+-- =====================================================
+-- 0. 重複の確認（行が返ったら整理してから続行）
+-- =====================================================
+
+SELECT store_id, receipt_number, COUNT(*)
+FROM orders
+GROUP BY store_id, receipt_number
+HAVING COUNT(*) > 1;
+
+-- =====================================================
+-- 1. 伝票番号の一意制約
+-- =====================================================
+
+DO $$
+BEGIN
+  IF NOT EXISTS (
+    SELECT 1 FROM pg_constraint WHERE conname = 'orders_store_id_receipt_number_key'
+  ) THEN
+    ALTER TABLE orders
+      ADD CONSTRAINT orders_store_id_receipt_number_key UNIQUE (store_id, receipt_number);
+  END IF;
+END $$;
+
+-- =====================================================
+-- 2. 会計登録関数
+-- =====================================================
+--
+-- p_order: ordersの1行分、p_items: order_itemsの配列（order_idは不要）、p_payment: paymentsの1行分
+-- 同じ伝票番号が登録済みなら何もせず duplicate = true を返す
+
+CREATE OR REPLACE FUNCTION checkout_order(p_order jsonb, p_items jsonb, p_payment jsonb)
+RETURNS TABLE (order_id integer, duplicate boolean, total_incl_tax integer)
+LANGUAGE plpgsql
+AS $$
+DECLARE
+  v_order_id integer;
+BEGIN
+  INSERT INTO orders (
+    receipt_number, visit_datetime, checkout_datetime, order_date, table_number,
+    staff_name, guest_name, visit_type, subtotal_excl_tax, tax_amount, service_charge,
+    rounding_adjustment, discount_amount, total_incl_tax, store_id
+  )
+  SELECT
+    o.receipt_number, o.visit_datetime, o.checkout_datetime, o.order_date, o.table_number,
+    o.staff_name, o.guest_name, o.visit_type, o.subtotal_excl_tax, o.tax_amount, o.service_charge,
+    o.rounding_adjustment, o.discount_amount, o.total_incl_tax, o.store_id
+  FROM jsonb_populate_record(NULL::orders, p_order) o
+  ON CONFLICT (store_id, receipt_number) DO NOTHING
+  RETURNING id INTO v_order_id;
+
+  IF v_order_id IS NULL THEN
+    RETURN QUERY
+      SELECT o.id, true, o.total_incl_tax
+      FROM orders o
+      WHERE o.store_id = (p_order ->> 'store_id')::integer
+        AND o.receipt_number = p_order ->> 'receipt_number';
+    RETURN;
+  END IF;
+
+  INSERT INTO order_items (
+    order_id, category, product_name, cast_name, unit_price, unit_price_excl_tax,
+    tax_amount, quantity, subtotal, pack_number, store_id
+  )
+  SELECT
+    v_order_id, i.category, i.product_name, i.cast_name, i.unit_price, i.unit_price_excl_tax,
+    i.tax_amount, i.quantity, i.subtotal, i.pack_number, i.store_id
+  FROM jsonb_populate_recordset(NULL::order_items, COALESCE(p_items, '[]'::jsonb)) i;
+
+  INSERT INTO payments (
+    order_id, cash_amount, credit_card_amount, other_payment_amount, card_fee,
+    change_amount, payment_method, store_id
+  )
+  SELECT
+    v_order_id, p.cash_amount, p.credit_card_amount, p.other_payment_amount, p.card_fee,
+    p.change_amount, p.payment_method, p.store_id
+  FROM jsonb_populate_record(NULL::payments, p_payment) p;
+
+  RETURN QUERY
+    SELECT v_order_id, false, (p_order ->> 'total_incl_tax')::integer;
+END;
+$$;
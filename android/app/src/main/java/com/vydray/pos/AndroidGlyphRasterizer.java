@@ -0,0 +1,53 @@
+package com.vydray.pos;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+import com.vydray.pos.printer.GlyphAtlas;
+
+import java.nio.ByteBuffer;
+
+// 端末のフォントで1文字をセルに描き、しきい値で1ビットにする（GlyphAtlasが初めての文字だけ呼ぶ）
+// 英数字は等幅フォント、漢字・かなは端末の日本語フォント（Noto Sans CJK）に落ちる
+final class AndroidGlyphRasterizer implements GlyphAtlas.Rasterizer {
+    private static final int THRESHOLD = 128;
+
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Bitmap cell = Bitmap.createBitmap(GlyphAtlas.FULL_WIDTH, GlyphAtlas.CELL_HEIGHT,
+            Bitmap.Config.ALPHA_8);
+    private final Canvas canvas = new Canvas(cell);
+    private final ByteBuffer pixels = ByteBuffer.allocate(cell.getRowBytes() * cell.getHeight());
+
+    AndroidGlyphRasterizer() {
+        paint.setColor(Color.BLACK);
+        paint.setTypeface(Typeface.MONOSPACE);
+        paint.setTextSize(GlyphAtlas.CELL_HEIGHT - 2);
+    }
+
+    @Override
+    public void draw(String text, int width, int height, boolean bold, boolean[] dots) {
+        cell.eraseColor(Color.TRANSPARENT);
+        paint.setFakeBoldText(bold);
+        paint.setTextScaleX(1f);
+        // セルより広い字形は横に縮める（プリンターの半角も縦長の字形）
+        float measured = paint.measureText(text);
+        float scaleX = measured > width ? width / measured : 1f;
+        paint.setTextScaleX(scaleX);
+        Paint.FontMetrics metrics = paint.getFontMetrics();
+        float baseline = (height - (metrics.descent - metrics.ascent)) / 2 - metrics.ascent;
+        canvas.drawText(text, (width - measured * scaleX) / 2, baseline, paint);
+
+        pixels.clear();
+        cell.copyPixelsToBuffer(pixels);
+        byte[] alpha = pixels.array();
+        int rowBytes = cell.getRowBytes();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                dots[y * width + x] = (alpha[y * rowBytes + x] & 0xFF) >= THRESHOLD;
+            }
+        }
+    }
+}
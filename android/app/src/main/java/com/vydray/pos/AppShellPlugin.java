@@ -0,0 +1,293 @@
+package com.vydray.pos;
+
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.plugin.WebView;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.vydray.pos.shell.BundleStore;
+import com.vydray.pos.shell.LayoutPassTracker;
+import com.vydray.pos.shell.ShellState;
+import com.vydray.pos.shell.StartupTrace;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// APKに同梱したWebバンドル（out/）で起動し、更新版は裏でダウンロードして差し替える
+// 配信はCapacitorのローカルサーバー（serverBasePath）に任せ、APIだけをリモートに送る
+@CapacitorPlugin(name = "AppShell")
+public class AppShellPlugin extends Plugin {
+    private static final String TAG = "AppShellPlugin";
+    // 同梱バンドルの場所（cap syncがout/をここにコピーする）
+    private static final String BUNDLED_ASSET_PATH = "public";
+    private static final int TIMEOUT_MS = 15000;
+    private static final int MAX_MANIFEST = 64 * 1024;
+
+    private BundleStore store;
+    private ShellState state;
+    private final ExecutorService downloader = Executors.newSingleThreadExecutor();
+    private boolean updating;
+
+    @Override
+    public void load() {
+        super.load();
+        StartupTrace.mark("pluginLoad", SystemClock.uptimeMillis());
+        File root = new File(getContext().getFilesDir(), "web-shell");
+        store = new BundleStore(root);
+        state = new ShellState(new File(root, "state.properties"));
+        try {
+            state.load();
+            String version = state.boot();
+            File bundle = version != null ? store.getBundle(version) : null;
+            if (version != null && bundle == null) {
+                // 展開済みのバンドルが消えていたら同梱版に戻す
+                Log.w(TAG, "Bundle " + version + " missing, using bundled shell");
+            }
+            useBundle(bundle);
+            if (state.wasRolledBack()) {
+                Log.w(TAG, "Bundle " + state.getRejected() + " never became ready, rolled back");
+            }
+            store.prune(new HashSet<>(Arrays.asList(state.getActive(), state.getPrevious(), state.getStaged())));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to restore web shell state", e);
+        }
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        downloader.shutdownNow();
+        super.handleOnDestroy();
+    }
+
+    // Web側の最初の描画が終わった時に呼ぶ（起動時間の記録と、更新バンドルの確定）
+    @PluginMethod
+    public void reportReady(PluginCall call) {
+        StartupTrace.mark("webReady", SystemClock.uptimeMillis());
+        // 最初の描画後に1回だけ整え、以降は寸法が変わった時だけ再レイアウトする
+        if (getActivity() instanceof MainActivity) {
+            ((MainActivity) getActivity()).onWebReady();
+        }
+        try {
+            state.confirm();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to confirm bundle", e);
+        }
+        JSObject timing = startupTiming();
+        Log.i(TAG, "Startup timing: " + timing);
+        notifyListeners("startupTiming", timing, true);
+        call.resolve(timing);
+    }
+
+    @PluginMethod
+    public void getStartupTiming(PluginCall call) {
+        call.resolve(startupTiming());
+    }
+
+    // 強制再レイアウトの回数と所要時間（テーブル画面のカクつき確認用）
+    @PluginMethod
+    public void getLayoutStats(PluginCall call) {
+        if (!(getActivity() instanceof MainActivity)) {
+            call.reject("Layout stats not available");
+            return;
+        }
+        LayoutPassTracker.Stats stats = ((MainActivity) getActivity()).getLayoutTracker().getStats();
+        JSObject byReason = new JSObject();
+        for (Map.Entry<LayoutPassTracker.Reason, Integer> entry : stats.byReason.entrySet()) {
+            byReason.put(entry.getKey().name(), entry.getValue());
+        }
+        JSObject ret = new JSObject();
+        ret.put("forced", stats.forced);
+        ret.put("skipped", stats.skipped);
+        ret.put("totalCostMs", stats.totalCostNanos / 1e6);
+        ret.put("maxCostMs", stats.maxCostNanos / 1e6);
+        ret.put("byReason", byReason);
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void getShellInfo(PluginCall call) {
+        JSObject ret = new JSObject();
+        ret.put("active", state.getActive());
+        ret.put("previous", state.getPrevious());
+        ret.put("staged", state.getStaged());
+        ret.put("confirmed", state.isConfirmed());
+        ret.put("serverBasePath", getBridge().getServerBasePath());
+        call.resolve(ret);
+    }
+
+    // マニフェスト {version, url, sha256} を確認し、新しい版があれば裏でダウンロードして次回起動用に登録する
+    @PluginMethod
+    public void checkForUpdate(final PluginCall call) {
+        final String manifestUrl = call.getString("manifestUrl");
+        if (manifestUrl == null || manifestUrl.isEmpty()) {
+            call.reject("manifestUrl is required");
+            return;
+        }
+        synchronized (this) {
+            if (updating) {
+                call.reject("Update already in progress");
+                return;
+            }
+            updating = true;
+        }
+        downloader.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    call.resolve(downloadUpdate(manifestUrl));
+                } catch (Exception e) {
+                    Log.e(TAG, "Bundle update failed", e);
+                    call.reject("Bundle update failed: " + e.getMessage(), e);
+                } finally {
+                    synchronized (AppShellPlugin.this) {
+                        updating = false;
+                    }
+                }
+            }
+        });
+    }
+
+    // 登録済みの更新を今すぐ適用して再読み込みする（会計中などは呼ばない）
+    @PluginMethod
+    public void applyUpdate(PluginCall call) {
+        String staged = state.getStaged();
+        final File bundle = staged != null ? store.getBundle(staged) : null;
+        if (bundle == null) {
+            call.reject("No update staged");
+            return;
+        }
+        try {
+            state.activate(staged);
+        } catch (IOException e) {
+            call.reject("Failed to apply update: " + e.getMessage(), e);
+            return;
+        }
+        JSObject ret = new JSObject();
+        ret.put("version", staged);
+        call.resolve(ret);
+        getBridge().executeOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                useBundle(bundle);
+            }
+        });
+    }
+
+    private JSObject downloadUpdate(String manifestUrl) throws Exception {
+        JSONObject manifest = new JSONObject(new String(fetch(manifestUrl, MAX_MANIFEST), StandardCharsets.UTF_8));
+        String version = manifest.getString("version");
+        String url = new URL(new URL(manifestUrl), manifest.getString("url")).toString();
+        String sha256 = manifest.optString("sha256", "");
+
+        JSObject ret = new JSObject();
+        ret.put("version", version);
+        if (version.equals(state.getActive()) || version.equals(state.getStaged()) || version.equals(state.getRejected())) {
+            ret.put("updateAvailable", false);
+            return ret;
+        }
+        if (sha256.isEmpty()) {
+            throw new IOException("Manifest has no sha256");
+        }
+
+        HttpURLConnection connection = open(url);
+        try {
+            InputStream in = connection.getInputStream();
+            try {
+                store.install(version, in, sha256);
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+        state.stage(version);
+        store.prune(new HashSet<>(Arrays.asList(state.getActive(), state.getPrevious(), version)));
+
+        ret.put("updateAvailable", true);
+        ret.put("staged", true);
+        notifyListeners("bundleStaged", ret);
+        return ret;
+    }
+
+    // 展開済みバンドル（nullなら同梱版）で配信する。Bridgeは次回起動時もこの設定を読む
+    private void useBundle(File bundle) {
+        SharedPreferences prefs = getContext().getSharedPreferences(WebView.WEBVIEW_PREFS_NAME, Context.MODE_PRIVATE);
+        String current = getBridge().getServerBasePath();
+        if (bundle == null) {
+            prefs.edit().remove(WebView.CAP_SERVER_PATH).apply();
+            if (current != null && !current.isEmpty() && !current.equals(BUNDLED_ASSET_PATH)) {
+                getBridge().setServerAssetPath(BUNDLED_ASSET_PATH);
+            }
+            return;
+        }
+        String path = bundle.getAbsolutePath();
+        prefs.edit().putString(WebView.CAP_SERVER_PATH, path).apply();
+        if (!path.equals(current)) {
+            getBridge().setServerBasePath(path);
+        }
+    }
+
+    private JSObject startupTiming() {
+        JSObject ret = new JSObject();
+        for (Map.Entry<String, Long> mark : StartupTrace.snapshot().entrySet()) {
+            ret.put(mark.getKey(), mark.getValue());
+        }
+        ret.put("bundle", state.getActive() != null ? state.getActive() : "bundled");
+        return ret;
+    }
+
+    private static HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        connection.setUseCaches(false);
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            connection.disconnect();
+            throw new IOException("HTTP " + status + " for " + url);
+        }
+        return connection;
+    }
+
+    private static byte[] fetch(String url, int limit) throws IOException {
+        HttpURLConnection connection = open(url);
+        try {
+            InputStream in = connection.getInputStream();
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    if (out.size() + read > limit) {
+                        throw new IOException("Response too large: " + url);
+                    }
+                    out.write(buffer, 0, read);
+                }
+                return out.toByteArray();
+            } finally {
+                in.close();
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
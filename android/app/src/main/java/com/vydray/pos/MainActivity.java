@@ -1,23 +1,37 @@
 package com.vydray.pos;
 
 import android.os.Bundle;
-import android.os.Handler;
 import android.webkit.WebView;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.WindowInsets;
 import android.view.WindowManager;
 import android.Manifest;
 import android.content.pm.PackageManager;
 import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import com.getcapacitor.BridgeActivity;
+import com.vydray.pos.shell.LayoutPassTracker;
+import com.vydray.pos.shell.StartupTrace;
 
 public class MainActivity extends BridgeActivity {
     private static final int BLUETOOTH_PERMISSION_REQUEST_CODE = 100;
+    private final LayoutPassTracker layoutTracker = new LayoutPassTracker();
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
+        // 起動時間の計測（プロセス開始 → Web側の最初の描画）
+        StartupTrace.start(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+            ? Process.getStartUptimeMillis()
+            : SystemClock.uptimeMillis());
+        StartupTrace.mark("activityCreate", SystemClock.uptimeMillis());
+
+        registerPlugin(AppShellPlugin.class);
         registerPlugin(SiiPrinterPlugin.class);
+        registerPlugin(OfflineCheckoutPlugin.class);
         super.onCreate(savedInstanceState);
 
         // Bluetooth権限をリクエスト（Android 12以降）
@@ -36,49 +50,96 @@ public class MainActivity extends BridgeActivity {
             | View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN
         );
 
-        // Force WebView to render properly on initial load
-        new Handler().postDelayed(new Runnable() {
-            @Override
-            public void run() {
-                WebView webView = getBridge().getWebView();
-                if (webView != null) {
-                    webView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
-                    webView.requestLayout();
-                    webView.invalidate();
-
-                    // 強制的に再描画（さらに遅延を追加）
-                    webView.postDelayed(new Runnable() {
-                        @Override
-                        public void run() {
-                            webView.requestLayout();
-                            webView.invalidate();
-                        }
-                    }, 300);
-                }
-            }
-        }, 500);
+        // WebViewはハードウェアレイヤーで描画（再レイアウトはWeb側の最初の描画後に行う）
+        WebView webView = getBridge().getWebView();
+        if (webView != null) {
+            webView.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        }
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        // Force layout refresh when app resumes
-        WebView webView = getBridge().getWebView();
-        if (webView != null) {
-            webView.requestLayout();
-            webView.invalidate();
-        }
+        // 画面サイズ・インセットが変わっていた時だけ再レイアウト
+        checkViewport();
     }
 
     @Override
     public void onWindowFocusChanged(boolean hasFocus) {
         super.onWindowFocusChanged(hasFocus);
         if (hasFocus) {
-            // ウィンドウがフォーカスを取得したときにWebViewを再描画
-            WebView webView = getBridge().getWebView();
-            if (webView != null) {
-                webView.requestLayout();
+            checkViewport();
+        }
+    }
+
+    // Web側の最初の描画が終わった（AppShellPlugin.reportReadyから呼ばれる）
+    public void onWebReady() {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                LayoutPassTracker.Viewport viewport = currentViewport();
+                if (viewport != null) {
+                    forceLayout(layoutTracker.onReady(viewport));
+                }
             }
+        });
+    }
+
+    public LayoutPassTracker getLayoutTracker() {
+        return layoutTracker;
+    }
+
+    private void checkViewport() {
+        LayoutPassTracker.Viewport viewport = currentViewport();
+        if (viewport != null) {
+            forceLayout(layoutTracker.onViewport(viewport));
+        }
+    }
+
+    private LayoutPassTracker.Viewport currentViewport() {
+        WebView webView = getBridge() != null ? getBridge().getWebView() : null;
+        if (webView == null) {
+            return null;
+        }
+        WindowInsets insets = webView.getRootWindowInsets();
+        if (insets == null) {
+            return new LayoutPassTracker.Viewport(webView.getWidth(), webView.getHeight(), 0, 0, 0, 0);
+        }
+        return new LayoutPassTracker.Viewport(
+            webView.getWidth(),
+            webView.getHeight(),
+            insets.getSystemWindowInsetLeft(),
+            insets.getSystemWindowInsetTop(),
+            insets.getSystemWindowInsetRight(),
+            insets.getSystemWindowInsetBottom()
+        );
+    }
+
+    // 再レイアウトを要求し、次の描画直前までの時間を記録する
+    private void forceLayout(final LayoutPassTracker.Reason reason) {
+        if (reason == null) {
+            return;
+        }
+        final WebView webView = getBridge().getWebView();
+        final long start = System.nanoTime();
+        webView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                webView.getViewTreeObserver().removeOnPreDrawListener(this);
+                layoutTracker.recordPass(reason, System.nanoTime() - start);
+                return true;
+            }
+        });
+        webView.requestLayout();
+        webView.invalidate();
+    }
+
+    // 権限が揃ったらプリンターの前面サービスを起動する（初回起動時はプラグインの読み込み時点では起動できない）
+    @Override
+    public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == BLUETOOTH_PERMISSION_REQUEST_CODE && PrinterService.canEnterForeground(this)) {
+            PrinterService.start(this);
         }
     }
 
@@ -0,0 +1,208 @@
+package com.vydray.pos;
+
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.JSArray;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkRequest;
+import android.net.NetworkCapabilities;
+import android.os.Build;
+import android.util.Log;
+
+import com.vydray.pos.checkout.CheckoutEntry;
+import com.vydray.pos.checkout.CheckoutJournal;
+import com.vydray.pos.checkout.SyncDrainer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+// 会計をローカルのジャーナルに記録してすぐ返し、裏でサーバーへ同期する
+// 店のWi-Fiが不安定でもレジを止めない（同期は記録順・Idempotency-Key付き）
+@CapacitorPlugin(name = "OfflineCheckout")
+public class OfflineCheckoutPlugin extends Plugin {
+    private static final String TAG = "OfflineCheckoutPlugin";
+    private CheckoutJournal journal;
+    private SyncDrainer drainer;
+    private ConnectivityManager.NetworkCallback networkCallback;
+
+    @Override
+    public void load() {
+        super.load();
+        journal = new CheckoutJournal(new File(new File(getContext().getFilesDir(), "checkout-journal"), "checkouts.log"));
+        try {
+            journal.open();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open checkout journal", e);
+        }
+
+        drainer = new SyncDrainer(journal, new SyncDrainer.Listener() {
+            @Override
+            public void onSynced(CheckoutEntry entry, int status) {
+                JSObject data = toJson(entry);
+                data.put("status", status);
+                data.put("pending", journal.getPending().size());
+                notifyListeners("checkoutSynced", data);
+            }
+
+            @Override
+            public void onRejected(CheckoutEntry entry, int status, String response) {
+                Log.e(TAG, "Checkout " + entry.getIdempotencyKey() + " rejected: " + status + " " + response);
+                JSObject data = toJson(entry);
+                data.put("status", status);
+                data.put("response", response);
+                notifyListeners("checkoutRejected", data);
+            }
+
+            @Override
+            public void onRetry(CheckoutEntry entry, String error, long delayMs) {
+                JSObject data = toJson(entry);
+                data.put("error", error);
+                data.put("retryInMs", delayMs);
+                data.put("pending", journal.getPending().size());
+                notifyListeners("syncError", data);
+            }
+        });
+        drainer.start();
+        registerNetworkCallback();
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        if (networkCallback != null) {
+            try {
+                getConnectivityManager().unregisterNetworkCallback(networkCallback);
+            } catch (RuntimeException e) {
+                // 登録に失敗していた場合
+            }
+            networkCallback = null;
+        }
+        drainer.stop();
+        journal.close();
+        super.handleOnDestroy();
+    }
+
+    // 会計を記録する（ディスクに書けた時点で成功を返し、送信は裏で行う）
+    @PluginMethod
+    public void submit(PluginCall call) {
+        String url = call.getString("url");
+        String key = call.getString("idempotencyKey");
+        JSObject body = call.getObject("body");
+        if (url == null || url.isEmpty()) {
+            call.reject("url is required");
+            return;
+        }
+        if (key == null || key.isEmpty()) {
+            call.reject("idempotencyKey is required");
+            return;
+        }
+        if (body == null) {
+            call.reject("body is required");
+            return;
+        }
+
+        try {
+            CheckoutEntry entry = journal.append(key, url, body.toString());
+            drainer.kick();
+            JSObject ret = toJson(entry);
+            ret.put("pending", journal.getPending().size());
+            call.resolve(ret);
+        } catch (IOException e) {
+            call.reject("Failed to journal checkout: " + e.getMessage(), e);
+        }
+    }
+
+    // 未送信・拒否された会計の一覧
+    @PluginMethod
+    public void getPending(PluginCall call) {
+        JSObject ret = new JSObject();
+        ret.put("pending", toJson(journal.getPending()));
+        ret.put("rejected", toJson(journal.getRejected()));
+        call.resolve(ret);
+    }
+
+    // すぐに同期を試みる（再送待ちも打ち切る）
+    @PluginMethod
+    public void sync(PluginCall call) {
+        drainer.kick();
+        JSObject ret = new JSObject();
+        ret.put("pending", journal.getPending().size());
+        call.resolve(ret);
+    }
+
+    // 拒否された会計を確認済みとして削除する
+    @PluginMethod
+    public void discard(PluginCall call) {
+        Long id = call.getLong("id");
+        if (id == null) {
+            call.reject("id is required");
+            return;
+        }
+        try {
+            journal.markDone(id);
+            call.resolve();
+        } catch (IOException e) {
+            call.reject("Failed to discard checkout: " + e.getMessage(), e);
+        }
+    }
+
+    // 通信が回復したら待たずに送る
+    private void registerNetworkCallback() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return;
+        }
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                drainer.kick();
+            }
+        };
+        try {
+            NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+            getConnectivityManager().registerNetworkCallback(request, networkCallback);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to register network callback", e);
+            networkCallback = null;
+        }
+    }
+
+    private ConnectivityManager getConnectivityManager() {
+        return (ConnectivityManager) getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    private static JSArray toJson(List<CheckoutEntry> entries) {
+        JSArray array = new JSArray();
+        for (CheckoutEntry entry : entries) {
+            array.put(toJson(entry));
+        }
+        return array;
+    }
+
+    private static JSObject toJson(CheckoutEntry entry) {
+        JSObject data = new JSObject();
+        data.put("id", entry.getId());
+        data.put("idempotencyKey", entry.getIdempotencyKey());
+        data.put("createdAt", entry.getCreatedAt());
+        // 拒否された会計をレジで確認できるよう、卓と金額を付ける
+        try {
+            JSONObject body = new JSONObject(entry.getBody());
+            data.put("tableId", body.optString("tableId"));
+            data.put("totalAmount", body.optLong("totalAmount"));
+            data.put("checkoutTime", body.optString("checkoutTime"));
+        } catch (JSONException e) {
+            // 本文が読めなくてもキーだけで返す
+        }
+        return data;
+    }
+}
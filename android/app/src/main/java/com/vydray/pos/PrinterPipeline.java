@@ -0,0 +1,220 @@
+package com.vydray.pos;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.seikoinstruments.sdk.thermalprinter.PrinterManager;
+import com.vydray.pos.printer.OrderSnapshotStore;
+import com.vydray.pos.printer.PrintException;
+import com.vydray.pos.printer.PrintFlightRecorder;
+import com.vydray.pos.printer.PrintJob;
+import com.vydray.pos.printer.PrintLane;
+import com.vydray.pos.printer.PrintMetrics;
+import com.vydray.pos.printer.PrinterConnectionManager;
+import com.vydray.pos.printer.PrinterRegistry;
+import com.vydray.pos.printer.PrinterStatus;
+import com.vydray.pos.printer.PrinterTransport;
+import com.vydray.pos.printer.PrinterUnit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+// プロセスに1つの印刷パイプライン（プリンター台帳・接続・スプーラー・計測値・直近の印刷の記録）
+// Activity・WebViewの作り直しでは破棄しない。PrinterServiceが前面サービスとしてプロセスと接続を保つ
+final class PrinterPipeline {
+    private static final String TAG = "PrinterPipeline";
+    static final String ORDER_DELTA = "orderDelta";
+    private static PrinterPipeline instance;
+
+    private final PrinterRegistry registry;
+    private final PrintMetrics metrics = new PrintMetrics();
+    private final PrintFlightRecorder flightRecorder = new PrintFlightRecorder();
+    // 追加伝票の差分の基準（印刷が済んだ時点で確定するので、プラグインがいない間の完了もここで受ける）
+    private final OrderSnapshotStore orderSnapshots;
+    // 印刷待ちジョブのデコード・描画時間（完了時にスプーラー側の時間と合わせて記録する）
+    private final Map<Long, PrintMetrics.CallTiming> pendingTimings = new HashMap<>();
+    // イベントの通知先（プラグインが付け外しする。いない間の通知は捨てる）
+    private volatile PrinterRegistry.Listener client;
+    private boolean autoConnected;
+
+    static synchronized PrinterPipeline get(Context context) {
+        if (instance == null) {
+            instance = new PrinterPipeline(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private PrinterPipeline(final Context appContext) {
+        orderSnapshots = new OrderSnapshotStore(new File(appContext.getFilesDir(), "order-snapshots.bin"));
+        // プリンターごとにPrinterManager・スプーラー・接続管理を持ち、並行して印刷する
+        // 未印刷ジョブはfilesDirに保存し、アプリ再起動後も印刷を続ける
+        File journalRoot = new File(appContext.getFilesDir(), "print-journal");
+        registry = new PrinterRegistry(journalRoot, new PrinterRegistry.TransportFactory() {
+            @Override
+            public PrinterTransport create(String role) {
+                return new SiiPrinterTransport(new PrinterManager(appContext));
+            }
+        }, new PrinterRegistry.Listener() {
+            @Override
+            public void onJobCompleted(String role, PrintJob job) {
+                metrics.recordJob(job.getDocumentType(), role, job, takeTiming(job.getId()));
+                flightRecorder.completed(registry.get(role), job);
+                if (ORDER_DELTA.equals(job.getDocumentType())) {
+                    try {
+                        orderSnapshots.completed(job.getId());
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to save order snapshot for job " + job.getId(), e);
+                    }
+                }
+                PrinterRegistry.Listener target = client;
+                if (target != null) {
+                    target.onJobCompleted(role, job);
+                }
+            }
+
+            @Override
+            public void onJobFailed(String role, PrintJob job, PrintException error, boolean willRetry) {
+                Log.e(TAG, "Print job " + job.getId() + " failed on " + role, error);
+                metrics.recordFailure(job.getDocumentType(), role, error.getReason().name());
+                flightRecorder.failed(registry.get(role), job, error, willRetry);
+                if (!willRetry) {
+                    takeTiming(job.getId());
+                    // 期限切れで捨てられた追加伝票は次の差分に載せ直す（上限で停止しただけなら先頭に残っていて再開で印刷される）
+                    if (ORDER_DELTA.equals(job.getDocumentType()) && !isQueued(role, job.getId())) {
+                        dropOrderDelta(job.getId());
+                    }
+                }
+                PrinterRegistry.Listener target = client;
+                if (target != null) {
+                    target.onJobFailed(role, job, error, willRetry);
+                }
+            }
+
+            @Override
+            public void onDocumentPrinted(String role, PrintJob job, int printedCount) {
+                PrinterRegistry.Listener target = client;
+                if (target != null) {
+                    target.onDocumentPrinted(role, job, printedCount);
+                }
+            }
+
+            @Override
+            public void onStateChanged(String role, PrinterConnectionManager.State state, String address,
+                                       String error) {
+                PrinterRegistry.Listener target = client;
+                if (target != null) {
+                    target.onStateChanged(role, state, address, error);
+                }
+            }
+
+            @Override
+            public void onPrinterStatusChanged(String role, PrinterStatus status) {
+                PrinterRegistry.Listener target = client;
+                if (target != null) {
+                    target.onPrinterStatusChanged(role, status);
+                }
+            }
+        });
+    }
+
+    PrinterRegistry getRegistry() {
+        return registry;
+    }
+
+    PrintMetrics getMetrics() {
+        return metrics;
+    }
+
+    PrintFlightRecorder getFlightRecorder() {
+        return flightRecorder;
+    }
+
+    OrderSnapshotStore getOrderSnapshots() {
+        return orderSnapshots;
+    }
+
+    // 取り消した・捨てられた追加伝票を差分の基準から外す（追加伝票以外のジョブIDなら何もしない）
+    void dropOrderDelta(long jobId) {
+        try {
+            orderSnapshots.dropped(jobId);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to save order snapshot after dropping job " + jobId, e);
+        }
+    }
+
+    private boolean isQueued(String role, long jobId) {
+        PrinterUnit unit = registry.get(role);
+        if (unit == null) {
+            return false;
+        }
+        for (long id : unit.getSpooler().getStatus().pendingJobIds) {
+            if (id == jobId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void attach(PrinterRegistry.Listener listener) {
+        client = listener;
+    }
+
+    // 後から付いた通知先は外さない（Activityの作り直しで破棄と生成の順が入れ替わることがある）
+    void detach(PrinterRegistry.Listener listener) {
+        if (client == listener) {
+            client = null;
+        }
+    }
+
+    // 役割のプリンターを用意し、SDKからの状態通知を状態監視へつなぐ
+    PrinterUnit register(String role) {
+        PrinterUnit unit = registry.register(role);
+        ((SiiPrinterTransport) unit.getTransport()).setStatusMonitor(unit.getStatusMonitor());
+        return unit;
+    }
+
+    // 前回の接続先への自動接続はプロセスで1回だけ（プラグインの作り直しでリンクを張り直さない）
+    synchronized boolean claimAutoConnect() {
+        if (autoConnected) {
+            return false;
+        }
+        autoConnected = true;
+        return true;
+    }
+
+    // payloadは呼び出しの入力（JSON）、templateは描画に使ったテンプレートの版。どちらも記録用
+    PrinterRegistry.Submission submit(String documentType, PrintLane lane, byte[][] documents,
+                                      PrintMetrics.CallTiming timing, String payload, String template)
+            throws PrintException, IOException {
+        try {
+            // 完了通知より先に計測値と記録を登録しておく
+            synchronized (pendingTimings) {
+                PrinterRegistry.Submission submission = registry.submit(documentType, lane, documents);
+                pendingTimings.put(submission.jobId, timing);
+                flightRecorder.submitted(submission.jobId, registry.get(submission.role), documentType, lane,
+                        documents, payload, template, timing);
+                return submission;
+            }
+        } catch (PrintException e) {
+            metrics.recordFailure(documentType, null, e.getReason().name());
+            flightRecorder.rejected(documentType, lane, documents, payload, template, timing, e);
+            throw e;
+        }
+    }
+
+    PrintMetrics.CallTiming takeTiming(long jobId) {
+        synchronized (pendingTimings) {
+            return pendingTimings.remove(jobId);
+        }
+    }
+
+    int getPendingCount() {
+        int total = 0;
+        for (PrinterUnit unit : registry.getUnits()) {
+            total += unit.getPendingCount();
+        }
+        return total;
+    }
+}
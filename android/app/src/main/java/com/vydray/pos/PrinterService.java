@@ -0,0 +1,166 @@
+package com.vydray.pos;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.Manifest;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.Log;
+
+// 印刷パイプラインを保持する前面サービス
+// Activityが裏に回ったり作り直されたりしても、プリンターとのリンクを保ったまま印刷を続ける
+// 一定時間印刷がなければリンクを切ってプリンターの電池を節約する（次の印刷で自動的に接続し直す）
+public class PrinterService extends Service {
+    private static final String TAG = "PrinterService";
+    private static final String CHANNEL_ID = "printer";
+    private static final int NOTIFICATION_ID = 1001;
+    static final String PREF_IDLE_TIMEOUT = "printer_idle_timeout_ms";
+    static final long DEFAULT_IDLE_TIMEOUT_MS = 15 * 60 * 1000;
+    // 無操作の確認間隔
+    private static final long IDLE_CHECK_MS = 60 * 1000;
+
+    public class LocalBinder extends Binder {
+        PrinterService getService() {
+            return PrinterService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private PrinterPipeline pipeline;
+    private volatile long idleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+    // アプリのタスクが閉じられた（残りを印刷し終えたら止まる）
+    private boolean taskRemoved;
+
+    private final Runnable idleCheck = new Runnable() {
+        @Override
+        public void run() {
+            long timeout = idleTimeoutMs;
+            if (timeout > 0) {
+                int slept = pipeline.getRegistry().sleepIdleLinks(timeout, System.currentTimeMillis());
+                if (slept > 0) {
+                    Log.i(TAG, "Disconnected " + slept + " idle printer(s)");
+                }
+            }
+            if (taskRemoved && pipeline.getPendingCount() == 0) {
+                stopSelf();
+                return;
+            }
+            handler.postDelayed(this, IDLE_CHECK_MS);
+        }
+    };
+
+    // 前面サービスとして起動する（権限がない・裏からの起動が許されないときは起動せず、次の機会に再試行する）
+    // 権限が揃ったとき（MainActivityの権限リクエストの結果）と接続のたびに呼ばれる
+    static void start(Context context) {
+        if (!canEnterForeground(context)) {
+            Log.i(TAG, "Bluetooth permission not granted yet; not starting printer service");
+            return;
+        }
+        Intent intent = new Intent(context, PrinterService.class);
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(intent);
+            } else {
+                context.startService(intent);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Cannot start printer service", e);
+        }
+    }
+
+    // 接続機器タイプの前面サービスはBluetooth権限がないと前面化できない（Android 14以降は例外になる）
+    static boolean canEnterForeground(Context context) {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.S
+                || context.checkSelfPermission(Manifest.permission.BLUETOOTH_CONNECT)
+                        == PackageManager.PERMISSION_GRANTED;
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        pipeline = PrinterPipeline.get(this);
+        idleTimeoutMs = getSharedPreferences(SiiPrinterPlugin.PREFS_NAME, MODE_PRIVATE)
+                .getLong(PREF_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT_MS);
+        handler.postDelayed(idleCheck, IDLE_CHECK_MS);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        taskRemoved = false;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                startForeground(NOTIFICATION_ID, buildNotification(),
+                        ServiceInfo.FOREGROUND_SERVICE_TYPE_CONNECTED_DEVICE);
+            } else {
+                startForeground(NOTIFICATION_ID, buildNotification());
+            }
+        } catch (RuntimeException e) {
+            // 権限を確認した後に取り消された・裏からの前面化が許されない。接続時に起動し直す
+            Log.w(TAG, "Cannot enter foreground", e);
+            stopSelf(startId);
+            return START_NOT_STICKY;
+        }
+        return START_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onTaskRemoved(Intent rootIntent) {
+        super.onTaskRemoved(rootIntent);
+        taskRemoved = true;
+        if (pipeline.getPendingCount() == 0) {
+            stopSelf();
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        handler.removeCallbacks(idleCheck);
+        super.onDestroy();
+    }
+
+    // 0なら無操作で切断しない
+    void setIdleTimeout(long timeoutMs) {
+        idleTimeoutMs = Math.max(0, timeoutMs);
+    }
+
+    private Notification buildNotification() {
+        Notification.Builder builder;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+            manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID, "プリンター接続",
+                    NotificationManager.IMPORTANCE_LOW));
+            builder = new Notification.Builder(this, CHANNEL_ID);
+        } else {
+            builder = new Notification.Builder(this);
+        }
+
+        // 通知をタップしたらアプリに戻る
+        Intent launch = getPackageManager().getLaunchIntentForPackage(getPackageName());
+        if (launch != null) {
+            builder.setContentIntent(PendingIntent.getActivity(this, 0, launch,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE));
+        }
+        return builder
+                .setSmallIcon(getApplicationInfo().icon)
+                .setContentTitle(getApplicationInfo().loadLabel(getPackageManager()))
+                .setContentText("プリンターの接続を保っています")
+                .setOngoing(true)
+                .build();
+    }
+}
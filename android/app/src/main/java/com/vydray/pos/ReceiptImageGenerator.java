@@ -0,0 +1,105 @@
+package com.vydray.pos;
+
+import android.util.Log;
+
+import com.vydray.pos.printer.EscPosRasterizer;
+import com.vydray.pos.printer.GlyphAtlas;
+import com.vydray.pos.printer.MonoBitmap;
+import com.vydray.pos.printer.MonoPng;
+import com.vydray.pos.printer.RasterImage;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 領収書の画像版（LINEで送るデジタル控え）を作る。プロセスに1つ
+//
+// 印刷に送るESC/POSバイト列をそのまま1ビットの画像にするので、レイアウトをやり直さず印字と同じ見た目になる
+// 印刷とは別のスレッドで作り、グリフはプロセスの間キャッシュする（起動時に定型文字を描いておく）
+final class ReceiptImageGenerator {
+    private static final String TAG = "ReceiptImage";
+    private static final int THREADS = 2;
+    // 画像の周りの白い余白（ドット）
+    private static final int MARGIN = 16;
+    // 領収書の定型文字（起動時に描いておき、会計直後の1枚目から速く作る）
+    private static final String WARM_UP =
+            " !\"#$%&'()*+,-./0123456789:;<=>?@ABCDEFGHIJKLMNOPQRSTUVWXYZ[\\]^_`abcdefghijklmnopqrstuvwxyz{|}~"
+            + "領収書様金額￥－但し内訳税込消費等上記正にいたしましたお支払い現金カード手数料"
+            + "〒登録番号卓担当品代として円小計合端数調整収入印紙┌┐└┘│─＝×";
+    private static ReceiptImageGenerator instance;
+
+    interface Callback {
+        void onImage(byte[] png, int width, int height, long elapsedNanos);
+
+        void onError(Exception error);
+    }
+
+    private final GlyphAtlas atlas = new GlyphAtlas(new AndroidGlyphRasterizer());
+    private final ExecutorService pool;
+    // スレッドごとの描画先（画像の高さに合わせて伸び、使い回す）
+    private final ThreadLocal<MonoBitmap> bitmaps = new ThreadLocal<MonoBitmap>() {
+        @Override
+        protected MonoBitmap initialValue() {
+            return new MonoBitmap(RasterImage.MAX_WIDTH);
+        }
+    };
+    private final ThreadLocal<EscPosRasterizer> rasterizers = new ThreadLocal<EscPosRasterizer>() {
+        @Override
+        protected EscPosRasterizer initialValue() {
+            return new EscPosRasterizer(atlas);
+        }
+    };
+
+    static synchronized ReceiptImageGenerator get() {
+        if (instance == null) {
+            instance = new ReceiptImageGenerator();
+        }
+        return instance;
+    }
+
+    private ReceiptImageGenerator() {
+        final AtomicInteger number = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ReceiptImage-" + number.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                atlas.warmUp(WARM_UP);
+                Log.i(TAG, "Warmed up " + atlas.size() + " glyphs in "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+        });
+    }
+
+    // 描画済みの帳票バイト列からPNGを作る（scale倍、結果はプールのスレッドで返す）
+    void generate(final byte[] escpos, final int scale, final Callback callback) {
+        try {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        long start = System.nanoTime();
+                        MonoBitmap bitmap = rasterizers.get().render(escpos, bitmaps.get());
+                        byte[] png = MonoPng.encode(bitmap, scale, MARGIN);
+                        callback.onImage(png, (bitmap.getWidth() + MARGIN * 2) * scale,
+                                (bitmap.getHeight() + MARGIN * 2) * scale, System.nanoTime() - start);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Failed to generate receipt image", e);
+                        callback.onError(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            callback.onError(e);
+        }
+    }
+}
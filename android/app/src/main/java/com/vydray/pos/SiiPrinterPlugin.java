@@ -8,32 +8,218 @@ import com.getcapacitor.JSObject;
 import com.getcapacitor.JSArray;
 
 import android.bluetooth.BluetoothAdapter;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.SharedPreferences;
 import android.bluetooth.BluetoothDevice;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.Base64;
 import android.util.Log;
 
-import com.seikoinstruments.sdk.thermalprinter.PrinterManager;
-import com.seikoinstruments.sdk.thermalprinter.PrinterException;
-import com.seikoinstruments.sdk.thermalprinter.printerenum.CharacterBold;
-import com.seikoinstruments.sdk.thermalprinter.printerenum.CharacterUnderline;
-import com.seikoinstruments.sdk.thermalprinter.printerenum.CharacterReverse;
-import com.seikoinstruments.sdk.thermalprinter.printerenum.CharacterFont;
-import com.seikoinstruments.sdk.thermalprinter.printerenum.CharacterScale;
-import com.seikoinstruments.sdk.thermalprinter.printerenum.PrintAlignment;
-import com.seikoinstruments.sdk.thermalprinter.printerenum.CuttingMethod;
+import com.vydray.pos.printer.DailyReportDocument;
+import com.vydray.pos.printer.DailyReportRenderer;
+import com.vydray.pos.printer.DailySalesAggregator;
+import com.vydray.pos.printer.EscPosWriter;
+import com.vydray.pos.printer.OrderDelta;
+import com.vydray.pos.printer.OrderDeltaRenderer;
+import com.vydray.pos.printer.OrderDeltaTicket;
+import com.vydray.pos.printer.OrderItemDecoder;
+import com.vydray.pos.printer.OrderSlipDocument;
+import com.vydray.pos.printer.OrderSlipRenderer;
+import com.vydray.pos.printer.OrderSnapshotStore;
+import com.vydray.pos.printer.PrintException;
+import com.vydray.pos.printer.PrintFlightRecorder;
+import com.vydray.pos.printer.PrintJob;
+import com.vydray.pos.printer.PrintLane;
+import com.vydray.pos.printer.PrintLaneExecutor;
+import com.vydray.pos.printer.PrintMetrics;
+import com.vydray.pos.printer.PrintSpooler;
+import com.vydray.pos.printer.PrintTemplate;
+import com.vydray.pos.printer.PrintTemplateCache;
+import com.vydray.pos.printer.PrinterConnectionManager;
+import com.vydray.pos.printer.PrinterRegistry;
+import com.vydray.pos.printer.PrinterStatus;
+import com.vydray.pos.printer.PrinterUnit;
+import com.vydray.pos.printer.RasterCache;
+import com.vydray.pos.printer.RasterImage;
+import com.vydray.pos.printer.ReceiptDocument;
+import com.vydray.pos.printer.ReceiptRenderer;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 @CapacitorPlugin(name = "SiiPrinter")
 public class SiiPrinterPlugin extends Plugin {
     private static final String TAG = "SiiPrinterPlugin";
-    private PrinterManager printerManager;
+    static final String PREFS_NAME = "sii_printer";
+    private static final String PREF_ADDRESS = "printer_address";
+    private static final String PREF_ROUTING = "printer_routing";
+    private static final String PREF_TEMPLATE = "print_template:";
+    // printMetricsイベントの間隔
+    private static final long METRICS_INTERVAL_MS = 60 * 1000;
+    // 印刷パイプラインはプロセスで共有し、プラグイン（WebView）の作り直しでは止めない
+    private PrinterPipeline pipeline;
+    private PrinterRegistry registry;
+    private PrintMetrics metrics;
+    // パイプラインからのイベントをJSへ送る
+    private PrinterRegistry.Listener events;
+    private PrinterService service;
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            service = ((PrinterService.LocalBinder) binder).getService();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            service = null;
+        }
+    };
+    private RasterCache rasterCache;
+    // 卓ごとに追加伝票で印刷済みの注文
+    private OrderSnapshotStore orderSnapshots;
+    private final PrintTemplateCache templates = new PrintTemplateCache();
+    // 描画・積み込みを行うスレッド（領収書レーンは専用、ほかはレーン優先）。プラグインスレッドは状態確認・接続操作だけにすぐ空ける
+    private final PrintLaneExecutor printLanes = new PrintLaneExecutor("PrintRender");
+    // 印刷レーンのスレッドごとの描画バッファ（呼び出し毎に使い回す）
+    private final ThreadLocal<EscPosWriter> writers = new ThreadLocal<EscPosWriter>() {
+        @Override
+        protected EscPosWriter initialValue() {
+            return new EscPosWriter();
+        }
+    };
     private BluetoothAdapter bluetoothAdapter;
+    private final Handler metricsHandler = new Handler(Looper.getMainLooper());
+    // 集計中の日報（開きっぱなしの古いものから捨てる）
+    private static final int MAX_DAILY_REPORTS = 4;
+    private final Map<String, DailySalesAggregator> dailyReports =
+            new LinkedHashMap<String, DailySalesAggregator>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, DailySalesAggregator> eldest) {
+                    return size() > MAX_DAILY_REPORTS;
+                }
+            };
+    private int nextDailyReportId = 1;
+    private final Runnable metricsTick = new Runnable() {
+        @Override
+        public void run() {
+            if (hasListeners("printMetrics")) {
+                notifyListeners("printMetrics", metricsSnapshot());
+            }
+            metricsHandler.postDelayed(this, METRICS_INTERVAL_MS);
+        }
+    };
 
     @Override
     public void load() {
         super.load();
         bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-        printerManager = new PrinterManager(getContext());
+
+        rasterCache = new RasterCache(new File(getContext().getFilesDir(), "raster-cache"));
+        pipeline = PrinterPipeline.get(getContext());
+        orderSnapshots = pipeline.getOrderSnapshots();
+        registry = pipeline.getRegistry();
+        metrics = pipeline.getMetrics();
+        events = new PrinterRegistry.Listener() {
+            @Override
+            public void onJobCompleted(String role, PrintJob job) {
+                JSObject data = new JSObject();
+                data.put("jobId", job.getId());
+                data.put("documentType", job.getDocumentType());
+                data.put("role", role);
+                notifyListeners("printJobCompleted", data);
+            }
+
+            @Override
+            public void onJobFailed(String role, PrintJob job, PrintException error, boolean willRetry) {
+                JSObject data = new JSObject();
+                data.put("jobId", job.getId());
+                data.put("documentType", job.getDocumentType());
+                data.put("role", role);
+                data.put("error", error.getMessage());
+                data.put("attempts", job.getAttempts());
+                data.put("willRetry", willRetry);
+                notifyListeners("printJobFailed", data);
+            }
+
+            @Override
+            public void onDocumentPrinted(String role, PrintJob job, int printedCount) {
+                JSObject data = new JSObject();
+                data.put("jobId", job.getId());
+                data.put("documentType", job.getDocumentType());
+                data.put("role", role);
+                data.put("printed", printedCount);
+                data.put("total", job.getDocumentCount());
+                notifyListeners("printJobProgress", data);
+            }
+
+            @Override
+            public void onStateChanged(String role, PrinterConnectionManager.State state, String address, String error) {
+                JSObject data = new JSObject();
+                data.put("role", role);
+                data.put("state", state.name());
+                data.put("connected", state == PrinterConnectionManager.State.CONNECTED);
+                data.put("address", address);
+                data.put("error", error);
+                notifyListeners("connectionStateChanged", data);
+            }
+
+            @Override
+            public void onPrinterStatusChanged(String role, PrinterStatus status) {
+                JSObject data = statusInfo(status);
+                data.put("role", role);
+                notifyListeners("printerStatusChanged", data);
+            }
+        };
+        pipeline.attach(events);
+
+        // 既定のプリンターは常に用意しておく
+        registerPrinter(PrinterRegistry.DEFAULT_ROLE);
+        restoreRouting();
+        restoreTemplates();
+        metricsHandler.postDelayed(metricsTick, METRICS_INTERVAL_MS);
+
+        // 前回接続していたプリンターへ自動で接続（WebViewの再読み込みでは接続済みのリンクをそのまま使う）
+        if (pipeline.claimAutoConnect()) {
+            for (PrinterUnit unit : registry.getUnits()) {
+                String lastAddress = getPrefs().getString(addressKey(unit.getRole()), null);
+                if (lastAddress != null) {
+                    unit.getConnection().connect(lastAddress, null);
+                }
+            }
+        }
+
+        // 前面サービスで接続を保つ（画面を離れても印刷を続け、無操作なら切断する）
+        // Bluetooth権限がまだなければ起動しない（権限が揃ったとき・接続時に起動する）。パイプラインへの結び付けは先に行う
+        PrinterService.start(getContext());
+        getContext().bindService(new Intent(getContext(), PrinterService.class), serviceConnection,
+                Context.BIND_AUTO_CREATE);
+    }
+
+    // パイプラインとプリンターとの接続はサービス側に残す（止めるのは未描画の呼び出しだけ）
+    @Override
+    protected void handleOnDestroy() {
+        metricsHandler.removeCallbacks(metricsTick);
+        printLanes.shutdown();
+        pipeline.detach(events);
+        try {
+            getContext().unbindService(serviceConnection);
+        } catch (IllegalArgumentException e) {
+            // 結び付く前に破棄された
+        }
+        service = null;
+        super.handleOnDestroy();
     }
 
     @PluginMethod
@@ -100,414 +286,1068 @@ public class SiiPrinterPlugin extends Plugin {
     @PluginMethod
     public void connect(PluginCall call) {
         String address = call.getString("address");
+        String role = call.getString("role", PrinterRegistry.DEFAULT_ROLE);
         
         if (address == null) {
             call.reject("Address is required");
             return;
         }
 
-        try {
-            // MP-B20のモデル番号は6
-            int modelNumber = PrinterManager.PRINTER_MODEL_MP_B20;
-            // Bluetooth接続（セキュア接続）
-            printerManager.connect(modelNumber, address, true);
+        PrinterUnit unit = registerPrinter(role);
+        PrinterConnectionManager connection = unit.getConnection();
+
+        // 同じプリンターに接続済みなら何もしない
+        if (connection.isConnected() && address.equals(connection.getAddress())) {
             call.resolve();
-        } catch (PrinterException e) {
-            call.reject("Failed to connect: " + e.getMessage(), e);
+            return;
         }
+
+        getPrefs().edit().putString(addressKey(role), address).apply();
+        // 初回は権限が揃う前で前面化できないことがあるので、接続のたびに起動し直す
+        PrinterService.start(getContext());
+        connection.connect(address, new PrinterConnectionManager.ConnectCallback() {
+            @Override
+            public void onResult(PrintException error) {
+                if (error == null) {
+                    call.resolve();
+                } else {
+                    call.reject(error.getMessage(), error);
+                }
+            }
+        });
     }
 
     @PluginMethod
     public void disconnect(PluginCall call) {
-        try {
-            printerManager.disconnect();
+        String role = call.getString("role", PrinterRegistry.DEFAULT_ROLE);
+        PrinterUnit unit = registry.get(role);
+        getPrefs().edit().remove(addressKey(role)).apply();
+        if (unit == null) {
             call.resolve();
-        } catch (PrinterException e) {
-            call.reject("Failed to disconnect", e);
+            return;
         }
+
+        // 無操作で切れたままの接続先も忘れる（次の印刷で繋ぎ直さない）
+        registry.wakeUp(role);
+        unit.getConnection().disconnect(new PrinterConnectionManager.ConnectCallback() {
+            @Override
+            public void onResult(PrintException error) {
+                call.resolve();
+            }
+        });
+    }
+
+    // 印刷がない時間がこれだけ続いたらプリンターとの接続を切る（次の印刷で自動的に繋ぎ直す）
+    // { minutes } 0で切らない
+    @PluginMethod
+    public void setIdleTimeout(PluginCall call) {
+        Double minutes = call.getDouble("minutes");
+        if (minutes == null || minutes < 0) {
+            call.reject("minutes must be 0 or greater");
+            return;
+        }
+
+        long timeoutMs = (long) (minutes * 60 * 1000);
+        getPrefs().edit().putLong(PrinterService.PREF_IDLE_TIMEOUT, timeoutMs).apply();
+        PrinterService bound = service;
+        if (bound != null) {
+            bound.setIdleTimeout(timeoutMs);
+        }
+        call.resolve();
     }
 
+    // キャッシュ済みの接続状態を返す（プリンターとの通信は行わない）
     @PluginMethod
-    public void printText(PluginCall call) {
+    public void checkConnection(PluginCall call) {
+        PrinterUnit unit = registry.get(call.getString("role", PrinterRegistry.DEFAULT_ROLE));
+        if (unit == null) {
+            JSObject result = new JSObject();
+            result.put("connected", false);
+            result.put("state", PrinterConnectionManager.State.DISCONNECTED.name());
+            call.resolve(result);
+            return;
+        }
+        call.resolve(connectionInfo(unit));
+    }
+
+    // 複数プリンターの役割と帳票ごとの振り分けを設定する
+    // { printers: [{ role, address, backupRole }], routes: { orderSlip: "floor", receipt: "register" } }
+    @PluginMethod
+    public void configurePrinters(PluginCall call) {
+        JSArray printers = call.getArray("printers", new JSArray());
+        JSObject routes = call.getObject("routes", new JSObject());
+        Integer busyThreshold = call.getInt("busyThreshold");
+
+        try {
+            JSObject routing = new JSObject();
+            routing.put("printers", printers);
+            routing.put("routes", routes);
+            if (busyThreshold != null) {
+                routing.put("busyThreshold", busyThreshold);
+            }
+            applyRouting(routing);
+            getPrefs().edit().putString(PREF_ROUTING, routing.toString()).apply();
+
+            // 指定されたアドレスへ接続（結果は connectionStateChanged で通知）
+            SharedPreferences.Editor editor = getPrefs().edit();
+            for (int i = 0; i < printers.length(); i++) {
+                org.json.JSONObject printer = printers.getJSONObject(i);
+                String role = printer.getString("role");
+                String address = printer.optString("address", "");
+                if (address.isEmpty()) {
+                    continue;
+                }
+                editor.putString(addressKey(role), address);
+                PrinterConnectionManager connection = registry.get(role).getConnection();
+                if (!(connection.isConnected() && address.equals(connection.getAddress()))) {
+                    connection.connect(address, null);
+                }
+            }
+            editor.apply();
+        } catch (org.json.JSONException e) {
+            call.reject("Invalid printer configuration: " + e.getMessage(), e);
+            return;
+        }
+
+        JSArray result = new JSArray();
+        for (PrinterUnit unit : registry.getUnits()) {
+            result.put(connectionInfo(unit));
+        }
+        JSObject data = new JSObject();
+        data.put("printers", result);
+        call.resolve(data);
+    }
+
+    @PluginMethod
+    public void printText(final PluginCall call) {
+        runInLane(call, PrintLane.SLIP, new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                printTextInLane(call, lane);
+            }
+        });
+    }
+
+    private void printTextInLane(PluginCall call, PrintLane lane) {
+        PrintMetrics.CallTiming timing = new PrintMetrics.CallTiming();
         String text = call.getString("text");
-        
+        timing.decoded();
+
         if (text == null) {
             call.reject("Text is required");
             return;
         }
 
+        // シンプルなテキスト印刷（文字コード設定はスプーラーがジョブ先頭で送る）
+        writer().reset().text(text);
+        timing.rendered();
+        submitJob(call, "text", lane, writer().toByteArray(), timing);
+    }
+
+    // 描画済みのESC/POSバイト列をそのまま印刷する（再印刷・テスト印刷用）
+    // { data: base64, documentType?, copies? }。dataは returnRaw: true で印刷したときの戻り値 raw
+    @PluginMethod
+    public void printRaw(final PluginCall call) {
+        // レーンの指定がなければ帳票種別で決める（領収書・伝票の再印刷やテスト印刷をまとめ再印刷の後ろに並ばせない）
+        runInLane(call, PrintLane.of(call.getString("documentType", "raw")), new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                printRawInLane(call, lane);
+            }
+        });
+    }
+
+    private void printRawInLane(PluginCall call, PrintLane lane) {
+        PrintMetrics.CallTiming timing = new PrintMetrics.CallTiming();
+        String data = call.getString("data");
+        int copies = call.getInt("copies", 1);
+        if (data == null || data.isEmpty()) {
+            call.reject("data is required");
+            return;
+        }
+        if (copies < 1) {
+            call.reject("copies must be at least 1");
+            return;
+        }
+
+        byte[] raw;
         try {
-            // シンプルなテキスト印刷
-            printerManager.sendText(text);
-            
-            // カット
-            printerManager.cutPaper(CuttingMethod.CUT_PARTIAL);
-            
-            call.resolve();
-        } catch (PrinterException e) {
-            call.reject("Failed to print: " + e.getMessage(), e);
+            raw = Base64.decode(data, Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            call.reject("data is not valid base64", e);
+            return;
         }
+        timing.decoded();
+        timing.rendered();
+
+        byte[][] documents = new byte[copies][];
+        for (int copy = 0; copy < copies; copy++) {
+            documents[copy] = raw;
+        }
+        submitJob(call, call.getString("documentType", "raw"), lane, documents, timing);
     }
 
     @PluginMethod
-    public void printOrderSlip(PluginCall call) {
+    public void printOrderSlip(final PluginCall call) {
+        runInLane(call, PrintLane.SLIP, new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                printOrderSlipInLane(call, lane);
+            }
+        });
+    }
+
+    private void printOrderSlipInLane(PluginCall call, PrintLane lane) {
         try {
-            // パラメータを取得
-            String tableName = call.getString("tableName", "");
-            String guestName = call.getString("guestName", "");
-            String castName = call.getString("castName", "");
-            String elapsedTime = call.getString("elapsedTime", "");
-            String timestamp = call.getString("timestamp", "");
-
-            int subtotal = call.getInt("subtotal", 0);
-            int serviceTax = call.getInt("serviceTax", 0);
-            int roundedTotal = call.getInt("roundedTotal", 0);
-            int roundingAdjustment = call.getInt("roundingAdjustment", 0);
-
-            // カード手数料と支払い方法
-            int cardFeeRate = call.getInt("cardFeeRate", 0);
-            int cardFee = call.getInt("cardFee", 0);
-            int roundingUnit = call.getInt("roundingUnit", 1);
-            int roundingMethod = call.getInt("roundingMethod", 0);
-            int paymentCash = call.getInt("paymentCash", 0);
-            int paymentCard = call.getInt("paymentCard", 0);
-            int paymentOther = call.getInt("paymentOther", 0);
-            String paymentOtherMethod = call.getString("paymentOtherMethod", "");
-
-            JSArray orderItems = call.getArray("orderItems");
-            
-            // 日本語対応
-            printerManager.setCodePage(PrinterManager.CODE_PAGE_KATAKANA);
-            printerManager.setInternationalCharacter(PrinterManager.COUNTRY_JAPAN);
-            
-            // レシート内容を構築
-            StringBuilder receipt = new StringBuilder();
-            
-            // ヘッダー
-            receipt.append("        会計伝票\n");  // スペースで中央寄せを模擬
-            receipt.append("================================\n");
-            
-            // 基本情報
-            receipt.append("卓番号: ").append(tableName).append("\n");
-            receipt.append("お客様: ").append(guestName).append("\n");
-            receipt.append("推し: ").append(castName).append("\n");
-            receipt.append("滞在時間: ").append(elapsedTime).append("\n");
-            receipt.append("印刷時刻: ").append(timestamp).append("\n");
-            receipt.append("================================\n");
-            
-            // 注文明細
-            receipt.append("【注文明細】\n");
-            if (orderItems != null) {
-                try {
-                    // orderItemsをJSONArrayとして処理
-                    org.json.JSONArray jsonArray = new org.json.JSONArray(orderItems.toString());
-                    
-                    for (int i = 0; i < jsonArray.length(); i++) {
-                        org.json.JSONObject item = jsonArray.getJSONObject(i);
-                        String name = item.optString("name", "");
-                        String cast = item.optString("cast", "");
-                        int quantity = item.optInt("quantity", 1);
-                        int price = item.optInt("price", 0);
-                        int total = quantity * price;
-                        
-                        // 商品名
-                        receipt.append(name).append("\n");
-                        
-                        // キャスト名がある場合
-                        if (!cast.isEmpty()) {
-                            receipt.append("  (").append(cast).append(")\n");
-                        }
-                        
-                        // 数量と金額
-                        receipt.append(String.format("  %d × ¥%,d = ¥%,d\n", quantity, price, total));
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to parse order items", e);
-                }
+            PrintMetrics.CallTiming timing = new PrintMetrics.CallTiming();
+            OrderSlipDocument doc = OrderSlipDocument.read(call.getData());
+            OrderItemDecoder.Result items = OrderItemDecoder.decodePayload(call.getData());
+            if (!items.isValid()) {
+                metrics.recordFailure("orderSlip", null, "INVALID_ITEMS");
+                rejectInvalidItems(call, items, -1);
+                return;
             }
-            
-            receipt.append("--------------------------------\n");
-            
-            // 合計
-            receipt.append(String.format("小計:              ¥%,d\n", subtotal));
-            receipt.append(String.format("サービス料:        ¥%,d\n", serviceTax));
-            
-            if (roundingAdjustment != 0) {
-                String sign = roundingAdjustment < 0 ? "-" : "+";
-                receipt.append(String.format("端数調整:         %s¥%,d\n", sign, Math.abs(roundingAdjustment)));
+            doc.items = items.items;
+            timing.decoded();
+
+            // 伝票をバイト列に描画して一括で印刷
+            renderOrderSlip(doc);
+            timing.rendered();
+            submitJob(call, "orderSlip", lane, writer().toByteArray(), timing);
+        } catch (Exception e) {
+            call.reject("Failed to print order slip: " + e.getMessage(), e);
+        }
+    }
+
+    // キッチン・バー向けの追加伝票。卓ごとに前回印刷した注文との差分（追加・増量・減量・取消）だけを印字する
+    // { tableName, guestName, timestamp, orderItems } → { printed, changes, jobId, role }
+    // 変更がなければ印刷しない。振り分け先は帳票種別 "orderDelta" で設定する
+    @PluginMethod
+    public void printOrderDelta(final PluginCall call) {
+        runInLane(call, PrintLane.SLIP, new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                printOrderDeltaInLane(call, lane);
             }
-            
-            receipt.append("================================\n");
+        });
+    }
 
-            // 合計金額
-            receipt.append(String.format("合計金額:          ¥%,d\n", roundedTotal));
+    private void printOrderDeltaInLane(PluginCall call, PrintLane lane) {
+        String tableName = call.getString("tableName");
+        if (tableName == null || tableName.isEmpty()) {
+            call.reject("tableName is required");
+            return;
+        }
 
-            receipt.append("================================\n");
+        try {
+            PrintMetrics.CallTiming timing = new PrintMetrics.CallTiming();
+            OrderItemDecoder.Result items = OrderItemDecoder.decodePayload(call.getData());
+            if (!items.isValid()) {
+                metrics.recordFailure("orderDelta", null, "INVALID_ITEMS");
+                rejectInvalidItems(call, items, -1);
+                return;
+            }
+            OrderDeltaTicket ticket = new OrderDeltaTicket();
+            ticket.tableName = tableName;
+            ticket.guestName = call.getString("guestName", "");
+            ticket.timestamp = call.getString("timestamp", "");
+            ticket.changes = OrderDelta.compute(orderSnapshots.get(tableName), items.items);
+            timing.decoded();
 
-            // お支払い方法による金額（カード手数料が設定されている場合のみ表示）
-            if (cardFeeRate > 0) {
-                // カード支払い時の金額を計算
-                Log.d(TAG, "=== Card Payment Calculation Debug ===");
-                Log.d(TAG, "roundedTotal: " + roundedTotal);
-                Log.d(TAG, "cardFeeRate: " + cardFeeRate);
-                Log.d(TAG, "roundingUnit: " + roundingUnit);
-                Log.d(TAG, "roundingMethod: " + roundingMethod);
+            JSObject result = new JSObject();
+            result.put("changes", ticket.changes.size());
+            if (ticket.changes.isEmpty()) {
+                result.put("printed", false);
+                call.resolve(result);
+                return;
+            }
 
-                int calculatedCardFee = (int) Math.round(roundedTotal * cardFeeRate / 100.0);
-                Log.d(TAG, "calculatedCardFee: " + calculatedCardFee);
+            OrderDeltaRenderer.render(ticket, writer().reset());
+            timing.rendered();
+            // 基準は印刷が済んだ時点で確定する（完了通知が記録より先に来ないよう、積むところから記録までをまとめて行う）
+            PrinterRegistry.Submission submission;
+            synchronized (orderSnapshots) {
+                submission = queueJob(call, PrinterPipeline.ORDER_DELTA, lane,
+                        new byte[][] {writer().toByteArray()}, timing);
+                try {
+                    orderSnapshots.submitted(tableName, submission.jobId, items.items);
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to save order snapshot for " + tableName, e);
+                }
+            }
+            result.put("printed", true);
+            result.put("jobId", submission.jobId);
+            result.put("role", submission.role);
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Failed to print order delta: " + e.getMessage(), e);
+        }
+    }
 
-                int cardAmountBeforeRounding = roundedTotal + calculatedCardFee;
-                Log.d(TAG, "cardAmountBeforeRounding: " + cardAmountBeforeRounding);
+    // 会計・卓の片付け後に呼ぶ（次の客の追加伝票は全品から始まる）
+    @PluginMethod
+    public void clearOrderSnapshot(final PluginCall call) {
+        runInLane(call, PrintLane.SLIP, new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                clearOrderSnapshotInLane(call);
+            }
+        });
+    }
 
-                int cardAmount = applyRounding(cardAmountBeforeRounding, roundingUnit, roundingMethod);
-                Log.d(TAG, "cardAmount (after rounding): " + cardAmount);
+    private void clearOrderSnapshotInLane(PluginCall call) {
+        String tableName = call.getString("tableName");
+        if (tableName == null || tableName.isEmpty()) {
+            call.reject("tableName is required");
+            return;
+        }
+        try {
+            orderSnapshots.clear(tableName);
+            call.resolve();
+        } catch (IOException e) {
+            call.reject("Failed to clear order snapshot: " + e.getMessage(), e);
+        }
+    }
 
-                receipt.append("\n【お支払い方法】\n");
-                receipt.append(String.format("現金の場合:        ¥%,d\n", roundedTotal));
-                receipt.append(String.format("カードの場合:      ¥%,d\n", cardAmount));
-                receipt.append(String.format("  (カード手数料%d%%含む)\n", cardFeeRate));
-                receipt.append("================================\n");
+    // 卓の移動後に呼ぶ（移動先の追加伝票が移動元までの注文との差分になる）
+    // { fromTable, toTable }
+    @PluginMethod
+    public void moveOrderSnapshot(final PluginCall call) {
+        runInLane(call, PrintLane.SLIP, new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                moveOrderSnapshotInLane(call);
             }
+        });
+    }
 
-            // 一括で印刷
-            printerManager.sendText(receipt.toString());
-            
-            // カット
-            printerManager.cutPaper(CuttingMethod.CUT_PARTIAL);
-            
+    private void moveOrderSnapshotInLane(PluginCall call) {
+        String fromTable = call.getString("fromTable");
+        String toTable = call.getString("toTable");
+        if (fromTable == null || fromTable.isEmpty() || toTable == null || toTable.isEmpty()) {
+            call.reject("fromTable and toTable are required");
+            return;
+        }
+        try {
+            orderSnapshots.move(fromTable, toTable);
             call.resolve();
-        } catch (Exception e) {
-            call.reject("Failed to print order slip: " + e.getMessage(), e);
+        } catch (IOException e) {
+            call.reject("Failed to move order snapshot: " + e.getMessage(), e);
         }
     }
 
     @PluginMethod
-    public void printReceipt(PluginCall call) {
+    public void printReceipt(final PluginCall call) {
+        runInLane(call, PrintLane.RECEIPT, new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                printReceiptInLane(call, lane);
+            }
+        });
+    }
+
+    private void printReceiptInLane(PluginCall call, PrintLane lane) {
         try {
-            // パラメータを取得
-            String storeName = call.getString("storeName", "");
-            String storeAddress = call.getString("storeAddress", "");
-            String storePhone = call.getString("storePhone", "");
-            String storePostalCode = call.getString("storePostalCode", "");
-            String storeRegistrationNumber = call.getString("storeRegistrationNumber", "");
-            String receiptNumber = call.getString("receiptNumber", "");
-            String tableName = call.getString("tableName", "");
-            String guestName = call.getString("guestName", "");
-            String castName = call.getString("castName", "");
-            String timestamp = call.getString("timestamp", "");
-            String receiptTo = call.getString("receiptTo", "");  // 宛名
-            String receiptNote = call.getString("receiptNote", "お品代として");  // 但し書き
-            
-            int subtotal = call.getInt("subtotal", 0);
-            int serviceTax = call.getInt("serviceTax", 0);
-            int consumptionTax = call.getInt("consumptionTax", 0);
-            int roundingAdjustment = call.getInt("roundingAdjustment", 0);
-            int roundedTotal = call.getInt("roundedTotal", 0);
-            int cardFeeRate = call.getInt("cardFeeRate", 0);
-            int cardFee = call.getInt("cardFee", 0);
-            int paymentCash = call.getInt("paymentCash", 0);
-            int paymentCard = call.getInt("paymentCard", 0);
-            int paymentOther = call.getInt("paymentOther", 0);
-            String paymentOtherMethod = call.getString("paymentOtherMethod", "");
-            int change = call.getInt("change", 0);
-            
-            // 収入印紙設定
-            boolean showRevenueStamp = call.getBoolean("showRevenueStamp", true);
-            int revenueStampThreshold = call.getInt("revenueStampThreshold", 50000);
-            
-            JSArray orderItems = call.getArray("orderItems");
-            
-            // 日本語対応
-            printerManager.setCodePage(PrinterManager.CODE_PAGE_KATAKANA);
-            printerManager.setInternationalCharacter(PrinterManager.COUNTRY_JAPAN);
-            
-            // レシート内容を構築
-            StringBuilder receipt = new StringBuilder();
-            
-            // ヘッダー部分（領収書タイトルと収入印紙欄）
-    if (showRevenueStamp && roundedTotal >= revenueStampThreshold) {
-            // 収入印紙が必要な場合（MP-B20用: 32文字幅）
-            receipt.append("\n");
-            receipt.append("       領 収 書       ┌────┐\n");
-            receipt.append("                     │      │\n");
-            receipt.append("                     │ 収入 │\n");
-            receipt.append("                     │ 印紙 │\n");
-            
-            // 金額に応じた印紙額を表示
-            String stampAmount = "";
-            if (roundedTotal >= 5000000) {
-                stampAmount = "2,000";
-            } else if (roundedTotal >= 3000000) {
-                stampAmount = "1,000";
-            } else if (roundedTotal >= 2000000) {
-                stampAmount = "600";
-            } else if (roundedTotal >= 1000000) {
-                stampAmount = "400";
-            } else if (roundedTotal >= 50000) {
-                stampAmount = "200";
-            }
-            receipt.append("                     │").append(String.format("%6s", stampAmount)).append("│\n");
-            receipt.append("                     └────┘\n");
-        } else {
-            // 収入印紙が不要な場合
-            receipt.append("\n");
-            receipt.append("          領 収 書          \n");
-            receipt.append("\n");
+            PrintMetrics.CallTiming timing = new PrintMetrics.CallTiming();
+            ReceiptDocument doc = readReceipt(call.getData());
+            OrderItemDecoder.Result items = OrderItemDecoder.decodePayload(call.getData());
+            if (!items.isValid()) {
+                metrics.recordFailure("receipt", null, "INVALID_ITEMS");
+                rejectInvalidItems(call, items, -1);
+                return;
+            }
+            doc.items = items.items;
+            timing.decoded();
+
+            // 領収書をバイト列に描画して印刷
+            renderReceipt(doc);
+            timing.rendered();
+            byte[] data = writer().toByteArray();
+            PrinterRegistry.Submission submission = submitJob(call, "receipt", lane, data, timing);
+            // デジタル控えは印刷と並行して同じバイト列から作り、receiptImageReadyで返す
+            if (submission != null && call.getBoolean("image", false)) {
+                generateReceiptImage(submission.jobId, data, imageScale(call));
+            }
+        } catch (Exception e) {
+            call.reject("Failed to print receipt: " + e.getMessage(), e);
         }
-            
-            receipt.append("\n");
-            
-            // 発行日
-            receipt.append(timestamp).append("\n");
-            receipt.append("\n");
-            
-            // 宛名
-            if (!receiptTo.isEmpty()) {
-                receipt.append(receiptTo).append(" 様\n");
-            } else {
-                receipt.append("                    様\n");
+    }
+
+    // 印刷せずに領収書の画像だけを作る → { data: base64のPNG, width, height, elapsedMs }
+    @PluginMethod
+    public void renderReceiptImage(final PluginCall call) {
+        runInLane(call, PrintLane.RECEIPT, new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                renderReceiptImageInLane(call);
             }
-            receipt.append("\n");
-            
-            // 金額（大きく表示）
-            receipt.append("================================\n");
-            receipt.append(String.format("  金額  ￥%,d－  \n", roundedTotal));
-            receipt.append("================================\n");
-            receipt.append("\n");
-            
-            // 但し書き
-            receipt.append("但し ").append(receiptNote).append("\n");
-            receipt.append("\n");
-            
-            // 内訳
-            receipt.append("【内訳】\n");
-            receipt.append("--------------------------------\n");
-            
-            // 注文明細
-            if (orderItems != null) {
-                try {
-                    org.json.JSONArray jsonArray = new org.json.JSONArray(orderItems.toString());
-                    
-                    for (int i = 0; i < jsonArray.length(); i++) {
-                        org.json.JSONObject item = jsonArray.getJSONObject(i);
-                        String name = item.optString("name", "");
-                        String cast = item.optString("cast", "");
-                        int quantity = item.optInt("quantity", 1);
-                        int price = item.optInt("price", 0);
-                        int total = quantity * price;
-                        
-                        receipt.append(name);
-                        if (!cast.isEmpty()) {
-                            receipt.append(" (").append(cast).append(")");
+        });
+    }
+
+    private void renderReceiptImageInLane(final PluginCall call) {
+        try {
+            ReceiptDocument doc = readReceipt(call.getData());
+            OrderItemDecoder.Result items = OrderItemDecoder.decodePayload(call.getData());
+            if (!items.isValid()) {
+                rejectInvalidItems(call, items, -1);
+                return;
+            }
+            doc.items = items.items;
+            renderReceipt(doc);
+            ReceiptImageGenerator.get().generate(writer().toByteArray(), imageScale(call),
+                    new ReceiptImageGenerator.Callback() {
+                        @Override
+                        public void onImage(byte[] png, int width, int height, long elapsedNanos) {
+                            call.resolve(receiptImage(png, width, height, elapsedNanos));
                         }
-                        receipt.append("\n");
-                        receipt.append(String.format("  %d × ¥%,d = ¥%,d\n", quantity, price, total));
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to parse order items", e);
-                }
+
+                        @Override
+                        public void onError(Exception error) {
+                            call.reject("Failed to render receipt image: " + error.getMessage(), error);
+                        }
+                    });
+        } catch (Exception e) {
+            call.reject("Failed to render receipt image: " + e.getMessage(), e);
+        }
+    }
+
+    private void generateReceiptImage(final long jobId, byte[] data, int scale) {
+        ReceiptImageGenerator.get().generate(data, scale, new ReceiptImageGenerator.Callback() {
+            @Override
+            public void onImage(byte[] png, int width, int height, long elapsedNanos) {
+                JSObject image = receiptImage(png, width, height, elapsedNanos);
+                image.put("jobId", jobId);
+                notifyListeners("receiptImageReady", image);
             }
-            
-            receipt.append("--------------------------------\n");
-            
-            // 小計・税金
-            int taxBase = subtotal + serviceTax;  // 税込金額
-            int taxAmount = consumptionTax;       // 消費税額
-            
-            receipt.append(String.format("税込金額:          ¥%,d\n", taxBase + taxAmount));
-            receipt.append(String.format("（内消費税等:      ¥%,d）\n", taxAmount));
-            
-            if (roundingAdjustment != 0) {
-                String sign = roundingAdjustment < 0 ? "-" : "+";
-                receipt.append(String.format("端数調整:         %s¥%,d\n", sign, Math.abs(roundingAdjustment)));
+
+            @Override
+            public void onError(Exception error) {
+                JSObject image = new JSObject();
+                image.put("jobId", jobId);
+                image.put("error", error.getMessage());
+                notifyListeners("receiptImageReady", image);
             }
-            
-            receipt.append("\n");
-            receipt.append("上記正に領収いたしました\n");
-            receipt.append("\n");
-
-            // 支払い内訳（カード手数料が設定されている場合のみ表示）
-            if (cardFeeRate > 0) {
-                receipt.append("【お支払い内訳】\n");
-                receipt.append(String.format("現金:              ¥%,d\n", paymentCash));
-                receipt.append(String.format("カード:            ¥%,d\n", paymentCard));
-                if (cardFee > 0) {
-                    receipt.append(String.format("カード手数料(%d%%):  ¥%,d\n", cardFeeRate, cardFee));
-                }
-                receipt.append("\n");
+        });
+    }
+
+    private static JSObject receiptImage(byte[] png, int width, int height, long elapsedNanos) {
+        JSObject image = new JSObject();
+        image.put("data", Base64.encodeToString(png, Base64.NO_WRAP));
+        image.put("width", width);
+        image.put("height", height);
+        image.put("elapsedMs", elapsedNanos / 1_000_000.0);
+        return image;
+    }
+
+    // 画像の倍率（1ドットを何ピクセルにするか。スマホで読める大きさの既定は2）
+    private static int imageScale(PluginCall call) {
+        return Math.max(1, Math.min(4, call.getInt("imageScale", 2)));
+    }
+
+    // 日報の集計を始める → { reportId }
+    // 会計データはappendDailyReportでページごとに送り、ネイティブ側では合計だけを持つ
+    @PluginMethod
+    public void startDailyReport(final PluginCall call) {
+        runInLane(call, PrintLane.BULK, new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                startDailyReportInLane(call);
             }
-            
-            // 発行者情報
-            receipt.append("================================\n");
-            receipt.append(storeName).append("\n");
-            
-            if (!storePostalCode.isEmpty()) {
-                receipt.append("〒").append(storePostalCode).append("\n");
+        });
+    }
+
+    private void startDailyReportInLane(PluginCall call) {
+        String reportId;
+        // 日報の呼び出しは lane の指定で別のレーンのスレッドからも来る
+        synchronized (dailyReports) {
+            reportId = "daily-" + nextDailyReportId++;
+            dailyReports.put(reportId, new DailySalesAggregator());
+        }
+        JSObject result = new JSObject();
+        result.put("reportId", reportId);
+        call.resolve(result);
+    }
+
+    // { reportId, orderTotals, orderCash, ..., itemCasts, itemCategories, itemAmounts, itemQuantities } → { orderCount }
+    @PluginMethod
+    public void appendDailyReport(final PluginCall call) {
+        runInLane(call, PrintLane.BULK, new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                appendDailyReportInLane(call);
             }
-            
-            if (!storeAddress.isEmpty()) {
-                receipt.append(storeAddress).append("\n");
+        });
+    }
+
+    private void appendDailyReportInLane(PluginCall call) {
+        int orderCount;
+        synchronized (dailyReports) {
+            DailySalesAggregator aggregator = dailyReports.get(call.getString("reportId", ""));
+            if (aggregator == null) {
+                call.reject("Unknown daily report: " + call.getString("reportId"));
+                return;
             }
-            
-            if (!storePhone.isEmpty()) {
-                receipt.append("TEL: ").append(storePhone).append("\n");
+            aggregator.addPage(call.getData());
+            orderCount = aggregator.getOrderCount();
+        }
+        JSObject result = new JSObject();
+        result.put("orderCount", orderCount);
+        call.resolve(result);
+    }
+
+    // { reportId, storeName, businessDate, eventName, timestamp } → { jobId, role, orderCount, totalSales }
+    // 印刷に積んだ時点で集計は破棄する。振り分け先は帳票種別 "dailyReport" で設定する
+    @PluginMethod
+    public void printDailyReport(final PluginCall call) {
+        runInLane(call, PrintLane.BULK, new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                printDailyReportInLane(call, lane);
             }
-            
-            // インボイス登録番号
-            if (!storeRegistrationNumber.isEmpty()) {
-                receipt.append("登録番号: ").append(storeRegistrationNumber).append("\n");
+        });
+    }
+
+    private void printDailyReportInLane(PluginCall call, PrintLane lane) {
+        String reportId = call.getString("reportId", "");
+        DailySalesAggregator aggregator;
+        synchronized (dailyReports) {
+            aggregator = dailyReports.get(reportId);
+        }
+        if (aggregator == null) {
+            call.reject("Unknown daily report: " + reportId);
+            return;
+        }
+
+        try {
+            PrintMetrics.CallTiming timing = new PrintMetrics.CallTiming();
+            DailyReportDocument doc;
+            synchronized (dailyReports) {
+                doc = aggregator.summarize(DailyReportDocument.read(call.getData()));
             }
-            
-            receipt.append("================================\n");
-            
-            // 領収書番号（下部に小さく）
-            receipt.append("\n");
-            receipt.append("No. ").append(receiptNumber).append("\n");
-            
-            // テーブル・担当情報（控え用）
-            receipt.append("(卓: ").append(tableName);
-            if (!castName.isEmpty()) {
-                receipt.append(" / 担当: ").append(castName);
+            timing.decoded();
+
+            DailyReportRenderer.render(doc, writer().reset());
+            timing.rendered();
+            PrinterRegistry.Submission submission = queueJob(call, "dailyReport", lane, new byte[][] {writer().toByteArray()}, timing);
+            synchronized (dailyReports) {
+                dailyReports.remove(reportId);
             }
-            receipt.append(")\n\n\n");
-            
-            // 印刷
-            printerManager.sendText(receipt.toString());
-            
-            // カット
-            printerManager.cutPaper(CuttingMethod.CUT_PARTIAL);
-            
-            call.resolve();
+
+            JSObject result = new JSObject();
+            result.put("jobId", submission.jobId);
+            result.put("role", submission.role);
+            result.put("orderCount", doc.orderCount);
+            result.put("totalSales", doc.totalSales);
+            call.resolve(result);
         } catch (Exception e) {
-            call.reject("Failed to print receipt: " + e.getMessage(), e);
+            call.reject("Failed to print daily report: " + e.getMessage(), e);
+        }
+    }
+
+    // 店舗のレイアウトテンプレートを設定する（同じversionなら再コンパイルしない）
+    // { documentType: "receipt" | "orderSlip", version, source }。sourceが空なら組み込みのレイアウトに戻す
+    @PluginMethod
+    public void setReceiptTemplate(final PluginCall call) {
+        runInLane(call, PrintLane.SLIP, new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                setReceiptTemplateInLane(call);
+            }
+        });
+    }
+
+    private void setReceiptTemplateInLane(PluginCall call) {
+        String documentType = call.getString("documentType", "receipt");
+        String version = call.getString("version", "");
+        String source = call.getString("source", "");
+        if (!"receipt".equals(documentType) && !"orderSlip".equals(documentType)) {
+            call.reject("Unsupported document type: " + documentType);
+            return;
+        }
+
+        if (source.isEmpty()) {
+            templates.remove(documentType);
+            getPrefs().edit().remove(PREF_TEMPLATE + documentType).apply();
+            call.resolve();
+            return;
+        }
+
+        try {
+            PrintTemplate current = templates.get(documentType);
+            boolean changed = current == null || !current.getVersion().equals(version);
+            templates.put(documentType, version, source);
+            if (changed) {
+                JSObject saved = new JSObject();
+                saved.put("version", version);
+                saved.put("source", source);
+                getPrefs().edit().putString(PREF_TEMPLATE + documentType, saved.toString()).apply();
+            }
+            JSObject result = new JSObject();
+            result.put("compiled", changed);
+            call.resolve(result);
+        } catch (IllegalArgumentException e) {
+            call.reject("Invalid template: " + e.getMessage(), "INVALID_TEMPLATE", e);
         }
     }
 
-    // 端数処理を適用するヘルパーメソッド
-    private int applyRounding(int amount, int roundingUnit, int roundingMethod) {
-        if (roundingUnit <= 1) {
-            return amount;
+    // ロゴ・QRコード・印影などの画像を登録する（変換は登録時に1回だけ）
+    // { data: base64 } → { hash }。印刷時は printReceipt の logoHash / footerImageHash に渡す
+    // 画像の読み込みと誤差拡散は重いので、会計の領収書を待たせないようにまとめ印刷のレーンで行う
+    @PluginMethod
+    public void registerImage(final PluginCall call) {
+        runInLane(call, PrintLane.BULK, new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                registerImageInLane(call);
+            }
+        });
+    }
+
+    private void registerImageInLane(PluginCall call) {
+        String data = call.getString("data");
+        if (data == null) {
+            call.reject("data is required");
+            return;
         }
 
-        int remainder = amount % roundingUnit;
+        try {
+            // data URL形式なら先頭を取り除く
+            int comma = data.indexOf(',');
+            byte[] source = Base64.decode(comma >= 0 ? data.substring(comma + 1) : data, Base64.DEFAULT);
+            String hash = RasterCache.hash(source);
+            JSObject result = new JSObject();
+            result.put("hash", hash);
+
+            // 同じ画像は変換済みのものを使う
+            if (rasterCache.contains(hash)) {
+                result.put("cached", true);
+                call.resolve(result);
+                return;
+            }
+
+            Bitmap bitmap = BitmapFactory.decodeByteArray(source, 0, source.length);
+            if (bitmap == null) {
+                call.reject("Unsupported image format");
+                return;
+            }
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            int[] pixels = new int[width * height];
+            bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+            bitmap.recycle();
+
+            rasterCache.put(hash, RasterImage.encode(pixels, width, height, RasterImage.MAX_WIDTH));
+            result.put("cached", false);
+            call.resolve(result);
+        } catch (IllegalArgumentException | IOException e) {
+            call.reject("Failed to register image: " + e.getMessage(), e);
+        }
+    }
+
+    // 複数帳票をまとめて1ジョブで印刷する（1日分の再印刷、領収書＋控えなど）
+    // { documents: [{ type: "receipt" | "orderSlip" | "text", ... }], copies: 2 }
+    // プリンター設定は1回だけ送り、帳票の間でカットする。進捗は printJobProgress で通知
+    @PluginMethod
+    public void printBatch(final PluginCall call) {
+        runInLane(call, PrintLane.BULK, new LaneWork() {
+            @Override
+            public void run(PrintLane lane) {
+                printBatchInLane(call, lane);
+            }
+        });
+    }
 
-        if (remainder == 0) {
-            return amount;
+    private void printBatchInLane(PluginCall call, PrintLane lane) {
+        JSArray documents = call.getArray("documents");
+        int copies = call.getInt("copies", 1);
+        if (documents == null || documents.length() == 0) {
+            call.reject("documents is required");
+            return;
+        }
+        if (copies < 1) {
+            call.reject("copies must be at least 1");
+            return;
         }
 
-        switch (roundingMethod) {
-            case 0: // 切り上げ
-                return amount - remainder + roundingUnit;
-            case 1: // 切り捨て
-                return amount - remainder;
-            case 2: // 四捨五入
-                if (remainder >= roundingUnit / 2.0) {
-                    return amount - remainder + roundingUnit;
+        try {
+            PrintMetrics.CallTiming timing = new PrintMetrics.CallTiming();
+            byte[][] rendered = new byte[documents.length() * copies][];
+            String batchType = null;
+            for (int i = 0; i < documents.length(); i++) {
+                org.json.JSONObject document = documents.optJSONObject(i);
+                String type = document == null ? "" : document.optString("type", "");
+                if ("text".equals(type)) {
+                    timing.decoded();
+                    writer().reset().text(document.optString("text", ""));
+                } else if ("orderSlip".equals(type) || "receipt".equals(type)) {
+                    OrderItemDecoder.Result items = OrderItemDecoder.decodePayload(document);
+                    if (!items.isValid()) {
+                        metrics.recordFailure(type, null, "INVALID_ITEMS");
+                        rejectInvalidItems(call, items, i);
+                        return;
+                    }
+                    if ("orderSlip".equals(type)) {
+                        OrderSlipDocument doc = OrderSlipDocument.read(document);
+                        doc.items = items.items;
+                        timing.decoded();
+                        renderOrderSlip(doc);
+                    } else {
+                        ReceiptDocument doc = readReceipt(document);
+                        doc.items = items.items;
+                        timing.decoded();
+                        renderReceipt(doc);
+                    }
                 } else {
-                    return amount - remainder;
+                    call.reject("Unknown document type at " + i + ": " + type);
+                    return;
+                }
+
+                // 描画は1回だけ。部数分は同じバイト列を並べる
+                byte[] data = writer().toByteArray();
+                timing.rendered();
+                for (int copy = 0; copy < copies; copy++) {
+                    rendered[i * copies + copy] = data;
+                }
+                batchType = batchType == null || batchType.equals(type) ? type : "batch";
+            }
+
+            // 振り分け先は帳票種別で決める（種別が混在する場合は "batch"）
+            submitJob(call, call.getString("documentType", batchType), lane, rendered, timing);
+        } catch (Exception e) {
+            call.reject("Failed to print batch: " + e.getMessage(), e);
+        }
+    }
+
+    // 店舗テンプレートがあればそれで、なければ組み込みのレイアウトで描画する
+    private void renderOrderSlip(OrderSlipDocument doc) {
+        PrintTemplate template = templates.get("orderSlip");
+        if (template != null) {
+            template.render(doc, writer().reset());
+        } else {
+            OrderSlipRenderer.render(doc, writer().reset());
+        }
+    }
+
+    private void renderReceipt(ReceiptDocument doc) {
+        PrintTemplate template = templates.get("receipt");
+        if (template != null) {
+            template.render(doc, writer().reset());
+        } else {
+            ReceiptRenderer.render(doc, writer().reset());
+        }
+    }
+
+    private ReceiptDocument readReceipt(org.json.JSONObject data) {
+        ReceiptDocument doc = ReceiptDocument.read(data);
+
+        // 登録済み画像（未登録のハッシュなら画像なしで印刷する）
+        doc.logo = cachedImage(data.optString("logoHash", null));
+        doc.footerImage = cachedImage(data.optString("footerImageHash", null));
+        return doc;
+    }
+
+    private byte[] cachedImage(String hash) {
+        if (hash == null || hash.isEmpty()) {
+            return null;
+        }
+        byte[] raster = rasterCache.get(hash);
+        if (raster == null) {
+            Log.w(TAG, "Image not registered: " + hash);
+        }
+        return raster;
+    }
+
+    // 不正な明細の一覧を付けて呼び出し元に返す（まとめ印刷では帳票の位置も付ける）
+    private static void rejectInvalidItems(PluginCall call, OrderItemDecoder.Result result, int documentIndex) {
+        JSArray invalidItems = new JSArray();
+        for (OrderItemDecoder.ItemError error : result.errors) {
+            JSObject entry = new JSObject();
+            entry.put("index", error.index);
+            entry.put("reason", error.reason);
+            invalidItems.put(entry);
+        }
+        JSObject data = new JSObject();
+        data.put("invalidItems", invalidItems);
+        if (documentIndex >= 0) {
+            data.put("documentIndex", documentIndex);
+        }
+        call.reject("Invalid order items: " + result.errors.size(), "INVALID_ORDER_ITEMS", null, data);
+    }
+
+    @PluginMethod
+    public void getQueueStatus(PluginCall call) {
+        JSArray printers = new JSArray();
+        int total = 0;
+        JSObject defaultStatus = null;
+        for (PrinterUnit unit : registry.getUnits()) {
+            PrintSpooler.Status status = unit.getSpooler().getStatus();
+            JSArray pending = new JSArray();
+            for (long jobId : status.pendingJobIds) {
+                pending.put(jobId);
+            }
+
+            JSObject entry = new JSObject();
+            entry.put("role", unit.getRole());
+            entry.put("pendingJobIds", pending);
+            entry.put("pendingCount", status.pendingJobIds.length);
+            JSObject lanes = new JSObject();
+            for (PrintLane lane : PrintLane.values()) {
+                lanes.put(lane.wireName(), status.lanePendingCounts[lane.ordinal()]);
+            }
+            entry.put("lanes", lanes);
+            entry.put("currentJobId", status.currentJobId);
+            entry.put("paused", status.paused);
+            entry.put("holdReason", status.holdReason);
+            entry.put("lastError", status.lastError);
+            printers.put(entry);
+            total += status.pendingJobIds.length;
+            if (PrinterRegistry.DEFAULT_ROLE.equals(unit.getRole())) {
+                defaultStatus = entry;
+            }
+        }
+
+        // 既定プリンターの状態はトップレベルにも載せる（従来の呼び出し側向け）
+        JSObject result = defaultStatus != null ? defaultStatus : new JSObject();
+        result.put("totalPendingCount", total);
+        result.put("printers", printers);
+        call.resolve(result);
+    }
+
+    // 段階ごとの所要時間（p50/p90/p99、ミリ秒）と原因別の失敗回数。直近1時間分
+    @PluginMethod
+    public void getPrintMetrics(PluginCall call) {
+        call.resolve(metricsSnapshot());
+    }
+
+    // 直近の印刷の記録（入力・送ったバイト列・段階ごとの時間・例外・接続状態）をgzipのバイナリで返す
+    // → { records, data: base64 }。printer-benchの flightReplay で再生できる
+    @PluginMethod
+    public void exportFlightRecord(PluginCall call) {
+        PrintFlightRecorder recorder = pipeline.getFlightRecorder();
+        List<PrintFlightRecorder.Record> records = recorder.records();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            PrintFlightRecorder.write(records, out);
+            JSObject result = new JSObject();
+            result.put("records", records.size());
+            result.put("data", Base64.encodeToString(out.toByteArray(), Base64.NO_WRAP));
+            call.resolve(result);
+        } catch (IOException e) {
+            call.reject("Failed to export flight record: " + e.getMessage(), e);
+        }
+    }
+
+    @PluginMethod
+    public void cancelJob(PluginCall call) {
+        Long jobId = call.getLong("jobId");
+        if (jobId == null) {
+            call.reject("jobId is required");
+            return;
+        }
+
+        boolean cancelled = registry.cancel(jobId);
+        if (cancelled) {
+            takeTiming(jobId);
+            pipeline.dropOrderDelta(jobId);
+        }
+        JSObject result = new JSObject();
+        result.put("cancelled", cancelled);
+        call.resolve(result);
+    }
+
+    // レーンの未処理の呼び出しと未印刷のジョブをまとめて取り消す（まとめ再印刷の中止など）
+    // { lane: "receipt" | "slip" | "bulk" } → { cancelled }
+    @PluginMethod
+    public void cancelLane(PluginCall call) {
+        PrintLane lane = PrintLane.fromWireName(call.getString("lane", ""));
+        if (lane == null) {
+            call.reject("Unknown lane: " + call.getString("lane"));
+            return;
+        }
+
+        int cancelled = printLanes.cancelLane(lane);
+        List<Long> jobIds = registry.cancelLane(lane);
+        for (long jobId : jobIds) {
+            takeTiming(jobId);
+            pipeline.dropOrderDelta(jobId);
+        }
+        JSObject result = new JSObject();
+        result.put("cancelled", cancelled + jobIds.size());
+        call.resolve(result);
+    }
+
+    private void applyRouting(org.json.JSONObject routing) throws org.json.JSONException {
+        registry.clearRoutes();
+        org.json.JSONArray printers = routing.optJSONArray("printers");
+        for (int i = 0; printers != null && i < printers.length(); i++) {
+            org.json.JSONObject printer = printers.getJSONObject(i);
+            String role = printer.getString("role");
+            registerPrinter(role);
+            String backupRole = printer.optString("backupRole", "");
+            if (!backupRole.isEmpty()) {
+                registerPrinter(backupRole);
+                registry.setBackup(role, backupRole);
+            }
+        }
+
+        org.json.JSONObject routes = routing.optJSONObject("routes");
+        if (routes != null) {
+            java.util.Iterator<String> keys = routes.keys();
+            while (keys.hasNext()) {
+                String documentType = keys.next();
+                registry.setRoute(documentType, routes.getString(documentType));
+            }
+        }
+        if (routing.has("busyThreshold")) {
+            registry.setBusyThreshold(routing.getInt("busyThreshold"));
+        }
+    }
+
+    private void restoreRouting() {
+        String saved = getPrefs().getString(PREF_ROUTING, null);
+        if (saved == null) {
+            return;
+        }
+        try {
+            applyRouting(new org.json.JSONObject(saved));
+        } catch (org.json.JSONException e) {
+            Log.e(TAG, "Invalid saved printer routing", e);
+        }
+    }
+
+    private void restoreTemplates() {
+        for (String documentType : new String[] {"receipt", "orderSlip"}) {
+            String saved = getPrefs().getString(PREF_TEMPLATE + documentType, null);
+            if (saved == null) {
+                continue;
+            }
+            try {
+                org.json.JSONObject template = new org.json.JSONObject(saved);
+                templates.put(documentType, template.getString("version"), template.getString("source"));
+            } catch (org.json.JSONException | IllegalArgumentException e) {
+                Log.e(TAG, "Invalid saved template for " + documentType, e);
+            }
+        }
+    }
+
+    private JSObject connectionInfo(PrinterUnit unit) {
+        PrinterConnectionManager connection = unit.getConnection();
+        PrinterConnectionManager.State state = connection.getState();
+        JSObject result = new JSObject();
+        result.put("role", unit.getRole());
+        result.put("connected", state == PrinterConnectionManager.State.CONNECTED);
+        result.put("state", state.name());
+        result.put("address", connection.getAddress());
+        result.put("lastError", connection.getLastError());
+        result.put("sleeping", registry.isSleeping(unit.getRole()));
+        PrinterStatus status = unit.getStatusMonitor().getStatus();
+        if (status != null) {
+            result.put("printerStatus", statusInfo(status));
+        }
+        return result;
+    }
+
+    private static JSObject statusInfo(PrinterStatus status) {
+        JSObject result = new JSObject();
+        result.put("offline", status.offline);
+        result.put("paperOut", status.paperOut);
+        result.put("coverOpen", status.coverOpen);
+        result.put("error", status.error);
+        result.put("battery", status.batteryName());
+        result.put("code", status.code);
+        return result;
+    }
+
+    private PrinterUnit registerPrinter(String role) {
+        return pipeline.register(role);
+    }
+
+    private SharedPreferences getPrefs() {
+        return getContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    // 既定プリンターは従来のキーをそのまま使う
+    private static String addressKey(String role) {
+        return PrinterRegistry.DEFAULT_ROLE.equals(role) ? PREF_ADDRESS : PREF_ADDRESS + ":" + role;
+    }
+
+    // このレーンのスレッドの描画バッファ（同じ呼び出しの中では同じものが返る）
+    private EscPosWriter writer() {
+        return writers.get();
+    }
+
+    private interface LaneWork {
+        void run(PrintLane lane);
+    }
+
+    // 呼び出しを印刷レーンのスレッドで処理する。レーンは呼び出しの lane（"receipt" | "slip" | "bulk"）、なければ帳票ごとの既定
+    // 待ちが上限を超えたら QUEUE_FULL / TIMEOUT のコードで断る
+    private void runInLane(final PluginCall call, PrintLane defaultLane, final LaneWork work) {
+        PrintLane requested = PrintLane.fromWireName(call.getString("lane", ""));
+        final PrintLane lane = requested != null ? requested : defaultLane;
+        try {
+            printLanes.execute(lane, new PrintLaneExecutor.Task() {
+                @Override
+                public void run() {
+                    work.run(lane);
                 }
-            default:
-                return amount;
+
+                @Override
+                public void reject(PrintException error) {
+                    call.reject(error.getMessage(), error.getReason().name(), error);
+                }
+            });
+        } catch (PrintException e) {
+            call.reject(e.getMessage(), e.getReason().name(), e);
+        }
+    }
+
+    // スプーラーに積んで即座にジョブIDを返す（印刷結果はイベントで通知）
+    private PrinterRegistry.Submission submitJob(PluginCall call, String documentType, PrintLane lane,
+                                                 byte[] data, PrintMetrics.CallTiming timing) {
+        return submitJob(call, documentType, lane, new byte[][] {data}, timing);
+    }
+
+    // 受け付けたジョブを返す（失敗したらcallをrejectしてnull）
+    private PrinterRegistry.Submission submitJob(PluginCall call, String documentType, PrintLane lane,
+                                                 byte[][] documents, PrintMetrics.CallTiming timing) {
+        try {
+            PrinterRegistry.Submission submission = queueJob(call, documentType, lane, documents, timing);
+            JSObject result = new JSObject();
+            result.put("jobId", submission.jobId);
+            result.put("role", submission.role);
+            // 再印刷用に描画済みのバイト列を返す（printRawにそのまま渡せる）
+            if (documents.length == 1 && call.getBoolean("returnRaw", false)) {
+                result.put("raw", Base64.encodeToString(documents[0], Base64.NO_WRAP));
+            }
+            call.resolve(result);
+            return submission;
+        } catch (PrintException e) {
+            call.reject("Failed to queue print job: " + e.getMessage(), e.getReason().name(), e);
+        } catch (IOException e) {
+            call.reject("Failed to queue print job: " + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    // 呼び出しの入力と使ったテンプレートの版はフライトレコーダーに残す
+    private PrinterRegistry.Submission queueJob(PluginCall call, String documentType, PrintLane lane,
+                                                byte[][] documents, PrintMetrics.CallTiming timing)
+            throws PrintException, IOException {
+        PrintTemplate template = templates.get(documentType);
+        return pipeline.submit(documentType, lane, documents, timing, call.getData().toString(),
+                template != null ? template.getVersion() : null);
+    }
+
+    private PrintMetrics.CallTiming takeTiming(long jobId) {
+        return pipeline.takeTiming(jobId);
+    }
+
+    private JSObject metricsSnapshot() {
+        try {
+            return new JSObject(metrics.snapshot().toString());
+        } catch (org.json.JSONException e) {
+            throw new IllegalStateException(e);
         }
     }
 }
\ No newline at end of file
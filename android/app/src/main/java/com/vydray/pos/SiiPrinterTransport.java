@@ -0,0 +1,153 @@
+package com.vydray.pos;
+
+import android.util.Log;
+
+import com.seikoinstruments.sdk.thermalprinter.CallbackFunctionListener;
+import com.seikoinstruments.sdk.thermalprinter.PrinterException;
+import com.seikoinstruments.sdk.thermalprinter.PrinterManager;
+import com.seikoinstruments.sdk.thermalprinter.printerenum.CuttingMethod;
+import com.vydray.pos.printer.FlowControlledTransport;
+import com.vydray.pos.printer.PrintException;
+import com.vydray.pos.printer.PrinterStatus;
+import com.vydray.pos.printer.PrinterStatusMonitor;
+
+// SII SDKのPrinterManagerを使った出力経路（スプーラーと接続管理の両方から使うので同期する）
+public class SiiPrinterTransport implements FlowControlledTransport {
+    private static final String TAG = "SiiPrinterTransport";
+    // MP-B20の自動ステータス（getStatus()の下位8ビット）
+    private static final int STATUS_COVER_OPEN = 0x01;
+    private static final int STATUS_PAPER_OUT = 0x02;
+    // 印字を続けられないエラーのビット（SDK内部のマスク値と同じ）
+    private static final int STATUS_ERROR_MASK = 0x17;
+    // 電池残量の問い合わせは往復が要るので間隔をあける
+    private static final long BATTERY_REFRESH_MS = 60 * 1000;
+    private final PrinterManager printerManager;
+    private volatile int batteryLevel = PrinterStatus.BATTERY_UNKNOWN;
+    private long batteryReadAt;
+    // SDKからの状態変化の通知先
+    private volatile PrinterStatusMonitor statusMonitor;
+
+    public SiiPrinterTransport(PrinterManager printerManager) {
+        this.printerManager = printerManager;
+    }
+
+    public void setStatusMonitor(PrinterStatusMonitor statusMonitor) {
+        this.statusMonitor = statusMonitor;
+    }
+
+    @Override
+    public synchronized void open(String address) throws PrintException {
+        if (printerManager.isConnect()) {
+            close();
+        }
+        try {
+            // MP-B20のモデル番号は6
+            int modelNumber = PrinterManager.PRINTER_MODEL_MP_B20;
+            // Bluetooth接続（セキュア接続）
+            printerManager.connect(modelNumber, address, true);
+        } catch (PrinterException e) {
+            throw new PrintException(PrintException.Reason.CONNECT, "Failed to connect: " + e.getMessage(), e);
+        }
+        batteryReadAt = 0;
+        try {
+            // 用紙切れ・カバー開きはプリンターから自動で通知される
+            printerManager.setCallbackFunctionListener(new CallbackFunctionListener() {
+                @Override
+                public void onStatusChanged(int status) {
+                    PrinterStatusMonitor monitor = statusMonitor;
+                    if (monitor != null) {
+                        monitor.update(decode(status));
+                    }
+                }
+            });
+        } catch (PrinterException e) {
+            // 通知がなくても状態監視の定期確認で拾える
+            Log.w(TAG, "Status callback unavailable", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            printerManager.disconnect();
+        } catch (PrinterException e) {
+            Log.w(TAG, "Disconnect error (ignored)", e);
+        }
+    }
+
+    @Override
+    public synchronized void probe() throws PrintException {
+        if (!printerManager.isConnect()) {
+            throw new PrintException(PrintException.Reason.NOT_CONNECTED, "Printer is not connected");
+        }
+        try {
+            // ステータス取得で実際にリンクが生きているかを確かめる
+            printerManager.getStatus();
+        } catch (PrinterException e) {
+            throw new PrintException(PrintException.Reason.STATUS, "Status request failed: " + e.getMessage(), e);
+        }
+    }
+
+    // SDKのステータスには受信バッファの残量がないので、bufferNearFullは常にfalse
+    // （流量はChunkedTransmitterの実測スループットで合わせる）
+    @Override
+    public synchronized PrinterStatus readStatus() throws PrintException {
+        if (!printerManager.isConnect()) {
+            throw new PrintException(PrintException.Reason.NOT_CONNECTED, "Printer is not connected");
+        }
+        int code;
+        try {
+            code = printerManager.getStatus();
+        } catch (PrinterException e) {
+            throw new PrintException(PrintException.Reason.STATUS, "Status request failed: " + e.getMessage(), e);
+        }
+        refreshBattery();
+        return decode(code);
+    }
+
+    private PrinterStatus decode(int code) {
+        if (code == PrinterManager.PRINTER_STATUS_UNKNOWN) {
+            // 取得できなかったときは送信を止めない
+            return new PrinterStatus(false, false, false, false, false, batteryLevel, code);
+        }
+        boolean offline = (code & PrinterManager.ESCPOS_PRINTER_STATUS_OFFLINE) != 0;
+        boolean coverOpen = (code & STATUS_COVER_OPEN) != 0;
+        boolean paperOut = (code & STATUS_PAPER_OUT) != 0;
+        boolean error = (code & STATUS_ERROR_MASK & ~(STATUS_COVER_OPEN | STATUS_PAPER_OUT)) != 0;
+        return new PrinterStatus(offline, paperOut, coverOpen, error, false, batteryLevel, code);
+    }
+
+    private void refreshBattery() {
+        long now = System.currentTimeMillis();
+        if (now - batteryReadAt < BATTERY_REFRESH_MS) {
+            return;
+        }
+        batteryReadAt = now;
+        try {
+            int[] level = new int[1];
+            printerManager.getPrinterResponse(PrinterManager.PRINTER_RESPONSE_BATTERY_STATUS, level);
+            batteryLevel = level[0];
+        } catch (PrinterException e) {
+            Log.w(TAG, "Battery status unavailable", e);
+        }
+    }
+
+    @Override
+    public synchronized void send(byte[] data) throws PrintException {
+        try {
+            // Shift-JISへのエンコードは済んでいるので、SDKの生データ送信を使う
+            printerManager.sendBinary(data);
+        } catch (PrinterException e) {
+            throw new PrintException(PrintException.Reason.SEND, "Failed to print: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void cutPaper() throws PrintException {
+        try {
+            printerManager.cutPaper(CuttingMethod.CUT_PARTIAL);
+        } catch (PrinterException e) {
+            throw new PrintException(PrintException.Reason.CUT, "Failed to cut paper: " + e.getMessage(), e);
+        }
+    }
+}
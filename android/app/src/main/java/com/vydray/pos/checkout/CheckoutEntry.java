@@ -0,0 +1,40 @@
+package com.vydray.pos.checkout;
+
+// ジャーナルに記録した会計1件（サーバーへ送るリクエストそのもの）
+public final class CheckoutEntry {
+    private final long id;
+    private final String idempotencyKey;
+    private final String url;
+    private final String body;
+    private final long createdAt;
+
+    public CheckoutEntry(long id, String idempotencyKey, String url, String body, long createdAt) {
+        this.id = id;
+        this.idempotencyKey = idempotencyKey;
+        this.url = url;
+        this.body = body;
+        this.createdAt = createdAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    // サーバー側で二重登録を防ぐキー（再送しても同じ値）
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    // JSONのリクエストボディ
+    public String getBody() {
+        return body;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+}
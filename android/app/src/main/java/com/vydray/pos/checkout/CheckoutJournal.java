@@ -0,0 +1,250 @@
+package com.vydray.pos.checkout;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// 会計の先行書き込みログ（追記のみ。送信完了も追記で記録し、未送信分は再起動後に復元する）
+//
+// 1レコード = 長さ(int) + CRC32(int) + 本体。電源断で末尾が壊れていたらそこで切り詰める
+public class CheckoutJournal {
+    private static final byte ENTRY = 1;
+    private static final byte DONE = 2;
+    private static final byte REJECTED = 3;
+    private static final int MAX_RECORD = 16 * 1024 * 1024;
+
+    private final File file;
+    // 送信待ち（記録順）
+    private final LinkedHashMap<Long, CheckoutEntry> pending = new LinkedHashMap<>();
+    // サーバーに拒否されたもの（確認して破棄するまで残す）
+    private final LinkedHashMap<Long, CheckoutEntry> rejected = new LinkedHashMap<>();
+    private FileOutputStream out;
+    private long lastId;
+
+    public CheckoutJournal(File file) {
+        this.file = file;
+    }
+
+    // 既存のログを読み込み、未送信分だけを残した形に書き直してから追記を始める
+    public synchronized void open() throws IOException {
+        if (out != null) {
+            return;
+        }
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory: " + directory);
+        }
+        if (file.isFile()) {
+            replay();
+        }
+        compact();
+    }
+
+    public synchronized void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // 書き込みは毎回同期済み
+            }
+            out = null;
+        }
+    }
+
+    // ディスクに同期してから戻る（戻った時点で会計は失われない）
+    public synchronized CheckoutEntry append(String idempotencyKey, String url, String body) throws IOException {
+        CheckoutEntry entry = new CheckoutEntry(++lastId, idempotencyKey, url, body, System.currentTimeMillis());
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(body.length() + 128);
+        DataOutputStream record = new DataOutputStream(buffer);
+        record.writeByte(ENTRY);
+        writeEntry(record, entry);
+        writeRecord(buffer.toByteArray());
+        pending.put(entry.getId(), entry);
+        return entry;
+    }
+
+    // 送信完了（または破棄）
+    public synchronized void markDone(long id) throws IOException {
+        if (pending.remove(id) == null && rejected.remove(id) == null) {
+            return;
+        }
+        writeMarker(DONE, id);
+        if (pending.isEmpty() && rejected.isEmpty()) {
+            // 全て送信済みならログを空にする
+            compact();
+        }
+    }
+
+    // サーバーに拒否された（再送しても通らない）ものを送信待ちから外す
+    public synchronized void markRejected(long id) throws IOException {
+        CheckoutEntry entry = pending.remove(id);
+        if (entry == null) {
+            return;
+        }
+        rejected.put(id, entry);
+        writeMarker(REJECTED, id);
+    }
+
+    // 次に送るもの（記録順の先頭）
+    public synchronized CheckoutEntry peek() {
+        return pending.isEmpty() ? null : pending.values().iterator().next();
+    }
+
+    public synchronized List<CheckoutEntry> getPending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    public synchronized List<CheckoutEntry> getRejected() {
+        return new ArrayList<>(rejected.values());
+    }
+
+    private void writeMarker(byte kind, long id) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(16);
+        DataOutputStream record = new DataOutputStream(buffer);
+        record.writeByte(kind);
+        record.writeLong(id);
+        writeRecord(buffer.toByteArray());
+    }
+
+    private void writeRecord(byte[] record) throws IOException {
+        if (out == null) {
+            throw new IOException("Journal is not open");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        ByteArrayOutputStream framed = new ByteArrayOutputStream(record.length + 8);
+        DataOutputStream header = new DataOutputStream(framed);
+        header.writeInt(record.length);
+        header.writeInt((int) crc.getValue());
+        header.write(record);
+        out.write(framed.toByteArray());
+        out.getFD().sync();
+    }
+
+    private void replay() throws IOException {
+        long valid = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD) {
+                    break;
+                }
+                int expected = in.readInt();
+                byte[] record = new byte[length];
+                in.readFully(record);
+                CRC32 crc = new CRC32();
+                crc.update(record, 0, length);
+                if ((int) crc.getValue() != expected) {
+                    break;
+                }
+                apply(record);
+                valid += 8 + length;
+            }
+        } catch (EOFException e) {
+            // 書きかけのレコード（下で切り詰める）
+        } finally {
+            in.close();
+        }
+
+        if (valid < file.length()) {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(valid);
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    private void apply(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte kind = in.readByte();
+        if (kind == ENTRY) {
+            CheckoutEntry entry = readEntry(in);
+            pending.put(entry.getId(), entry);
+            lastId = Math.max(lastId, entry.getId());
+        } else if (kind == DONE) {
+            long id = in.readLong();
+            pending.remove(id);
+            rejected.remove(id);
+        } else if (kind == REJECTED) {
+            CheckoutEntry entry = pending.remove(in.readLong());
+            if (entry != null) {
+                rejected.put(entry.getId(), entry);
+            }
+        }
+    }
+
+    // 未送信・拒否分だけのログに書き直す（一時ファイルに書いて置き換える）
+    private void compact() throws IOException {
+        close();
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream compacted = new FileOutputStream(tmp);
+        out = compacted;
+        try {
+            for (Map.Entry<Long, CheckoutEntry> item : pending.entrySet()) {
+                writeEntryRecord(item.getValue());
+            }
+            for (Map.Entry<Long, CheckoutEntry> item : rejected.entrySet()) {
+                writeEntryRecord(item.getValue());
+                writeMarker(REJECTED, item.getKey());
+            }
+        } finally {
+            compacted.close();
+            out = null;
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot compact journal: " + file);
+        }
+        out = new FileOutputStream(file, true);
+    }
+
+    private void writeEntryRecord(CheckoutEntry entry) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(entry.getBody().length() + 128);
+        DataOutputStream record = new DataOutputStream(buffer);
+        record.writeByte(ENTRY);
+        writeEntry(record, entry);
+        writeRecord(buffer.toByteArray());
+    }
+
+    private static void writeEntry(DataOutputStream out, CheckoutEntry entry) throws IOException {
+        out.writeLong(entry.getId());
+        out.writeUTF(entry.getIdempotencyKey());
+        out.writeUTF(entry.getUrl());
+        out.writeLong(entry.getCreatedAt());
+        byte[] body = entry.getBody().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(body.length);
+        out.write(body);
+    }
+
+    private static CheckoutEntry readEntry(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        String key = in.readUTF();
+        String url = in.readUTF();
+        long createdAt = in.readLong();
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new CheckoutEntry(id, key, url, new String(body, StandardCharsets.UTF_8), createdAt);
+    }
+}
@@ -0,0 +1,250 @@
+package com.vydray.pos.checkout;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+// ジャーナルの未送信会計を記録順にサーバーへ送るワーカー
+//
+// 通信エラー・5xxは間隔を延ばしながら再送し、4xxは拒否として取り除く
+// 同じ会計は常に同じIdempotency-Keyで送るので、再送しても二重登録にならない
+public class SyncDrainer {
+    public interface Listener {
+        void onSynced(CheckoutEntry entry, int status);
+
+        // 再送しても通らない（入力不正など）
+        void onRejected(CheckoutEntry entry, int status, String response);
+
+        void onRetry(CheckoutEntry entry, String error, long delayMs);
+    }
+
+    // 送信先への接続を開く（テストでは差し替える）
+    interface ConnectionFactory {
+        HttpURLConnection open(String url) throws IOException;
+    }
+
+    private static final int MAX_RESPONSE = 8 * 1024;
+
+    private final CheckoutJournal journal;
+    private final Listener listener;
+    private ConnectionFactory connections = new ConnectionFactory() {
+        @Override
+        public HttpURLConnection open(String url) throws IOException {
+            return (HttpURLConnection) new URL(url).openConnection();
+        }
+    };
+
+    private final Object lock = new Object();
+    private boolean running;
+    private boolean kicked;
+    private Thread worker;
+
+    private long initialBackoffMs = 2000;
+    private long maxBackoffMs = 60000;
+    private int timeoutMs = 15000;
+
+    public SyncDrainer(CheckoutJournal journal, Listener listener) {
+        this.journal = journal;
+        this.listener = listener;
+    }
+
+    // 再送間隔（失敗ごとに倍、上限あり）と通信タイムアウト
+    public void setTiming(long initialBackoffMs, long maxBackoffMs, int timeoutMs) {
+        synchronized (lock) {
+            this.initialBackoffMs = Math.max(0, initialBackoffMs);
+            this.maxBackoffMs = Math.max(this.initialBackoffMs, maxBackoffMs);
+            this.timeoutMs = Math.max(1, timeoutMs);
+        }
+    }
+
+    void setConnectionFactory(ConnectionFactory connections) {
+        synchronized (lock) {
+            this.connections = connections;
+        }
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, "CheckoutSync");
+            worker.start();
+        }
+    }
+
+    public void stop() {
+        Thread thread;
+        synchronized (lock) {
+            running = false;
+            thread = worker;
+            worker = null;
+            lock.notifyAll();
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // 新しい会計を積んだ時・通信が回復した時に呼ぶ（再送待ちも打ち切ってすぐ送る）
+    public void kick() {
+        synchronized (lock) {
+            kicked = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void drain() {
+        long backoff = 0;
+        while (true) {
+            CheckoutEntry entry;
+            int timeout;
+            ConnectionFactory factory;
+            synchronized (lock) {
+                while (running && !kicked && journal.peek() == null) {
+                    waitQuietly(0);
+                }
+                if (!running) {
+                    return;
+                }
+                kicked = false;
+                entry = journal.peek();
+                timeout = timeoutMs;
+                factory = connections;
+            }
+            if (entry == null) {
+                continue;
+            }
+
+            String error;
+            try {
+                Response response = post(factory, entry, timeout);
+                if (isSuccess(response.status)) {
+                    journal.markDone(entry.getId());
+                    backoff = 0;
+                    listener.onSynced(entry, response.status);
+                    continue;
+                }
+                if (!isRetryable(response.status)) {
+                    journal.markRejected(entry.getId());
+                    backoff = 0;
+                    listener.onRejected(entry, response.status, response.body);
+                    continue;
+                }
+                error = "HTTP " + response.status;
+            } catch (IOException e) {
+                error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            } catch (RuntimeException e) {
+                error = "Unexpected sync error: " + e.getMessage();
+            }
+
+            synchronized (lock) {
+                backoff = backoff == 0 ? initialBackoffMs : Math.min(backoff * 2, maxBackoffMs);
+            }
+            listener.onRetry(entry, error, backoff);
+
+            synchronized (lock) {
+                long until = System.currentTimeMillis() + backoff;
+                long remaining = backoff;
+                while (running && !kicked && remaining > 0) {
+                    waitQuietly(remaining);
+                    remaining = until - System.currentTimeMillis();
+                }
+                if (kicked) {
+                    // 通信回復などで起こされたら間隔を戻す
+                    backoff = 0;
+                }
+            }
+        }
+    }
+
+    // 2xxと409（同じキーで登録済み）は送信完了とみなす
+    static boolean isSuccess(int status) {
+        return (status >= 200 && status < 300) || status == 409;
+    }
+
+    // タイムアウト・混雑・サーバーエラーは再送する
+    static boolean isRetryable(int status) {
+        return status == 408 || status == 425 || status == 429 || status >= 500 || status < 200;
+    }
+
+    private static Response post(ConnectionFactory factory, CheckoutEntry entry, int timeoutMs) throws IOException {
+        byte[] body = entry.getBody().getBytes(StandardCharsets.UTF_8);
+        HttpURLConnection connection = factory.open(entry.getUrl());
+        try {
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+            connection.setDoOutput(true);
+            connection.setUseCaches(false);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            connection.setRequestProperty("Idempotency-Key", entry.getIdempotencyKey());
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+
+            int status = connection.getResponseCode();
+            InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            return new Response(status, readLimited(in));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String readLimited(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[1024];
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                // 長いエラー本文は先頭だけ残す（接続は読み切って返す）
+                int keep = Math.min(read, MAX_RESPONSE - buffer.size());
+                if (keep > 0) {
+                    buffer.write(chunk, 0, keep);
+                }
+            }
+            return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    private void waitQuietly(long timeoutMs) {
+        try {
+            lock.wait(timeoutMs);
+        } catch (InterruptedException e) {
+            running = false;
+        }
+    }
+
+    private static final class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
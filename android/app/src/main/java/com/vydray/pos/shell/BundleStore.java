@@ -0,0 +1,172 @@
+package com.vydray.pos.shell;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+// 更新されたWebバンドル（next exportのout/をzipにしたもの）をバージョンごとに展開して保持する
+//
+// 展開は作業ディレクトリで行い、検証が済んでからリネームで公開する（途中のバンドルは見えない）
+public class BundleStore {
+    private static final Pattern VERSION = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+    private static final String ENTRY_PAGE = "index.html";
+
+    private final File bundlesDir;
+    private final File stagingDir;
+
+    public BundleStore(File root) {
+        this.bundlesDir = new File(root, "bundles");
+        this.stagingDir = new File(root, "staging");
+    }
+
+    public static boolean isValidVersion(String version) {
+        return version != null && VERSION.matcher(version).matches() && !version.startsWith(".");
+    }
+
+    // zipを展開して公開する（sha256が一致しない・index.htmlが無い場合は何も残さない）
+    public File install(String version, InputStream zip, String expectedSha256) throws IOException {
+        if (!isValidVersion(version)) {
+            throw new IOException("Invalid bundle version: " + version);
+        }
+        File target = new File(bundlesDir, version);
+        if (target.isDirectory()) {
+            return target;
+        }
+        if (!bundlesDir.isDirectory() && !bundlesDir.mkdirs()) {
+            throw new IOException("Cannot create bundle directory: " + bundlesDir);
+        }
+        deleteRecursively(stagingDir);
+        if (!stagingDir.mkdirs()) {
+            throw new IOException("Cannot create staging directory: " + stagingDir);
+        }
+
+        try {
+            MessageDigest digest = sha256();
+            DigestInputStream hashed = new DigestInputStream(zip, digest);
+            unzip(hashed, stagingDir);
+            // 展開後に残りを読み切ってからハッシュを確定する
+            byte[] rest = new byte[8192];
+            while (hashed.read(rest) != -1) {
+                // 末尾のセントラルディレクトリ
+            }
+            if (expectedSha256 != null && !expectedSha256.isEmpty()) {
+                String actual = toHex(digest.digest());
+                if (!actual.equalsIgnoreCase(expectedSha256)) {
+                    throw new IOException("Bundle checksum mismatch: expected " + expectedSha256 + ", got " + actual);
+                }
+            }
+            if (!new File(stagingDir, ENTRY_PAGE).isFile()) {
+                throw new IOException("Bundle has no " + ENTRY_PAGE);
+            }
+            if (!stagingDir.renameTo(target)) {
+                throw new IOException("Cannot publish bundle: " + target);
+            }
+            return target;
+        } finally {
+            deleteRecursively(stagingDir);
+        }
+    }
+
+    // 展開済みのバンドル（無ければnull）
+    public File getBundle(String version) {
+        if (!isValidVersion(version)) {
+            return null;
+        }
+        File dir = new File(bundlesDir, version);
+        return new File(dir, ENTRY_PAGE).isFile() ? dir : null;
+    }
+
+    public List<String> getVersions() {
+        List<String> versions = new ArrayList<>();
+        File[] dirs = bundlesDir.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                if (dir.isDirectory() && isValidVersion(dir.getName())) {
+                    versions.add(dir.getName());
+                }
+            }
+        }
+        Collections.sort(versions);
+        return versions;
+    }
+
+    // 使用中・切り戻し用以外のバンドルを削除する
+    public void prune(Collection<String> keep) {
+        for (String version : getVersions()) {
+            if (!keep.contains(version)) {
+                deleteRecursively(new File(bundlesDir, version));
+            }
+        }
+    }
+
+    private static void unzip(InputStream in, File dest) throws IOException {
+        String root = dest.getCanonicalPath() + File.separator;
+        ZipInputStream zip = new ZipInputStream(in);
+        byte[] buffer = new byte[8192];
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            File file = new File(dest, entry.getName());
+            // ../ を含むエントリで展開先の外に書かせない
+            if (!file.getCanonicalPath().startsWith(root)) {
+                throw new IOException("Bundle entry escapes target: " + entry.getName());
+            }
+            if (entry.isDirectory()) {
+                if (!file.isDirectory() && !file.mkdirs()) {
+                    throw new IOException("Cannot create " + file);
+                }
+                continue;
+            }
+            File parent = file.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create " + parent);
+            }
+            OutputStream out = new FileOutputStream(file);
+            try {
+                int read;
+                while ((read = zip.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package com.vydray.pos.shell;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+// WebViewの強制再レイアウトを、画面サイズ・インセットが実際に変わった時だけに絞る
+//
+// Web側の最初の描画（ready）までは何もしない。ready時に1回だけ整え、
+// 以降はonResume・フォーカス取得などで前回と同じ寸法ならスキップする
+public class LayoutPassTracker {
+    public enum Reason {
+        READY,
+        VIEWPORT,
+        INSETS
+    }
+
+    // 幅・高さ・インセット（上下左右）
+    public static final class Viewport {
+        final int width;
+        final int height;
+        final int insetLeft;
+        final int insetTop;
+        final int insetRight;
+        final int insetBottom;
+
+        public Viewport(int width, int height, int insetLeft, int insetTop, int insetRight, int insetBottom) {
+            this.width = width;
+            this.height = height;
+            this.insetLeft = insetLeft;
+            this.insetTop = insetTop;
+            this.insetRight = insetRight;
+            this.insetBottom = insetBottom;
+        }
+
+        boolean sameSize(Viewport other) {
+            return width == other.width && height == other.height;
+        }
+
+        boolean sameInsets(Viewport other) {
+            return insetLeft == other.insetLeft && insetTop == other.insetTop
+                && insetRight == other.insetRight && insetBottom == other.insetBottom;
+        }
+    }
+
+    public static final class Stats {
+        public final int forced;
+        public final int skipped;
+        public final long totalCostNanos;
+        public final long maxCostNanos;
+        public final Map<Reason, Integer> byReason;
+
+        Stats(int forced, int skipped, long totalCostNanos, long maxCostNanos, Map<Reason, Integer> byReason) {
+            this.forced = forced;
+            this.skipped = skipped;
+            this.totalCostNanos = totalCostNanos;
+            this.maxCostNanos = maxCostNanos;
+            this.byReason = byReason;
+        }
+    }
+
+    private boolean ready;
+    private Viewport baseline;
+    private int forced;
+    private int skipped;
+    private long totalCostNanos;
+    private long maxCostNanos;
+    private final EnumMap<Reason, Integer> byReason = new EnumMap<>(Reason.class);
+
+    // Web側の最初の描画が終わった（戻り値がnull以外なら再レイアウトする）
+    public synchronized Reason onReady(Viewport current) {
+        if (ready) {
+            return null;
+        }
+        ready = true;
+        baseline = current;
+        return Reason.READY;
+    }
+
+    // onResume・フォーカス取得などで現在の寸法を渡す
+    public synchronized Reason onViewport(Viewport current) {
+        if (!ready) {
+            return null;
+        }
+        Reason reason = null;
+        if (baseline == null || !baseline.sameSize(current)) {
+            reason = Reason.VIEWPORT;
+        } else if (!baseline.sameInsets(current)) {
+            reason = Reason.INSETS;
+        }
+        if (reason == null) {
+            skipped++;
+            return null;
+        }
+        baseline = current;
+        return reason;
+    }
+
+    // 強制レイアウト1回分の所要時間（要求から次の描画直前まで）
+    public synchronized void recordPass(Reason reason, long costNanos) {
+        forced++;
+        totalCostNanos += costNanos;
+        maxCostNanos = Math.max(maxCostNanos, costNanos);
+        Integer count = byReason.get(reason);
+        byReason.put(reason, count == null ? 1 : count + 1);
+    }
+
+    public synchronized boolean isReady() {
+        return ready;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(forced, skipped, totalCostNanos, maxCostNanos, new EnumMap<>(byReason));
+    }
+}
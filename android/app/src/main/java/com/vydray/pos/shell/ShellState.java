@@ -0,0 +1,165 @@
+package com.vydray.pos.shell;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+// どのWebバンドルで起動するかの記録（更新の適用と、起動しなかった更新の切り戻し）
+//
+// 新しいバンドルは画面表示の報告（confirm）があるまで仮採用とし、
+// 仮採用のまま起動を繰り返したら前のバンドルへ戻す
+public class ShellState {
+    // 仮採用のバンドルで許す起動回数（途中でアプリを閉じられた場合を考えて1回より多くする）
+    static final int MAX_UNCONFIRMED_LAUNCHES = 2;
+
+    private static final String ACTIVE = "active";
+    private static final String PREVIOUS = "previous";
+    private static final String STAGED = "staged";
+    private static final String REJECTED = "rejected";
+    private static final String UNCONFIRMED_LAUNCHES = "unconfirmedLaunches";
+
+    private final File file;
+    private final Properties values = new Properties();
+    private boolean rolledBack;
+
+    public ShellState(File file) {
+        this.file = file;
+    }
+
+    public synchronized void load() throws IOException {
+        values.clear();
+        if (!file.isFile()) {
+            return;
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+            values.load(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    // 起動時に呼ぶ。待機中の更新を採用し、確認されないままの更新は切り戻す（戻り値は使うバージョン、nullは同梱版）
+    public synchronized String boot() throws IOException {
+        rolledBack = false;
+        int launches = getInt(UNCONFIRMED_LAUNCHES);
+        if (launches >= MAX_UNCONFIRMED_LAUNCHES) {
+            set(REJECTED, get(ACTIVE));
+            set(ACTIVE, get(PREVIOUS));
+            set(PREVIOUS, null);
+            values.remove(UNCONFIRMED_LAUNCHES);
+            rolledBack = true;
+        } else if (launches > 0) {
+            values.setProperty(UNCONFIRMED_LAUNCHES, Integer.toString(launches + 1));
+        }
+
+        String staged = get(STAGED);
+        if (staged != null) {
+            promote(staged);
+        }
+        save();
+        return get(ACTIVE);
+    }
+
+    // 次回起動で使うバンドルを登録する
+    public synchronized void stage(String version) throws IOException {
+        set(STAGED, version);
+        save();
+    }
+
+    // 今すぐ切り替える（画面の再読み込みは呼び出し側で行う）
+    public synchronized void activate(String version) throws IOException {
+        if (version.equals(get(STAGED))) {
+            set(STAGED, null);
+        }
+        promote(version);
+        save();
+    }
+
+    // 新しいバンドルで画面が表示できた
+    public synchronized void confirm() throws IOException {
+        if (values.remove(UNCONFIRMED_LAUNCHES) != null) {
+            save();
+        }
+    }
+
+    public synchronized String getActive() {
+        return get(ACTIVE);
+    }
+
+    public synchronized String getPrevious() {
+        return get(PREVIOUS);
+    }
+
+    public synchronized String getStaged() {
+        return get(STAGED);
+    }
+
+    // 切り戻したバージョン（同じ更新を再び取り込まない）
+    public synchronized String getRejected() {
+        return get(REJECTED);
+    }
+
+    public synchronized boolean isConfirmed() {
+        return getInt(UNCONFIRMED_LAUNCHES) == 0;
+    }
+
+    // 直前のboot()で切り戻したか
+    public synchronized boolean wasRolledBack() {
+        return rolledBack;
+    }
+
+    private void promote(String version) {
+        String active = get(ACTIVE);
+        if (version.equals(active)) {
+            set(STAGED, null);
+            return;
+        }
+        set(PREVIOUS, active);
+        set(ACTIVE, version);
+        set(STAGED, null);
+        values.setProperty(UNCONFIRMED_LAUNCHES, "1");
+    }
+
+    private String get(String key) {
+        return values.getProperty(key);
+    }
+
+    private void set(String key, String value) {
+        if (value == null) {
+            values.remove(key);
+        } else {
+            values.setProperty(key, value);
+        }
+    }
+
+    private int getInt(String key) {
+        try {
+            return Integer.parseInt(values.getProperty(key, "0"));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void save() throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create directory: " + directory);
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            values.store(out, null);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot write " + file);
+        }
+    }
+}
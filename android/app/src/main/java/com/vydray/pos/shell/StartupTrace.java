@@ -0,0 +1,45 @@
+package com.vydray.pos.shell;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 起動の各段階の時刻（プロセス開始からのミリ秒）。時刻はSystemClock.uptimeMillis()で渡す
+public final class StartupTrace {
+    private static final Object LOCK = new Object();
+    private static long processStart = -1;
+    private static final LinkedHashMap<String, Long> MARKS = new LinkedHashMap<>();
+
+    private StartupTrace() {
+    }
+
+    public static void start(long uptimeMillis) {
+        synchronized (LOCK) {
+            if (processStart < 0) {
+                processStart = uptimeMillis;
+            }
+        }
+    }
+
+    // 最初の記録だけを残す（Activityの再生成で上書きしない）
+    public static void mark(String name, long uptimeMillis) {
+        synchronized (LOCK) {
+            if (processStart >= 0 && !MARKS.containsKey(name)) {
+                MARKS.put(name, uptimeMillis - processStart);
+            }
+        }
+    }
+
+    // 未記録なら-1
+    public static long elapsed(String name) {
+        synchronized (LOCK) {
+            Long value = MARKS.get(name);
+            return value != null ? value : -1;
+        }
+    }
+
+    public static Map<String, Long> snapshot() {
+        synchronized (LOCK) {
+            return new LinkedHashMap<>(MARKS);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.vydray.pos.checkout;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CheckoutJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoresPendingEntriesInOrder() throws Exception {
+        File file = new File(folder.getRoot(), "checkouts.log");
+        CheckoutJournal journal = new CheckoutJournal(file);
+        journal.open();
+        CheckoutEntry first = journal.append("1-100", "http://localhost/api", "{\"a\":\"会計\"}");
+        journal.append("1-200", "http://localhost/api", "{\"b\":2}");
+        journal.append("2-300", "http://localhost/api", "{\"c\":3}");
+        journal.markDone(first.getId());
+        journal.close();
+
+        CheckoutJournal reopened = new CheckoutJournal(file);
+        reopened.open();
+        List<CheckoutEntry> pending = reopened.getPending();
+        assertEquals(2, pending.size());
+        assertEquals("1-200", pending.get(0).getIdempotencyKey());
+        assertEquals("2-300", pending.get(1).getIdempotencyKey());
+
+        // IDは再起動後も重複しない
+        CheckoutEntry next = reopened.append("3-400", "http://localhost/api", "{}");
+        assertTrue(next.getId() > pending.get(1).getId());
+        reopened.close();
+    }
+
+    @Test
+    public void truncatesTornTail() throws Exception {
+        File file = new File(folder.getRoot(), "checkouts.log");
+        CheckoutJournal journal = new CheckoutJournal(file);
+        journal.open();
+        journal.append("1-100", "http://localhost/api", "{\"a\":1}");
+        journal.append("1-200", "http://localhost/api", "{\"b\":2}");
+        journal.close();
+
+        // 書き込み途中で電源が落ちた状態を再現
+        long length = file.length();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(length - 3);
+        raf.close();
+
+        CheckoutJournal reopened = new CheckoutJournal(file);
+        reopened.open();
+        assertEquals(1, reopened.getPending().size());
+        assertEquals("1-100", reopened.peek().getIdempotencyKey());
+
+        // 壊れた末尾の後ろにも正しく追記できる
+        reopened.append("1-300", "http://localhost/api", "{}");
+        reopened.close();
+        CheckoutJournal again = new CheckoutJournal(file);
+        again.open();
+        assertEquals(2, again.getPending().size());
+        again.close();
+    }
+
+    @Test
+    public void keepsRejectedUntilDiscarded() throws Exception {
+        File file = new File(folder.getRoot(), "checkouts.log");
+        CheckoutJournal journal = new CheckoutJournal(file);
+        journal.open();
+        CheckoutEntry entry = journal.append("1-100", "http://localhost/api", "{}");
+        journal.markRejected(entry.getId());
+        assertNull(journal.peek());
+        journal.close();
+
+        CheckoutJournal reopened = new CheckoutJournal(file);
+        reopened.open();
+        assertEquals(1, reopened.getRejected().size());
+        reopened.markDone(entry.getId());
+        assertEquals(0, reopened.getRejected().size());
+        reopened.close();
+        assertEquals(0, file.length());
+    }
+}
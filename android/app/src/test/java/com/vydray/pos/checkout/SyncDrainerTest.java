@@ -0,0 +1,191 @@
+package com.vydray.pos.checkout;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SyncDrainerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> keys = Collections.synchronizedList(new ArrayList<String>());
+    // 先頭から順に返すステータス（尽きたら200）
+    private final List<Integer> statuses = Collections.synchronizedList(new ArrayList<Integer>());
+    private final AtomicInteger requests = new AtomicInteger();
+    private CheckoutJournal journal;
+    private SyncDrainer drainer;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        journal = new CheckoutJournal(new File(folder.getRoot(), "checkouts.log"));
+        journal.open();
+        listener = new RecordingListener();
+        drainer = new SyncDrainer(journal, listener);
+        drainer.setTiming(10, 50, 2000);
+        drainer.setConnectionFactory(new SyncDrainer.ConnectionFactory() {
+            @Override
+            public HttpURLConnection open(String url) throws IOException {
+                return new FakeConnection(new URL(url));
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        drainer.stop();
+        journal.close();
+    }
+
+    @Test
+    public void sendsEntriesInOrderWithIdempotencyKey() throws Exception {
+        listener.synced = new CountDownLatch(2);
+        journal.append("1-100", url(), "{\"tableId\":\"1\"}");
+        journal.append("2-200", url(), "{\"tableId\":\"2\"}");
+        drainer.start();
+
+        assertTrue(listener.synced.await(5, TimeUnit.SECONDS));
+        assertEquals(2, keys.size());
+        assertEquals("1-100", keys.get(0));
+        assertEquals("2-200", keys.get(1));
+        assertNull(journal.peek());
+    }
+
+    @Test
+    public void retriesServerErrorsWithSameKey() throws Exception {
+        statuses.add(503);
+        statuses.add(500);
+        listener.synced = new CountDownLatch(1);
+        drainer.start();
+        journal.append("1-100", url(), "{}");
+        drainer.kick();
+
+        assertTrue(listener.synced.await(5, TimeUnit.SECONDS));
+        assertEquals(3, requests.get());
+        assertEquals(2, listener.retries.get());
+        for (String key : keys) {
+            assertEquals("1-100", key);
+        }
+    }
+
+    @Test
+    public void rejectsClientErrorsAndContinues() throws Exception {
+        statuses.add(400);
+        listener.synced = new CountDownLatch(1);
+        journal.append("1-100", url(), "{}");
+        journal.append("2-200", url(), "{}");
+        drainer.start();
+
+        assertTrue(listener.synced.await(5, TimeUnit.SECONDS));
+        assertEquals(1, listener.rejected.get());
+        assertEquals(1, journal.getRejected().size());
+        assertEquals("1-100", journal.getRejected().get(0).getIdempotencyKey());
+    }
+
+    @Test
+    public void treatsConflictAsAlreadySynced() throws Exception {
+        statuses.add(409);
+        listener.synced = new CountDownLatch(1);
+        journal.append("1-100", url(), "{}");
+        drainer.start();
+
+        assertTrue(listener.synced.await(5, TimeUnit.SECONDS));
+        assertNull(journal.peek());
+        assertEquals(0, journal.getRejected().size());
+    }
+
+    private String url() {
+        return "http://127.0.0.1/api/tables/checkout";
+    }
+
+    // 送信内容を記録し、statusesの順に応答する接続
+    private class FakeConnection extends HttpURLConnection {
+        private final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        private int status = -1;
+
+        FakeConnection(URL url) {
+            super(url);
+        }
+
+        @Override
+        public void connect() {
+            connected = true;
+        }
+
+        @Override
+        public void disconnect() {
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return sent;
+        }
+
+        @Override
+        public int getResponseCode() {
+            if (status < 0) {
+                requests.incrementAndGet();
+                keys.add(getRequestProperty("Idempotency-Key"));
+                status = statuses.isEmpty() ? 200 : statuses.remove(0);
+            }
+            return status;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream("{\"success\":true}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            return getResponseCode() >= 400 ? getInputStream() : null;
+        }
+    }
+
+    private static class RecordingListener implements SyncDrainer.Listener {
+        volatile CountDownLatch synced = new CountDownLatch(1);
+        final AtomicInteger rejected = new AtomicInteger();
+        final AtomicInteger retries = new AtomicInteger();
+
+        @Override
+        public void onSynced(CheckoutEntry entry, int status) {
+            synced.countDown();
+        }
+
+        @Override
+        public void onRejected(CheckoutEntry entry, int status, String response) {
+            rejected.incrementAndGet();
+        }
+
+        @Override
+        public void onRetry(CheckoutEntry entry, String error, long delayMs) {
+            retries.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.vydray.pos.shell;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BundleStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void installsVerifiedBundle() throws Exception {
+        BundleStore store = new BundleStore(folder.getRoot());
+        byte[] zip = zip("index.html", "<html></html>", "_next/static/app.js", "console.log(1)");
+
+        File dir = store.install("v2", new ByteArrayInputStream(zip), sha256(zip));
+
+        assertEquals(dir, store.getBundle("v2"));
+        assertEquals("console.log(1)", read(new File(dir, "_next/static/app.js")));
+        assertEquals(Collections.singletonList("v2"), store.getVersions());
+    }
+
+    @Test
+    public void rejectsChecksumMismatch() throws Exception {
+        BundleStore store = new BundleStore(folder.getRoot());
+        byte[] zip = zip("index.html", "<html></html>");
+
+        try {
+            store.install("v2", new ByteArrayInputStream(zip), sha256(zip("index.html", "other")));
+            fail("Expected checksum mismatch");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("checksum"));
+        }
+        assertNull(store.getBundle("v2"));
+        assertTrue(store.getVersions().isEmpty());
+    }
+
+    @Test
+    public void rejectsEntriesOutsideBundle() throws Exception {
+        BundleStore store = new BundleStore(folder.getRoot());
+        byte[] zip = zip("index.html", "<html></html>", "../../evil.txt", "x");
+
+        try {
+            store.install("v2", new ByteArrayInputStream(zip), sha256(zip));
+            fail("Expected zip slip to be rejected");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("escapes"));
+        }
+        assertFalse(new File(folder.getRoot().getParentFile(), "evil.txt").exists());
+        assertNull(store.getBundle("v2"));
+    }
+
+    @Test
+    public void requiresEntryPage() throws Exception {
+        BundleStore store = new BundleStore(folder.getRoot());
+        byte[] zip = zip("app.js", "x");
+
+        try {
+            store.install("v2", new ByteArrayInputStream(zip), sha256(zip));
+            fail("Expected missing index.html to be rejected");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("index.html"));
+        }
+    }
+
+    @Test
+    public void prunesUnusedVersions() throws Exception {
+        BundleStore store = new BundleStore(folder.getRoot());
+        for (String version : Arrays.asList("v1", "v2", "v3")) {
+            byte[] zip = zip("index.html", version);
+            store.install(version, new ByteArrayInputStream(zip), sha256(zip));
+        }
+
+        store.prune(Arrays.asList("v2", "v3", null));
+
+        assertEquals(Arrays.asList("v2", "v3"), store.getVersions());
+    }
+
+    @Test
+    public void validatesVersionNames() {
+        assertTrue(BundleStore.isValidVersion("2026.10.17-abc"));
+        assertFalse(BundleStore.isValidVersion(".."));
+        assertFalse(BundleStore.isValidVersion("a/b"));
+        assertFalse(BundleStore.isValidVersion(null));
+    }
+
+    private static byte[] zip(String... nameAndContent) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ZipOutputStream zip = new ZipOutputStream(buffer);
+        for (int i = 0; i < nameAndContent.length; i += 2) {
+            zip.putNextEntry(new ZipEntry(nameAndContent[i]));
+            zip.write(nameAndContent[i + 1].getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        zip.close();
+        return buffer.toByteArray();
+    }
+
+    private static String sha256(byte[] data) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,60 @@
+package com.vydray.pos.shell;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LayoutPassTrackerTest {
+
+    private static final LayoutPassTracker.Viewport TABLET =
+        new LayoutPassTracker.Viewport(1280, 800, 0, 24, 0, 48);
+
+    @Test
+    public void ignoresViewportChecksUntilReady() {
+        LayoutPassTracker tracker = new LayoutPassTracker();
+
+        assertNull(tracker.onViewport(TABLET));
+        assertEquals(LayoutPassTracker.Reason.READY, tracker.onReady(TABLET));
+        // 2回目のreadyでは何もしない
+        assertNull(tracker.onReady(TABLET));
+    }
+
+    @Test
+    public void skipsUnchangedViewport() {
+        LayoutPassTracker tracker = new LayoutPassTracker();
+        tracker.onReady(TABLET);
+
+        for (int i = 0; i < 5; i++) {
+            assertNull(tracker.onViewport(new LayoutPassTracker.Viewport(1280, 800, 0, 24, 0, 48)));
+        }
+        assertEquals(5, tracker.getStats().skipped);
+        assertEquals(0, tracker.getStats().forced);
+    }
+
+    @Test
+    public void relayoutsOnRealChanges() {
+        LayoutPassTracker tracker = new LayoutPassTracker();
+        tracker.onReady(TABLET);
+
+        LayoutPassTracker.Viewport rotated = new LayoutPassTracker.Viewport(800, 1280, 0, 24, 0, 48);
+        assertEquals(LayoutPassTracker.Reason.VIEWPORT, tracker.onViewport(rotated));
+        assertNull(tracker.onViewport(rotated));
+
+        LayoutPassTracker.Viewport barsHidden = new LayoutPassTracker.Viewport(800, 1280, 0, 0, 0, 0);
+        assertEquals(LayoutPassTracker.Reason.INSETS, tracker.onViewport(barsHidden));
+    }
+
+    @Test
+    public void accumulatesPassCost() {
+        LayoutPassTracker tracker = new LayoutPassTracker();
+        tracker.recordPass(LayoutPassTracker.Reason.READY, 4_000_000);
+        tracker.recordPass(LayoutPassTracker.Reason.VIEWPORT, 10_000_000);
+        tracker.recordPass(LayoutPassTracker.Reason.VIEWPORT, 6_000_000);
+
+        LayoutPassTracker.Stats stats = tracker.getStats();
+        assertEquals(3, stats.forced);
+        assertEquals(20_000_000, stats.totalCostNanos);
+        assertEquals(10_000_000, stats.maxCostNanos);
+        assertEquals(Integer.valueOf(2), stats.byReason.get(LayoutPassTracker.Reason.VIEWPORT));
+    }
+}
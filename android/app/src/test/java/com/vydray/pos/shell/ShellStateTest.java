@@ -0,0 +1,76 @@
+package com.vydray.pos.shell;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ShellStateTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void promotesStagedBundleOnNextBoot() throws Exception {
+        ShellState state = newState();
+        assertNull(state.boot());
+
+        state.stage("v2");
+        assertNull(state.getActive());
+
+        ShellState next = newState();
+        assertEquals("v2", next.boot());
+        assertNull(next.getStaged());
+        assertFalse(next.isConfirmed());
+
+        next.confirm();
+        assertTrue(newState().isConfirmed());
+    }
+
+    @Test
+    public void rollsBackBundleThatNeverBecomesReady() throws Exception {
+        ShellState state = newState();
+        state.activate("v1");
+        state.confirm();
+        state.stage("v2");
+
+        assertEquals("v2", newState().boot());
+        // 表示できないまま再起動を繰り返す
+        assertEquals("v2", newState().boot());
+        ShellState rolled = newState();
+        assertEquals("v1", rolled.boot());
+        assertTrue(rolled.wasRolledBack());
+        assertEquals("v2", rolled.getRejected());
+        assertTrue(rolled.isConfirmed());
+    }
+
+    @Test
+    public void rollsBackToBundledShell() throws Exception {
+        ShellState state = newState();
+        state.activate("v1");
+        for (int i = 0; i < ShellState.MAX_UNCONFIRMED_LAUNCHES - 1; i++) {
+            newState().boot();
+        }
+        assertNull(newState().boot());
+    }
+
+    @Test
+    public void confirmedBundleStaysActive() throws Exception {
+        ShellState state = newState();
+        state.activate("v1");
+        state.confirm();
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("v1", newState().boot());
+        }
+    }
+
+    private ShellState newState() throws Exception {
+        ShellState state = new ShellState(new File(folder.getRoot(), "state.properties"));
+        state.load();
+        return state;
+    }
+}
@@ -0,0 +1,65 @@
+package com.vydray.pos.printer.bench;
+
+import com.vydray.pos.printer.EscPosWriter;
+import com.vydray.pos.printer.OrderSlipDocument;
+import com.vydray.pos.printer.OrderSlipRenderer;
+import com.vydray.pos.printer.ReceiptDocument;
+import com.vydray.pos.printer.ReceiptRenderer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 会計伝票・領収書の描画（ドキュメント → ESC/POSバイト列）
+// プラグインと同じく書き込み先は使い回し、toByteArrayのコピーまでを1回とする
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class DocumentRenderBenchmark {
+    @Param({"1", "10", "100", "500"})
+    public int itemCount;
+
+    private OrderSlipDocument orderSlip;
+    private ReceiptDocument receipt;
+    private ReceiptDocument stampedReceipt;
+    private final EscPosWriter writer = new EscPosWriter();
+
+    @Setup
+    public void setUp() {
+        orderSlip = Fixtures.orderSlip(itemCount);
+        receipt = Fixtures.receipt(itemCount, false);
+        stampedReceipt = Fixtures.receipt(itemCount, true);
+    }
+
+    @Benchmark
+    public byte[] orderSlip() {
+        OrderSlipRenderer.render(orderSlip, writer.reset());
+        return writer.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] receipt() {
+        ReceiptRenderer.render(receipt, writer.reset());
+        return writer.toByteArray();
+    }
+
+    // 5万円以上で収入印紙欄が付く領収書
+    @Benchmark
+    public byte[] receiptWithRevenueStamp() {
+        ReceiptRenderer.render(stampedReceipt, writer.reset());
+        return writer.toByteArray();
+    }
+}
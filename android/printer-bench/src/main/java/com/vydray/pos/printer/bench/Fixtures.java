@@ -0,0 +1,126 @@
+package com.vydray.pos.printer.bench;
+
+import com.vydray.pos.printer.OrderItem;
+import com.vydray.pos.printer.OrderSlipDocument;
+import com.vydray.pos.printer.ReceiptDocument;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// ベンチマーク用の帳票データ（シード固定なのでコミット間で同じ内容になる）
+final class Fixtures {
+    // 店で実際に出る長さの商品名（折り返しが起きるものを含む）
+    private static final String[] NAMES = {
+            "セット料金", "延長30分", "指名料", "場内指名", "ハウスボトル",
+            "シャンパン モエ・エ・シャンドン ブリュット アンペリアル", "ドンペリニヨン ロゼ",
+            "キャストドリンク", "ウーロン茶", "フルーツ盛り合わせ（大）", "Tax Free Special Plate",
+    };
+    private static final String[] CASTS = {"", "", "あやか", "みゆ", "さくら（体験入店）"};
+    private static final int[] PRICES = {500, 1000, 2000, 3000, 5000, 12000, 38000, 150000};
+
+    private Fixtures() {
+    }
+
+    static List<OrderItem> items(int count) {
+        Random random = new Random(count);
+        List<OrderItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new OrderItem(
+                    NAMES[random.nextInt(NAMES.length)],
+                    CASTS[random.nextInt(CASTS.length)],
+                    1 + random.nextInt(3),
+                    PRICES[random.nextInt(PRICES.length)]));
+        }
+        return items;
+    }
+
+    static int subtotal(List<OrderItem> items) {
+        long total = 0;
+        for (OrderItem item : items) {
+            total += item.total();
+        }
+        return (int) Math.min(total, Integer.MAX_VALUE / 2);
+    }
+
+    static OrderSlipDocument orderSlip(int count) {
+        OrderSlipDocument doc = new OrderSlipDocument();
+        doc.tableName = "VIP-3";
+        doc.guestName = "山田様";
+        doc.castName = "あやか";
+        doc.elapsedTime = "2時間15分";
+        doc.timestamp = "2026/10/17 23:58";
+        doc.items = items(count);
+        doc.subtotal = subtotal(doc.items);
+        doc.serviceTax = doc.subtotal / 5;
+        doc.roundingUnit = 100;
+        doc.roundingMethod = 0;
+        doc.roundedTotal = doc.subtotal + doc.serviceTax;
+        doc.cardFeeRate = 10;
+        return doc;
+    }
+
+    // revenueStamp=true なら収入印紙欄が印字される金額にする
+    static ReceiptDocument receipt(int count, boolean revenueStamp) {
+        ReceiptDocument doc = new ReceiptDocument();
+        doc.storeName = "Club VYDRAY";
+        doc.storeAddress = "東京都新宿区歌舞伎町1-2-3 ヴィドレイビル5F";
+        doc.storePhone = "03-1234-5678";
+        doc.storePostalCode = "160-0021";
+        doc.storeRegistrationNumber = "T1234567890123";
+        doc.receiptNumber = "R20261017-0042";
+        doc.tableName = "VIP-3";
+        doc.guestName = "山田様";
+        doc.castName = "あやか";
+        doc.timestamp = "2026/10/17 23:58";
+        doc.receiptTo = "株式会社サンプル";
+        doc.items = items(count);
+        doc.subtotal = subtotal(doc.items);
+        doc.serviceTax = doc.subtotal / 5;
+        doc.consumptionTax = (doc.subtotal + doc.serviceTax) / 10;
+        int total = doc.subtotal + doc.serviceTax + doc.consumptionTax;
+        doc.showRevenueStamp = true;
+        doc.revenueStampThreshold = revenueStamp ? 0 : Integer.MAX_VALUE;
+        doc.roundedTotal = total;
+        doc.paymentCash = total;
+        return doc;
+    }
+
+    // WebViewから届く形式（[{name, cast, quantity, price}]）のJSON文字列
+    static String itemsJson(int count) throws JSONException {
+        JSONArray array = new JSONArray();
+        for (OrderItem item : items(count)) {
+            JSONObject object = new JSONObject();
+            object.put("name", item.name);
+            object.put("cast", item.cast);
+            object.put("quantity", item.quantity);
+            object.put("price", item.price);
+            array.put(object);
+        }
+        return array.toString();
+    }
+
+    // 列ごとの配列形式（itemNames / itemQuantities / itemPrices / itemCasts）
+    static JSONObject itemColumns(int count) throws JSONException {
+        JSONArray names = new JSONArray();
+        JSONArray quantities = new JSONArray();
+        JSONArray prices = new JSONArray();
+        JSONArray casts = new JSONArray();
+        for (OrderItem item : items(count)) {
+            names.put(item.name);
+            quantities.put(item.quantity);
+            prices.put(item.price);
+            casts.put(item.cast);
+        }
+        JSONObject columns = new JSONObject();
+        columns.put("itemNames", names);
+        columns.put("itemQuantities", quantities);
+        columns.put("itemPrices", prices);
+        columns.put("itemCasts", casts);
+        return columns;
+    }
+}
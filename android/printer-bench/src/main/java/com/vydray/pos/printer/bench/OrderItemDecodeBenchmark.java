@@ -0,0 +1,62 @@
+package com.vydray.pos.printer.bench;
+
+import com.vydray.pos.printer.OrderItemDecoder;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 注文明細の読み取り（WebViewから届いたJSON → OrderItem）
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class OrderItemDecodeBenchmark {
+    @Param({"1", "10", "100", "500"})
+    public int itemCount;
+
+    private String json;
+    private JSONArray array;
+    private JSONObject columns;
+
+    @Setup
+    public void setUp() throws JSONException {
+        json = Fixtures.itemsJson(itemCount);
+        array = new JSONArray(json);
+        columns = Fixtures.itemColumns(itemCount);
+    }
+
+    // ブリッジでパース済みの配列から読む（プラグインの通常経路）
+    @Benchmark
+    public OrderItemDecoder.Result decode() {
+        return OrderItemDecoder.decode(array);
+    }
+
+    // 文字列からパースし直す場合（再パースのコストの目安）
+    @Benchmark
+    public OrderItemDecoder.Result parseAndDecode() throws JSONException {
+        return OrderItemDecoder.decode(new JSONArray(json));
+    }
+
+    @Benchmark
+    public OrderItemDecoder.Result decodeColumns() {
+        return OrderItemDecoder.decodeColumns(columns.optJSONArray("itemNames"),
+                columns.optJSONArray("itemQuantities"), columns.optJSONArray("itemPrices"),
+                columns.optJSONArray("itemCasts"));
+    }
+}
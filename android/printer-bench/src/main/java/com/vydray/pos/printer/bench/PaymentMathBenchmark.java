@@ -0,0 +1,62 @@
+package com.vydray.pos.printer.bench;
+
+import com.vydray.pos.printer.PaymentMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 端数処理・カード金額・収入印紙額の計算
+// 1回の呼び出しは短すぎるので、金額1024件をまとめて1回とする
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PaymentMathBenchmark {
+    private static final int AMOUNTS = 1024;
+    private static final int[] UNITS = {1, 10, 100, 1000};
+
+    private final int[] amounts = new int[AMOUNTS];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(AMOUNTS);
+        for (int i = 0; i < AMOUNTS; i++) {
+            amounts[i] = random.nextInt(2_000_000);
+        }
+    }
+
+    @Benchmark
+    public void applyRounding(Blackhole blackhole) {
+        for (int i = 0; i < AMOUNTS; i++) {
+            blackhole.consume(PaymentMath.applyRounding(amounts[i], UNITS[i & 3], i % 3));
+        }
+    }
+
+    @Benchmark
+    public void cardAmount(Blackhole blackhole) {
+        for (int i = 0; i < AMOUNTS; i++) {
+            blackhole.consume(PaymentMath.cardAmount(amounts[i], 10, UNITS[i & 3], i % 3));
+        }
+    }
+
+    @Benchmark
+    public void revenueStampAmount(Blackhole blackhole) {
+        for (int i = 0; i < AMOUNTS; i++) {
+            blackhole.consume(PaymentMath.revenueStampAmount(amounts[i]));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.vydray.pos.printer.load;
+
+import org.json.JSONObject;
+
+// 閉店前の会計1件分の印刷呼び出し（開始からの時刻と、WebViewから渡されるデータ）
+final class CheckoutEvent {
+    final long atMillis;
+    // "orderSlip" / "receipt"
+    final String documentType;
+    final JSONObject data;
+    // 印字結果から帳票を見分けるための通し番号（卓名の後ろに印字する）
+    final String tag;
+
+    CheckoutEvent(long atMillis, String documentType, JSONObject data, String tag) {
+        this.atMillis = atMillis;
+        this.documentType = documentType;
+        this.data = data;
+        this.tag = tag;
+    }
+}
@@ -0,0 +1,406 @@
+package com.vydray.pos.printer.load;
+
+import com.vydray.pos.printer.EscPosWriter;
+import com.vydray.pos.printer.LatencyHistogram;
+import com.vydray.pos.printer.OrderItemDecoder;
+import com.vydray.pos.printer.OrderSlipDocument;
+import com.vydray.pos.printer.OrderSlipRenderer;
+import com.vydray.pos.printer.PrintException;
+import com.vydray.pos.printer.PrintJob;
+import com.vydray.pos.printer.PrinterConnectionManager;
+import com.vydray.pos.printer.PrinterRegistry;
+import com.vydray.pos.printer.PrinterStatus;
+import com.vydray.pos.printer.PrinterTransport;
+import com.vydray.pos.printer.PrinterUnit;
+import com.vydray.pos.printer.ReceiptDocument;
+import com.vydray.pos.printer.ReceiptRenderer;
+import com.vydray.pos.printer.sim.SimulatedPrinterTransport;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// 閉店前の会計ラッシュを再生し、印刷経路（明細の読み取り → 描画 → 振り分け → スプーラー →
+// 模擬プリンター）の待ち時間・完了までの時間と、印字漏れ・二重印字を数える
+//
+//   ./gradlew :printer-bench:closingRush -PreplayArgs="--tables 30 --disconnect-prob 0.002"
+//
+// 時間はすべて模擬時間（--time-scale 倍の速さで実行し、結果は等倍に戻して表示する）
+// 取りこぼし・二重印字があれば終了コード1で終わる
+public final class ClosingRushReplay {
+    private static final Charset SHIFT_JIS = Charset.forName("Shift_JIS");
+    private static final Pattern TAG = Pattern.compile("\\[\\d{4}\\]");
+    private static final String RECEIPT_ROLE = "register";
+
+    // 実行条件（コマンドライン引数で上書きする）
+    private File scenarioFile;
+    private int tables = 24;
+    private long windowSeconds = 300;
+    private double reprintRate = 0.15;
+    private long seed = 1;
+    private double timeScale = 0.05;
+    private long drainTimeoutSeconds = 900;
+    private boolean receiptPrinter;
+    // 用紙切れから店員が補充するまでの時間
+    private long reloadSeconds = 20;
+    private File jsonFile;
+    private final SimulatedPrinterTransport.Config printer = new SimulatedPrinterTransport.Config();
+
+    private final Map<String, SimulatedPrinterTransport> printers = new ConcurrentHashMap<>();
+    private final Map<Long, Completion> completions = new ConcurrentHashMap<>();
+    private final Set<Long> retriedJobs = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger failedAttempts = new AtomicInteger();
+    private final AtomicInteger paperOuts = new AtomicInteger();
+
+    // ジョブ完了時の記録（時間は実時間のナノ秒）
+    private static final class Completion {
+        final long completedNanos;
+        final long queueNanos;
+
+        Completion(long completedNanos, long queueNanos) {
+            this.completedNanos = completedNanos;
+            this.queueNanos = queueNanos;
+        }
+    }
+
+    private static final class Submitted {
+        final CheckoutEvent event;
+        final long submittedNanos;
+
+        Submitted(CheckoutEvent event, long submittedNanos) {
+            this.event = event;
+            this.submittedNanos = submittedNanos;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ClosingRushReplay replay = new ClosingRushReplay();
+        replay.parse(args);
+        boolean clean = replay.run();
+        System.exit(clean ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if ("--receipt-printer".equals(name)) {
+                receiptPrinter = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + name);
+            }
+            String value = args[++i];
+            switch (name) {
+                case "--scenario": scenarioFile = new File(value); break;
+                case "--tables": tables = Integer.parseInt(value); break;
+                case "--window-sec": windowSeconds = Long.parseLong(value); break;
+                case "--reprint-rate": reprintRate = Double.parseDouble(value); break;
+                case "--seed": seed = Long.parseLong(value); printer.seed = seed; break;
+                case "--time-scale": timeScale = Double.parseDouble(value); break;
+                case "--drain-timeout-sec": drainTimeoutSeconds = Long.parseLong(value); break;
+                case "--bandwidth": printer.bandwidthBytesPerSec = Long.parseLong(value); break;
+                case "--print-rate": printer.printBytesPerSec = Long.parseLong(value); break;
+                case "--buffer": printer.bufferBytes = Integer.parseInt(value); break;
+                case "--disconnect-prob": printer.disconnectProbability = Double.parseDouble(value); break;
+                case "--paper-bytes": printer.paperBytes = Long.parseLong(value); break;
+                case "--reload-sec": reloadSeconds = Long.parseLong(value); break;
+                case "--json": jsonFile = new File(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + name);
+            }
+        }
+        if (timeScale <= 0) {
+            // スプーラーの再試行・再接続は実時間で待つので、0（待ちなし）にはできない
+            throw new IllegalArgumentException("--time-scale must be positive");
+        }
+        printer.timeScale = timeScale;
+    }
+
+    private boolean run() throws Exception {
+        List<CheckoutEvent> events = scenarioFile != null
+                ? ClosingRushScenario.read(scenarioFile)
+                : ClosingRushScenario.synthetic(tables, windowSeconds * 1000, reprintRate, seed);
+
+        File journalRoot = Files.createTempDirectory("closing-rush").toFile();
+        PrinterRegistry registry = createRegistry(journalRoot);
+        try {
+            connect(registry);
+            Map<Long, Submitted> submitted = new LinkedHashMap<>();
+            int rejected = replay(registry, events, submitted);
+            awaitCompletion(submitted.size());
+            JSONObject report = report(events, submitted, rejected);
+            System.out.println(format(report));
+            if (jsonFile != null) {
+                try (Writer writer = new OutputStreamWriter(new FileOutputStream(jsonFile), StandardCharsets.UTF_8)) {
+                    writer.write(report.toString(2));
+                }
+            }
+            return report.getInt("lost") == 0 && report.getInt("duplicated") == 0;
+        } finally {
+            registry.shutdown();
+            deleteRecursively(journalRoot);
+        }
+    }
+
+    private PrinterRegistry createRegistry(File journalRoot) {
+        final SimulatedPrinterTransport.Config config = printer;
+        return new PrinterRegistry(journalRoot, new PrinterRegistry.TransportFactory() {
+            @Override
+            public PrinterTransport create(String role) {
+                SimulatedPrinterTransport transport = new SimulatedPrinterTransport(config);
+                printers.put(role, transport);
+                return transport;
+            }
+        }, new PrinterRegistry.Listener() {
+            @Override
+            public void onJobCompleted(String role, PrintJob job) {
+                completions.put(job.getId(), new Completion(System.nanoTime(), job.getQueueNanos()));
+            }
+
+            @Override
+            public void onJobFailed(String role, PrintJob job, PrintException error, boolean willRetry) {
+                failedAttempts.incrementAndGet();
+                retriedJobs.add(job.getId());
+            }
+
+            @Override
+            public void onDocumentPrinted(String role, PrintJob job, int printedCount) {
+            }
+
+            @Override
+            public void onStateChanged(String role, PrinterConnectionManager.State state, String address, String error) {
+            }
+
+            @Override
+            public void onPrinterStatusChanged(String role, final PrinterStatus status) {
+                final SimulatedPrinterTransport transport = printers.get(role);
+                if (!status.paperOut || transport == null) {
+                    return;
+                }
+                paperOuts.incrementAndGet();
+                // 保留されたジョブは補充後に続きから印刷される
+                Thread reload = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            Thread.sleep(scaled(reloadSeconds * 1000));
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        transport.loadPaper();
+                    }
+                }, "PaperReload");
+                reload.setDaemon(true);
+                reload.start();
+            }
+        });
+    }
+
+    // 再試行の間隔・死活確認・再接続の待ちも模擬時間に合わせる
+    private void connect(PrinterRegistry registry) throws InterruptedException {
+        List<PrinterUnit> units = new ArrayList<>();
+        units.add(registry.register(PrinterRegistry.DEFAULT_ROLE));
+        if (receiptPrinter) {
+            units.add(registry.register(RECEIPT_ROLE));
+            registry.setRoute("receipt", RECEIPT_ROLE);
+        }
+        for (PrinterUnit unit : units) {
+            unit.getSpooler().setRetryPolicy(3, scaled(1000));
+            unit.getConnection().setTiming(scaled(15000), scaled(1000), scaled(30000));
+            unit.getStatusMonitor().setPollInterval(scaled(3000));
+            unit.getConnection().connect("sim:" + unit.getRole(), null);
+        }
+        for (PrinterUnit unit : units) {
+            while (!unit.isOnline()) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    // 記録どおりの間隔でプラグインと同じ処理を行い、スプーラーに積む
+    private int replay(PrinterRegistry registry, List<CheckoutEvent> events, Map<Long, Submitted> submitted)
+            throws Exception {
+        EscPosWriter writer = new EscPosWriter();
+        long start = System.nanoTime();
+        int rejected = 0;
+        for (CheckoutEvent event : events) {
+            long dueNanos = start + (long) (event.atMillis * 1_000_000L * timeScale);
+            long waitNanos = dueNanos - System.nanoTime();
+            if (waitNanos > 0) {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            }
+
+            long submittedNanos = System.nanoTime();
+            OrderItemDecoder.Result items = OrderItemDecoder.decodePayload(event.data);
+            if (!items.isValid()) {
+                rejected++;
+                continue;
+            }
+            if ("orderSlip".equals(event.documentType)) {
+                OrderSlipDocument doc = OrderSlipDocument.read(event.data);
+                doc.items = items.items;
+                OrderSlipRenderer.render(doc, writer.reset());
+            } else {
+                ReceiptDocument doc = ReceiptDocument.read(event.data);
+                doc.items = items.items;
+                ReceiptRenderer.render(doc, writer.reset());
+            }
+            PrinterRegistry.Submission submission = registry.submit(event.documentType, writer.toByteArray());
+            submitted.put(submission.jobId, new Submitted(event, submittedNanos));
+        }
+        return rejected;
+    }
+
+    private void awaitCompletion(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + (long) (drainTimeoutSeconds * 1_000_000_000L * timeScale);
+        while (completions.size() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private JSONObject report(List<CheckoutEvent> events, Map<Long, Submitted> submitted, int rejected)
+            throws JSONException {
+        LatencyHistogram queueWait = new LatencyHistogram();
+        Map<String, LatencyHistogram> completion = new LinkedHashMap<>();
+        completion.put("all", new LatencyHistogram());
+        int pending = 0;
+        for (Map.Entry<Long, Submitted> entry : submitted.entrySet()) {
+            Completion done = completions.get(entry.getKey());
+            if (done == null) {
+                pending++;
+                continue;
+            }
+            String type = entry.getValue().event.documentType;
+            if (!completion.containsKey(type)) {
+                completion.put(type, new LatencyHistogram());
+            }
+            long latency = simulatedMicros(done.completedNanos - entry.getValue().submittedNanos);
+            completion.get("all").record(latency);
+            completion.get(type).record(latency);
+            queueWait.record(simulatedMicros(done.queueNanos));
+        }
+
+        // 模擬プリンターに届いた帳票を通し番号で数える（カットまで届いたものだけが有効）
+        Map<String, Integer> printed = new HashMap<>();
+        int torn = 0;
+        int disconnects = 0;
+        long simulatedNanos = 0;
+        for (SimulatedPrinterTransport transport : printers.values()) {
+            for (byte[] document : transport.getDocuments()) {
+                Matcher matcher = TAG.matcher(new String(document, SHIFT_JIS));
+                while (matcher.find()) {
+                    Integer count = printed.get(matcher.group());
+                    printed.put(matcher.group(), count == null ? 1 : count + 1);
+                }
+            }
+            torn += transport.getTornDocuments().size();
+            disconnects += transport.getDisconnects();
+            simulatedNanos = Math.max(simulatedNanos, transport.getSimulatedNanos());
+        }
+        int lost = 0;
+        int duplicated = 0;
+        for (Submitted entry : submitted.values()) {
+            Integer count = printed.get(entry.event.tag);
+            if (count == null) {
+                lost++;
+            } else if (count > 1) {
+                duplicated += count - 1;
+            }
+        }
+
+        JSONObject report = new JSONObject();
+        report.put("events", events.size());
+        report.put("submitted", submitted.size());
+        report.put("rejected", rejected);
+        report.put("completed", submitted.size() - pending);
+        report.put("pending", pending);
+        report.put("retriedJobs", retriedJobs.size());
+        report.put("failedAttempts", failedAttempts.get());
+        report.put("disconnects", disconnects);
+        report.put("paperOuts", paperOuts.get());
+        report.put("lost", lost);
+        report.put("duplicated", duplicated);
+        report.put("torn", torn);
+        report.put("printers", printers.size());
+        report.put("printerBusySeconds", simulatedNanos / 1e9);
+        report.put("queueWait", summary(queueWait));
+        JSONObject completionJson = new JSONObject();
+        for (Map.Entry<String, LatencyHistogram> entry : completion.entrySet()) {
+            completionJson.put(entry.getKey(), summary(entry.getValue()));
+        }
+        report.put("completion", completionJson);
+        return report;
+    }
+
+    private static JSONObject summary(LatencyHistogram histogram) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("count", histogram.getCount());
+        json.put("p50", histogram.getValueAtPercentile(50) / 1000);
+        json.put("p90", histogram.getValueAtPercentile(90) / 1000);
+        json.put("p99", histogram.getValueAtPercentile(99) / 1000);
+        json.put("max", histogram.getMax() / 1000);
+        return json;
+    }
+
+    private String format(JSONObject report) throws JSONException {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("Closing rush: %d jobs on %d printer(s), %d B/s, disconnect %.4f/chunk%n",
+                report.getInt("submitted"), report.getInt("printers"), printer.bandwidthBytesPerSec,
+                printer.disconnectProbability));
+        out.append(String.format("completed %d, pending %d, rejected %d, retried %d, failed attempts %d, disconnects %d%n",
+                report.getInt("completed"), report.getInt("pending"), report.getInt("rejected"),
+                report.getInt("retriedJobs"), report.getInt("failedAttempts"), report.getInt("disconnects")));
+        out.append(String.format("lost %d, duplicated %d, torn %d, paper outs %d%n",
+                report.getInt("lost"), report.getInt("duplicated"), report.getInt("torn"),
+                report.getInt("paperOuts")));
+        out.append(String.format("%-20s %6s %8s %8s %8s %8s   (ms, simulated)%n", "", "count", "p50", "p90", "p99", "max"));
+        row(out, "queue wait", report.getJSONObject("queueWait"));
+        JSONObject completion = report.getJSONObject("completion");
+        for (String key : new String[] {"all", "orderSlip", "receipt"}) {
+            if (completion.has(key)) {
+                row(out, "completion " + key, completion.getJSONObject(key));
+            }
+        }
+        return out.toString();
+    }
+
+    private static void row(StringBuilder out, String label, JSONObject summary) throws JSONException {
+        out.append(String.format("%-20s %6d %8d %8d %8d %8d%n", label, summary.getLong("count"),
+                summary.getLong("p50"), summary.getLong("p90"), summary.getLong("p99"), summary.getLong("max")));
+    }
+
+    private long scaled(long millis) {
+        return Math.max(1, (long) (millis * timeScale));
+    }
+
+    private long simulatedMicros(long wallNanos) {
+        return (long) (wallNanos / timeScale / 1000);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
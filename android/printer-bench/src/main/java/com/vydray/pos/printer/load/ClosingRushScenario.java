@@ -0,0 +1,174 @@
+package com.vydray.pos.printer.load;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+// 閉店前の会計ラッシュ（卓ごとに会計伝票 → 領収書、ときどき再印刷）
+final class ClosingRushScenario {
+    private static final String[] NAMES = {
+            "セット料金", "延長30分", "指名料", "場内指名", "ハウスボトル", "キャストドリンク",
+            "シャンパン モエ・エ・シャンドン ブリュット アンペリアル", "フルーツ盛り合わせ（大）", "ウーロン茶",
+    };
+    private static final int[] PRICES = {500, 1000, 2000, 3000, 5000, 12000, 38000};
+    private static final String[] CASTS = {"あやか", "みゆ", "さくら", "れいな"};
+
+    private ClosingRushScenario() {
+    }
+
+    // tables卓がwindowMillisの間に会計する。reprintRateの割合で領収書を再印刷する
+    static List<CheckoutEvent> synthetic(int tables, long windowMillis, double reprintRate, long seed)
+            throws JSONException {
+        Random random = new Random(seed);
+        List<CheckoutEvent> events = new ArrayList<>();
+        for (int t = 0; t < tables; t++) {
+            String table = String.format("T%02d", t + 1);
+            long slipAt = (long) (random.nextDouble() * windowMillis);
+            JSONArray items = items(random, 5 + random.nextInt(36));
+            int subtotal = subtotal(items);
+
+            events.add(new CheckoutEvent(slipAt, "orderSlip", orderSlip(table, items, subtotal), null));
+            // 伝票を見てから会計・領収書まで20〜60秒
+            long receiptAt = slipAt + 20_000 + random.nextInt(40_000);
+            JSONObject receipt = receipt(table, t + 1, items, subtotal);
+            events.add(new CheckoutEvent(receiptAt, "receipt", receipt, null));
+            if (random.nextDouble() < reprintRate) {
+                events.add(new CheckoutEvent(receiptAt + 10_000 + random.nextInt(60_000), "receipt",
+                        new JSONObject(receipt.toString()), null));
+            }
+        }
+        return tagged(events);
+    }
+
+    // 記録済みの呼び出し（1行1件 {"at": ミリ秒, "type": "orderSlip" | "receipt", "data": {...}}）
+    static List<CheckoutEvent> read(File file) throws IOException, JSONException {
+        List<CheckoutEvent> events = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                JSONObject record = new JSONObject(line);
+                events.add(new CheckoutEvent(record.getLong("at"), record.getString("type"),
+                        record.getJSONObject("data"), null));
+            }
+        }
+        return tagged(events);
+    }
+
+    // 時刻順に並べて通し番号を振り、卓名に印字させる
+    private static List<CheckoutEvent> tagged(List<CheckoutEvent> events) throws JSONException {
+        Collections.sort(events, new Comparator<CheckoutEvent>() {
+            @Override
+            public int compare(CheckoutEvent a, CheckoutEvent b) {
+                return Long.compare(a.atMillis, b.atMillis);
+            }
+        });
+        List<CheckoutEvent> result = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            CheckoutEvent event = events.get(i);
+            String tag = String.format("[%04d]", i);
+            JSONObject data = new JSONObject(event.data.toString());
+            data.put("tableName", data.optString("tableName", "") + " " + tag);
+            result.add(new CheckoutEvent(event.atMillis, event.documentType, data, tag));
+        }
+        return result;
+    }
+
+    // usePrinting.ts の注文明細と同じ形（castは配列）
+    private static JSONArray items(Random random, int count) throws JSONException {
+        JSONArray items = new JSONArray();
+        for (int i = 0; i < count; i++) {
+            JSONObject item = new JSONObject();
+            item.put("name", NAMES[random.nextInt(NAMES.length)]);
+            item.put("price", PRICES[random.nextInt(PRICES.length)]);
+            item.put("quantity", 1 + random.nextInt(3));
+            JSONArray cast = new JSONArray();
+            if (random.nextBoolean()) {
+                cast.put(CASTS[random.nextInt(CASTS.length)]);
+            }
+            item.put("cast", cast);
+            items.put(item);
+        }
+        return items;
+    }
+
+    private static int subtotal(JSONArray items) throws JSONException {
+        int subtotal = 0;
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.getJSONObject(i);
+            subtotal += item.getInt("price") * item.getInt("quantity");
+        }
+        return subtotal;
+    }
+
+    // usePrinting.ts の printOrderSlip と同じ項目
+    private static JSONObject orderSlip(String table, JSONArray items, int subtotal) throws JSONException {
+        int serviceTax = (int) Math.floor(subtotal * 0.15);
+        int rounded = (subtotal + serviceTax + 99) / 100 * 100;
+        JSONObject data = new JSONObject();
+        data.put("tableName", table);
+        data.put("guestName", "（未入力）");
+        data.put("castName", "あやか");
+        data.put("elapsedTime", "2時間15分");
+        data.put("orderItems", items);
+        data.put("subtotal", subtotal);
+        data.put("serviceTax", serviceTax);
+        data.put("roundedTotal", rounded);
+        data.put("roundingAdjustment", rounded - subtotal - serviceTax);
+        data.put("cardFeeRate", 10);
+        data.put("roundingUnit", 100);
+        data.put("roundingMethod", 0);
+        data.put("timestamp", "2026/10/17 23:58");
+        return data;
+    }
+
+    // useReceiptPrint.ts の printReceipt と同じ項目
+    private static JSONObject receipt(String table, int number, JSONArray items, int subtotal) throws JSONException {
+        int serviceTax = (int) Math.floor(subtotal * 0.15);
+        int consumptionTax = (int) Math.floor((subtotal + serviceTax) * 0.10);
+        int total = subtotal + serviceTax + consumptionTax;
+        JSONObject data = new JSONObject();
+        data.put("storeName", "Club VYDRAY");
+        data.put("storeAddress", "東京都新宿区歌舞伎町1-2-3");
+        data.put("storePhone", "03-1234-5678");
+        data.put("storePostalCode", "160-0021");
+        data.put("storeRegistrationNumber", "T1234567890123");
+        data.put("receiptNumber", String.format("R20261017-%04d", number));
+        data.put("receiptTo", "");
+        data.put("receiptNote", "お品代として");
+        data.put("showRevenueStamp", true);
+        data.put("revenueStampThreshold", 50000);
+        data.put("tableName", table);
+        data.put("guestName", "（未入力）");
+        data.put("castName", "");
+        data.put("timestamp", "2026/10/17 23:58");
+        data.put("orderItems", items);
+        data.put("subtotal", subtotal);
+        data.put("serviceTax", serviceTax);
+        data.put("consumptionTax", consumptionTax);
+        data.put("roundingAdjustment", 0);
+        data.put("roundedTotal", total);
+        data.put("paymentCash", total);
+        data.put("paymentCard", 0);
+        data.put("paymentOther", 0);
+        data.put("paymentOtherMethod", "");
+        data.put("change", 0);
+        return data;
+    }
+}
@@ -0,0 +1,304 @@
+package com.vydray.pos.printer.load;
+
+import com.vydray.pos.printer.EscPosWriter;
+import com.vydray.pos.printer.LatencyHistogram;
+import com.vydray.pos.printer.OrderItemDecoder;
+import com.vydray.pos.printer.OrderSlipDocument;
+import com.vydray.pos.printer.OrderSlipRenderer;
+import com.vydray.pos.printer.PrintException;
+import com.vydray.pos.printer.PrintFlightRecorder;
+import com.vydray.pos.printer.ReceiptDocument;
+import com.vydray.pos.printer.ReceiptRenderer;
+import com.vydray.pos.printer.sim.SimulatedPrinterTransport;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+// 端末から書き出したフライトレコード（exportFlightRecord）を再生し、現場の不具合を手元で再現する
+//
+//   ./gradlew :printer-bench:flightReplay -PreplayArgs="flight-record.bin --job 1234"
+//
+// 記録ごとに次を表示する
+// ・端末での結果・段階ごとの時間・例外・接続状態
+// ・記録した入力を組み込みのレイアウトで描画し直した結果（送ったバイト列と一致するか、描画時間）
+// ・送ったバイト列を模擬プリンターに流した結果（送信時間、切断・用紙切れで止まった位置）
+// 描画し直したバイト列が記録と食い違えば終了コード1で終わる
+public final class FlightRecordReplay {
+    private File dumpFile;
+    private long jobId = -1;
+    private int iterations = 200;
+    private File outDir;
+    private final SimulatedPrinterTransport.Config printer = new SimulatedPrinterTransport.Config();
+
+    private final EscPosWriter writer = new EscPosWriter();
+
+    public static void main(String[] args) throws Exception {
+        FlightRecordReplay replay = new FlightRecordReplay();
+        replay.parse(args);
+        boolean clean = replay.run();
+        System.exit(clean ? 0 : 1);
+    }
+
+    private void parse(String[] args) {
+        // 既定は待たずに模擬時間だけ進める
+        printer.timeScale = 0;
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (!name.startsWith("--")) {
+                dumpFile = new File(name);
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + name);
+            }
+            String value = args[++i];
+            switch (name) {
+                case "--job": jobId = Long.parseLong(value); break;
+                case "--iterations": iterations = Integer.parseInt(value); break;
+                case "--out": outDir = new File(value); break;
+                case "--time-scale": printer.timeScale = Double.parseDouble(value); break;
+                case "--bandwidth": printer.bandwidthBytesPerSec = Long.parseLong(value); break;
+                case "--print-rate": printer.printBytesPerSec = Long.parseLong(value); break;
+                case "--buffer": printer.bufferBytes = Integer.parseInt(value); break;
+                case "--disconnect-prob": printer.disconnectProbability = Double.parseDouble(value); break;
+                case "--paper-bytes": printer.paperBytes = Long.parseLong(value); break;
+                case "--seed": printer.seed = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("Unknown option " + name);
+            }
+        }
+        if (dumpFile == null) {
+            throw new IllegalArgumentException("Usage: FlightRecordReplay <dump> [--job id] [--iterations n] [--out dir]");
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("--iterations must be at least 1");
+        }
+    }
+
+    private boolean run() throws Exception {
+        List<PrintFlightRecorder.Record> records;
+        try (InputStream in = new FileInputStream(dumpFile)) {
+            records = PrintFlightRecorder.read(in);
+        }
+        // 古い順に再生する
+        records = new ArrayList<>(records);
+        Collections.reverse(records);
+        if (outDir != null && !outDir.isDirectory() && !outDir.mkdirs()) {
+            throw new IOException("Cannot create " + outDir);
+        }
+
+        System.out.printf("Flight record %s: %d session(s)%n", dumpFile.getName(), records.size());
+        int mismatches = 0;
+        for (PrintFlightRecorder.Record record : records) {
+            if (jobId >= 0 && record.jobId != jobId) {
+                continue;
+            }
+            StringBuilder out = new StringBuilder();
+            describe(out, record);
+            if (!rerender(out, record)) {
+                mismatches++;
+            }
+            send(out, record);
+            System.out.print(out);
+            if (outDir != null) {
+                save(record);
+            }
+        }
+        if (mismatches > 0) {
+            System.out.printf("%d session(s) rendered differently from the recorded bytes%n", mismatches);
+        }
+        return mismatches == 0;
+    }
+
+    // 端末での記録
+    private static void describe(StringBuilder out, PrintFlightRecorder.Record record) {
+        String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ROOT).format(new Date(record.submittedAt));
+        out.append(String.format("%n#%d %s %s -> %s [%s] %s, attempts %d, printed %d/%d%n", record.jobId, time,
+                record.documentType, orDash(record.role), record.lane, record.outcome, record.attempts,
+                record.printedCount, record.documentCount));
+        out.append(String.format("  link      %s -> %s %s%n", orDash(record.submitState), orDash(record.endState),
+                record.address));
+        out.append(String.format("  recorded  decode %.2f  render %.2f  queue %.2f  send %.2f  cut %.2f ms%n",
+                millis(record.decodeNanos), millis(record.renderNanos), millis(record.queueNanos),
+                millis(record.sendNanos), millis(record.cutNanos)));
+        if (!record.errorReason.isEmpty()) {
+            out.append(String.format("  error     %s: %s%n", record.errorReason, record.errorMessage));
+            if (!record.cause.isEmpty()) {
+                out.append(String.format("  cause     %s%n", record.cause));
+            }
+        }
+    }
+
+    // 記録した入力から描画し直して送ったバイト列と比べる（食い違えばfalse）
+    private boolean rerender(StringBuilder out, PrintFlightRecorder.Record record) throws JSONException {
+        String skipped = renderable(record);
+        if (skipped != null) {
+            out.append(String.format("  render    skipped (%s)%n", skipped));
+            return true;
+        }
+
+        JSONObject payload = new JSONObject(record.payloadText());
+        LatencyHistogram histogram = new LatencyHistogram();
+        byte[] rendered = null;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            rendered = render(record.documentType, payload);
+            histogram.record((System.nanoTime() - start) / 1000);
+        }
+        if (rendered == null) {
+            out.append("  render    invalid items in the recorded payload\n");
+            return true;
+        }
+
+        byte[] recorded = record.documents().get(0);
+        int diff = firstDifference(recorded, rendered, record.isDataTruncated());
+        String result = diff < 0 ? "identical"
+                : String.format("DIFFERS at byte %d (recorded %s, rendered %s)", diff,
+                        byteAt(recorded, diff), byteAt(rendered, diff));
+        out.append(String.format("  render    %d B, %s; p50 %.3f p99 %.3f max %.3f ms over %d runs%n",
+                rendered.length, result, histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getMax() / 1000.0, iterations));
+        return diff < 0;
+    }
+
+    // 描画し直せないときは理由を返す
+    private static String renderable(PrintFlightRecorder.Record record) throws JSONException {
+        String type = record.documentType;
+        if (!"text".equals(type) && !"orderSlip".equals(type) && !"receipt".equals(type)) {
+            return "no built-in renderer for " + type;
+        }
+        if (!record.template.isEmpty()) {
+            return "rendered with template " + record.template;
+        }
+        if (record.payloadTruncated) {
+            return "payload truncated at " + record.payload.length + " B";
+        }
+        if (record.documentLengths.length != 1) {
+            return "no single document recorded";
+        }
+        if ("receipt".equals(type)) {
+            // 登録済み画像はダンプに含まれない
+            JSONObject payload = new JSONObject(record.payloadText());
+            if (!payload.optString("logoHash").isEmpty() || !payload.optString("footerImageHash").isEmpty()) {
+                return "receipt images are not in the dump";
+            }
+        }
+        return null;
+    }
+
+    // プラグインと同じ手順で描画する（明細が不正ならnull）
+    private byte[] render(String documentType, JSONObject payload) {
+        if ("text".equals(documentType)) {
+            return writer.reset().text(payload.optString("text")).toByteArray();
+        }
+        OrderItemDecoder.Result items = OrderItemDecoder.decodePayload(payload);
+        if (!items.isValid()) {
+            return null;
+        }
+        if ("orderSlip".equals(documentType)) {
+            OrderSlipDocument doc = OrderSlipDocument.read(payload);
+            doc.items = items.items;
+            OrderSlipRenderer.render(doc, writer.reset());
+        } else {
+            ReceiptDocument doc = ReceiptDocument.read(payload);
+            doc.items = items.items;
+            ReceiptRenderer.render(doc, writer.reset());
+        }
+        return writer.toByteArray();
+    }
+
+    // 送ったバイト列を模擬プリンターに流す
+    private void send(StringBuilder out, PrintFlightRecorder.Record record) {
+        List<byte[]> documents = record.documents();
+        if (documents.isEmpty()) {
+            out.append("  printer   no bytes recorded\n");
+            return;
+        }
+
+        SimulatedPrinterTransport transport = new SimulatedPrinterTransport(printer);
+        long bytes = 0;
+        int printed = 0;
+        String stopped = null;
+        long start = 0;
+        try {
+            transport.open(record.address);
+            start = transport.getSimulatedNanos();
+            for (byte[] document : documents) {
+                transport.send(document);
+                transport.cutPaper();
+                bytes += document.length;
+                printed++;
+            }
+        } catch (PrintException e) {
+            stopped = e.getReason().name() + ": " + e.getMessage();
+        }
+        long elapsed = transport.getSimulatedNanos() - start;
+        out.append(String.format("  printer   %d/%d document(s), %d B in %.1f ms simulated%s%s%n", printed,
+                documents.size(), bytes, millis(elapsed), record.isDataTruncated() ? " (bytes truncated)" : "",
+                stopped != null ? ", stopped by " + stopped : ""));
+    }
+
+    // 入力のJSONと帳票ごとのバイト列をファイルに残す（ESC/POSビューアーなどで確かめる）
+    private void save(PrintFlightRecorder.Record record) throws IOException {
+        String base = record.jobId + "-" + record.documentType;
+        write(new File(outDir, base + ".json"), record.payload);
+        List<byte[]> documents = record.documents();
+        for (int i = 0; i < documents.size(); i++) {
+            write(new File(outDir, base + "-" + (i + 1) + ".bin"), documents.get(i));
+        }
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+
+    // 最初に食い違う位置（同じなら-1）。記録が切り詰められていれば記録した分だけ比べる
+    private static int firstDifference(byte[] recorded, byte[] rendered, boolean truncated) {
+        int length = Math.min(recorded.length, rendered.length);
+        for (int i = 0; i < length; i++) {
+            if (recorded[i] != rendered[i]) {
+                return i;
+            }
+        }
+        if (recorded.length == rendered.length || (truncated && recorded.length < rendered.length)) {
+            return -1;
+        }
+        return length;
+    }
+
+    private static String byteAt(byte[] data, int index) {
+        if (index >= data.length) {
+            return "end";
+        }
+        int from = Math.max(0, index - 4);
+        int to = Math.min(data.length, index + 4);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : Arrays.copyOfRange(data, from, to)) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return String.format("0x%02x near %s", data[index] & 0xff, hex);
+    }
+
+    private static String orDash(String value) {
+        return value.isEmpty() ? "-" : value;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,159 @@
+package com.vydray.pos.printer;
+
+import java.util.Arrays;
+
+// 帳票を実測のBluetooth速度に合わせたチャンクに分けて送る
+// ・チャンクの大きさは「目標時間 × 実測スループット（指数移動平均）」
+// ・一定量ごとにプリンターの状態を確認し、バッファが満杯に近ければ空くまで待つ
+// ・チャンクは改行の直後で区切り、状態確認の応答で届いたと確かめた位置をジョブに記録する
+//   （失敗しても次の試行は帳票の先頭からではなくその位置から続ける）
+public class ChunkedTransmitter {
+    private static final int INITIAL_CHUNK_BYTES = 1024;
+
+    private final PrinterTransport transport;
+    // 状態を問い合わせられない経路ならnull（送信できた時点で届いたものとする）
+    private final FlowControlledTransport flowControl;
+
+    private volatile int minChunkBytes = 256;
+    private volatile int maxChunkBytes = 4096;
+    private volatile long targetChunkMillis = 100;
+    // この量を送るごとに状態を確認する
+    private volatile int statusIntervalBytes = 4096;
+    private volatile long pollIntervalMs = 50;
+    private volatile long bufferWaitTimeoutMs = 30000;
+
+    // 実測スループット（バイト/秒、0なら未計測）
+    private volatile double throughput;
+    private volatile long pauses;
+
+    public ChunkedTransmitter(PrinterTransport transport) {
+        this.transport = transport;
+        this.flowControl = transport instanceof FlowControlledTransport ? (FlowControlledTransport) transport : null;
+    }
+
+    public void setChunking(int minChunkBytes, int maxChunkBytes, long targetChunkMillis) {
+        this.minChunkBytes = Math.max(1, minChunkBytes);
+        this.maxChunkBytes = Math.max(this.minChunkBytes, maxChunkBytes);
+        this.targetChunkMillis = targetChunkMillis;
+    }
+
+    public void setFlowControl(int statusIntervalBytes, long pollIntervalMs, long bufferWaitTimeoutMs) {
+        this.statusIntervalBytes = Math.max(1, statusIntervalBytes);
+        this.pollIntervalMs = pollIntervalMs;
+        this.bufferWaitTimeoutMs = bufferWaitTimeoutMs;
+    }
+
+    public double getThroughputBytesPerSec() {
+        return throughput;
+    }
+
+    // バッファが空くのを待った回数
+    public long getPauseCount() {
+        return pauses;
+    }
+
+    public void send(PrintJob job, byte[] document) throws PrintException {
+        int offset = job.getResumeOffset();
+        if (offset >= document.length) {
+            return;
+        }
+        EscPosBreaks breaks = EscPosBreaks.scan(document);
+        // 状態確認で届いたと確かめられる位置
+        int pending = offset;
+        int sinceStatus = 0;
+
+        if (offset > 0) {
+            // 途中から再開する。ジョブ先頭の初期化で戻った文字揃え・太字を元に戻す
+            if (flowControl != null) {
+                awaitReady();
+            }
+            int index = breaks.floor(offset);
+            if (index >= 0) {
+                transport.send(breaks.resumePrefix(index));
+            }
+        }
+
+        while (offset < document.length) {
+            if (flowControl != null && sinceStatus >= statusIntervalBytes) {
+                awaitReady();
+                job.acknowledge(pending);
+                sinceStatus = 0;
+            }
+
+            int end = Math.min(document.length, offset + chunkSize());
+            if (end < document.length) {
+                int index = breaks.floor(end);
+                if (index >= 0 && breaks.offset(index) > offset) {
+                    end = breaks.offset(index);
+                }
+            }
+            byte[] chunk = offset == 0 && end == document.length ? document : Arrays.copyOfRange(document, offset, end);
+            long start = System.nanoTime();
+            transport.send(chunk);
+            record(chunk.length, System.nanoTime() - start);
+            sinceStatus += chunk.length;
+            offset = end;
+
+            // 再開できるのは区切りの位置だけ
+            int index = breaks.floor(offset);
+            pending = offset == document.length ? offset : index >= 0 ? breaks.offset(index) : 0;
+            if (flowControl == null) {
+                job.acknowledge(pending);
+            }
+        }
+        // 最後のチャンクの到着はカットの成功で確かめる
+    }
+
+    private int chunkSize() {
+        double measured = throughput;
+        if (measured <= 0) {
+            return Math.max(minChunkBytes, Math.min(maxChunkBytes, INITIAL_CHUNK_BYTES));
+        }
+        long size = (long) (measured * targetChunkMillis / 1000);
+        return (int) Math.max(minChunkBytes, Math.min(maxChunkBytes, size));
+    }
+
+    private void record(int bytes, long nanos) {
+        // 小さすぎる送信は誤差が大きいので使わない
+        if (bytes < 64 || nanos <= 0) {
+            return;
+        }
+        double sample = bytes * 1e9 / nanos;
+        double current = throughput;
+        throughput = current <= 0 ? sample : current * 0.8 + sample * 0.2;
+    }
+
+    private void awaitReady() throws PrintException {
+        long deadline = System.currentTimeMillis() + bufferWaitTimeoutMs;
+        while (true) {
+            PrinterStatus status = flowControl.readStatus();
+            if (status.offline) {
+                throw new PrintException(PrintException.Reason.STATUS,
+                        "Printer is offline (status 0x" + Integer.toHexString(status.code) + ")");
+            }
+            if (status.paperOut) {
+                throw new PrintException(PrintException.Reason.PAPER_OUT, "Paper out");
+            }
+            if (status.coverOpen) {
+                throw new PrintException(PrintException.Reason.COVER_OPEN, "Cover open");
+            }
+            if (status.error) {
+                throw new PrintException(PrintException.Reason.STATUS,
+                        "Printer error (status 0x" + Integer.toHexString(status.code) + ")");
+            }
+            if (!status.bufferNearFull) {
+                return;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                throw new PrintException(PrintException.Reason.SEND, "Printer buffer stayed full");
+            }
+            pauses++;
+            try {
+                Thread.sleep(pollIntervalMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PrintException(PrintException.Reason.UNEXPECTED, "Interrupted", e);
+            }
+        }
+    }
+}
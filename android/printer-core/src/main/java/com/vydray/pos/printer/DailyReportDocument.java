@@ -0,0 +1,53 @@
+package com.vydray.pos.printer;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 日報の印字内容（金額はDailySalesAggregatorが集計する）
+public class DailyReportDocument {
+    // 来店種別・キャスト別・カテゴリ別の1行
+    public static final class Line {
+        public final String name;
+        public final long amount;
+        public final long quantity;
+
+        Line(String name, long amount, long quantity) {
+            this.name = name;
+            this.amount = amount;
+            this.quantity = quantity;
+        }
+    }
+
+    public String storeName = "";
+    public String businessDate = "";
+    public String eventName = "";
+    public String timestamp = "";
+
+    public int orderCount;
+    public long totalSales;
+    public long cashSales;
+    public long cardSales;
+    public long otherSales;
+    public long cardFees;
+    public long roundingAdjustment;
+    public long discountAmount;
+    public long serviceCharge;
+    public long taxAmount;
+    public long itemQuantity;
+
+    public List<Line> visitTypes = new ArrayList<>();
+    public List<Line> casts = new ArrayList<>();
+    public List<Line> categories = new ArrayList<>();
+
+    // 印刷呼び出しの見出し部分を読み込む
+    public static DailyReportDocument read(JSONObject data) {
+        DailyReportDocument doc = new DailyReportDocument();
+        doc.storeName = data.optString("storeName", "");
+        doc.businessDate = data.optString("businessDate", "");
+        doc.eventName = data.optString("eventName", "");
+        doc.timestamp = data.optString("timestamp", "");
+        return doc;
+    }
+}
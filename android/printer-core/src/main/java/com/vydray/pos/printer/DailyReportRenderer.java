@@ -0,0 +1,105 @@
+package com.vydray.pos.printer;
+
+import java.util.List;
+
+// 日報をESC/POSバイト列に描画する（金額は32桁目に右寄せ）
+public final class DailyReportRenderer {
+    private static final byte[] HEADER = EscPos.concat(
+            EscPos.ALIGN_CENTER, EscPos.BOLD_ON, EscPos.encode("日 報\n"), EscPos.BOLD_OFF, EscPos.ALIGN_LEFT);
+    private static final byte[] BUSINESS_DATE = EscPos.encode("営業日: ");
+    private static final byte[] EVENT = EscPos.encode("イベント: ");
+    private static final byte[] PRINTED_AT = EscPos.encode("印刷時刻: ");
+    private static final byte[] SALES_HEADER = EscPos.encode("【売上】\n");
+    private static final byte[] ORDER_COUNT = EscPos.encode("会計数:");
+    private static final byte[] TOTAL = EscPos.encode("総売上:");
+    private static final byte[] CASH = EscPos.encode("現金:");
+    private static final byte[] CARD = EscPos.encode("カード:");
+    private static final byte[] OTHER = EscPos.encode("その他:");
+    private static final byte[] DETAIL_HEADER = EscPos.encode("\n【内訳】\n");
+    private static final byte[] SERVICE = EscPos.encode("サービス料:");
+    private static final byte[] TAX = EscPos.encode("消費税:");
+    private static final byte[] DISCOUNT = EscPos.encode("割引:");
+    private static final byte[] CARD_FEE = EscPos.encode("カード手数料:");
+    private static final byte[] ITEM_QUANTITY = EscPos.encode("注文点数:");
+    private static final byte[] VISIT_HEADER = EscPos.encode("\n【来店種別】\n");
+    private static final byte[] CAST_HEADER = EscPos.encode("\n【キャスト別】\n");
+    private static final byte[] CATEGORY_HEADER = EscPos.encode("\n【カテゴリ別】\n");
+    private static final byte[] COUNT_UNIT = EscPos.encode("件");
+    private static final byte[] QUANTITY_UNIT = EscPos.encode("点");
+    private static final byte[] TAIL = EscPos.encode("\n\n\n");
+    // 名前の右に「数量 金額」を置く分の幅
+    private static final int NAME_WIDTH = 14;
+
+    private DailyReportRenderer() {
+    }
+
+    public static void render(DailyReportDocument doc, EscPosWriter out) {
+        // ヘッダー
+        out.bytes(HEADER).bytes(EscPos.RULE_DOUBLE);
+        if (!doc.storeName.isEmpty()) {
+            out.wrapped(doc.storeName, TextWidth.LINE_WIDTH, 0);
+        }
+        OrderSlipRenderer.labeled(BUSINESS_DATE, doc.businessDate, out);
+        if (!doc.eventName.isEmpty()) {
+            OrderSlipRenderer.labeled(EVENT, doc.eventName, out);
+        }
+        if (!doc.timestamp.isEmpty()) {
+            OrderSlipRenderer.labeled(PRINTED_AT, doc.timestamp, out);
+        }
+        out.bytes(EscPos.RULE_DOUBLE);
+
+        // 売上と支払い方法別
+        out.bytes(SALES_HEADER);
+        writeCount(ORDER_COUNT, doc.orderCount, COUNT_UNIT, out);
+        OrderSlipRenderer.writeAmount(TOTAL, doc.totalSales, out);
+        OrderSlipRenderer.writeAmount(CASH, doc.cashSales, out);
+        OrderSlipRenderer.writeAmount(CARD, doc.cardSales, out);
+        OrderSlipRenderer.writeAmount(OTHER, doc.otherSales, out);
+
+        // 内訳
+        out.bytes(DETAIL_HEADER);
+        OrderSlipRenderer.writeAmount(SERVICE, doc.serviceCharge, out);
+        OrderSlipRenderer.writeAmount(TAX, doc.taxAmount, out);
+        if (doc.discountAmount != 0) {
+            OrderSlipRenderer.writeAmount(DISCOUNT, doc.discountAmount, out);
+        }
+        if (doc.roundingAdjustment != 0) {
+            // 1日分の合計でもintに収まる
+            OrderSlipRenderer.writeRounding((int) doc.roundingAdjustment, out);
+        }
+        if (doc.cardFees != 0) {
+            OrderSlipRenderer.writeAmount(CARD_FEE, doc.cardFees, out);
+        }
+        writeCount(ITEM_QUANTITY, doc.itemQuantity, QUANTITY_UNIT, out);
+
+        writeLines(VISIT_HEADER, doc.visitTypes, COUNT_UNIT, out);
+        writeLines(CAST_HEADER, doc.casts, QUANTITY_UNIT, out);
+        writeLines(CATEGORY_HEADER, doc.categories, QUANTITY_UNIT, out);
+        out.bytes(EscPos.RULE_DOUBLE).bytes(TAIL);
+    }
+
+    // "会計数:                     42件"
+    private static void writeCount(byte[] label, long count, byte[] unit, EscPosWriter out) {
+        int start = out.size();
+        out.bytes(label);
+        int value = out.size();
+        out.number(count).bytes(unit).alignRight(start, value).newline();
+    }
+
+    // "山田          12点    ¥123,456"（名前は切り詰める）
+    private static void writeLines(byte[] header, List<DailyReportDocument.Line> lines, byte[] unit,
+                                   EscPosWriter out) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        out.bytes(header).bytes(EscPos.RULE_SINGLE);
+        for (int i = 0, n = lines.size(); i < n; i++) {
+            DailyReportDocument.Line line = lines.get(i);
+            int start = out.size();
+            out.fitted(line.name, NAME_WIDTH);
+            int value = out.size();
+            out.number(line.quantity).bytes(unit).write((byte) ' ').yen(line.amount)
+                    .alignRight(start, value).newline();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.vydray.pos.printer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 日報の売上集計。WebViewから1ページずつ届く会計・明細の列をその場で足し込み、行データは残さない
+public final class DailySalesAggregator {
+    // 名前ごとの金額・数量（名前から添字を引き、値はプリミティブ配列に持つ）
+    static final class Tally {
+        private final Map<String, Integer> index = new HashMap<>();
+        private String[] names = new String[16];
+        private long[] amounts = new long[16];
+        private long[] quantities = new long[16];
+        private int size;
+
+        void add(String name, long amount, long quantity) {
+            Integer slot = index.get(name);
+            int i;
+            if (slot == null) {
+                if (size == names.length) {
+                    names = Arrays.copyOf(names, size * 2);
+                    amounts = Arrays.copyOf(amounts, size * 2);
+                    quantities = Arrays.copyOf(quantities, size * 2);
+                }
+                i = size++;
+                names[i] = name;
+                index.put(name, i);
+            } else {
+                i = slot;
+            }
+            amounts[i] += amount;
+            quantities[i] += quantity;
+        }
+
+        // 金額の多い順（同額なら数量の多い順）
+        List<DailyReportDocument.Line> lines() {
+            List<DailyReportDocument.Line> lines = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                lines.add(new DailyReportDocument.Line(names[i], amounts[i], quantities[i]));
+            }
+            Collections.sort(lines, new Comparator<DailyReportDocument.Line>() {
+                @Override
+                public int compare(DailyReportDocument.Line a, DailyReportDocument.Line b) {
+                    if (a.amount != b.amount) {
+                        return a.amount > b.amount ? -1 : 1;
+                    }
+                    return Long.compare(b.quantity, a.quantity);
+                }
+            });
+            return lines;
+        }
+    }
+
+    // 明細のキャスト名・カテゴリ名が空のときの表示
+    static final String NO_CAST = "指名なし";
+    static final String NO_CATEGORY = "未分類";
+
+    private int orderCount;
+    private long totalSales;
+    // 現金はお釣りを引いた実収
+    private long cashSales;
+    private long cardSales;
+    private long otherSales;
+    private long cardFees;
+    private long roundingAdjustment;
+    private long discountAmount;
+    private long serviceCharge;
+    private long taxAmount;
+    private long itemQuantity;
+    private final Tally visitTypes = new Tally();
+    private final Tally casts = new Tally();
+    private final Tally categories = new Tally();
+
+    public void addOrder(long total, long cash, long change, long card, long other, long cardFee,
+                         long rounding, long discount, long service, long tax, String visitType) {
+        orderCount++;
+        totalSales += total;
+        cashSales += cash - change;
+        cardSales += card;
+        otherSales += other;
+        cardFees += cardFee;
+        roundingAdjustment += rounding;
+        discountAmount += discount;
+        serviceCharge += service;
+        taxAmount += tax;
+        if (visitType != null && !visitType.isEmpty()) {
+            visitTypes.add(visitType, total, 1);
+        }
+    }
+
+    // 複数キャストの明細は金額を等分し、割り切れない分は先頭のキャストに付ける
+    public void addItem(String castNames, String category, long amount, long quantity) {
+        itemQuantity += quantity;
+        categories.add(category == null || category.isEmpty() ? NO_CATEGORY : category, amount, quantity);
+
+        if (castNames == null || castNames.trim().isEmpty()) {
+            casts.add(NO_CAST, amount, quantity);
+            return;
+        }
+        String[] names = castNames.split(",");
+        int count = 0;
+        for (String name : names) {
+            if (!name.trim().isEmpty()) {
+                count++;
+            }
+        }
+        long share = amount / count;
+        long remainder = amount - share * count;
+        for (String name : names) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            casts.add(trimmed, share + remainder, quantity);
+            remainder = 0;
+        }
+    }
+
+    // 1ページ分の列（orderTotals, orderCash, ... / itemCasts, itemCategories, ...）を足し込む
+    public void addPage(JSONObject page) {
+        JSONArray totals = page.optJSONArray("orderTotals");
+        if (totals != null) {
+            JSONArray cash = page.optJSONArray("orderCash");
+            JSONArray change = page.optJSONArray("orderChange");
+            JSONArray card = page.optJSONArray("orderCard");
+            JSONArray other = page.optJSONArray("orderOther");
+            JSONArray cardFee = page.optJSONArray("orderCardFees");
+            JSONArray rounding = page.optJSONArray("orderRounding");
+            JSONArray discount = page.optJSONArray("orderDiscounts");
+            JSONArray service = page.optJSONArray("orderServiceCharges");
+            JSONArray tax = page.optJSONArray("orderTaxes");
+            JSONArray visitType = page.optJSONArray("orderVisitTypes");
+            for (int i = 0, n = totals.length(); i < n; i++) {
+                addOrder(totals.optLong(i), at(cash, i), at(change, i), at(card, i), at(other, i),
+                        at(cardFee, i), at(rounding, i), at(discount, i), at(service, i), at(tax, i),
+                        text(visitType, i));
+            }
+        }
+
+        JSONArray amounts = page.optJSONArray("itemAmounts");
+        if (amounts != null) {
+            JSONArray castNames = page.optJSONArray("itemCasts");
+            JSONArray category = page.optJSONArray("itemCategories");
+            JSONArray quantity = page.optJSONArray("itemQuantities");
+            for (int i = 0, n = amounts.length(); i < n; i++) {
+                addItem(text(castNames, i), text(category, i), amounts.optLong(i), at(quantity, i));
+            }
+        }
+    }
+
+    public int getOrderCount() {
+        return orderCount;
+    }
+
+    // 集計結果を印字内容に書き出す（見出しはdocに設定済みのものを使う）
+    public DailyReportDocument summarize(DailyReportDocument doc) {
+        doc.orderCount = orderCount;
+        doc.totalSales = totalSales;
+        doc.cashSales = cashSales;
+        doc.cardSales = cardSales;
+        doc.otherSales = otherSales;
+        doc.cardFees = cardFees;
+        doc.roundingAdjustment = roundingAdjustment;
+        doc.discountAmount = discountAmount;
+        doc.serviceCharge = serviceCharge;
+        doc.taxAmount = taxAmount;
+        doc.itemQuantity = itemQuantity;
+        doc.visitTypes = visitTypes.lines();
+        doc.casts = casts.lines();
+        doc.categories = categories.lines();
+        return doc;
+    }
+
+    private static long at(JSONArray array, int i) {
+        return array == null ? 0 : array.optLong(i);
+    }
+
+    // nullは"null"ではなく空文字として読む
+    private static String text(JSONArray array, int i) {
+        return array == null || array.isNull(i) ? "" : array.optString(i, "");
+    }
+}
@@ -0,0 +1,52 @@
+package com.vydray.pos.printer;
+
+import java.nio.charset.Charset;
+
+// ESC/POSコマンドと事前エンコード済みの定型文字列
+public final class EscPos {
+    public static final Charset SHIFT_JIS = Charset.forName("Shift_JIS");
+
+    public static final byte ESC = 0x1B;
+    public static final byte FS = 0x1C;
+    public static final byte GS = 0x1D;
+    public static final byte LF = 0x0A;
+
+    public static final byte[] INIT = {ESC, '@'};
+    public static final byte[] INTERNATIONAL_JAPAN = {ESC, 'R', 8};
+    public static final byte[] CODE_PAGE_KATAKANA = {ESC, 't', 1};
+    public static final byte[] KANJI_MODE_ON = {FS, '&'};
+    public static final byte[] KANJI_SHIFT_JIS = {FS, 'C', 1};
+    public static final byte[] ALIGN_LEFT = {ESC, 'a', 0};
+    public static final byte[] ALIGN_CENTER = {ESC, 'a', 1};
+    public static final byte[] ALIGN_RIGHT = {ESC, 'a', 2};
+    public static final byte[] BOLD_ON = {ESC, 'E', 1};
+    public static final byte[] BOLD_OFF = {ESC, 'E', 0};
+
+    // ジョブ先頭で送る初期化列（SDKのsendTextが内部で行っていた日本語設定に相当）
+    public static final byte[] JAPANESE_SETUP = concat(
+            INIT, INTERNATIONAL_JAPAN, CODE_PAGE_KATAKANA, KANJI_MODE_ON, KANJI_SHIFT_JIS);
+
+    public static final byte[] RULE_DOUBLE = encode("================================\n");
+    public static final byte[] RULE_SINGLE = encode("--------------------------------\n");
+
+    private EscPos() {
+    }
+
+    public static byte[] encode(String text) {
+        return text.getBytes(SHIFT_JIS);
+    }
+
+    public static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,95 @@
+package com.vydray.pos.printer;
+
+import java.util.Arrays;
+
+// 帳票の中で送信を区切って再開できる位置（コマンドやラスター画像の途中ではない改行の直後）と、
+// その位置での文字揃え・太字の状態
+//
+// 長さと効果が分かっているのは描画した帳票が使うコマンド（ESC a / ESC E / GS v 0）だけ。
+// それ以外のコマンド（printRawで届く任意のバイト列など）が出てきたら、そこから先は区切りを記録しない。
+// 引数の長さを読み違えるとコマンドの途中から再開してしまい、状態も文字揃え・太字しか戻せないため。
+// 区切りがなければ再開は帳票の先頭からになる
+final class EscPosBreaks {
+    private static final byte DLE = 0x10;
+
+    private int[] offsets = new int[16];
+    private byte[] align = new byte[16];
+    private boolean[] bold = new boolean[16];
+    private int count;
+
+    private EscPosBreaks() {
+    }
+
+    static EscPosBreaks scan(byte[] data) {
+        EscPosBreaks breaks = new EscPosBreaks();
+        byte currentAlign = 0;
+        boolean currentBold = false;
+        int i = 0;
+        int n = data.length;
+        while (i < n) {
+            byte b = data[i];
+            if (b == EscPos.LF) {
+                i++;
+                breaks.add(i, currentAlign, currentBold);
+            } else if (b == EscPos.ESC && i + 2 < n && data[i + 1] == 'a') {
+                currentAlign = data[i + 2];
+                i += 3;
+            } else if (b == EscPos.ESC && i + 2 < n && data[i + 1] == 'E') {
+                currentBold = data[i + 2] != 0;
+                i += 3;
+            } else if (b == EscPos.GS && i + 2 < n && data[i + 1] == 'v' && data[i + 2] == '0') {
+                // GS v 0 m xL xH yL yH のあとに (xL + xH*256) * (yL + yH*256) バイトの画像
+                if (i + 7 >= n) {
+                    break;
+                }
+                int widthBytes = (data[i + 4] & 0xFF) | (data[i + 5] & 0xFF) << 8;
+                int height = (data[i + 6] & 0xFF) | (data[i + 7] & 0xFF) << 8;
+                i += 8 + widthBytes * height;
+            } else if (b == EscPos.ESC || b == EscPos.FS || b == EscPos.GS || b == DLE) {
+                // 知らないコマンド: ここから先の位置は確かでない
+                break;
+            } else {
+                i++;
+            }
+        }
+        return breaks;
+    }
+
+    // limit以下で最も後ろの区切り（なければ-1）
+    int floor(int limit) {
+        int index = Arrays.binarySearch(offsets, 0, count, limit);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    int size() {
+        return count;
+    }
+
+    int offset(int index) {
+        return offsets[index];
+    }
+
+    // 途中から再開するときに、その位置の文字揃え・太字を戻すコマンド
+    byte[] resumePrefix(int index) {
+        byte[] prefix = new byte[6];
+        prefix[0] = EscPos.ESC;
+        prefix[1] = 'a';
+        prefix[2] = align[index];
+        prefix[3] = EscPos.ESC;
+        prefix[4] = 'E';
+        prefix[5] = (byte) (bold[index] ? 1 : 0);
+        return prefix;
+    }
+
+    private void add(int offset, byte currentAlign, boolean currentBold) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            align = Arrays.copyOf(align, count * 2);
+            bold = Arrays.copyOf(bold, count * 2);
+        }
+        offsets[count] = offset;
+        align[count] = currentAlign;
+        bold[count] = currentBold;
+        count++;
+    }
+}
@@ -0,0 +1,139 @@
+package com.vydray.pos.printer;
+
+import java.util.Arrays;
+
+// 帳票のESC/POSバイト列を、プリンターと同じ配置の1ビット画像に描く（領収書の画像版に使う）
+//
+// レイアウトはやり直さず、印刷に送るバイト列をそのまま解釈する
+// ・文字は半角12×24 / 全角24×24ドット（32桁で印字幅384ドット）、行の高さは LINE_HEIGHT
+// ・ESC a（文字揃え）・ESC E（太字）・GS v 0（ラスター画像）を反映し、他の設定コマンドは読み飛ばす
+// ・印字幅を超える行は折り返す
+public final class EscPosRasterizer {
+    public static final int LINE_HEIGHT = 32;
+
+    private final GlyphAtlas atlas;
+    private final int paperWidth;
+    // 描き待ちの行（Shift-JISのコード<<1 | 太字）
+    private int[] line = new int[64];
+    private int lineLength;
+    private int lineWidth;
+
+    public EscPosRasterizer(GlyphAtlas atlas) {
+        this(atlas, RasterImage.MAX_WIDTH);
+    }
+
+    public EscPosRasterizer(GlyphAtlas atlas, int paperWidth) {
+        this.atlas = atlas;
+        this.paperWidth = paperWidth;
+    }
+
+    // targetの幅はpaperWidth以上にする（余りは右側の余白になる）
+    public MonoBitmap render(byte[] data, MonoBitmap target) {
+        target.reset();
+        lineLength = 0;
+        lineWidth = 0;
+        int y = 0;
+        int align = 0;
+        boolean bold = false;
+        int i = 0;
+        int n = data.length;
+        while (i < n) {
+            int b = data[i] & 0xFF;
+            if (b == EscPos.LF) {
+                flush(target, y, align);
+                y += LINE_HEIGHT;
+                i++;
+            } else if (b == EscPos.ESC && i + 1 < n) {
+                byte command = data[i + 1];
+                if (command == '@') {
+                    align = 0;
+                    bold = false;
+                    i += 2;
+                } else {
+                    // このアプリが使うESCコマンドは引数1バイト
+                    if (i + 2 < n) {
+                        if (command == 'a') {
+                            align = data[i + 2];
+                        } else if (command == 'E') {
+                            bold = data[i + 2] != 0;
+                        }
+                    }
+                    i += 3;
+                }
+            } else if (b == EscPos.GS && i + 2 < n && data[i + 1] == 'v' && data[i + 2] == '0') {
+                if (i + 7 >= n) {
+                    break;
+                }
+                int widthBytes = (data[i + 4] & 0xFF) | (data[i + 5] & 0xFF) << 8;
+                int height = (data[i + 6] & 0xFF) | (data[i + 7] & 0xFF) << 8;
+                if (i + 8 + widthBytes * height > n) {
+                    break;
+                }
+                // 書きかけの行を先に印字してから画像を置く
+                if (lineLength > 0) {
+                    flush(target, y, align);
+                    y += LINE_HEIGHT;
+                }
+                target.drawRaster(data, i + 8, widthBytes, height, offset(align, widthBytes * 8), y);
+                y += height;
+                i += 8 + widthBytes * height;
+            } else if (b == EscPos.FS && i + 1 < n && data[i + 1] == '&') {
+                i += 2;
+            } else if (b == EscPos.GS || b == EscPos.FS) {
+                // その他のGS/FSコマンドは引数1バイト
+                i += 3;
+            } else if (GlyphAtlas.isLeadByte(b) && i + 1 < n) {
+                y = append(target, b << 8 | (data[i + 1] & 0xFF), bold, y, align);
+                i += 2;
+            } else {
+                if (b >= 0x20) {
+                    y = append(target, b, bold, y, align);
+                }
+                i++;
+            }
+        }
+        flush(target, y, align);
+        target.trimBottom();
+        return target;
+    }
+
+    private int append(MonoBitmap target, int sjis, boolean bold, int y, int align) {
+        int width = GlyphAtlas.isWide(sjis) ? GlyphAtlas.FULL_WIDTH : GlyphAtlas.HALF_WIDTH;
+        // 印字幅を超えたら折り返す
+        if (lineWidth + width > paperWidth) {
+            flush(target, y, align);
+            y += LINE_HEIGHT;
+        }
+        if (lineLength == line.length) {
+            line = Arrays.copyOf(line, lineLength * 2);
+        }
+        line[lineLength++] = sjis << 1 | (bold ? 1 : 0);
+        lineWidth += width;
+        return y;
+    }
+
+    private void flush(MonoBitmap target, int y, int align) {
+        int x = offset(align, lineWidth);
+        for (int i = 0; i < lineLength; i++) {
+            int sjis = line[i] >>> 1;
+            atlas.draw(sjis, (line[i] & 1) != 0, target, x, y);
+            x += GlyphAtlas.isWide(sjis) ? GlyphAtlas.FULL_WIDTH : GlyphAtlas.HALF_WIDTH;
+        }
+        lineLength = 0;
+        lineWidth = 0;
+    }
+
+    private int offset(int align, int width) {
+        int space = Math.max(0, paperWidth - width);
+        switch (align) {
+            case 1:
+            case '1':
+                return space / 2;
+            case 2:
+            case '2':
+                return space;
+            default:
+                return 0;
+        }
+    }
+}
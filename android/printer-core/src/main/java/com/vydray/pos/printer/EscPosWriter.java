@@ -0,0 +1,217 @@
+package com.vydray.pos.printer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+// 再利用可能なバッファへShift-JIS/ESC-POSのバイト列を直接書き込む
+public final class EscPosWriter {
+    public enum Align {
+        LEFT,
+        CENTER,
+        RIGHT
+    }
+
+    private static final byte[] YEN = EscPos.encode("¥");
+
+    private final CharsetEncoder encoder = EscPos.SHIFT_JIS.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final byte[] digits = new byte[32];
+    private ByteBuffer buffer;
+
+    public EscPosWriter() {
+        this(4096);
+    }
+
+    public EscPosWriter(int initialCapacity) {
+        buffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    public EscPosWriter reset() {
+        buffer.clear();
+        return this;
+    }
+
+    public int size() {
+        return buffer.position();
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    public EscPosWriter bytes(byte[] data) {
+        ensure(data.length);
+        buffer.put(data);
+        return this;
+    }
+
+    public EscPosWriter write(byte b) {
+        ensure(1);
+        buffer.put(b);
+        return this;
+    }
+
+    public EscPosWriter newline() {
+        return write(EscPos.LF);
+    }
+
+    // 可変文字列のエンコード（ASCIIのみなら変換器を通さない）
+    public EscPosWriter text(String text) {
+        int length = text.length();
+        boolean ascii = true;
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) >= 0x80) {
+                ascii = false;
+                break;
+            }
+        }
+
+        if (ascii) {
+            ensure(length);
+            for (int i = 0; i < length; i++) {
+                buffer.put((byte) text.charAt(i));
+            }
+            return this;
+        }
+
+        CharBuffer in = CharBuffer.wrap(text);
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(in, buffer, true);
+            if (result.isOverflow()) {
+                grow(length * 2);
+                continue;
+            }
+            result = encoder.flush(buffer);
+            if (result.isOverflow()) {
+                grow(16);
+                continue;
+            }
+            return this;
+        }
+    }
+
+    // start以降に書いた内容を幅widthに揃える（Shift-JISは1バイト=半角1桁なのでバイト数で数える）
+    public EscPosWriter pad(int start, int width, Align align) {
+        int written = buffer.position() - start;
+        int padding = width - written;
+        if (padding <= 0 || align == Align.LEFT) {
+            return spaces(padding);
+        }
+
+        int before = align == Align.RIGHT ? padding : padding / 2;
+        ensure(padding);
+        byte[] array = buffer.array();
+        System.arraycopy(array, start, array, start + before, written);
+        Arrays.fill(array, start, start + before, (byte) ' ');
+        buffer.position(start + before + written);
+        return spaces(padding - before);
+    }
+
+    // valueStart以降（金額など）を行末（32桁目）に右寄せする。行に収まらなければそのまま
+    public EscPosWriter alignRight(int lineStart, int valueStart) {
+        return pad(valueStart, TextWidth.LINE_WIDTH - (valueStart - lineStart), Align.RIGHT);
+    }
+
+    // 幅widthに収まる分だけ書く（はみ出す部分は切り捨て）
+    public EscPosWriter fitted(String text, int width) {
+        int end = TextWidth.fit(text, 0, width);
+        return text(end == text.length() ? text : text.substring(0, end));
+    }
+
+    // 1行目は幅firstWidth、2行目以降はindent桁下げて行末まで使って折り返す。各行は改行で終わる
+    public EscPosWriter wrapped(String text, int firstWidth, int indent) {
+        int from = 0;
+        int n = text.length();
+        int available = firstWidth;
+        do {
+            int end = TextWidth.fit(text, from, available);
+            if (end == from && from < n) {
+                // 1文字も入らない幅でも必ず進める
+                end = from + (Character.isHighSurrogate(text.charAt(from)) && from + 1 < n ? 2 : 1);
+            }
+            text(from == 0 && end == n ? text : text.substring(from, end)).newline();
+            from = end;
+            // 折り返し位置の空白は次の行に持ち越さない
+            while (from < n && text.charAt(from) == ' ') {
+                from++;
+            }
+            if (from < n) {
+                spaces(indent);
+                available = TextWidth.LINE_WIDTH - indent;
+            }
+        } while (from < n);
+        return this;
+    }
+
+    public EscPosWriter spaces(int count) {
+        if (count > 0) {
+            ensure(count);
+            for (int i = 0; i < count; i++) {
+                buffer.put((byte) ' ');
+            }
+        }
+        return this;
+    }
+
+    public EscPosWriter number(long value) {
+        return formatNumber(value, false);
+    }
+
+    // ¥12,345 形式（桁区切りは手書きで行う）
+    public EscPosWriter yen(long value) {
+        if (value < 0) {
+            write((byte) '-');
+            value = -value;
+        }
+        bytes(YEN);
+        return formatNumber(value, true);
+    }
+
+    // 12,345 形式（通貨記号なし）
+    public EscPosWriter grouped(long value) {
+        return formatNumber(value, true);
+    }
+
+    private EscPosWriter formatNumber(long value, boolean grouping) {
+        boolean negative = value < 0;
+        int pos = digits.length;
+        int count = 0;
+        // Long.MIN_VALUEでも桁が崩れないよう負数のまま桁を取り出す
+        long v = negative ? value : -value;
+        do {
+            if (grouping && count > 0 && count % 3 == 0) {
+                digits[--pos] = ',';
+            }
+            digits[--pos] = (byte) ('0' - (v % 10));
+            v /= 10;
+            count++;
+        } while (v != 0);
+
+        ensure(digits.length - pos + 1);
+        if (negative) {
+            buffer.put((byte) '-');
+        }
+        buffer.put(digits, pos, digits.length - pos);
+        return this;
+    }
+
+    private void ensure(int additional) {
+        if (buffer.remaining() < additional) {
+            grow(additional);
+        }
+    }
+
+    private void grow(int additional) {
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + additional);
+        ByteBuffer larger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+}
@@ -0,0 +1,6 @@
+package com.vydray.pos.printer;
+
+// 送信の合間に状態を問い合わせられる出力経路（ChunkedTransmitterが流量制御に使う）
+public interface FlowControlledTransport extends PrinterTransport {
+    PrinterStatus readStatus() throws PrintException;
+}
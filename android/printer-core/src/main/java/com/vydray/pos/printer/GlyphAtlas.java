@@ -0,0 +1,156 @@
+package com.vydray.pos.printer;
+
+import java.util.Arrays;
+
+// 文字ごとの1ビットのグリフのキャッシュ（印字と同じ12×24 / 24×24ドットのセル）
+//
+// キーはShift-JISのコードと太字の有無。初めての文字だけRasterizerでフォントから描き、
+// 以降は固定サイズのページから写すだけにする（領収書1枚で同じ文字を何度も使うため）
+public final class GlyphAtlas {
+    public static final int CELL_HEIGHT = 24;
+    // 半角（ASCII・半角カナ）と全角のセル幅
+    public static final int HALF_WIDTH = 12;
+    public static final int FULL_WIDTH = 24;
+
+    private static final int ROW_BYTES = FULL_WIDTH / 8;
+    private static final int GLYPH_BYTES = ROW_BYTES * CELL_HEIGHT;
+    private static final int PAGE_GLYPHS = 256;
+
+    // フォントから1文字を描く（端末ではAndroidのフォント、テストでは固定の模様）
+    public interface Rasterizer {
+        // textを幅width×高さheightのセルに描き、黒ドットをdots[y * width + x]に立てる
+        void draw(String text, int width, int height, boolean bold, boolean[] dots);
+    }
+
+    private final Rasterizer rasterizer;
+    private byte[][] pages = new byte[4][];
+    private int count;
+    // キー+1 → グリフ番号（開番地法。0は空き）
+    private int[] keys = new int[1024];
+    private int[] glyphs = new int[1024];
+    private final boolean[] dots = new boolean[FULL_WIDTH * CELL_HEIGHT];
+    private final byte[] code = new byte[2];
+
+    public GlyphAtlas(Rasterizer rasterizer) {
+        this.rasterizer = rasterizer;
+    }
+
+    // 2バイト文字（Shift-JISの全角）ならtrue
+    public static boolean isWide(int code) {
+        return code > 0xFF;
+    }
+
+    // Shift-JISの全角文字の1バイト目
+    public static boolean isLeadByte(int b) {
+        return (b >= 0x81 && b <= 0x9F) || (b >= 0xE0 && b <= 0xFC);
+    }
+
+    // 文字をあらかじめ描いておく（会計直後の1枚目から速く作れるように）
+    public synchronized void warmUp(String text) {
+        byte[] encoded = EscPos.encode(text);
+        for (int i = 0; i < encoded.length; i++) {
+            int b = encoded[i] & 0xFF;
+            int value = b;
+            if (isLeadByte(b) && i + 1 < encoded.length) {
+                value = b << 8 | (encoded[++i] & 0xFF);
+            }
+            if (value >= 0x20) {
+                glyph(value, false);
+                glyph(value, true);
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    // Shift-JISのコードの文字を(x, y)を左上にして描く
+    public synchronized void draw(int sjis, boolean bold, MonoBitmap target, int x, int y) {
+        int index = glyph(sjis, bold);
+        byte[] page = pages[index / PAGE_GLYPHS];
+        int offset = (index % PAGE_GLYPHS) * GLYPH_BYTES;
+        int width = isWide(sjis) ? FULL_WIDTH : HALF_WIDTH;
+        target.ensureHeight(y + CELL_HEIGHT);
+        for (int row = 0; row < CELL_HEIGHT; row++) {
+            int bits = (page[offset] & 0xFF) << 16 | (page[offset + 1] & 0xFF) << 8 | (page[offset + 2] & 0xFF);
+            offset += ROW_BYTES;
+            target.orRow(x, y + row, bits, width);
+        }
+    }
+
+    private int glyph(int sjis, boolean bold) {
+        int key = (sjis << 1 | (bold ? 1 : 0)) + 1;
+        int mask = keys.length - 1;
+        int slot = (key * 0x9E3779B9 >>> 16) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return glyphs[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int index = rasterize(sjis, bold);
+        keys[slot] = key;
+        glyphs[slot] = index;
+        // 埋まりが半分を超えたら広げる
+        if (count * 2 > keys.length) {
+            rehash();
+        }
+        return index;
+    }
+
+    private int rasterize(int sjis, boolean bold) {
+        boolean wide = isWide(sjis);
+        int width = wide ? FULL_WIDTH : HALF_WIDTH;
+        String text;
+        if (wide) {
+            code[0] = (byte) (sjis >> 8);
+            code[1] = (byte) sjis;
+            text = new String(code, 0, 2, EscPos.SHIFT_JIS);
+        } else {
+            code[0] = (byte) sjis;
+            text = new String(code, 0, 1, EscPos.SHIFT_JIS);
+        }
+        Arrays.fill(dots, false);
+        rasterizer.draw(text, width, CELL_HEIGHT, bold, dots);
+
+        int index = count++;
+        int pageIndex = index / PAGE_GLYPHS;
+        if (pageIndex == pages.length) {
+            pages = Arrays.copyOf(pages, pages.length * 2);
+        }
+        if (pages[pageIndex] == null) {
+            pages[pageIndex] = new byte[PAGE_GLYPHS * GLYPH_BYTES];
+        }
+        byte[] page = pages[pageIndex];
+        int offset = (index % PAGE_GLYPHS) * GLYPH_BYTES;
+        for (int row = 0; row < CELL_HEIGHT; row++) {
+            for (int column = 0; column < width; column++) {
+                if (dots[row * width + column]) {
+                    page[offset + row * ROW_BYTES + (column >> 3)] |= (byte) (0x80 >> (column & 7));
+                }
+            }
+        }
+        return index;
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldGlyphs = glyphs;
+        keys = new int[oldKeys.length * 2];
+        glyphs = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0) {
+                continue;
+            }
+            int slot = (oldKeys[i] * 0x9E3779B9 >>> 16) & mask;
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            glyphs[slot] = oldGlyphs[i];
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.vydray.pos.printer;
+
+import java.util.Arrays;
+
+// HdrHistogram方式の対数・線形バケットによる所要時間の分布（マイクロ秒、固定メモリ）
+//
+// 2の累乗ごとにSUB_BUCKETS/2個へ等分するので、どの値でも誤差は約3%以内に収まる
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    // 記録できる上限（約71分。超えた値は上限として数える）
+    static final long MAX_VALUE = (1L << 32) - 1;
+    private static final int BUCKETS = indexOf(MAX_VALUE) + 1;
+
+    private final int[] counts = new int[BUCKETS];
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public void record(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        counts[indexOf(value)]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    // percentileは0〜100。バケット内の最大値を返す（実際の値以上になる側に丸める）
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalent(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // value >> shift が [HALF, SUB_BUCKETS) に入るようにずらす
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >> shift) - HALF;
+    }
+
+    static long highestEquivalent(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int offset = index - SUB_BUCKETS;
+        int shift = offset / HALF + 1;
+        long sub = offset % HALF + HALF;
+        return ((sub + 1) << shift) - 1;
+    }
+}
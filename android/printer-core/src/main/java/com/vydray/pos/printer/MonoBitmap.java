@@ -0,0 +1,115 @@
+package com.vydray.pos.printer;
+
+import java.util.Arrays;
+
+// 1ビットの画像（1バイト8ドット、MSBが左。GS v 0のラスターと同じ並び）
+// 高さは描いた分だけ伸び、reset()でバッファを残したまま使い回す
+public final class MonoBitmap {
+    private final int width;
+    private final int rowBytes;
+    private byte[] data;
+    private int height;
+
+    public MonoBitmap(int width) {
+        this.width = width;
+        this.rowBytes = (width + 7) / 8;
+        this.data = new byte[rowBytes * 256];
+    }
+
+    public MonoBitmap reset() {
+        Arrays.fill(data, 0, rowBytes * height, (byte) 0);
+        height = 0;
+        return this;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getRowBytes() {
+        return rowBytes;
+    }
+
+    // trueが黒ドット
+    public boolean get(int x, int y) {
+        return (data[y * rowBytes + (x >> 3)] & (0x80 >> (x & 7))) != 0;
+    }
+
+    // 範囲外は描かない
+    public void set(int x, int y) {
+        if (x < 0 || x >= width || y < 0) {
+            return;
+        }
+        ensureHeight(y + 1);
+        data[y * rowBytes + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+    }
+
+    // 1行分のドット（MSB詰めで最大24ドット）を(x, y)から重ねる。範囲外にはみ出す分は描かない
+    void orRow(int x, int y, int bits, int count) {
+        if (bits == 0 || y < 0) {
+            return;
+        }
+        if (x < 0 || x + count > width) {
+            for (int i = 0; i < count; i++) {
+                if ((bits & (0x800000 >>> i)) != 0) {
+                    set(x + i, y);
+                }
+            }
+            return;
+        }
+        // 24ドットを書き込み先のバイト境界に合わせて最大4バイトに分ける
+        long shifted = ((long) bits << 8) >>> (x & 7);
+        int index = y * rowBytes + (x >> 3);
+        int last = (x + count - 1) >> 3;
+        for (int i = 0; index + i <= y * rowBytes + last; i++) {
+            data[index + i] |= (byte) (shifted >>> (24 - i * 8));
+        }
+    }
+
+    // GS v 0のラスター（widthBytes×rows）を(x, y)に重ねる
+    void drawRaster(byte[] raster, int offset, int widthBytes, int rows, int x, int y) {
+        ensureHeight(y + rows);
+        for (int row = 0; row < rows; row++) {
+            int source = offset + row * widthBytes;
+            for (int column = 0; column < widthBytes; column++) {
+                int bits = raster[source + column] & 0xFF;
+                while (bits != 0) {
+                    int bit = Integer.numberOfLeadingZeros(bits) - 24;
+                    set(x + column * 8 + bit, y + row);
+                    bits &= ~(0x80 >> bit);
+                }
+            }
+        }
+    }
+
+    void ensureHeight(int rows) {
+        if (rows <= height) {
+            return;
+        }
+        if (rows * rowBytes > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, rows * rowBytes));
+        }
+        height = rows;
+    }
+
+    // 下端の白い行を落とす（用紙を切るための送りは画像に含めない）
+    void trimBottom() {
+        while (height > 0) {
+            int start = (height - 1) * rowBytes;
+            for (int i = start; i < start + rowBytes; i++) {
+                if (data[i] != 0) {
+                    return;
+                }
+            }
+            height--;
+        }
+    }
+
+    byte[] buffer() {
+        return data;
+    }
+}
@@ -0,0 +1,103 @@
+package com.vydray.pos.printer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// 1ビットの画像をPNG（グレースケール1ビット）にする。感熱紙の見た目のまま小さく送れる
+public final class MonoPng {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private MonoPng() {
+    }
+
+    // scale倍（ドットを縦横に複製）し、周りにmarginドットの白い余白を付ける
+    public static byte[] encode(MonoBitmap bitmap, int scale, int margin) {
+        if (scale < 1) {
+            throw new IllegalArgumentException("scale must be at least 1");
+        }
+        int width = (bitmap.getWidth() + margin * 2) * scale;
+        int height = (bitmap.getHeight() + margin * 2) * scale;
+        int rowBytes = (width + 7) / 8;
+
+        try {
+            ByteArrayOutputStream png = new ByteArrayOutputStream(4096);
+            png.write(SIGNATURE);
+
+            byte[] header = new byte[13];
+            putInt(header, 0, width);
+            putInt(header, 4, height);
+            header[8] = 1;  // ビット深度
+            header[9] = 0;  // グレースケール
+            writeChunk(png, "IHDR", header, header.length);
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(4096);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            try {
+                DeflaterOutputStream out = new DeflaterOutputStream(compressed, deflater, 8192);
+                // 行頭のフィルター種別（0: なし）+ 画素。PNGでは1が白
+                byte[] row = new byte[1 + rowBytes];
+                byte[] source = bitmap.buffer();
+                int sourceRowBytes = bitmap.getRowBytes();
+                for (int y = 0; y < bitmap.getHeight() + margin * 2; y++) {
+                    Arrays.fill(row, 1, row.length, (byte) 0xFF);
+                    int sourceY = y - margin;
+                    if (sourceY >= 0 && sourceY < bitmap.getHeight()) {
+                        int base = sourceY * sourceRowBytes;
+                        // 感熱紙の画像はほとんど白なので、黒ドットのあるバイトだけ見る
+                        for (int column = 0; column < sourceRowBytes; column++) {
+                            int bits = source[base + column] & 0xFF;
+                            while (bits != 0) {
+                                int bit = Integer.numberOfLeadingZeros(bits) - 24;
+                                bits &= ~(0x80 >> bit);
+                                int left = (column * 8 + bit + margin) * scale;
+                                for (int px = left; px < left + scale; px++) {
+                                    row[1 + (px >> 3)] &= (byte) ~(0x80 >> (px & 7));
+                                }
+                            }
+                        }
+                    }
+                    for (int dy = 0; dy < scale; dy++) {
+                        out.write(row);
+                    }
+                }
+                out.finish();
+            } finally {
+                deflater.end();
+            }
+            byte[] idat = compressed.toByteArray();
+            writeChunk(png, "IDAT", idat, idat.length);
+            writeChunk(png, "IEND", new byte[0], 0);
+            return png.toByteArray();
+        } catch (IOException e) {
+            // メモリ上への書き込みなので起きない
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeChunk(ByteArrayOutputStream out, String type, byte[] data, int length)
+            throws IOException {
+        byte[] lengthBytes = new byte[4];
+        putInt(lengthBytes, 0, length);
+        out.write(lengthBytes);
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        byte[] crcBytes = new byte[4];
+        putInt(crcBytes, 0, (int) crc.getValue());
+        out.write(crcBytes);
+    }
+
+    private static void putInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+}
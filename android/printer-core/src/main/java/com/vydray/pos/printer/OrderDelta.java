@@ -0,0 +1,94 @@
+package com.vydray.pos.printer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 前回印刷した注文と今回の注文の差分（同じ商品・キャスト・単価の行は数量を合算して比べる）
+public final class OrderDelta {
+
+    public enum Kind {
+        ADDED,      // 新しい商品
+        INCREASED,  // 数量が増えた
+        DECREASED,  // 数量が減った（0にはなっていない）
+        CANCELLED   // 注文から消えた
+    }
+
+    public static final class Change {
+        public final Kind kind;
+        public final String name;
+        public final String cast;
+        public final int price;
+        // 増減した数量（減った場合は負）
+        public final int quantityDelta;
+        // 変更後の数量
+        public final int quantity;
+
+        Change(Kind kind, String name, String cast, int price, int quantityDelta, int quantity) {
+            this.kind = kind;
+            this.name = name;
+            this.cast = cast;
+            this.price = price;
+            this.quantityDelta = quantityDelta;
+            this.quantity = quantity;
+        }
+    }
+
+    private OrderDelta() {
+    }
+
+    // 今回の注文の並び順で、そのあとに取り消された商品を並べる
+    public static List<Change> compute(List<OrderItem> printed, List<OrderItem> current) {
+        Map<String, OrderItem> before = aggregate(printed);
+        Map<String, OrderItem> after = aggregate(current);
+        if (before.isEmpty() && after.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Change> changes = new ArrayList<>();
+        for (Map.Entry<String, OrderItem> entry : after.entrySet()) {
+            OrderItem item = entry.getValue();
+            OrderItem previous = before.get(entry.getKey());
+            int previousQuantity = previous == null ? 0 : previous.quantity;
+            int delta = item.quantity - previousQuantity;
+            if (delta == 0) {
+                continue;
+            }
+            Kind kind = previousQuantity == 0 ? Kind.ADDED : delta > 0 ? Kind.INCREASED : Kind.DECREASED;
+            changes.add(new Change(kind, item.name, item.cast, item.price, delta, item.quantity));
+        }
+        for (Map.Entry<String, OrderItem> entry : before.entrySet()) {
+            if (!after.containsKey(entry.getKey())) {
+                OrderItem item = entry.getValue();
+                changes.add(new Change(Kind.CANCELLED, item.name, item.cast, item.price, -item.quantity, 0));
+            }
+        }
+        return changes;
+    }
+
+    private static Map<String, OrderItem> aggregate(List<OrderItem> items) {
+        Map<String, OrderItem> result = new LinkedHashMap<>();
+        if (items == null) {
+            return result;
+        }
+        for (OrderItem item : items) {
+            String key = item.name + '\u0000' + item.cast + '\u0000' + item.price;
+            OrderItem existing = result.get(key);
+            result.put(key, existing == null ? item
+                    : new OrderItem(item.name, item.cast, existing.quantity + item.quantity, item.price));
+        }
+        // 数量0の行は注文にないものとして扱う
+        List<String> empty = new ArrayList<>();
+        for (Map.Entry<String, OrderItem> entry : result.entrySet()) {
+            if (entry.getValue().quantity <= 0) {
+                empty.add(entry.getKey());
+            }
+        }
+        for (String key : empty) {
+            result.remove(key);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,68 @@
+package com.vydray.pos.printer;
+
+import java.util.List;
+
+// 追加伝票をESC/POSバイト列に描画する（変更1件につき商品名・キャスト・数量の2〜3行）
+public final class OrderDeltaRenderer {
+    private static final byte[] ADDED_HEADER = EscPos.concat(EscPos.ALIGN_CENTER, EscPos.BOLD_ON,
+            EscPos.encode("追加注文\n"), EscPos.BOLD_OFF, EscPos.ALIGN_LEFT);
+    private static final byte[] CHANGED_HEADER = EscPos.concat(EscPos.ALIGN_CENTER, EscPos.BOLD_ON,
+            EscPos.encode("注文変更\n"), EscPos.BOLD_OFF, EscPos.ALIGN_LEFT);
+    private static final byte[] TABLE = EscPos.encode("卓番号: ");
+    private static final byte[] GUEST = EscPos.encode("お客様: ");
+    private static final byte[] PRINTED_AT = EscPos.encode("時刻: ");
+    private static final byte[] QUANTITY = EscPos.encode("  数量");
+    private static final byte[] TOTAL_OPEN = EscPos.encode(" (計");
+    private static final byte[] TOTAL_CLOSE = EscPos.encode(")");
+
+    private static final String DECREASED = "【減】";
+    private static final String CANCELLED = "【取消】";
+
+    private OrderDeltaRenderer() {
+    }
+
+    public static void render(OrderDeltaTicket doc, EscPosWriter out) {
+        out.bytes(doc.hasReductions() ? CHANGED_HEADER : ADDED_HEADER).bytes(EscPos.RULE_DOUBLE);
+
+        OrderSlipRenderer.labeled(TABLE, doc.tableName, out);
+        if (doc.guestName != null && !doc.guestName.isEmpty()) {
+            OrderSlipRenderer.labeled(GUEST, doc.guestName, out);
+        }
+        OrderSlipRenderer.labeled(PRINTED_AT, doc.timestamp, out);
+        out.bytes(EscPos.RULE_SINGLE);
+
+        List<OrderDelta.Change> changes = doc.changes;
+        for (int i = 0, n = changes.size(); i < n; i++) {
+            writeChange(changes.get(i), out);
+        }
+        out.bytes(EscPos.RULE_SINGLE);
+    }
+
+    // 取消・減数は太字にして見落とさないようにする
+    private static void writeChange(OrderDelta.Change change, EscPosWriter out) {
+        boolean reduction = change.quantityDelta < 0;
+        if (reduction) {
+            out.bytes(EscPos.BOLD_ON);
+        }
+        String name = change.kind == OrderDelta.Kind.CANCELLED ? CANCELLED + change.name
+                : change.kind == OrderDelta.Kind.DECREASED ? DECREASED + change.name
+                : change.name;
+        out.wrapped(name, TextWidth.LINE_WIDTH, OrderSlipRenderer.ITEM_INDENT);
+        if (change.cast != null && !change.cast.isEmpty()) {
+            out.wrapped("  (" + change.cast + ")", TextWidth.LINE_WIDTH, OrderSlipRenderer.CAST_INDENT);
+        }
+
+        // "  数量                 +2 (計3)"
+        int start = out.size();
+        out.bytes(QUANTITY);
+        int value = out.size();
+        out.write((byte) (reduction ? '-' : '+')).number(Math.abs(change.quantityDelta));
+        if (change.kind == OrderDelta.Kind.INCREASED || change.kind == OrderDelta.Kind.DECREASED) {
+            out.bytes(TOTAL_OPEN).number(change.quantity).bytes(TOTAL_CLOSE);
+        }
+        out.alignRight(start, value).newline();
+        if (reduction) {
+            out.bytes(EscPos.BOLD_OFF);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.vydray.pos.printer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 追加伝票（キッチン・バー向けに前回からの変更分だけを印字する）
+public class OrderDeltaTicket {
+    public String tableName = "";
+    public String guestName = "";
+    public String timestamp = "";
+
+    public List<OrderDelta.Change> changes = new ArrayList<>();
+
+    // 減数・取消を含むか（見出しを変える）
+    public boolean hasReductions() {
+        for (OrderDelta.Change change : changes) {
+            if (change.quantityDelta < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
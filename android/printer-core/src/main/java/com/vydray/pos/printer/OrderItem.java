@@ -0,0 +1,39 @@
+package com.vydray.pos.printer;
+
+import java.util.List;
+
+// 注文明細1行
+public final class OrderItem implements TemplateBinding {
+    public final String name;
+    public final String cast;
+    public final int quantity;
+    public final int price;
+
+    public OrderItem(String name, String cast, int quantity, int price) {
+        this.name = name;
+        this.cast = cast;
+        this.quantity = quantity;
+        this.price = price;
+    }
+
+    public long total() {
+        return (long) quantity * price;
+    }
+
+    @Override
+    public Object value(String field) {
+        switch (field) {
+            case "name": return name;
+            case "cast": return cast;
+            case "quantity": return quantity;
+            case "price": return price;
+            case "total": return total();
+            default: return null;
+        }
+    }
+
+    @Override
+    public List<? extends TemplateBinding> rows(String field) {
+        return null;
+    }
+}
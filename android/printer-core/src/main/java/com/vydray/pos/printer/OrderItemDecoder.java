@@ -0,0 +1,158 @@
+package com.vydray.pos.printer;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 注文明細を1パスで型付きのOrderItemに変換する（不正な行は捨てずにエラーとして返す）
+public final class OrderItemDecoder {
+
+    public static final class ItemError {
+        public final int index;
+        public final String reason;
+
+        ItemError(int index, String reason) {
+            this.index = index;
+            this.reason = reason;
+        }
+    }
+
+    public static final class Result {
+        public final List<OrderItem> items;
+        public final List<ItemError> errors;
+
+        Result(List<OrderItem> items, List<ItemError> errors) {
+            this.items = items;
+            this.errors = errors;
+        }
+
+        public boolean isValid() {
+            return errors.isEmpty();
+        }
+    }
+
+    private OrderItemDecoder() {
+    }
+
+    // 印刷呼び出しのデータから注文明細を読み込む（列形式があればそちらを優先）
+    public static Result decodePayload(JSONObject data) {
+        JSONArray names = data.optJSONArray("itemNames");
+        if (names != null) {
+            return decodeColumns(names, data.optJSONArray("itemQuantities"),
+                    data.optJSONArray("itemPrices"), data.optJSONArray("itemCasts"));
+        }
+        // JSArrayはJSONArrayなので、文字列化して再パースせずそのまま読む
+        return decode(data.optJSONArray("orderItems"));
+    }
+
+    // [{name, cast, quantity, price}, ...] 形式
+    public static Result decode(JSONArray array) {
+        int length = array == null ? 0 : array.length();
+        List<OrderItem> items = new ArrayList<>(length);
+        List<ItemError> errors = new ArrayList<>();
+
+        for (int i = 0; i < length; i++) {
+            Object value = array.opt(i);
+            if (!(value instanceof JSONObject)) {
+                errors.add(new ItemError(i, "item is not an object"));
+                continue;
+            }
+            JSONObject item = (JSONObject) value;
+            decodeItem(i, item.opt("name"), item.opt("cast"), item.opt("quantity"), item.opt("price"),
+                    items, errors);
+        }
+        return new Result(items, errors);
+    }
+
+    // 列ごとの配列形式（itemNames / itemQuantities / itemPrices / itemCasts）
+    public static Result decodeColumns(JSONArray names, JSONArray quantities, JSONArray prices, JSONArray casts) {
+        List<ItemError> errors = new ArrayList<>();
+        int length = names == null ? 0 : names.length();
+        if (quantities == null || prices == null
+                || quantities.length() != length || prices.length() != length
+                || (casts != null && casts.length() != length)) {
+            errors.add(new ItemError(-1, "item columns have different lengths"));
+            return new Result(new ArrayList<OrderItem>(), errors);
+        }
+
+        List<OrderItem> items = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            decodeItem(i, names.opt(i), casts == null ? null : casts.opt(i), quantities.opt(i), prices.opt(i),
+                    items, errors);
+        }
+        return new Result(items, errors);
+    }
+
+    private static void decodeItem(int index, Object name, Object cast, Object quantity, Object price,
+                                   List<OrderItem> items, List<ItemError> errors) {
+        if (!(name instanceof String) || ((String) name).isEmpty()) {
+            errors.add(new ItemError(index, "name is required"));
+            return;
+        }
+
+        String castText = castText(cast);
+        if (castText == null) {
+            errors.add(new ItemError(index, "cast must be a string or an array of strings"));
+            return;
+        }
+
+        // 数量は省略時1（従来の既定値）
+        int qty = 1;
+        if (quantity != null && quantity != JSONObject.NULL) {
+            if (!isWholeNumber(quantity) || ((Number) quantity).longValue() < 1
+                    || ((Number) quantity).longValue() > Integer.MAX_VALUE) {
+                errors.add(new ItemError(index, "quantity must be a positive integer"));
+                return;
+            }
+            qty = ((Number) quantity).intValue();
+        }
+
+        // 値引きなどで負の単価はありうる
+        if (!isWholeNumber(price) || Math.abs(((Number) price).longValue()) > Integer.MAX_VALUE) {
+            errors.add(new ItemError(index, "price must be an integer"));
+            return;
+        }
+
+        items.add(new OrderItem((String) name, castText, qty, ((Number) price).intValue()));
+    }
+
+    // キャストは文字列か文字列配列（配列は", "で連結）
+    private static String castText(Object cast) {
+        if (cast == null || cast == JSONObject.NULL) {
+            return "";
+        }
+        if (cast instanceof String) {
+            return (String) cast;
+        }
+        if (!(cast instanceof JSONArray)) {
+            return null;
+        }
+
+        JSONArray names = (JSONArray) cast;
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < names.length(); i++) {
+            Object name = names.opt(i);
+            if (!(name instanceof String)) {
+                return null;
+            }
+            if (joined.length() > 0) {
+                joined.append(", ");
+            }
+            joined.append((String) name);
+        }
+        return joined.toString();
+    }
+
+    private static boolean isWholeNumber(Object value) {
+        if (value instanceof Integer || value instanceof Long) {
+            return true;
+        }
+        if (value instanceof Number) {
+            double d = ((Number) value).doubleValue();
+            return d == Math.rint(d) && !Double.isInfinite(d);
+        }
+        return false;
+    }
+}
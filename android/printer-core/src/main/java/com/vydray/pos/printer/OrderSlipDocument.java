@@ -0,0 +1,72 @@
+package com.vydray.pos.printer;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 会計伝票の印字内容
+public class OrderSlipDocument implements TemplateBinding {
+    public String tableName = "";
+    public String guestName = "";
+    public String castName = "";
+    public String elapsedTime = "";
+    public String timestamp = "";
+
+    public int subtotal;
+    public int serviceTax;
+    public int roundedTotal;
+    public int roundingAdjustment;
+
+    // カード手数料と端数処理
+    public int cardFeeRate;
+    public int roundingUnit = 1;
+    public int roundingMethod;
+
+    public List<OrderItem> items = new ArrayList<>();
+
+    // 印刷呼び出しのデータから読み込む（明細はOrderItemDecoderで別に読む）
+    public static OrderSlipDocument read(JSONObject data) {
+        OrderSlipDocument doc = new OrderSlipDocument();
+        doc.tableName = data.optString("tableName", "");
+        doc.guestName = data.optString("guestName", "");
+        doc.castName = data.optString("castName", "");
+        doc.elapsedTime = data.optString("elapsedTime", "");
+        doc.timestamp = data.optString("timestamp", "");
+
+        doc.subtotal = data.optInt("subtotal", 0);
+        doc.serviceTax = data.optInt("serviceTax", 0);
+        doc.roundedTotal = data.optInt("roundedTotal", 0);
+        doc.roundingAdjustment = data.optInt("roundingAdjustment", 0);
+
+        // カード手数料と端数処理
+        doc.cardFeeRate = data.optInt("cardFeeRate", 0);
+        doc.roundingUnit = data.optInt("roundingUnit", 1);
+        doc.roundingMethod = data.optInt("roundingMethod", 0);
+        return doc;
+    }
+
+    // テンプレートから参照する値（計算済みの値も含む）
+    @Override
+    public Object value(String field) {
+        switch (field) {
+            case "tableName": return tableName;
+            case "guestName": return guestName;
+            case "castName": return castName;
+            case "elapsedTime": return elapsedTime;
+            case "timestamp": return timestamp;
+            case "subtotal": return subtotal;
+            case "serviceTax": return serviceTax;
+            case "roundedTotal": return roundedTotal;
+            case "roundingAdjustment": return roundingAdjustment;
+            case "cardFeeRate": return cardFeeRate;
+            case "cardAmount": return PaymentMath.cardAmount(roundedTotal, cardFeeRate, roundingUnit, roundingMethod);
+            default: return null;
+        }
+    }
+
+    @Override
+    public List<? extends TemplateBinding> rows(String field) {
+        return "items".equals(field) ? items : null;
+    }
+}
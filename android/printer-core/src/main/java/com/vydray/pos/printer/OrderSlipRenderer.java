@@ -0,0 +1,113 @@
+package com.vydray.pos.printer;
+
+import java.util.List;
+
+// 会計伝票をESC/POSバイト列に描画する（金額は32桁目に右寄せ、長い名前は折り返す）
+public final class OrderSlipRenderer {
+    private static final byte[] HEADER = EscPos.concat(
+            EscPos.ALIGN_CENTER, EscPos.encode("会計伝票\n"), EscPos.ALIGN_LEFT);
+    private static final byte[] TABLE = EscPos.encode("卓番号: ");
+    private static final byte[] GUEST = EscPos.encode("お客様: ");
+    private static final byte[] CAST = EscPos.encode("推し: ");
+    private static final byte[] ELAPSED = EscPos.encode("滞在時間: ");
+    private static final byte[] PRINTED_AT = EscPos.encode("印刷時刻: ");
+    private static final byte[] ITEMS_HEADER = EscPos.encode("【注文明細】\n");
+    private static final byte[] SUBTOTAL = EscPos.encode("小計:");
+    private static final byte[] SERVICE = EscPos.encode("サービス料:");
+    private static final byte[] ROUNDING = EscPos.encode("端数調整:");
+    private static final byte[] TOTAL = EscPos.encode("合計金額:");
+    private static final byte[] PAYMENT_HEADER = EscPos.encode("\n【お支払い方法】\n");
+    private static final byte[] CASH_CASE = EscPos.encode("現金の場合:");
+    private static final byte[] CARD_CASE = EscPos.encode("カードの場合:");
+    private static final byte[] CARD_FEE_OPEN = EscPos.encode("  (カード手数料");
+    private static final byte[] CARD_FEE_CLOSE = EscPos.encode("%含む)\n");
+
+    private static final byte[] QTY_INDENT = EscPos.encode("  ");
+    private static final byte[] TIMES = EscPos.encode(" × ");
+    // 明細名・キャスト名の折り返し行の字下げ
+    static final int ITEM_INDENT = 2;
+    static final int CAST_INDENT = 4;
+
+    private OrderSlipRenderer() {
+    }
+
+    public static void render(OrderSlipDocument doc, EscPosWriter out) {
+        // ヘッダー
+        out.bytes(HEADER).bytes(EscPos.RULE_DOUBLE);
+
+        // 基本情報
+        labeled(TABLE, doc.tableName, out);
+        labeled(GUEST, doc.guestName, out);
+        labeled(CAST, doc.castName, out);
+        labeled(ELAPSED, doc.elapsedTime, out);
+        labeled(PRINTED_AT, doc.timestamp, out);
+        out.bytes(EscPos.RULE_DOUBLE);
+
+        // 注文明細
+        out.bytes(ITEMS_HEADER);
+        List<OrderItem> items = doc.items;
+        for (int i = 0, n = items.size(); i < n; i++) {
+            OrderItem item = items.get(i);
+            out.wrapped(item.name, TextWidth.LINE_WIDTH, ITEM_INDENT);
+            if (item.cast != null && !item.cast.isEmpty()) {
+                out.wrapped("  (" + item.cast + ")", TextWidth.LINE_WIDTH, CAST_INDENT);
+            }
+            writeQuantityLine(item, out);
+        }
+
+        out.bytes(EscPos.RULE_SINGLE);
+
+        // 合計
+        writeAmount(SUBTOTAL, doc.subtotal, out);
+        writeAmount(SERVICE, doc.serviceTax, out);
+        if (doc.roundingAdjustment != 0) {
+            writeRounding(doc.roundingAdjustment, out);
+        }
+        out.bytes(EscPos.RULE_DOUBLE);
+
+        // 合計金額
+        writeAmount(TOTAL, doc.roundedTotal, out);
+        out.bytes(EscPos.RULE_DOUBLE);
+
+        // お支払い方法による金額（カード手数料が設定されている場合のみ表示）
+        if (doc.cardFeeRate > 0) {
+            int cardAmount = PaymentMath.cardAmount(
+                    doc.roundedTotal, doc.cardFeeRate, doc.roundingUnit, doc.roundingMethod);
+            out.bytes(PAYMENT_HEADER);
+            writeAmount(CASH_CASE, doc.roundedTotal, out);
+            writeAmount(CARD_CASE, cardAmount, out);
+            out.bytes(CARD_FEE_OPEN).number(doc.cardFeeRate).bytes(CARD_FEE_CLOSE);
+            out.bytes(EscPos.RULE_DOUBLE);
+        }
+    }
+
+    // ラベルと値（1行に収まらない分は切り捨て）
+    static void labeled(byte[] label, String value, EscPosWriter out) {
+        out.bytes(label).fitted(value, TextWidth.LINE_WIDTH - label.length).newline();
+    }
+
+    // "小計:                    ¥2,500"（Shift-JISのバイト数がそのまま桁数）
+    static void writeAmount(byte[] label, long amount, EscPosWriter out) {
+        int start = out.size();
+        out.bytes(label);
+        int value = out.size();
+        out.yen(amount).alignRight(start, value).newline();
+    }
+
+    // "  2 × ¥1,000              ¥2,000"
+    static void writeQuantityLine(OrderItem item, EscPosWriter out) {
+        int start = out.size();
+        out.bytes(QTY_INDENT).number(item.quantity).bytes(TIMES).yen(item.price);
+        int value = out.size();
+        out.write((byte) ' ').yen(item.total()).alignRight(start, value).newline();
+    }
+
+    // 端数調整は符号を明示する
+    static void writeRounding(int adjustment, EscPosWriter out) {
+        int start = out.size();
+        out.bytes(ROUNDING);
+        int value = out.size();
+        out.write((byte) (adjustment < 0 ? '-' : '+')).yen(Math.abs(adjustment))
+                .alignRight(start, value).newline();
+    }
+}
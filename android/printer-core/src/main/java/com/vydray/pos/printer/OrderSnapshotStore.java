@@ -0,0 +1,237 @@
+package com.vydray.pos.printer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 卓ごとに最後に追加伝票で印刷した注文（アプリを再起動しても差分が続くようにファイルへ保存）
+//
+// 積んだだけの追加伝票は印刷が済むまで基準に確定しない。取り消された・期限切れで捨てられた
+// 伝票の変更は、次の追加伝票にもう一度載る（厨房に届かないより二重に出る方を選ぶ）
+public class OrderSnapshotStore {
+    private static final int FORMAT_VERSION = 2;
+
+    private final File file;
+    private final Map<String, List<OrderItem>> snapshots = new LinkedHashMap<>();
+    // 積んだがまだ印刷されていない追加伝票（ジョブID → 卓とその時点の注文。積んだ順）
+    private final Map<Long, Pending> pending = new LinkedHashMap<>();
+
+    private static final class Pending {
+        final String tableName;
+        final List<OrderItem> items;
+
+        Pending(String tableName, List<OrderItem> items) {
+            this.tableName = tableName;
+            this.items = items;
+        }
+    }
+
+    public OrderSnapshotStore(File file) {
+        this.file = file;
+        load();
+    }
+
+    // 次の追加伝票の差分の基準（印刷待ちの伝票があればその最新、なければ印刷済みの注文）
+    public synchronized List<OrderItem> get(String tableName) {
+        List<OrderItem> items = snapshots.get(tableName);
+        for (Pending entry : pending.values()) {
+            if (entry.tableName.equals(tableName)) {
+                items = entry.items;
+            }
+        }
+        return items == null ? Collections.<OrderItem>emptyList() : items;
+    }
+
+    // 追加伝票を積んだ（印刷が済んだらcompletedで基準に確定する）
+    public synchronized void submitted(String tableName, long jobId, List<OrderItem> items) throws IOException {
+        pending.put(jobId, new Pending(tableName, Collections.unmodifiableList(new ArrayList<>(items))));
+        save();
+    }
+
+    // 追加伝票が印刷された。同じ卓のそれより前の印刷待ちも済んだものとして片付ける
+    public synchronized void completed(long jobId) throws IOException {
+        Pending done = pending.get(jobId);
+        if (done == null) {
+            return;
+        }
+        Iterator<Map.Entry<Long, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Pending> entry = it.next();
+            if (entry.getValue().tableName.equals(done.tableName)) {
+                it.remove();
+            }
+            if (entry.getKey() == jobId) {
+                break;
+            }
+        }
+        if (done.items.isEmpty()) {
+            snapshots.remove(done.tableName);
+        } else {
+            snapshots.put(done.tableName, done.items);
+        }
+        save();
+    }
+
+    // 追加伝票が取り消された・捨てられた。同じ卓のそれ以降の印刷待ちも、この伝票を前提にした差分なので基準にしない
+    public synchronized void dropped(long jobId) throws IOException {
+        Pending gone = pending.get(jobId);
+        if (gone == null) {
+            return;
+        }
+        boolean after = false;
+        Iterator<Map.Entry<Long, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Pending> entry = it.next();
+            after |= entry.getKey() == jobId;
+            if (after && entry.getValue().tableName.equals(gone.tableName)) {
+                it.remove();
+            }
+        }
+        save();
+    }
+
+    public synchronized void put(String tableName, List<OrderItem> items) throws IOException {
+        if (items.isEmpty()) {
+            snapshots.remove(tableName);
+        } else {
+            snapshots.put(tableName, Collections.unmodifiableList(new ArrayList<>(items)));
+        }
+        save();
+    }
+
+    // 会計・卓の片付けで次の客のために消す
+    public synchronized void clear(String tableName) throws IOException {
+        boolean changed = snapshots.remove(tableName) != null;
+        Iterator<Pending> it = pending.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().tableName.equals(tableName)) {
+                it.remove();
+                changed = true;
+            }
+        }
+        if (changed) {
+            save();
+        }
+    }
+
+    // 卓の移動で客ごと基準を移す（移動先に残っていた基準は捨てる）
+    public synchronized void move(String fromTable, String toTable) throws IOException {
+        if (fromTable.equals(toTable)) {
+            return;
+        }
+        snapshots.remove(toTable);
+        List<OrderItem> items = snapshots.remove(fromTable);
+        if (items != null) {
+            snapshots.put(toTable, items);
+        }
+        Iterator<Map.Entry<Long, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Pending> entry = it.next();
+            Pending value = entry.getValue();
+            if (value.tableName.equals(toTable)) {
+                it.remove();
+            } else if (value.tableName.equals(fromTable)) {
+                entry.setValue(new Pending(toTable, value.items));
+            }
+        }
+        save();
+    }
+
+    public synchronized List<String> getTableNames() {
+        return new ArrayList<>(snapshots.keySet());
+    }
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int version = in.readInt();
+            if (version != 1 && version != FORMAT_VERSION) {
+                return;
+            }
+            int tables = in.readInt();
+            for (int t = 0; t < tables; t++) {
+                String tableName = in.readUTF();
+                snapshots.put(tableName, readItems(in));
+            }
+            // 版1には印刷待ちがない
+            if (version >= 2) {
+                int jobs = in.readInt();
+                for (int j = 0; j < jobs; j++) {
+                    long jobId = in.readLong();
+                    String tableName = in.readUTF();
+                    pending.put(jobId, new Pending(tableName, readItems(in)));
+                }
+            }
+        } catch (IOException e) {
+            // 壊れていたら差分の基準なしで始める（次の追加伝票は全品を印字する）
+            snapshots.clear();
+            pending.clear();
+        }
+    }
+
+    private static List<OrderItem> readItems(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<OrderItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new OrderItem(in.readUTF(), in.readUTF(), in.readInt(), in.readInt()));
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    private static void writeItems(DataOutputStream out, List<OrderItem> items) throws IOException {
+        out.writeInt(items.size());
+        for (OrderItem item : items) {
+            out.writeUTF(item.name);
+            out.writeUTF(item.cast == null ? "" : item.cast);
+            out.writeInt(item.quantity);
+            out.writeInt(item.price);
+        }
+    }
+
+    private void save() throws IOException {
+        File directory = file.getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create snapshot directory: " + directory);
+        }
+
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(snapshots.size());
+            for (Map.Entry<String, List<OrderItem>> entry : snapshots.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeItems(out, entry.getValue());
+            }
+            out.writeInt(pending.size());
+            for (Map.Entry<Long, Pending> entry : pending.entrySet()) {
+                out.writeLong(entry.getKey());
+                out.writeUTF(entry.getValue().tableName);
+                writeItems(out, entry.getValue().items);
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Cannot commit order snapshot: " + file);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.vydray.pos.printer;
+
+// 金額計算のヘルパー
+public final class PaymentMath {
+    private PaymentMath() {
+    }
+
+    // 端数処理を適用する（0: 切り上げ, 1: 切り捨て, 2: 四捨五入）
+    public static int applyRounding(int amount, int roundingUnit, int roundingMethod) {
+        if (roundingUnit <= 1) {
+            return amount;
+        }
+
+        int remainder = amount % roundingUnit;
+
+        if (remainder == 0) {
+            return amount;
+        }
+
+        switch (roundingMethod) {
+            case 0: // 切り上げ
+                return amount - remainder + roundingUnit;
+            case 1: // 切り捨て
+                return amount - remainder;
+            case 2: // 四捨五入
+                if (remainder >= roundingUnit / 2.0) {
+                    return amount - remainder + roundingUnit;
+                } else {
+                    return amount - remainder;
+                }
+            default:
+                return amount;
+        }
+    }
+
+    // カード払いの場合の請求額（手数料を加えて端数処理）
+    public static int cardAmount(int roundedTotal, int cardFeeRate, int roundingUnit, int roundingMethod) {
+        int calculatedCardFee = (int) Math.round(roundedTotal * cardFeeRate / 100.0);
+        return applyRounding(roundedTotal + calculatedCardFee, roundingUnit, roundingMethod);
+    }
+
+    // 収入印紙の金額表示（不要な場合は空文字）
+    public static String revenueStampAmount(int total) {
+        if (total >= 5000000) {
+            return "2,000";
+        } else if (total >= 3000000) {
+            return "1,000";
+        } else if (total >= 2000000) {
+            return "600";
+        } else if (total >= 1000000) {
+            return "400";
+        } else if (total >= 50000) {
+            return "200";
+        }
+        return "";
+    }
+}
@@ -0,0 +1,49 @@
+package com.vydray.pos.printer;
+
+// 印刷処理の失敗を表す例外（SDKの例外はここに包んで扱う）
+public class PrintException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    // 失敗の分類（メトリクスで原因別に数える）
+    public enum Reason {
+        NOT_CONNECTED,
+        CONNECT,
+        STATUS,
+        SEND,
+        CUT,
+        PAPER_OUT,
+        COVER_OPEN,
+        NO_ROUTE,
+        // レーンの待ち行列が満杯
+        QUEUE_FULL,
+        // レーンの待ち時間の上限を超えた
+        TIMEOUT,
+        // 実行前に取り消された
+        CANCELLED,
+        UNEXPECTED
+    }
+
+    private final Reason reason;
+
+    public PrintException(String message) {
+        this(Reason.UNEXPECTED, message);
+    }
+
+    public PrintException(String message, Throwable cause) {
+        this(Reason.UNEXPECTED, message, cause);
+    }
+
+    public PrintException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public PrintException(Reason reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,483 @@
+package com.vydray.pos.printer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// 直近の印刷セッションの記録（文字化け・印字漏れを現場の外で再現するためのフライトレコーダー）
+//
+// 1ジョブ1スロットで、入力（プラグインに渡されたJSON）・送ったバイト列・段階ごとの時間・
+// 失敗時の例外（SDKの例外を含む）・そのときの接続状態を残す
+// スロットは固定数を輪番で使い、バッファは初回に確保して使い回す（上限を超える分は切り詰める）
+// dump()で圧縮したバイナリに書き出し、printer-benchの FlightRecordReplay で再生する
+public class PrintFlightRecorder {
+    private static final int MAGIC = 0x50465231; // "PFR1"
+    private static final int FORMAT_VERSION = 1;
+
+    public static final int DEFAULT_CAPACITY = 24;
+    public static final int DEFAULT_PAYLOAD_BYTES = 8 * 1024;
+    public static final int DEFAULT_DATA_BYTES = 32 * 1024;
+    // 帳票ごとの長さを残す上限（まとめ印刷はここまでで切り分ける）
+    private static final int MAX_DOCUMENTS = 64;
+
+    public enum Outcome {
+        // スプーラーに積んだまま
+        QUEUED,
+        PRINTED,
+        // 失敗して再試行待ち
+        RETRYING,
+        FAILED
+    }
+
+    // 書き出し・読み込み用の1件分（スロットの写し）
+    public static final class Record {
+        public long jobId;
+        public long submittedAt;
+        public String documentType = "";
+        public String role = "";
+        public String lane = "";
+        // 描画に使ったテンプレートの版（組み込みのレイアウトなら空）
+        public String template = "";
+        public Outcome outcome = Outcome.QUEUED;
+        public int attempts;
+        public int printedCount;
+        // 積んだとき・終わったときの接続状態と接続先
+        public String submitState = "";
+        public String endState = "";
+        public String address = "";
+        public String errorReason = "";
+        public String errorMessage = "";
+        // 例外の原因（SDKの例外のクラス名とメッセージ）
+        public String cause = "";
+        public long decodeNanos;
+        public long renderNanos;
+        public long queueNanos;
+        public long sendNanos;
+        public long cutNanos;
+        public byte[] payload = new byte[0];
+        public boolean payloadTruncated;
+        // 送ったバイト列（帳票を連結したもの）と帳票ごとの長さ
+        public byte[] data = new byte[0];
+        public long dataLength;
+        public int[] documentLengths = new int[0];
+        public int documentCount;
+
+        // 入力のJSON（切り詰められていたらnull）
+        public String payloadText() {
+            return payloadTruncated ? null : new String(payload, StandardCharsets.UTF_8);
+        }
+
+        // 記録したバイト列を帳票ごとに切り分ける（切り詰められた帳票は途中まで）
+        public List<byte[]> documents() {
+            List<byte[]> result = new ArrayList<>();
+            int offset = 0;
+            for (int length : documentLengths) {
+                int stored = Math.min(length, data.length - offset);
+                if (stored <= 0) {
+                    break;
+                }
+                byte[] document = new byte[stored];
+                System.arraycopy(data, offset, document, 0, stored);
+                result.add(document);
+                offset += stored;
+            }
+            return result;
+        }
+
+        public boolean isDataTruncated() {
+            return data.length < dataLength;
+        }
+    }
+
+    private final int capacity;
+    private final int payloadBytes;
+    private final int dataBytes;
+    // 必要になった分だけ確保する（最大capacity個）
+    private final Slot[] slots;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private int next;
+
+    public PrintFlightRecorder() {
+        this(DEFAULT_CAPACITY, DEFAULT_PAYLOAD_BYTES, DEFAULT_DATA_BYTES);
+    }
+
+    public PrintFlightRecorder(int capacity, int payloadBytes, int dataBytes) {
+        this.capacity = capacity;
+        this.payloadBytes = payloadBytes;
+        this.dataBytes = dataBytes;
+        this.slots = new Slot[capacity];
+    }
+
+    // スプーラーに積んだジョブを記録する（unitは振り分け先、timingは呼び出し側の計測）
+    public synchronized void submitted(long jobId, PrinterUnit unit, String documentType, PrintLane lane,
+                                       byte[][] documents, String payload, String template,
+                                       PrintMetrics.CallTiming timing) {
+        Slot slot = take();
+        slot.jobId = jobId;
+        slot.documentType = documentType;
+        slot.lane = lane.wireName();
+        slot.template = template;
+        slot.outcome = Outcome.QUEUED;
+        if (unit != null) {
+            slot.role = unit.getRole();
+            slot.submitState = unit.getConnection().getState().name();
+            slot.address = unit.getConnection().getAddress();
+        }
+        if (timing != null) {
+            slot.decodeNanos = timing.decodeNanos;
+            slot.renderNanos = timing.renderNanos;
+        }
+        storePayload(slot, payload);
+        storeDocuments(slot, documents);
+    }
+
+    // 積む前に断られた呼び出し（キューが満杯など）
+    public synchronized void rejected(String documentType, PrintLane lane, byte[][] documents, String payload,
+                                      String template, PrintMetrics.CallTiming timing, PrintException error) {
+        Slot slot = take();
+        slot.documentType = documentType;
+        slot.lane = lane.wireName();
+        slot.template = template;
+        if (timing != null) {
+            slot.decodeNanos = timing.decodeNanos;
+            slot.renderNanos = timing.renderNanos;
+        }
+        storePayload(slot, payload);
+        storeDocuments(slot, documents);
+        fail(slot, error, false);
+    }
+
+    public synchronized void completed(PrinterUnit unit, PrintJob job) {
+        Slot slot = slotFor(unit, job);
+        slot.outcome = Outcome.PRINTED;
+        finish(slot, unit, job);
+    }
+
+    public synchronized void failed(PrinterUnit unit, PrintJob job, PrintException error, boolean willRetry) {
+        Slot slot = slotFor(unit, job);
+        fail(slot, error, willRetry);
+        finish(slot, unit, job);
+    }
+
+    // 新しい順の写し
+    public synchronized List<Record> records() {
+        List<Record> result = new ArrayList<>();
+        for (int i = 1; i <= capacity; i++) {
+            Slot slot = slots[(next - i + capacity) % capacity];
+            if (slot != null && slot.used) {
+                result.add(slot.toRecord());
+            }
+        }
+        return result;
+    }
+
+    // 記録をgzip圧縮したバイナリで書き出す
+    public void dump(OutputStream target) throws IOException {
+        write(records(), target);
+    }
+
+    public static void write(List<Record> records, OutputStream target) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(target);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(gzip));
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(records.size());
+        for (Record record : records) {
+            out.writeLong(record.jobId);
+            out.writeLong(record.submittedAt);
+            out.writeUTF(record.documentType);
+            out.writeUTF(record.role);
+            out.writeUTF(record.lane);
+            out.writeUTF(record.template);
+            out.writeUTF(record.outcome.name());
+            out.writeInt(record.attempts);
+            out.writeInt(record.printedCount);
+            out.writeUTF(record.submitState);
+            out.writeUTF(record.endState);
+            out.writeUTF(record.address);
+            out.writeUTF(record.errorReason);
+            out.writeUTF(record.errorMessage);
+            out.writeUTF(record.cause);
+            out.writeLong(record.decodeNanos);
+            out.writeLong(record.renderNanos);
+            out.writeLong(record.queueNanos);
+            out.writeLong(record.sendNanos);
+            out.writeLong(record.cutNanos);
+            out.writeBoolean(record.payloadTruncated);
+            out.writeInt(record.payload.length);
+            out.write(record.payload);
+            out.writeInt(record.documentCount);
+            out.writeInt(record.documentLengths.length);
+            for (int length : record.documentLengths) {
+                out.writeInt(length);
+            }
+            out.writeLong(record.dataLength);
+            out.writeInt(record.data.length);
+            out.write(record.data);
+        }
+        out.flush();
+        gzip.finish();
+    }
+
+    // dump()の出力を読み戻す（新しい順）
+    public static List<Record> read(InputStream source) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(source)));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a print flight record");
+        }
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported flight record version: " + version);
+        }
+        int count = in.readInt();
+        List<Record> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Record record = new Record();
+            record.jobId = in.readLong();
+            record.submittedAt = in.readLong();
+            record.documentType = in.readUTF();
+            record.role = in.readUTF();
+            record.lane = in.readUTF();
+            record.template = in.readUTF();
+            try {
+                record.outcome = Outcome.valueOf(in.readUTF());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Unknown outcome in flight record", e);
+            }
+            record.attempts = in.readInt();
+            record.printedCount = in.readInt();
+            record.submitState = in.readUTF();
+            record.endState = in.readUTF();
+            record.address = in.readUTF();
+            record.errorReason = in.readUTF();
+            record.errorMessage = in.readUTF();
+            record.cause = in.readUTF();
+            record.decodeNanos = in.readLong();
+            record.renderNanos = in.readLong();
+            record.queueNanos = in.readLong();
+            record.sendNanos = in.readLong();
+            record.cutNanos = in.readLong();
+            record.payloadTruncated = in.readBoolean();
+            record.payload = new byte[in.readInt()];
+            in.readFully(record.payload);
+            record.documentCount = in.readInt();
+            record.documentLengths = new int[in.readInt()];
+            for (int j = 0; j < record.documentLengths.length; j++) {
+                record.documentLengths[j] = in.readInt();
+            }
+            record.dataLength = in.readLong();
+            record.data = new byte[in.readInt()];
+            in.readFully(record.data);
+            records.add(record);
+        }
+        return records;
+    }
+
+    // 次のスロット（一番古い記録を上書きする）
+    private Slot take() {
+        Slot slot = slots[next];
+        if (slot == null) {
+            slot = new Slot(payloadBytes, dataBytes);
+            slots[next] = slot;
+        }
+        next = (next + 1) % capacity;
+        slot.reset();
+        slot.submittedAt = System.currentTimeMillis();
+        return slot;
+    }
+
+    // 記録済みのスロット。再起動前に積まれたジョブなど、見つからなければ新しく記録する
+    private Slot slotFor(PrinterUnit unit, PrintJob job) {
+        for (Slot slot : slots) {
+            if (slot != null && slot.used && slot.jobId == job.getId()) {
+                return slot;
+            }
+        }
+        Slot slot = take();
+        slot.jobId = job.getId();
+        slot.documentType = job.getDocumentType();
+        slot.lane = job.getLane().wireName();
+        if (unit != null) {
+            slot.role = unit.getRole();
+        }
+        storeDocuments(slot, job.getDocuments());
+        return slot;
+    }
+
+    private void finish(Slot slot, PrinterUnit unit, PrintJob job) {
+        slot.attempts = job.getAttempts();
+        slot.printedCount = job.getPrintedCount();
+        slot.queueNanos = job.getQueueNanos();
+        slot.sendNanos = job.getSendNanos();
+        slot.cutNanos = job.getCutNanos();
+        if (unit != null) {
+            slot.endState = unit.getConnection().getState().name();
+            if (unit.getConnection().getAddress() != null) {
+                slot.address = unit.getConnection().getAddress();
+            }
+        }
+    }
+
+    private static void fail(Slot slot, PrintException error, boolean willRetry) {
+        slot.outcome = willRetry ? Outcome.RETRYING : Outcome.FAILED;
+        slot.errorReason = error.getReason().name();
+        slot.errorMessage = error.getMessage();
+        Throwable cause = error.getCause();
+        slot.cause = cause == null ? null : cause.getClass().getName() + ": " + cause.getMessage();
+    }
+
+    // UTF-8で固定バッファに詰める（入りきらなければ切り詰める）
+    private void storePayload(Slot slot, String payload) {
+        slot.payloadLength = 0;
+        slot.payloadTruncated = false;
+        if (payload == null) {
+            return;
+        }
+        ByteBuffer out = ByteBuffer.wrap(slot.payload);
+        encoder.reset();
+        CoderResult result = encoder.encode(CharBuffer.wrap(payload), out, true);
+        slot.payloadTruncated = result.isOverflow();
+        slot.payloadLength = out.position();
+    }
+
+    private static void storeDocuments(Slot slot, byte[][] documents) {
+        slot.dataStored = 0;
+        slot.dataLength = 0;
+        slot.documentCount = documents.length;
+        for (int i = 0; i < documents.length; i++) {
+            byte[] document = documents[i];
+            if (i < MAX_DOCUMENTS) {
+                slot.documentLengths[i] = document.length;
+            }
+            slot.dataLength += document.length;
+            int length = Math.min(document.length, slot.data.length - slot.dataStored);
+            if (length > 0) {
+                System.arraycopy(document, 0, slot.data, slot.dataStored, length);
+                slot.dataStored += length;
+            }
+        }
+    }
+
+    private static final class Slot {
+        final byte[] payload;
+        final byte[] data;
+        final int[] documentLengths = new int[MAX_DOCUMENTS];
+        boolean used;
+        long jobId;
+        long submittedAt;
+        String documentType;
+        String role;
+        String lane;
+        String template;
+        Outcome outcome;
+        int attempts;
+        int printedCount;
+        String submitState;
+        String endState;
+        String address;
+        String errorReason;
+        String errorMessage;
+        String cause;
+        long decodeNanos;
+        long renderNanos;
+        long queueNanos;
+        long sendNanos;
+        long cutNanos;
+        int payloadLength;
+        boolean payloadTruncated;
+        int dataStored;
+        long dataLength;
+        int documentCount;
+
+        Slot(int payloadBytes, int dataBytes) {
+            payload = new byte[payloadBytes];
+            data = new byte[dataBytes];
+        }
+
+        void reset() {
+            used = true;
+            jobId = 0;
+            documentType = null;
+            role = null;
+            lane = null;
+            template = null;
+            outcome = Outcome.QUEUED;
+            attempts = 0;
+            printedCount = 0;
+            submitState = null;
+            endState = null;
+            address = null;
+            errorReason = null;
+            errorMessage = null;
+            cause = null;
+            decodeNanos = 0;
+            renderNanos = 0;
+            queueNanos = 0;
+            sendNanos = 0;
+            cutNanos = 0;
+            payloadLength = 0;
+            payloadTruncated = false;
+            dataStored = 0;
+            dataLength = 0;
+            documentCount = 0;
+        }
+
+        Record toRecord() {
+            Record record = new Record();
+            record.jobId = jobId;
+            record.submittedAt = submittedAt;
+            record.documentType = text(documentType);
+            record.role = text(role);
+            record.lane = text(lane);
+            record.template = text(template);
+            record.outcome = outcome;
+            record.attempts = attempts;
+            record.printedCount = printedCount;
+            record.submitState = text(submitState);
+            record.endState = text(endState);
+            record.address = text(address);
+            record.errorReason = text(errorReason);
+            record.errorMessage = text(errorMessage);
+            record.cause = text(cause);
+            record.decodeNanos = decodeNanos;
+            record.renderNanos = renderNanos;
+            record.queueNanos = queueNanos;
+            record.sendNanos = sendNanos;
+            record.cutNanos = cutNanos;
+            record.payload = new byte[payloadLength];
+            System.arraycopy(payload, 0, record.payload, 0, payloadLength);
+            record.payloadTruncated = payloadTruncated;
+            record.data = new byte[dataStored];
+            System.arraycopy(data, 0, record.data, 0, dataStored);
+            record.dataLength = dataLength;
+            record.documentCount = documentCount;
+            record.documentLengths = new int[Math.min(documentCount, MAX_DOCUMENTS)];
+            System.arraycopy(documentLengths, 0, record.documentLengths, 0, record.documentLengths.length);
+            return record;
+        }
+
+        // writeUTFはnullを書けず、64KB未満に限られる
+        private static String text(String value) {
+            if (value == null) {
+                return "";
+            }
+            return value.length() > 1024 ? value.substring(0, 1024) : value;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.vydray.pos.printer;
+
+// スプーラーに積まれる1件の印刷ジョブ（複数帳票をまとめて1セッションで印刷できる）
+public final class PrintJob {
+    private final long id;
+    private final String documentType;
+    private final PrintLane lane;
+    private final byte[][] documents;
+    private final long createdAt;
+    private int attempts;
+    // 印刷済みの帳票数（リトライ時は続きから印刷する）
+    private int printedCount;
+    // 印刷中の帳票でプリンターが受け取った位置（再試行はここから続ける、ジャーナルには残さない）
+    private int resumeOffset;
+    // 今回の起動で積まれた時刻と、最後の試行の送信・カット時間（ナノ秒、ジャーナルには残さない）
+    final long enqueuedNanos = System.nanoTime();
+    private long queueNanos;
+    private long sendNanos;
+    private long cutNanos;
+
+    public PrintJob(long id, String documentType, byte[] data, long createdAt) {
+        this(id, documentType, new byte[][] {data}, createdAt);
+    }
+
+    public PrintJob(long id, String documentType, byte[][] documents, long createdAt) {
+        this(id, documentType, PrintLane.of(documentType), documents, createdAt);
+    }
+
+    public PrintJob(long id, String documentType, PrintLane lane, byte[][] documents, long createdAt) {
+        this.id = id;
+        this.documentType = documentType;
+        this.lane = lane;
+        this.documents = documents;
+        this.createdAt = createdAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getDocumentType() {
+        return documentType;
+    }
+
+    public PrintLane getLane() {
+        return lane;
+    }
+
+    // 帳票ごとのESC/POSバイト列（エンコード済み、帳票の間で用紙をカットする）
+    public byte[][] getDocuments() {
+        return documents;
+    }
+
+    public int getDocumentCount() {
+        return documents.length;
+    }
+
+    public int getPrintedCount() {
+        return printedCount;
+    }
+
+    public int getResumeOffset() {
+        return resumeOffset;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    // 積まれてから最後の試行を始めるまで
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    public long getSendNanos() {
+        return sendNanos;
+    }
+
+    public long getCutNanos() {
+        return cutNanos;
+    }
+
+    void startAttempt(long nowNanos) {
+        queueNanos = nowNanos - enqueuedNanos;
+        sendNanos = 0;
+        cutNanos = 0;
+    }
+
+    void addSendNanos(long nanos) {
+        sendNanos += nanos;
+    }
+
+    void addCutNanos(long nanos) {
+        cutNanos += nanos;
+    }
+
+    void markPrinted(int count) {
+        printedCount = count;
+        resumeOffset = 0;
+    }
+
+    void acknowledge(int offset) {
+        resumeOffset = offset;
+    }
+
+    void incrementAttempts() {
+        attempts++;
+    }
+
+    void resetAttempts() {
+        attempts = 0;
+    }
+}
@@ -0,0 +1,180 @@
+package com.vydray.pos.printer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// 未印刷ジョブのディスク保存（1ジョブ1ファイル、印刷完了で削除）
+// 複数帳票のジョブは印刷済みの帳票数を別の小さなファイルに残し、再起動後は続きから印刷する
+public class PrintJournal {
+    private static final int FORMAT_VERSION = 4;
+    // レーンを保存していなかった旧形式（帳票種別から決める）
+    private static final int MULTI_DOCUMENT_VERSION = 3;
+    // 帳票1件だけを保存していた旧形式
+    private static final int SINGLE_DOCUMENT_VERSION = 2;
+    private static final String SUFFIX = ".job";
+    private static final String PROGRESS_SUFFIX = ".progress";
+
+    private final File directory;
+
+    public PrintJournal(File directory) {
+        this.directory = directory;
+    }
+
+    public void write(PrintJob job) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory: " + directory);
+        }
+
+        File tmp = new File(directory, job.getId() + SUFFIX + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(job.getId());
+            out.writeUTF(job.getDocumentType());
+            out.writeUTF(job.getLane().wireName());
+            out.writeLong(job.getCreatedAt());
+            out.writeInt(job.getDocumentCount());
+            for (byte[] document : job.getDocuments()) {
+                out.writeInt(document.length);
+                out.write(document);
+            }
+            out.flush();
+            // 電源断でも残るようにディスクへ同期してから確定させる
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+
+        if (!tmp.renameTo(fileFor(job.getId()))) {
+            tmp.delete();
+            throw new IOException("Cannot commit journal entry: " + job.getId());
+        }
+    }
+
+    public void delete(long jobId) {
+        fileFor(jobId).delete();
+        progressFor(jobId).delete();
+    }
+
+    // 印刷済みの帳票数を残す（帳票を切るたびに呼ぶ。本体は書き直さない）
+    public void writeProgress(long jobId, int printedCount) throws IOException {
+        File tmp = new File(directory, jobId + PROGRESS_SUFFIX + ".tmp");
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            DataOutputStream out = new DataOutputStream(fos);
+            out.writeInt(printedCount);
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+
+        if (!tmp.renameTo(progressFor(jobId))) {
+            tmp.delete();
+            throw new IOException("Cannot commit journal progress: " + jobId);
+        }
+    }
+
+    // 保存済みのジョブをID順に読み込む（壊れたファイルは破棄）
+    public List<PrintJob> load() {
+        List<PrintJob> jobs = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return jobs;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".tmp")) {
+                file.delete();
+                continue;
+            }
+            if (!name.endsWith(SUFFIX)) {
+                continue;
+            }
+            try {
+                PrintJob job = read(file);
+                job.markPrinted(readProgress(job));
+                jobs.add(job);
+            } catch (IOException e) {
+                file.delete();
+            }
+        }
+
+        // 本体が消えた後に残った進捗は捨てる
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(PROGRESS_SUFFIX)
+                    && !new File(directory, name.substring(0, name.length() - PROGRESS_SUFFIX.length()) + SUFFIX).isFile()) {
+                file.delete();
+            }
+        }
+
+        Collections.sort(jobs, new Comparator<PrintJob>() {
+            @Override
+            public int compare(PrintJob a, PrintJob b) {
+                return Long.compare(a.getId(), b.getId());
+            }
+        });
+        return jobs;
+    }
+
+    private PrintJob read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION && version != MULTI_DOCUMENT_VERSION && version != SINGLE_DOCUMENT_VERSION) {
+                throw new IOException("Unsupported journal format: " + file);
+            }
+            long id = in.readLong();
+            String documentType = in.readUTF();
+            PrintLane lane = version == FORMAT_VERSION ? PrintLane.fromWireName(in.readUTF()) : null;
+            if (lane == null) {
+                lane = PrintLane.of(documentType);
+            }
+            long createdAt = in.readLong();
+            int count = version == SINGLE_DOCUMENT_VERSION ? 1 : in.readInt();
+            byte[][] documents = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                documents[i] = new byte[in.readInt()];
+                in.readFully(documents[i]);
+            }
+            return new PrintJob(id, documentType, lane, documents, createdAt);
+        } finally {
+            in.close();
+        }
+    }
+
+    // 進捗が読めなければ最初から印刷する（二重に出る方が抜けるよりよい）
+    private int readProgress(PrintJob job) {
+        File file = progressFor(job.getId());
+        if (!file.isFile()) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            int printed = in.readInt();
+            return printed > 0 && printed < job.getDocumentCount() ? printed : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private File fileFor(long jobId) {
+        return new File(directory, jobId + SUFFIX);
+    }
+
+    private File progressFor(long jobId) {
+        return new File(directory, jobId + PROGRESS_SUFFIX);
+    }
+}
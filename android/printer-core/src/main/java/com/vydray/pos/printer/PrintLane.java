@@ -0,0 +1,40 @@
+package com.vydray.pos.printer;
+
+// 印刷の優先レーン（上ほど先に印刷する。レジで待つお客様の領収書を伝票・まとめ再印刷より先に出す）
+public enum PrintLane {
+    RECEIPT("receipt"),
+    SLIP("slip"),
+    BULK("bulk");
+
+    private final String wireName;
+
+    PrintLane(String wireName) {
+        this.wireName = wireName;
+    }
+
+    // JSとやり取りする名前
+    public String wireName() {
+        return wireName;
+    }
+
+    // レーンの指定がないときは帳票種別で決める
+    public static PrintLane of(String documentType) {
+        if ("receipt".equals(documentType)) {
+            return RECEIPT;
+        }
+        if ("batch".equals(documentType) || "raw".equals(documentType) || "dailyReport".equals(documentType)) {
+            return BULK;
+        }
+        return SLIP;
+    }
+
+    // 不明な名前ならnull
+    public static PrintLane fromWireName(String name) {
+        for (PrintLane lane : values()) {
+            if (lane.wireName.equals(name)) {
+                return lane;
+            }
+        }
+        return null;
+    }
+}
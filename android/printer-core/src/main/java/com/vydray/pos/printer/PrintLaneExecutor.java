@@ -0,0 +1,150 @@
+package com.vydray.pos.printer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+
+// 描画・スプーラーへの積み込みなど印刷前の処理を専用スレッドでレーン優先に実行する
+// 呼び出し元（プラグインスレッド）を塞がない
+// ・領収書レーンは専用のスレッドで処理し、まとめ再印刷の描画・画像変換が終わるのを待たない
+// ・伝票とまとめ再印刷は1つのスレッドで、待っている伝票を先に処理する
+// ・レーンごとの待ち件数に上限があり、超えたらQUEUE_FULLで断る
+// ・順番が来た時点で待ち時間の上限を超えていれば実行せずTIMEOUTで断る
+public class PrintLaneExecutor {
+
+    public interface Task {
+        void run();
+
+        // 実行されずに終わった（待ち時間の上限超過・取り消し・停止）
+        void reject(PrintException error);
+    }
+
+    private static final class Entry {
+        final Task task;
+        final long enqueuedNanos = System.nanoTime();
+
+        Entry(Task task) {
+            this.task = task;
+        }
+    }
+
+    private final Object lock = new Object();
+    private final EnumMap<PrintLane, ArrayDeque<Entry>> lanes = new EnumMap<>(PrintLane.class);
+    // PrintLane.ordinal()順
+    private final int[] laneCapacity = {16, 32, 4};
+    private final long[] laneTimeoutMs = {10000, 10000, 60000};
+    private boolean running = true;
+
+    public PrintLaneExecutor(String name) {
+        for (PrintLane lane : PrintLane.values()) {
+            lanes.put(lane, new ArrayDeque<Entry>());
+        }
+        startWorker(name + "-" + PrintLane.RECEIPT.wireName(), PrintLane.RECEIPT);
+        startWorker(name, PrintLane.SLIP, PrintLane.BULK);
+    }
+
+    // servedの順に優先して処理するスレッドを起動する
+    private void startWorker(String name, final PrintLane... served) {
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop(served);
+            }
+        }, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void setLaneLimits(PrintLane lane, int capacity, long timeoutMs) {
+        synchronized (lock) {
+            laneCapacity[lane.ordinal()] = Math.max(1, capacity);
+            laneTimeoutMs[lane.ordinal()] = Math.max(0, timeoutMs);
+        }
+    }
+
+    public void execute(PrintLane lane, Task task) throws PrintException {
+        synchronized (lock) {
+            if (!running) {
+                throw new PrintException("Print executor is shut down");
+            }
+            ArrayDeque<Entry> queue = lanes.get(lane);
+            if (queue.size() >= laneCapacity[lane.ordinal()]) {
+                throw new PrintException(PrintException.Reason.QUEUE_FULL,
+                        "Too many print requests waiting in " + lane.wireName() + " lane");
+            }
+            queue.addLast(new Entry(task));
+            lock.notifyAll();
+        }
+    }
+
+    public int getPendingCount(PrintLane lane) {
+        synchronized (lock) {
+            return lanes.get(lane).size();
+        }
+    }
+
+    // まだ始まっていない処理を取り消す（戻り値は取り消した件数）
+    public int cancelLane(PrintLane lane) {
+        List<Entry> cancelled;
+        synchronized (lock) {
+            cancelled = new ArrayList<>(lanes.get(lane));
+            lanes.get(lane).clear();
+        }
+        for (Entry entry : cancelled) {
+            entry.task.reject(new PrintException(PrintException.Reason.CANCELLED, "Print request cancelled"));
+        }
+        return cancelled.size();
+    }
+
+    public void shutdown() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        for (PrintLane lane : PrintLane.values()) {
+            cancelLane(lane);
+        }
+    }
+
+    private void loop(PrintLane[] served) {
+        while (true) {
+            Entry entry = null;
+            long waitedMs = 0;
+            long timeoutMs = 0;
+            synchronized (lock) {
+                while (running && entry == null) {
+                    for (PrintLane lane : served) {
+                        entry = lanes.get(lane).pollFirst();
+                        if (entry != null) {
+                            timeoutMs = laneTimeoutMs[lane.ordinal()];
+                            break;
+                        }
+                    }
+                    if (entry == null) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            running = false;
+                        }
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+                waitedMs = (System.nanoTime() - entry.enqueuedNanos) / 1000000;
+            }
+
+            if (timeoutMs > 0 && waitedMs >= timeoutMs) {
+                entry.task.reject(new PrintException(PrintException.Reason.TIMEOUT,
+                        "Print request waited " + waitedMs + "ms"));
+                continue;
+            }
+            try {
+                entry.task.run();
+            } catch (RuntimeException e) {
+                entry.task.reject(new PrintException("Unexpected error: " + e.getMessage(), e));
+            }
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.vydray.pos.printer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// 印刷ジョブの段階ごとの所要時間と失敗回数（帳票種別別・プリンター別、直近1時間分）
+//
+// 時間は一定間隔のスロットに分けて記録し、古いスロットは使い回す（メモリは増えない）
+public class PrintMetrics {
+    public enum Stage {
+        // JSONの読み込み（明細のデコードを含む）
+        DECODE,
+        // レイアウトとESC/POSへのエンコード（1パスで行うのでまとめて計る）
+        RENDER,
+        // スプーラーに積んでから送信開始まで（リトライ待ちを含む）
+        QUEUE,
+        // Bluetooth送信
+        SEND,
+        // 用紙カット
+        CUT,
+        // 呼び出しから最後のカットまで
+        TOTAL
+    }
+
+    // プラグイン側の段階の計測（呼び出し時に作り、デコード・描画の区切りで印を付ける）
+    public static final class CallTiming {
+        final long startNanos = System.nanoTime();
+        private long lapNanos = startNanos;
+        long decodeNanos;
+        long renderNanos;
+
+        public void decoded() {
+            long now = System.nanoTime();
+            decodeNanos += now - lapNanos;
+            lapNanos = now;
+        }
+
+        public void rendered() {
+            long now = System.nanoTime();
+            renderNanos += now - lapNanos;
+            lapNanos = now;
+        }
+    }
+
+    private static final long DEFAULT_SLOT_MILLIS = 10 * 60 * 1000L;
+    private static final int DEFAULT_SLOTS = 6;
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private final long slotMillis;
+    private final int slotCount;
+    private final Map<String, Series> byType = new HashMap<>();
+    private final Map<String, Series> byPrinter = new HashMap<>();
+
+    public PrintMetrics() {
+        this(DEFAULT_SLOT_MILLIS, DEFAULT_SLOTS);
+    }
+
+    public PrintMetrics(long slotMillis, int slotCount) {
+        this.slotMillis = slotMillis;
+        this.slotCount = slotCount;
+    }
+
+    // 印刷が完了したジョブを記録する（timingは再起動後に復元したジョブではnull）
+    public void recordJob(String documentType, String printer, PrintJob job, CallTiming timing) {
+        recordJob(documentType, printer, job, timing, System.nanoTime(), System.currentTimeMillis());
+    }
+
+    synchronized void recordJob(String documentType, String printer, PrintJob job, CallTiming timing,
+            long completedNanos, long nowMillis) {
+        long total = job.getQueueNanos() + job.getSendNanos() + job.getCutNanos();
+        if (timing != null) {
+            record(documentType, printer, Stage.DECODE, timing.decodeNanos, nowMillis);
+            record(documentType, printer, Stage.RENDER, timing.renderNanos, nowMillis);
+            total = completedNanos - timing.startNanos;
+        }
+        record(documentType, printer, Stage.QUEUE, job.getQueueNanos(), nowMillis);
+        record(documentType, printer, Stage.SEND, job.getSendNanos(), nowMillis);
+        record(documentType, printer, Stage.CUT, job.getCutNanos(), nowMillis);
+        record(documentType, printer, Stage.TOTAL, total, nowMillis);
+    }
+
+    // 失敗を原因別に数える（printerがnullなら帳票種別にだけ数える）
+    public void recordFailure(String documentType, String printer, String cause) {
+        recordFailure(documentType, printer, cause, System.currentTimeMillis());
+    }
+
+    synchronized void recordFailure(String documentType, String printer, String cause, long nowMillis) {
+        series(byType, documentType).slot(nowMillis).fail(cause);
+        if (printer != null) {
+            series(byPrinter, printer).slot(nowMillis).fail(cause);
+        }
+    }
+
+    // { windowMs, documentTypes: { orderSlip: { stages: { total: { count, p50, p90, p99, max, mean } }, failures } }, printers: {...} }
+    // 時間はミリ秒
+    public JSONObject snapshot() {
+        return snapshot(System.currentTimeMillis());
+    }
+
+    synchronized JSONObject snapshot(long nowMillis) {
+        try {
+            JSONObject result = new JSONObject();
+            result.put("windowMs", slotMillis * slotCount);
+            result.put("documentTypes", toJson(byType, nowMillis));
+            result.put("printers", toJson(byPrinter, nowMillis));
+            return result;
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void record(String documentType, String printer, Stage stage, long nanos, long nowMillis) {
+        long micros = nanos / 1000;
+        series(byType, documentType).slot(nowMillis).histogram(stage).record(micros);
+        if (printer != null) {
+            series(byPrinter, printer).slot(nowMillis).histogram(stage).record(micros);
+        }
+    }
+
+    private Series series(Map<String, Series> map, String key) {
+        Series series = map.get(key);
+        if (series == null) {
+            series = new Series(slotMillis, slotCount);
+            map.put(key, series);
+        }
+        return series;
+    }
+
+    private JSONObject toJson(Map<String, Series> map, long nowMillis) throws JSONException {
+        JSONObject result = new JSONObject();
+        for (Map.Entry<String, Series> entry : map.entrySet()) {
+            Slot merged = entry.getValue().merge(nowMillis);
+            JSONObject stages = new JSONObject();
+            for (Map.Entry<Stage, LatencyHistogram> stage : merged.histograms.entrySet()) {
+                LatencyHistogram histogram = stage.getValue();
+                if (histogram.getCount() == 0) {
+                    continue;
+                }
+                JSONObject values = new JSONObject();
+                values.put("count", histogram.getCount());
+                for (double percentile : PERCENTILES) {
+                    values.put("p" + (int) percentile, millis(histogram.getValueAtPercentile(percentile)));
+                }
+                values.put("max", millis(histogram.getMax()));
+                values.put("mean", millis((long) histogram.getMean()));
+                stages.put(stage.getKey().name().toLowerCase(Locale.ROOT), values);
+            }
+            JSONObject failures = new JSONObject();
+            for (Map.Entry<String, Integer> failure : merged.failures.entrySet()) {
+                failures.put(failure.getKey(), failure.getValue());
+            }
+            JSONObject item = new JSONObject();
+            item.put("stages", stages);
+            item.put("failures", failures);
+            result.put(entry.getKey(), item);
+        }
+        return result;
+    }
+
+    // マイクロ秒 → ミリ秒（小数2桁）
+    private static double millis(long micros) {
+        return Math.round(micros / 10.0) / 100.0;
+    }
+
+    // 一定時間ごとのスロットを輪番で使う
+    private static final class Series {
+        private final long slotMillis;
+        private final Slot[] slots;
+
+        Series(long slotMillis, int slotCount) {
+            this.slotMillis = slotMillis;
+            this.slots = new Slot[slotCount];
+        }
+
+        Slot slot(long nowMillis) {
+            long epoch = nowMillis / slotMillis;
+            int index = (int) (epoch % slots.length);
+            Slot slot = slots[index];
+            if (slot == null) {
+                slot = new Slot();
+                slots[index] = slot;
+            }
+            if (slot.epoch != epoch) {
+                slot.reset(epoch);
+            }
+            return slot;
+        }
+
+        Slot merge(long nowMillis) {
+            long epoch = nowMillis / slotMillis;
+            Slot merged = new Slot();
+            for (Slot slot : slots) {
+                if (slot != null && slot.epoch > epoch - slots.length && slot.epoch <= epoch) {
+                    merged.add(slot);
+                }
+            }
+            return merged;
+        }
+    }
+
+    private static final class Slot {
+        long epoch = -1;
+        final EnumMap<Stage, LatencyHistogram> histograms = new EnumMap<>(Stage.class);
+        final Map<String, Integer> failures = new TreeMap<>();
+
+        LatencyHistogram histogram(Stage stage) {
+            LatencyHistogram histogram = histograms.get(stage);
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                histograms.put(stage, histogram);
+            }
+            return histogram;
+        }
+
+        void fail(String cause) {
+            Integer count = failures.get(cause);
+            failures.put(cause, count == null ? 1 : count + 1);
+        }
+
+        void reset(long epoch) {
+            this.epoch = epoch;
+            for (LatencyHistogram histogram : histograms.values()) {
+                histogram.reset();
+            }
+            failures.clear();
+        }
+
+        void add(Slot other) {
+            for (Map.Entry<Stage, LatencyHistogram> entry : other.histograms.entrySet()) {
+                histogram(entry.getKey()).add(entry.getValue());
+            }
+            for (Map.Entry<String, Integer> entry : other.failures.entrySet()) {
+                Integer count = failures.get(entry.getKey());
+                failures.put(entry.getKey(), (count == null ? 0 : count) + entry.getValue());
+            }
+        }
+    }
+}
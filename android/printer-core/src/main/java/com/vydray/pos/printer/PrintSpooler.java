@@ -0,0 +1,510 @@
+package com.vydray.pos.printer;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 印刷ジョブのキュー（専用スレッドで順に印刷し、未完了分はジャーナルに残す）
+// レーンごとのFIFOで、優先度の高いレーンの先頭から印刷する
+public class PrintSpooler {
+
+    public interface Listener {
+        void onJobCompleted(PrintJob job);
+
+        void onJobFailed(PrintJob job, PrintException error, boolean willRetry);
+
+        // まとめ印刷で1帳票印刷するごとに呼ばれる
+        void onDocumentPrinted(PrintJob job, int printedCount);
+    }
+
+    // キューの状態のスナップショット
+    public static final class Status {
+        // 印刷する順（優先度の高いレーンから）
+        public final long[] pendingJobIds;
+        // レーンごとの待ち件数（PrintLane.ordinal()順）
+        public final int[] lanePendingCounts;
+        public final long currentJobId;
+        public final boolean paused;
+        // 用紙切れなどで保留中ならその理由（なければnull）
+        public final String holdReason;
+        public final String lastError;
+
+        Status(long[] pendingJobIds, int[] lanePendingCounts, long currentJobId, boolean paused, String holdReason,
+               String lastError) {
+            this.pendingJobIds = pendingJobIds;
+            this.lanePendingCounts = lanePendingCounts;
+            this.currentJobId = currentJobId;
+            this.paused = paused;
+            this.holdReason = holdReason;
+            this.lastError = lastError;
+        }
+    }
+
+    private final PrinterTransport transport;
+    private final ChunkedTransmitter transmitter;
+    private final PrintJournal journal;
+    private final Listener listener;
+
+    private final Object lock = new Object();
+    private final EnumMap<PrintLane, ArrayDeque<PrintJob>> lanes = new EnumMap<>(PrintLane.class);
+    private PrintJob current;
+    private boolean paused;
+    private String holdReason;
+    private boolean running;
+    private String lastError;
+    private Thread worker;
+
+    // ジョブIDはプリンターをまたいで一意にする
+    private static final AtomicLong LAST_JOB_ID = new AtomicLong();
+
+    private int maxAttempts = 3;
+    private long retryDelayMs = 1000;
+    // ジョブ先頭で1回だけ送るプリンター設定（コードページなど）
+    private byte[] sessionPreamble = EscPos.JAPANESE_SETUP;
+    // レーンごとの待ち件数の上限と、印刷が始まらないまま待てる時間（0なら無制限、PrintLane.ordinal()順）
+    // 領収書・伝票は接続が戻るまで待ち、まとめ再印刷は古くなったら捨てる
+    private final int[] laneCapacity = {64, 64, 16};
+    private final long[] laneTimeoutMs = {0, 0, 10 * 60 * 1000};
+    // ジャーナルへ書いている途中のジョブ数（レーンの空きを先に押さえておく、PrintLane.ordinal()順）
+    private final int[] reserved = new int[PrintLane.values().length];
+
+    public PrintSpooler(PrinterTransport transport, PrintJournal journal, Listener listener) {
+        this.transport = transport;
+        this.transmitter = new ChunkedTransmitter(transport);
+        this.journal = journal;
+        this.listener = listener;
+        for (PrintLane lane : PrintLane.values()) {
+            lanes.put(lane, new ArrayDeque<PrintJob>());
+        }
+    }
+
+    // 失敗時のリトライ回数と待ち時間（回数に比例して延ばす）
+    public void setRetryPolicy(int maxAttempts, long retryDelayMs) {
+        synchronized (lock) {
+            this.maxAttempts = Math.max(1, maxAttempts);
+            this.retryDelayMs = Math.max(0, retryDelayMs);
+        }
+    }
+
+    public void setLaneLimits(PrintLane lane, int capacity, long timeoutMs) {
+        synchronized (lock) {
+            laneCapacity[lane.ordinal()] = Math.max(1, capacity);
+            laneTimeoutMs[lane.ordinal()] = Math.max(0, timeoutMs);
+            lock.notifyAll();
+        }
+    }
+
+    // チャンク分割・流量制御の設定用
+    public ChunkedTransmitter getTransmitter() {
+        return transmitter;
+    }
+
+    public void setSessionPreamble(byte[] sessionPreamble) {
+        synchronized (lock) {
+            this.sessionPreamble = sessionPreamble;
+        }
+    }
+
+    // ジャーナルに残っていたジョブを復元してワーカーを起動
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            List<PrintJob> recovered = journal.load();
+            for (PrintJob job : recovered) {
+                lanes.get(job.getLane()).addLast(job);
+                observeJobId(job.getId());
+            }
+            running = true;
+            worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drain();
+                }
+            }, "PrintSpooler");
+            worker.start();
+        }
+    }
+
+    public void stop() {
+        Thread thread;
+        synchronized (lock) {
+            running = false;
+            thread = worker;
+            worker = null;
+            lock.notifyAll();
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // ジャーナルへ書き込んでからキューに積む（戻り値はジョブID）
+    public long submit(String documentType, byte[] data) throws IOException, PrintException {
+        return submit(documentType, new byte[][] {data});
+    }
+
+    // 複数帳票を1ジョブとして積む（設定送信は1回、帳票の間でカット）
+    public long submit(String documentType, byte[][] documents) throws IOException, PrintException {
+        return submit(documentType, PrintLane.of(documentType), documents);
+    }
+
+    // レーンが満杯なら積まずにQUEUE_FULLで失敗する
+    public long submit(String documentType, PrintLane lane, byte[][] documents) throws IOException, PrintException {
+        // 同時に積まれても上限を超えないよう、ジャーナルに書く前に空きを押さえる
+        synchronized (lock) {
+            if (lanes.get(lane).size() + reserved[lane.ordinal()] >= laneCapacity[lane.ordinal()]) {
+                throw new PrintException(PrintException.Reason.QUEUE_FULL,
+                        "Print queue is full for " + lane.wireName() + " lane");
+            }
+            reserved[lane.ordinal()]++;
+        }
+        PrintJob job;
+        try {
+            job = new PrintJob(nextJobId(), documentType, lane, documents, System.currentTimeMillis());
+            journal.write(job);
+        } catch (IOException | RuntimeException e) {
+            synchronized (lock) {
+                reserved[lane.ordinal()]--;
+            }
+            throw e;
+        }
+        synchronized (lock) {
+            reserved[lane.ordinal()]--;
+            lanes.get(lane).addLast(job);
+            lock.notifyAll();
+        }
+        return job.getId();
+    }
+
+    // 印刷中でないジョブを取り消す
+    public boolean cancel(long jobId) {
+        synchronized (lock) {
+            if (current != null && current.getId() == jobId) {
+                return false;
+            }
+            for (ArrayDeque<PrintJob> queue : lanes.values()) {
+                Iterator<PrintJob> it = queue.iterator();
+                while (it.hasNext()) {
+                    if (it.next().getId() == jobId) {
+                        it.remove();
+                        journal.delete(jobId);
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    // レーンの印刷中でないジョブをまとめて取り消す（まとめ再印刷の中止など。戻り値は取り消したジョブID）
+    public List<Long> cancelLane(PrintLane lane) {
+        synchronized (lock) {
+            List<Long> cancelled = new ArrayList<>();
+            Iterator<PrintJob> it = lanes.get(lane).iterator();
+            while (it.hasNext()) {
+                PrintJob job = it.next();
+                if (job != current) {
+                    it.remove();
+                    journal.delete(job.getId());
+                    cancelled.add(job.getId());
+                }
+            }
+            return cancelled;
+        }
+    }
+
+    // 接続が切れている間は印刷を止める（ジョブは受け付けてジャーナルに貯める）
+    public void pause() {
+        synchronized (lock) {
+            paused = true;
+        }
+    }
+
+    // 失敗で停止したキューを再開（再接続後などに呼ぶ）
+    public void resume() {
+        synchronized (lock) {
+            paused = false;
+            for (ArrayDeque<PrintJob> queue : lanes.values()) {
+                PrintJob head = queue.peekFirst();
+                if (head != null) {
+                    head.resetAttempts();
+                }
+            }
+            lock.notifyAll();
+        }
+    }
+
+    // 用紙切れ・カバー開きの間はジョブを失敗させずに保留する（接続の再開では解除しない）
+    public void hold(String reason) {
+        synchronized (lock) {
+            holdReason = reason;
+        }
+    }
+
+    public void release() {
+        synchronized (lock) {
+            if (holdReason == null) {
+                return;
+            }
+            holdReason = null;
+            lock.notifyAll();
+        }
+    }
+
+    public Status getStatus() {
+        synchronized (lock) {
+            int total = 0;
+            int[] counts = new int[lanes.size()];
+            for (PrintLane lane : PrintLane.values()) {
+                counts[lane.ordinal()] = lanes.get(lane).size();
+                total += counts[lane.ordinal()];
+            }
+            long[] ids = new long[total];
+            int i = 0;
+            for (ArrayDeque<PrintJob> queue : lanes.values()) {
+                for (PrintJob job : queue) {
+                    ids[i++] = job.getId();
+                }
+            }
+            return new Status(ids, counts, current != null ? current.getId() : 0, paused, holdReason, lastError);
+        }
+    }
+
+    private static long nextJobId() {
+        while (true) {
+            long last = LAST_JOB_ID.get();
+            long next = Math.max(last + 1, System.currentTimeMillis());
+            if (LAST_JOB_ID.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    private static void observeJobId(long id) {
+        while (true) {
+            long last = LAST_JOB_ID.get();
+            if (last >= id || LAST_JOB_ID.compareAndSet(last, id)) {
+                return;
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            PrintJob job = null;
+            List<PrintJob> expired = null;
+            byte[] preamble;
+            synchronized (lock) {
+                while (running) {
+                    long now = System.nanoTime();
+                    expired = takeExpired(now);
+                    if (expired != null) {
+                        break;
+                    }
+                    job = paused || holdReason != null ? null : nextJob();
+                    if (job != null) {
+                        break;
+                    }
+                    waitQuietly(expiryWaitMs(now));
+                }
+                if (!running) {
+                    return;
+                }
+                current = job;
+                preamble = sessionPreamble;
+            }
+
+            if (expired != null) {
+                for (PrintJob stale : expired) {
+                    journal.delete(stale.getId());
+                    listener.onJobFailed(stale, new PrintException(PrintException.Reason.TIMEOUT,
+                            "Print job waited too long in " + stale.getLane().wireName() + " lane"), false);
+                }
+                continue;
+            }
+
+            PrintException error = null;
+            boolean yielded = false;
+            try {
+                long start = System.nanoTime();
+                job.startAttempt(start);
+                if (preamble.length > 0) {
+                    transport.send(preamble);
+                }
+                byte[][] documents = job.getDocuments();
+                for (int i = job.getPrintedCount(); i < documents.length; i++) {
+                    transmitter.send(job, documents[i]);
+                    long sent = System.nanoTime();
+                    job.addSendNanos(sent - start);
+                    transport.cutPaper();
+                    job.addCutNanos(System.nanoTime() - sent);
+                    job.markPrinted(i + 1);
+                    if (documents.length > 1) {
+                        if (i + 1 < documents.length) {
+                            saveProgress(job);
+                        }
+                        listener.onDocumentPrinted(job, i + 1);
+                    }
+                    // 優先度の高いジョブが来ていれば帳票の切れ目で譲る（続きは次に順番が来たときに印刷する）
+                    if (i + 1 < documents.length && higherLaneWaiting(job.getLane())) {
+                        yielded = true;
+                        break;
+                    }
+                    start = System.nanoTime();
+                }
+            } catch (PrintException e) {
+                error = e;
+            } catch (RuntimeException e) {
+                error = new PrintException("Unexpected printer error: " + e.getMessage(), e);
+            }
+
+            if (error == null && yielded) {
+                synchronized (lock) {
+                    current = null;
+                }
+                continue;
+            }
+
+            if (error == null) {
+                synchronized (lock) {
+                    lanes.get(job.getLane()).remove(job);
+                    current = null;
+                    lastError = null;
+                }
+                journal.delete(job.getId());
+                listener.onJobCompleted(job);
+                continue;
+            }
+
+            String hold = PrinterStatus.holdReason(error.getReason() == PrintException.Reason.PAPER_OUT,
+                    error.getReason() == PrintException.Reason.COVER_OPEN);
+            if (hold != null) {
+                // 店員が直すまで保留し、リトライ回数には数えない（状態監視が解除する）
+                synchronized (lock) {
+                    current = null;
+                    lastError = error.getMessage();
+                    holdReason = hold;
+                }
+                listener.onJobFailed(job, error, true);
+                continue;
+            }
+
+            boolean willRetry;
+            long delay;
+            synchronized (lock) {
+                current = null;
+                lastError = error.getMessage();
+                job.incrementAttempts();
+                willRetry = job.getAttempts() < maxAttempts;
+                // 上限に達したら先頭に残したまま停止し、順序を守る
+                paused = !willRetry;
+                delay = retryDelayMs * job.getAttempts();
+            }
+            listener.onJobFailed(job, error, willRetry);
+
+            if (willRetry) {
+                synchronized (lock) {
+                    long until = System.currentTimeMillis() + delay;
+                    long remaining = delay;
+                    while (running && remaining > 0) {
+                        waitQuietly(remaining);
+                        remaining = until - System.currentTimeMillis();
+                    }
+                }
+            }
+        }
+    }
+
+    // 優先度の高いレーンの先頭（lockを持って呼ぶ）
+    private PrintJob nextJob() {
+        for (ArrayDeque<PrintJob> queue : lanes.values()) {
+            PrintJob head = queue.peekFirst();
+            if (head != null) {
+                return head;
+            }
+        }
+        return null;
+    }
+
+    // 書けなくても印刷は続ける（再起動したときに印刷済みの帳票がもう一度出るだけ）
+    private void saveProgress(PrintJob job) {
+        try {
+            journal.writeProgress(job.getId(), job.getPrintedCount());
+        } catch (IOException e) {
+            // 進捗なしでジャーナルに残る
+        }
+    }
+
+    private boolean higherLaneWaiting(PrintLane lane) {
+        synchronized (lock) {
+            for (PrintLane higher : PrintLane.values()) {
+                if (higher.ordinal() >= lane.ordinal()) {
+                    return false;
+                }
+                if (!lanes.get(higher).isEmpty()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // 待ち時間の上限を超え、まだ1帳票も印刷していないジョブを取り除く（lockを持って呼ぶ。なければnull）
+    private List<PrintJob> takeExpired(long nowNanos) {
+        List<PrintJob> expired = null;
+        for (PrintLane lane : PrintLane.values()) {
+            long timeoutMs = laneTimeoutMs[lane.ordinal()];
+            if (timeoutMs == 0) {
+                continue;
+            }
+            Iterator<PrintJob> it = lanes.get(lane).iterator();
+            while (it.hasNext()) {
+                PrintJob job = it.next();
+                if (job.getPrintedCount() == 0 && (nowNanos - job.enqueuedNanos) / 1000000 >= timeoutMs) {
+                    it.remove();
+                    if (expired == null) {
+                        expired = new ArrayList<>();
+                    }
+                    expired.add(job);
+                }
+            }
+        }
+        return expired;
+    }
+
+    // 次にジョブが期限切れになるまでの待ち時間（なければ0で無期限に待つ）
+    private long expiryWaitMs(long nowNanos) {
+        long wait = 0;
+        for (PrintLane lane : PrintLane.values()) {
+            long timeoutMs = laneTimeoutMs[lane.ordinal()];
+            if (timeoutMs == 0) {
+                continue;
+            }
+            for (PrintJob job : lanes.get(lane)) {
+                if (job.getPrintedCount() == 0) {
+                    long remaining = Math.max(1, timeoutMs - (nowNanos - job.enqueuedNanos) / 1000000);
+                    wait = wait == 0 ? remaining : Math.min(wait, remaining);
+                }
+            }
+        }
+        return wait;
+    }
+
+    private void waitQuietly(long timeoutMs) {
+        try {
+            lock.wait(timeoutMs);
+        } catch (InterruptedException e) {
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,483 @@
+package com.vydray.pos.printer;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// 帳票レイアウトのテンプレート（1回だけコンパイルして平坦な命令列にし、印刷時は値を流し込むだけ）
+//
+// 1行がそのまま1行として印字される。{{field}} で値を差し込み、書式と桁幅を指定できる
+//   {{storeName}}            そのまま
+//   {{roundedTotal|yen}}     ¥12,345（grouped: 12,345 / signed: +¥100 / number: 12345）
+//   {{price|yen:>10}}        10桁右寄せ（< 左寄せ、^ 中央。文字列は幅を超えた分を切り捨て、全角は2桁）
+//   {{total|yen:>}}          行末（32桁目）に右寄せ
+//   行末の \ は改行しない
+// # で始まる行は命令
+//   #if field / #if !field / #else / #end    値が空・0・falseなら飛ばす
+//   #each items ... #end                      明細行の繰り返し（中ではname, quantityなどを参照）
+//   #align left|center|right / #bold on|off / #rule double|single / #image field / #feed n
+//   #-- コメント
+public final class PrintTemplate {
+
+    private static final int BYTES = 0;
+    private static final int FIELD = 1;
+    private static final int IMAGE = 2;
+    private static final int BRANCH = 3;  // 条件が偽ならtargetへ
+    private static final int JUMP = 4;
+    private static final int EACH = 5;  // 行がなければtargetへ
+    private static final int NEXT = 6;  // 次の行があればtargetへ戻る
+
+    private static final int FORMAT_TEXT = 0;
+    private static final int FORMAT_YEN = 1;
+    private static final int FORMAT_SIGNED = 2;
+    private static final int FORMAT_GROUPED = 3;
+    private static final int FORMAT_NUMBER = 4;
+
+    private static final byte[] PLUS = EscPos.encode("+");
+    // 桁幅の代わりに指定すると行末まで
+    private static final int TO_LINE_END = -1;
+
+    private static final class Op {
+        final int code;
+        final byte[] bytes;
+        final String field;
+        final boolean negate;
+        final int format;
+        final int width;
+        final EscPosWriter.Align align;
+        // BYTESの最後の改行の位置（なければ-1）
+        final int lastNewline;
+        int target;
+
+        Op(int code, byte[] bytes, String field, boolean negate, int format, int width, EscPosWriter.Align align) {
+            this.code = code;
+            this.bytes = bytes;
+            this.field = field;
+            this.negate = negate;
+            this.format = format;
+            this.width = width;
+            this.align = align;
+            int newline = -1;
+            for (int i = 0; bytes != null && i < bytes.length; i++) {
+                if (bytes[i] == EscPos.LF) {
+                    newline = i;
+                }
+            }
+            this.lastNewline = newline;
+        }
+    }
+
+    private final String version;
+    private final Op[] ops;
+    private final int maxDepth;
+
+    private PrintTemplate(String version, Op[] ops, int maxDepth) {
+        this.version = version;
+        this.ops = ops;
+        this.maxDepth = maxDepth;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    int opCount() {
+        return ops.length;
+    }
+
+    // 構文エラーは行番号付きのIllegalArgumentException
+    public static PrintTemplate compile(String version, String source) {
+        return new Compiler(source).compile(version);
+    }
+
+    public void render(TemplateBinding document, EscPosWriter out) {
+        // 参照のスコープ（[0]が帳票、以降が#eachの現在行）
+        TemplateBinding[] scopes = new TemplateBinding[maxDepth + 1];
+        List<?>[] rows = new List<?>[maxDepth + 1];
+        int[] indexes = new int[maxDepth + 1];
+        int depth = 0;
+        // 現在の行の先頭位置（行末への右寄せに使う）
+        int lineStart = out.size();
+        scopes[0] = document;
+
+        int pc = 0;
+        while (pc < ops.length) {
+            Op op = ops[pc];
+            switch (op.code) {
+                case BYTES:
+                    out.bytes(op.bytes);
+                    if (op.lastNewline >= 0) {
+                        lineStart = out.size() - (op.bytes.length - op.lastNewline - 1);
+                    }
+                    break;
+                case FIELD:
+                    writeField(op, lookup(scopes, depth, op.field), lineStart, out);
+                    break;
+                case IMAGE: {
+                    Object image = lookup(scopes, depth, op.field);
+                    if (image instanceof byte[]) {
+                        out.bytes(EscPos.ALIGN_CENTER).bytes((byte[]) image).bytes(EscPos.ALIGN_LEFT);
+                        lineStart = out.size();
+                    }
+                    break;
+                }
+                case BRANCH:
+                    if (isTruthy(scopes, depth, op.field) == op.negate) {
+                        pc = op.target;
+                        continue;
+                    }
+                    break;
+                case JUMP:
+                    pc = op.target;
+                    continue;
+                case EACH: {
+                    List<? extends TemplateBinding> list = lookupRows(scopes, depth, op.field);
+                    if (list == null || list.isEmpty()) {
+                        pc = op.target;
+                        continue;
+                    }
+                    depth++;
+                    rows[depth] = list;
+                    indexes[depth] = 0;
+                    scopes[depth] = list.get(0);
+                    break;
+                }
+                case NEXT: {
+                    int next = ++indexes[depth];
+                    if (next < rows[depth].size()) {
+                        scopes[depth] = (TemplateBinding) rows[depth].get(next);
+                        pc = op.target;
+                        continue;
+                    }
+                    rows[depth] = null;
+                    scopes[depth] = null;
+                    depth--;
+                    break;
+                }
+                default:
+                    throw new IllegalStateException("Unknown op: " + op.code);
+            }
+            pc++;
+        }
+    }
+
+    // 内側の行から順に探す
+    private static Object lookup(TemplateBinding[] scopes, int depth, String field) {
+        for (int i = depth; i >= 0; i--) {
+            Object value = scopes[i].value(field);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static List<? extends TemplateBinding> lookupRows(TemplateBinding[] scopes, int depth, String field) {
+        for (int i = depth; i >= 0; i--) {
+            List<? extends TemplateBinding> rows = scopes[i].rows(field);
+            if (rows != null) {
+                return rows;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isTruthy(TemplateBinding[] scopes, int depth, String field) {
+        Object value = lookup(scopes, depth, field);
+        if (value == null) {
+            List<? extends TemplateBinding> rows = lookupRows(scopes, depth, field);
+            return rows != null && !rows.isEmpty();
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).longValue() != 0;
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length > 0;
+        }
+        return !value.toString().isEmpty();
+    }
+
+    private static void writeField(Op op, Object value, int lineStart, EscPosWriter out) {
+        int start = out.size();
+        int width = op.width == TO_LINE_END ? TextWidth.LINE_WIDTH - (start - lineStart) : op.width;
+        if (value instanceof Number && op.format != FORMAT_TEXT) {
+            long amount = ((Number) value).longValue();
+            switch (op.format) {
+                case FORMAT_YEN:
+                    out.yen(amount);
+                    break;
+                case FORMAT_SIGNED:
+                    // 端数調整など符号を明示する
+                    if (amount >= 0) {
+                        out.bytes(PLUS);
+                    }
+                    out.yen(amount);
+                    break;
+                case FORMAT_GROUPED:
+                    out.grouped(amount);
+                    break;
+                default:
+                    out.number(amount);
+                    break;
+            }
+        } else if (value instanceof Number) {
+            out.number(((Number) value).longValue());
+        } else if (value != null && !(value instanceof byte[])) {
+            // 桁幅の指定があればはみ出す分を切り捨てる
+            if (width > 0) {
+                out.fitted(value.toString(), width);
+            } else {
+                out.text(value.toString());
+            }
+        }
+        if (width > 0) {
+            out.pad(start, width, op.align);
+        }
+    }
+
+    private static final class Compiler {
+        private final String source;
+        private final List<Op> ops = new ArrayList<>();
+        // 開いているブロック（#if/#else/#each）の命令位置
+        private final Deque<Integer> blocks = new ArrayDeque<>();
+        private final ByteArrayOutputStream literal = new ByteArrayOutputStream();
+        private int eachDepth;
+        private int maxDepth;
+        private int lineNumber;
+
+        Compiler(String source) {
+            this.source = source;
+        }
+
+        PrintTemplate compile(String version) {
+            String[] lines = source.split("\r?\n", -1);
+            // 末尾の改行は空行として扱わない
+            int count = lines.length > 0 && lines[lines.length - 1].isEmpty() ? lines.length - 1 : lines.length;
+            for (int i = 0; i < count; i++) {
+                lineNumber = i + 1;
+                String line = lines[i];
+                if (line.trim().startsWith("#")) {
+                    directive(line.trim());
+                } else {
+                    textLine(line);
+                }
+            }
+            if (!blocks.isEmpty()) {
+                throw error("missing #end");
+            }
+            flushLiteral();
+            return new PrintTemplate(version, ops.toArray(new Op[0]), maxDepth);
+        }
+
+        private void directive(String line) {
+            if (line.startsWith("#--")) {
+                return;
+            }
+            String[] parts = line.substring(1).trim().split("\\s+");
+            String name = parts[0];
+            String argument = parts.length > 1 ? parts[1] : "";
+            if (parts.length > 2) {
+                throw error("too many arguments: " + line);
+            }
+
+            switch (name) {
+                case "if": {
+                    boolean negate = argument.startsWith("!");
+                    String field = requireField(negate ? argument.substring(1) : argument);
+                    blocks.push(emit(new Op(BRANCH, null, field, negate, 0, 0, null)));
+                    return;
+                }
+                case "else": {
+                    Integer open = blocks.isEmpty() ? null : blocks.pop();
+                    if (open == null || ops.get(open).code != BRANCH) {
+                        throw error("#else without #if");
+                    }
+                    int jump = emit(new Op(JUMP, null, null, false, 0, 0, null));
+                    ops.get(open).target = ops.size();
+                    blocks.push(jump);
+                    return;
+                }
+                case "end": {
+                    if (blocks.isEmpty()) {
+                        throw error("#end without block");
+                    }
+                    int open = blocks.pop();
+                    if (ops.get(open).code == EACH) {
+                        Op next = new Op(NEXT, null, null, false, 0, 0, null);
+                        next.target = open + 1;
+                        emit(next);
+                        eachDepth--;
+                    }
+                    flushLiteral();
+                    ops.get(open).target = ops.size();
+                    return;
+                }
+                case "each":
+                    blocks.push(emit(new Op(EACH, null, requireField(argument), false, 0, 0, null)));
+                    eachDepth++;
+                    maxDepth = Math.max(maxDepth, eachDepth);
+                    return;
+                case "align":
+                    append(option(argument, "left", EscPos.ALIGN_LEFT, "center", EscPos.ALIGN_CENTER,
+                            "right", EscPos.ALIGN_RIGHT));
+                    return;
+                case "bold":
+                    append(option(argument, "on", EscPos.BOLD_ON, "off", EscPos.BOLD_OFF, null, null));
+                    return;
+                case "rule":
+                    append(option(argument, "double", EscPos.RULE_DOUBLE, "single", EscPos.RULE_SINGLE,
+                            null, null));
+                    return;
+                case "image":
+                    emit(new Op(IMAGE, null, requireField(argument), false, 0, 0, null));
+                    return;
+                case "feed": {
+                    int lines = parseNumber(argument);
+                    for (int i = 0; i < lines; i++) {
+                        literal.write(EscPos.LF);
+                    }
+                    return;
+                }
+                default:
+                    throw error("unknown directive: #" + name);
+            }
+        }
+
+        private void textLine(String line) {
+            boolean newline = true;
+            if (line.endsWith("\\")) {
+                newline = false;
+                line = line.substring(0, line.length() - 1);
+            }
+
+            int pos = 0;
+            while (true) {
+                int open = line.indexOf("{{", pos);
+                if (open < 0) {
+                    break;
+                }
+                int close = line.indexOf("}}", open + 2);
+                if (close < 0) {
+                    throw error("unclosed {{");
+                }
+                append(EscPos.encode(line.substring(pos, open)));
+                field(line.substring(open + 2, close).trim());
+                pos = close + 2;
+            }
+            append(EscPos.encode(line.substring(pos)));
+            if (newline) {
+                literal.write(EscPos.LF);
+            }
+        }
+
+        // field|format:>width
+        private void field(String spec) {
+            int width = 0;
+            EscPosWriter.Align align = EscPosWriter.Align.LEFT;
+            int colon = spec.indexOf(':');
+            if (colon >= 0) {
+                String layout = spec.substring(colon + 1).trim();
+                spec = spec.substring(0, colon).trim();
+                if (layout.startsWith(">")) {
+                    align = EscPosWriter.Align.RIGHT;
+                    layout = layout.substring(1);
+                } else if (layout.startsWith("^")) {
+                    align = EscPosWriter.Align.CENTER;
+                    layout = layout.substring(1);
+                } else if (layout.startsWith("<")) {
+                    layout = layout.substring(1);
+                }
+                width = layout.trim().isEmpty() ? TO_LINE_END : parseNumber(layout);
+            }
+
+            int format = FORMAT_TEXT;
+            int bar = spec.indexOf('|');
+            if (bar >= 0) {
+                String name = spec.substring(bar + 1).trim();
+                spec = spec.substring(0, bar).trim();
+                switch (name) {
+                    case "yen":
+                        format = FORMAT_YEN;
+                        break;
+                    case "signed":
+                        format = FORMAT_SIGNED;
+                        break;
+                    case "grouped":
+                        format = FORMAT_GROUPED;
+                        break;
+                    case "number":
+                        format = FORMAT_NUMBER;
+                        break;
+                    default:
+                        throw error("unknown format: " + name);
+                }
+            }
+            emit(new Op(FIELD, null, requireField(spec), false, format, width, align));
+        }
+
+        private void append(byte[] bytes) {
+            literal.write(bytes, 0, bytes.length);
+        }
+
+        private int emit(Op op) {
+            flushLiteral();
+            ops.add(op);
+            return ops.size() - 1;
+        }
+
+        // 連続する固定文字列・コマンドは1命令にまとめる
+        private void flushLiteral() {
+            if (literal.size() > 0) {
+                ops.add(new Op(BYTES, literal.toByteArray(), null, false, 0, 0, null));
+                literal.reset();
+            }
+        }
+
+        private byte[] option(String value, String a, byte[] aBytes, String b, byte[] bBytes,
+                              String c, byte[] cBytes) {
+            if (value.equals(a)) {
+                return aBytes;
+            }
+            if (value.equals(b)) {
+                return bBytes;
+            }
+            if (c != null && value.equals(c)) {
+                return cBytes;
+            }
+            throw error("invalid option: " + value);
+        }
+
+        private String requireField(String field) {
+            if (field.isEmpty()) {
+                throw error("field name is required");
+            }
+            for (int i = 0; i < field.length(); i++) {
+                if (!Character.isLetterOrDigit(field.charAt(i)) && field.charAt(i) != '_') {
+                    throw error("invalid field name: " + field);
+                }
+            }
+            return field;
+        }
+
+        private int parseNumber(String value) {
+            try {
+                int number = Integer.parseInt(value.trim());
+                if (number >= 0 && number <= 255) {
+                    return number;
+                }
+            } catch (NumberFormatException e) {
+                // 下でエラーにする
+            }
+            throw error("invalid number: " + value);
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("line " + lineNumber + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.vydray.pos.printer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// 帳票種別ごとのコンパイル済みテンプレート（同じバージョンなら再コンパイルしない）
+public class PrintTemplateCache {
+    private final Map<String, PrintTemplate> templates = new HashMap<>();
+
+    public synchronized PrintTemplate put(String documentType, String version, String source) {
+        PrintTemplate current = templates.get(documentType);
+        if (current != null && current.getVersion().equals(version)) {
+            return current;
+        }
+        PrintTemplate compiled = PrintTemplate.compile(version, source);
+        templates.put(documentType, compiled);
+        return compiled;
+    }
+
+    // 未設定ならnull（組み込みのレイアウトで印刷する）
+    public synchronized PrintTemplate get(String documentType) {
+        return templates.get(documentType);
+    }
+
+    public synchronized void remove(String documentType) {
+        templates.remove(documentType);
+    }
+}
@@ -0,0 +1,235 @@
+package com.vydray.pos.printer;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// プリンターとのリンクを常時保持する（定期的な死活確認と、切断時の指数バックオフ再接続）
+public class PrinterConnectionManager {
+
+    public enum State {
+        DISCONNECTED,
+        CONNECTING,
+        CONNECTED,
+        RECONNECTING
+    }
+
+    public interface Listener {
+        void onStateChanged(State state, String address, String error);
+    }
+
+    public interface ConnectCallback {
+        void onResult(PrintException error);
+    }
+
+    private final PrinterTransport transport;
+    private final Listener listener;
+    private final ScheduledExecutorService executor;
+
+    private volatile State state = State.DISCONNECTED;
+    private volatile String address;
+    private volatile String lastError;
+
+    private long probeIntervalMs = 15000;
+    private long initialBackoffMs = 1000;
+    private long maxBackoffMs = 30000;
+    private long backoffMs;
+    // connect/disconnectの世代（古い再接続タスクを無効化する）
+    private int generation;
+    private ScheduledFuture<?> probeTask;
+    private ScheduledFuture<?> reconnectTask;
+
+    public PrinterConnectionManager(PrinterTransport transport, Listener listener) {
+        this.transport = transport;
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "PrinterLink");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public synchronized void setTiming(long probeIntervalMs, long initialBackoffMs, long maxBackoffMs) {
+        this.probeIntervalMs = probeIntervalMs;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = Math.max(initialBackoffMs, maxBackoffMs);
+    }
+
+    // キャッシュ済みの状態（ブロックしない）
+    public State getState() {
+        return state;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public boolean isConnected() {
+        return state == State.CONNECTED;
+    }
+
+    // 接続先を設定して接続する。失敗してもバックグラウンドで再接続を続ける
+    public void connect(final String newAddress, final ConnectCallback callback) {
+        final int token;
+        synchronized (this) {
+            token = ++generation;
+            address = newAddress;
+            backoffMs = initialBackoffMs;
+            cancelTasks();
+        }
+        setState(State.CONNECTING, null);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                PrintException error = attempt(token);
+                if (callback != null) {
+                    callback.onResult(error);
+                }
+            }
+        });
+    }
+
+    // 切断はすぐに確定させる（応答のない接続試行の後ろで待たせない。リンクは試行が戻ってから閉じる）
+    public void disconnect(final ConnectCallback callback) {
+        synchronized (this) {
+            generation++;
+            address = null;
+            cancelTasks();
+        }
+        setState(State.DISCONNECTED, null);
+        if (callback != null) {
+            callback.onResult(null);
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                transport.close();
+            }
+        });
+    }
+
+    // 印刷失敗などでリンク切れが疑われるときにすぐ確認する
+    public void reportFailure() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (state == State.CONNECTED) {
+                    probe();
+                }
+            }
+        });
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            generation++;
+            cancelTasks();
+        }
+        executor.shutdownNow();
+    }
+
+    private PrintException attempt(int token) {
+        String target;
+        synchronized (this) {
+            if (token != generation || address == null) {
+                return null;
+            }
+            target = address;
+        }
+
+        try {
+            transport.open(target);
+        } catch (PrintException e) {
+            scheduleReconnect(token, e.getMessage());
+            return e;
+        }
+
+        synchronized (this) {
+            if (token != generation) {
+                // 試行中に切断・接続先の変更があった
+                if (address == null) {
+                    transport.close();
+                }
+                return null;
+            }
+            backoffMs = initialBackoffMs;
+            probeTask = executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    probe();
+                }
+            }, probeIntervalMs, probeIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        setState(State.CONNECTED, null);
+        return null;
+    }
+
+    private void probe() {
+        final int token;
+        synchronized (this) {
+            token = generation;
+        }
+        try {
+            transport.probe();
+        } catch (PrintException e) {
+            synchronized (this) {
+                if (token != generation) {
+                    return;
+                }
+                cancelTasks();
+            }
+            transport.close();
+            scheduleReconnect(token, e.getMessage());
+        }
+    }
+
+    private void scheduleReconnect(final int token, String error) {
+        long delay;
+        synchronized (this) {
+            if (token != generation) {
+                return;
+            }
+            delay = backoffMs;
+            backoffMs = Math.min(backoffMs * 2, maxBackoffMs);
+            reconnectTask = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    attempt(token);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        setState(State.RECONNECTING, error);
+    }
+
+    private void cancelTasks() {
+        if (probeTask != null) {
+            probeTask.cancel(false);
+            probeTask = null;
+        }
+        if (reconnectTask != null) {
+            reconnectTask.cancel(false);
+            reconnectTask = null;
+        }
+    }
+
+    private void setState(State newState, String error) {
+        State previous;
+        synchronized (this) {
+            previous = state;
+            state = newState;
+            lastError = error;
+        }
+        if (previous != newState || error != null) {
+            listener.onStateChanged(newState, address, error);
+        }
+    }
+}
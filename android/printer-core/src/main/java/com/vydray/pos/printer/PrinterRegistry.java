@@ -0,0 +1,289 @@
+package com.vydray.pos.printer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 役割（フロア、レジなど）ごとのプリンター台帳と、帳票種別からの振り分け
+public class PrinterRegistry {
+    public static final String DEFAULT_ROLE = "default";
+
+    public interface TransportFactory {
+        PrinterTransport create(String role);
+    }
+
+    public interface Listener {
+        void onJobCompleted(String role, PrintJob job);
+
+        void onJobFailed(String role, PrintJob job, PrintException error, boolean willRetry);
+
+        void onDocumentPrinted(String role, PrintJob job, int printedCount);
+
+        void onStateChanged(String role, PrinterConnectionManager.State state, String address, String error);
+
+        void onPrinterStatusChanged(String role, PrinterStatus status);
+    }
+
+    // 振り分け結果（どのプリンターに積んだか）
+    public static final class Submission {
+        public final String role;
+        public final long jobId;
+
+        Submission(String role, long jobId) {
+            this.role = role;
+            this.jobId = jobId;
+        }
+    }
+
+    private final File journalRoot;
+    private final TransportFactory transportFactory;
+    private final Listener listener;
+
+    private final Map<String, PrinterUnit> units = new LinkedHashMap<>();
+    private final Map<String, String> routes = new HashMap<>();
+    private final Map<String, String> backups = new HashMap<>();
+    // この件数以上たまっているプリンターは「混雑」とみなして予備に回す
+    private int busyThreshold = 3;
+
+    public PrinterRegistry(File journalRoot, TransportFactory transportFactory, Listener listener) {
+        this.journalRoot = journalRoot;
+        this.transportFactory = transportFactory;
+        this.listener = listener;
+    }
+
+    // 役割のプリンターを用意する（なければ作成し、接続されるまでスプーラーは停止）
+    public synchronized PrinterUnit register(final String role) {
+        PrinterUnit unit = units.get(role);
+        if (unit != null) {
+            return unit;
+        }
+
+        PrinterTransport transport = transportFactory.create(role);
+        // 既定プリンターは従来どおりジャーナル直下、それ以外は役割ごとのサブディレクトリ
+        File journalDir = DEFAULT_ROLE.equals(role) ? journalRoot : new File(journalRoot, role);
+        final PrintSpooler spooler = new PrintSpooler(transport,
+                new PrintJournal(journalDir), new PrintSpooler.Listener() {
+                    @Override
+                    public void onJobCompleted(PrintJob job) {
+                        PrinterUnit done = get(role);
+                        if (done != null) {
+                            done.touch(System.currentTimeMillis());
+                        }
+                        listener.onJobCompleted(role, job);
+                    }
+
+                    @Override
+                    public void onJobFailed(PrintJob job, PrintException error, boolean willRetry) {
+                        listener.onJobFailed(role, job, error, willRetry);
+                        PrinterUnit failed = get(role);
+                        if (failed != null) {
+                            failed.getConnection().reportFailure();
+                            failed.getStatusMonitor().refresh();
+                        }
+                    }
+
+                    @Override
+                    public void onDocumentPrinted(PrintJob job, int printedCount) {
+                        listener.onDocumentPrinted(role, job, printedCount);
+                    }
+                });
+        // 用紙切れ・カバー開きの間はジョブを保留し、直ったら続きから印刷する
+        final PrinterStatusMonitor statusMonitor = new PrinterStatusMonitor(transport,
+                new PrinterStatusMonitor.Listener() {
+                    @Override
+                    public void onStatusChanged(PrinterStatus status) {
+                        String holdReason = status.holdReason();
+                        if (holdReason != null) {
+                            spooler.hold(holdReason);
+                        } else {
+                            spooler.release();
+                        }
+                        listener.onPrinterStatusChanged(role, status);
+                    }
+                });
+        PrinterConnectionManager connection = new PrinterConnectionManager(transport,
+                new PrinterConnectionManager.Listener() {
+                    @Override
+                    public void onStateChanged(PrinterConnectionManager.State state, String address, String error) {
+                        if (state == PrinterConnectionManager.State.CONNECTING
+                                || state == PrinterConnectionManager.State.CONNECTED) {
+                            wakeUp(role);
+                        }
+                        if (state == PrinterConnectionManager.State.CONNECTED) {
+                            spooler.resume();
+                            statusMonitor.start();
+                        } else {
+                            spooler.pause();
+                            statusMonitor.stop();
+                        }
+                        listener.onStateChanged(role, state, address, error);
+                    }
+                });
+
+        spooler.pause();
+        spooler.start();
+        unit = new PrinterUnit(role, transport, spooler, connection, statusMonitor);
+        units.put(role, unit);
+        return unit;
+    }
+
+    public void unregister(String role) {
+        PrinterUnit unit;
+        synchronized (this) {
+            unit = units.remove(role);
+            backups.remove(role);
+        }
+        if (unit != null) {
+            unit.shutdown();
+        }
+    }
+
+    public synchronized PrinterUnit get(String role) {
+        return units.get(role);
+    }
+
+    public synchronized List<PrinterUnit> getUnits() {
+        return new ArrayList<>(units.values());
+    }
+
+    public synchronized void setRoute(String documentType, String role) {
+        routes.put(documentType, role);
+    }
+
+    public synchronized void setBackup(String role, String backupRole) {
+        if (backupRole == null) {
+            backups.remove(role);
+        } else {
+            backups.put(role, backupRole);
+        }
+    }
+
+    public synchronized void clearRoutes() {
+        routes.clear();
+        backups.clear();
+    }
+
+    public synchronized void setBusyThreshold(int busyThreshold) {
+        this.busyThreshold = Math.max(1, busyThreshold);
+    }
+
+    // 帳票種別の振り分け先。主プリンターがオフラインか混雑なら予備へ回す
+    public synchronized PrinterUnit route(String documentType) {
+        String role = routes.get(documentType);
+        PrinterUnit primary = role != null ? units.get(role) : null;
+        if (primary == null) {
+            primary = units.get(DEFAULT_ROLE);
+        }
+        if (primary == null) {
+            return null;
+        }
+
+        String backupRole = backups.get(primary.getRole());
+        PrinterUnit backup = backupRole != null ? units.get(backupRole) : null;
+        if (backup == null || !backup.isOnline()) {
+            return primary;
+        }
+        if (!primary.isOnline()) {
+            return backup;
+        }
+        if (primary.getPendingCount() >= busyThreshold
+                && backup.getPendingCount() < primary.getPendingCount()) {
+            return backup;
+        }
+        return primary;
+    }
+
+    public Submission submit(String documentType, byte[] data) throws IOException, PrintException {
+        return submit(documentType, new byte[][] {data});
+    }
+
+    public Submission submit(String documentType, byte[][] documents) throws IOException, PrintException {
+        return submit(documentType, PrintLane.of(documentType), documents);
+    }
+
+    // 振り分けは帳票種別、印刷の順番はレーンで決める
+    public Submission submit(String documentType, PrintLane lane, byte[][] documents)
+            throws IOException, PrintException {
+        PrinterUnit unit = route(documentType);
+        if (unit == null) {
+            throw new PrintException(PrintException.Reason.NO_ROUTE, "No printer configured for " + documentType);
+        }
+        long jobId = unit.getSpooler().submit(documentType, lane, documents);
+        unit.touch(System.currentTimeMillis());
+        String address = wakeUp(unit.getRole());
+        if (address != null) {
+            unit.getConnection().connect(address, null);
+        }
+        return new Submission(unit.getRole(), jobId);
+    }
+
+    // 最後の印刷からidleMs以上たち、待ちジョブのない接続中のプリンターを切断する（プリンターの電池を節約する）
+    // 次にそのプリンターへ印刷が積まれたら同じ接続先へ自動で接続し直す。戻り値は切断した台数
+    public int sleepIdleLinks(long idleMs, long nowMillis) {
+        List<PrinterUnit> idle = new ArrayList<>();
+        synchronized (this) {
+            for (PrinterUnit unit : units.values()) {
+                PrinterConnectionManager connection = unit.getConnection();
+                if (connection.isConnected() && unit.getPendingCount() == 0
+                        && nowMillis - unit.getLastActivityMillis() >= idleMs) {
+                    unit.sleepingAddress = connection.getAddress();
+                    idle.add(unit);
+                }
+            }
+        }
+        for (PrinterUnit unit : idle) {
+            unit.getConnection().disconnect(null);
+        }
+        return idle.size();
+    }
+
+    public synchronized boolean isSleeping(String role) {
+        PrinterUnit unit = units.get(role);
+        return unit != null && unit.sleepingAddress != null;
+    }
+
+    // 無操作で切断した状態を解く（戻り値は接続し直すべきアドレス、眠っていなければnull）
+    // 明示的な接続・切断のときにも呼び、古い接続先へ勝手に接続し直さないようにする
+    public synchronized String wakeUp(String role) {
+        PrinterUnit unit = units.get(role);
+        if (unit == null) {
+            return null;
+        }
+        String address = unit.sleepingAddress;
+        unit.sleepingAddress = null;
+        return address;
+    }
+
+    public boolean cancel(long jobId) {
+        for (PrinterUnit unit : getUnits()) {
+            if (unit.getSpooler().cancel(jobId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 全プリンターのレーンの未印刷ジョブを取り消す（戻り値は取り消したジョブID）
+    public List<Long> cancelLane(PrintLane lane) {
+        List<Long> cancelled = new ArrayList<>();
+        for (PrinterUnit unit : getUnits()) {
+            cancelled.addAll(unit.getSpooler().cancelLane(lane));
+        }
+        return cancelled;
+    }
+
+    public void shutdown() {
+        List<PrinterUnit> all;
+        synchronized (this) {
+            all = new ArrayList<>(units.values());
+            units.clear();
+        }
+        for (PrinterUnit unit : all) {
+            unit.shutdown();
+        }
+    }
+}
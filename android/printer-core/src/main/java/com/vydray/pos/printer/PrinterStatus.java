@@ -0,0 +1,77 @@
+package com.vydray.pos.printer;
+
+// プリンターの状態（送信の合間の確認と、状態監視のキャッシュに使う）
+public final class PrinterStatus {
+    // 電池残量（SII SDKのBATTERY_STATUS_*と同じ並び）
+    public static final int BATTERY_UNKNOWN = -1;
+    public static final int BATTERY_FULL = 0;
+    public static final int BATTERY_MIDDLE = 1;
+    public static final int BATTERY_LOW = 2;
+    public static final int BATTERY_EMPTY = 3;
+
+    public static final PrinterStatus READY = new PrinterStatus(false, false, false, false, 0);
+
+    public final boolean offline;
+    public final boolean paperOut;
+    public final boolean coverOpen;
+    // ヘッド温度異常・電圧異常など、印字を続けられない状態
+    public final boolean error;
+    // 受信バッファが残りわずか（空くまで送信を止める）
+    public final boolean bufferNearFull;
+    public final int batteryLevel;
+    // 機種固有の生の値（ログ・エラーメッセージ用）
+    public final int code;
+
+    public PrinterStatus(boolean offline, boolean paperOut, boolean error, boolean bufferNearFull, int code) {
+        this(offline, paperOut, false, error, bufferNearFull, BATTERY_UNKNOWN, code);
+    }
+
+    public PrinterStatus(boolean offline, boolean paperOut, boolean coverOpen, boolean error,
+                         boolean bufferNearFull, int batteryLevel, int code) {
+        this.offline = offline;
+        this.paperOut = paperOut;
+        this.coverOpen = coverOpen;
+        this.error = error;
+        this.bufferNearFull = bufferNearFull;
+        this.batteryLevel = batteryLevel;
+        this.code = code;
+    }
+
+    // 店員が直すまで印刷を止めておく理由（なければnull）
+    public String holdReason() {
+        return holdReason(paperOut, coverOpen);
+    }
+
+    static String holdReason(boolean paperOut, boolean coverOpen) {
+        if (paperOut) {
+            return "paperOut";
+        }
+        if (coverOpen) {
+            return "coverOpen";
+        }
+        return null;
+    }
+
+    public String batteryName() {
+        switch (batteryLevel) {
+            case BATTERY_FULL:
+                return "full";
+            case BATTERY_MIDDLE:
+                return "middle";
+            case BATTERY_LOW:
+                return "low";
+            case BATTERY_EMPTY:
+                return "empty";
+            default:
+                return "unknown";
+        }
+    }
+
+    // 監視で通知に値する違いがあるか（バッファ残量は送信のたびに変わるので比べない）
+    // 生の値は関係のないビットも変わるので比べず、読み取った状態だけを比べる
+    public boolean sameState(PrinterStatus other) {
+        return other != null && offline == other.offline && paperOut == other.paperOut
+                && coverOpen == other.coverOpen && error == other.error
+                && batteryLevel == other.batteryLevel;
+    }
+}
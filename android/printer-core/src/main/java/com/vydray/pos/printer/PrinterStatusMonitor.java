@@ -0,0 +1,123 @@
+package com.vydray.pos.printer;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// プリンターの状態（用紙切れ・カバー開き・電池残量）を接続中ずっと監視し、最新の値を保持する
+// ・状態を問い合わせられる経路なら一定間隔で読みに行く
+// ・SDKからの自動通知はupdate()で受け取る
+public class PrinterStatusMonitor {
+
+    public interface Listener {
+        void onStatusChanged(PrinterStatus status);
+    }
+
+    private final PrinterTransport transport;
+    private final Listener listener;
+    private final ScheduledExecutorService executor;
+
+    private volatile PrinterStatus status;
+    // 次に読んだ状態は変化がなくても通知する
+    private boolean forceNotify;
+    private long pollIntervalMs = 3000;
+    private ScheduledFuture<?> pollTask;
+
+    public PrinterStatusMonitor(PrinterTransport transport, Listener listener) {
+        this.transport = transport;
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "PrinterStatus");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public synchronized void setPollInterval(long pollIntervalMs) {
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    // キャッシュ済みの状態（ブロックしない。接続後まだ読めていなければnull）
+    public PrinterStatus getStatus() {
+        return status;
+    }
+
+    // 接続されたら監視を始める
+    public synchronized void start() {
+        if (pollTask != null || !(transport instanceof FlowControlledTransport)) {
+            return;
+        }
+        pollTask = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        }, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // 切断されたら止め、古い状態は捨てる
+    public synchronized void stop() {
+        if (pollTask != null) {
+            pollTask.cancel(false);
+            pollTask = null;
+        }
+        status = null;
+    }
+
+    public void shutdown() {
+        stop();
+        executor.shutdownNow();
+    }
+
+    // 印刷が用紙切れなどで止まったときに、すぐ読み直して保留・解除を判断させる
+    public void refresh() {
+        synchronized (this) {
+            if (pollTask == null) {
+                return;
+            }
+            forceNotify = true;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                poll();
+            }
+        });
+    }
+
+    // 最新の状態を反映し、前回から変わっていれば通知する
+    public void update(PrinterStatus next) {
+        PrinterStatus previous;
+        boolean force;
+        synchronized (this) {
+            previous = status;
+            status = next;
+            force = forceNotify;
+            forceNotify = false;
+        }
+        if (force || !next.sameState(previous)) {
+            listener.onStatusChanged(next);
+        }
+    }
+
+    void poll() {
+        PrinterStatus next;
+        try {
+            next = ((FlowControlledTransport) transport).readStatus();
+        } catch (PrintException e) {
+            // リンク切れは接続管理の死活確認に任せる
+            return;
+        }
+        synchronized (this) {
+            if (pollTask == null) {
+                return;
+            }
+        }
+        update(next);
+    }
+}
@@ -0,0 +1,17 @@
+package com.vydray.pos.printer;
+
+// プリンターへの出力経路（実機はSII SDK、テストではフェイクに差し替える）
+public interface PrinterTransport {
+    // リンクを開く（接続済みなら一度閉じてから開き直す）
+    void open(String address) throws PrintException;
+
+    void close();
+
+    // 軽量な状態確認（リンクが切れていれば例外）
+    void probe() throws PrintException;
+
+    // エンコード済みのバイト列をそのまま送る
+    void send(byte[] data) throws PrintException;
+
+    void cutPaper() throws PrintException;
+}
@@ -0,0 +1,66 @@
+package com.vydray.pos.printer;
+
+// 1台のプリンター分の出力経路・スプーラー・接続管理・状態監視の組
+public final class PrinterUnit {
+    private final String role;
+    private final PrinterTransport transport;
+    private final PrintSpooler spooler;
+    private final PrinterConnectionManager connection;
+    private final PrinterStatusMonitor statusMonitor;
+    // 最後に印刷を積んだ・印刷し終えた・接続した時刻（無操作での切断の判断に使う）
+    private volatile long lastActivityMillis = System.currentTimeMillis();
+    // 無操作で切断した接続先（次の印刷で接続し直す。PrinterRegistryのロックで守る）
+    String sleepingAddress;
+
+    PrinterUnit(String role, PrinterTransport transport, PrintSpooler spooler, PrinterConnectionManager connection,
+                PrinterStatusMonitor statusMonitor) {
+        this.role = role;
+        this.transport = transport;
+        this.spooler = spooler;
+        this.connection = connection;
+        this.statusMonitor = statusMonitor;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public PrinterTransport getTransport() {
+        return transport;
+    }
+
+    public PrintSpooler getSpooler() {
+        return spooler;
+    }
+
+    public PrinterConnectionManager getConnection() {
+        return connection;
+    }
+
+    public PrinterStatusMonitor getStatusMonitor() {
+        return statusMonitor;
+    }
+
+    public long getLastActivityMillis() {
+        return lastActivityMillis;
+    }
+
+    void touch(long nowMillis) {
+        lastActivityMillis = nowMillis;
+    }
+
+    public boolean isOnline() {
+        return connection.isConnected();
+    }
+
+    public int getPendingCount() {
+        return spooler.getStatus().pendingJobIds.length;
+    }
+
+    void shutdown() {
+        connection.shutdown();
+        statusMonitor.shutdown();
+        spooler.stop();
+        transport.close();
+    }
+}
@@ -0,0 +1,125 @@
+package com.vydray.pos.printer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+// 変換済みラスターの保存先（元画像のハッシュをキーにfilesDirへ保存し、印刷時はそのまま送る）
+public class RasterCache {
+    private static final String SUFFIX = ".raster";
+
+    private final File directory;
+    private final Map<String, byte[]> memory = new HashMap<>();
+
+    public RasterCache(File directory) {
+        this.directory = directory;
+    }
+
+    // 元画像の内容ハッシュ（SHA-256の16進文字列）
+    public static String hash(byte[] source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized boolean contains(String hash) {
+        return get(hash) != null;
+    }
+
+    // 変換済みのGS v 0コマンドを返す（未登録ならnull）
+    public synchronized byte[] get(String hash) {
+        if (hash == null || !isValidKey(hash)) {
+            return null;
+        }
+        byte[] raster = memory.get(hash);
+        if (raster != null) {
+            return raster;
+        }
+
+        File file = new File(directory, hash + SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            raster = readFile(file);
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+        memory.put(hash, raster);
+        return raster;
+    }
+
+    public synchronized void put(String hash, byte[] raster) throws IOException {
+        if (!isValidKey(hash)) {
+            throw new IllegalArgumentException("Invalid image hash: " + hash);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create raster directory: " + directory);
+        }
+
+        File tmp = new File(directory, hash + SUFFIX + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(raster);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(new File(directory, hash + SUFFIX))) {
+            tmp.delete();
+            throw new IOException("Cannot store raster: " + hash);
+        }
+        memory.put(hash, raster);
+    }
+
+    public synchronized void remove(String hash) {
+        if (isValidKey(hash)) {
+            memory.remove(hash);
+            new File(directory, hash + SUFFIX).delete();
+        }
+    }
+
+    // ファイル名に使うので16進文字だけを受け付ける
+    private static boolean isValidKey(String hash) {
+        if (hash.isEmpty() || hash.length() > 64) {
+            return false;
+        }
+        for (int i = 0; i < hash.length(); i++) {
+            if (Character.digit(hash.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            byte[] data = new byte[(int) file.length()];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Truncated raster: " + file);
+                }
+                offset += read;
+            }
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+}
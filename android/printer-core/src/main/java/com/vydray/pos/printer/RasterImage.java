@@ -0,0 +1,106 @@
+package com.vydray.pos.printer;
+
+import java.util.Arrays;
+
+// 画像を1ビットのラスターに変換してGS v 0コマンドにする（登録時に1回だけ実行する）
+public final class RasterImage {
+    // MP-B20の印字幅（58mm用紙、203dpi）
+    public static final int MAX_WIDTH = 384;
+
+    private static final int THRESHOLD = 128;
+
+    private RasterImage() {
+    }
+
+    // ARGBのピクセル列を幅maxWidth以下に縮小し、誤差拡散でディザリングしてエンコードする
+    public static byte[] encode(int[] argb, int width, int height, int maxWidth) {
+        if (width <= 0 || height <= 0 || argb.length < width * height) {
+            throw new IllegalArgumentException("Invalid image size: " + width + "x" + height);
+        }
+
+        int targetWidth = Math.min(width, maxWidth);
+        int targetHeight = Math.max(1, (int) ((long) height * targetWidth / width));
+        int[] gray = scaleToGray(argb, width, height, targetWidth, targetHeight);
+        return toRasterCommand(dither(gray, targetWidth, targetHeight), targetWidth, targetHeight);
+    }
+
+    // 面積平均で縮小しながら輝度に変換する（透明部分は白として扱う）
+    static int[] scaleToGray(int[] argb, int width, int height, int targetWidth, int targetHeight) {
+        int[] gray = new int[targetWidth * targetHeight];
+        for (int ty = 0; ty < targetHeight; ty++) {
+            int y0 = (int) ((long) ty * height / targetHeight);
+            int y1 = Math.max(y0 + 1, (int) ((long) (ty + 1) * height / targetHeight));
+            for (int tx = 0; tx < targetWidth; tx++) {
+                int x0 = (int) ((long) tx * width / targetWidth);
+                int x1 = Math.max(x0 + 1, (int) ((long) (tx + 1) * width / targetWidth));
+                long sum = 0;
+                for (int y = y0; y < y1; y++) {
+                    int row = y * width;
+                    for (int x = x0; x < x1; x++) {
+                        sum += luminance(argb[row + x]);
+                    }
+                }
+                gray[ty * targetWidth + tx] = (int) (sum / ((long) (y1 - y0) * (x1 - x0)));
+            }
+        }
+        return gray;
+    }
+
+    // Floyd–Steinberg誤差拡散（trueが黒ドット）
+    static boolean[] dither(int[] gray, int width, int height) {
+        int[] current = new int[width + 2];
+        int[] next = new int[width + 2];
+        boolean[] dots = new boolean[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int value = gray[y * width + x] + current[x + 1] / 16;
+                boolean black = value < THRESHOLD;
+                dots[y * width + x] = black;
+                int error = value - (black ? 0 : 255);
+                current[x + 2] += error * 7;
+                next[x] += error * 3;
+                next[x + 1] += error * 5;
+                next[x + 2] += error;
+            }
+            int[] swap = current;
+            current = next;
+            next = swap;
+            Arrays.fill(next, 0);
+        }
+        return dots;
+    }
+
+    // GS v 0 m xL xH yL yH d1...dk（1バイト8ドット、MSBが左）
+    static byte[] toRasterCommand(boolean[] dots, int width, int height) {
+        int bytesPerRow = (width + 7) / 8;
+        byte[] command = new byte[8 + bytesPerRow * height];
+        command[0] = EscPos.GS;
+        command[1] = 'v';
+        command[2] = '0';
+        command[3] = 0;
+        command[4] = (byte) bytesPerRow;
+        command[5] = (byte) (bytesPerRow >> 8);
+        command[6] = (byte) height;
+        command[7] = (byte) (height >> 8);
+        int offset = 8;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (dots[y * width + x]) {
+                    command[offset + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+                }
+            }
+            offset += bytesPerRow;
+        }
+        return command;
+    }
+
+    private static int luminance(int argb) {
+        int alpha = argb >>> 24;
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+        int y = (r * 299 + g * 587 + b * 114) / 1000;
+        // 透明な背景は白に合成する
+        return (y * alpha + 255 * (255 - alpha)) / 255;
+    }
+}
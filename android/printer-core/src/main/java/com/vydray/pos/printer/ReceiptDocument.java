@@ -0,0 +1,124 @@
+package com.vydray.pos.printer;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// 領収書の印字内容
+public class ReceiptDocument implements TemplateBinding {
+    public String storeName = "";
+    public String storeAddress = "";
+    public String storePhone = "";
+    public String storePostalCode = "";
+    public String storeRegistrationNumber = "";
+    public String receiptNumber = "";
+    public String tableName = "";
+    public String guestName = "";
+    public String castName = "";
+    public String timestamp = "";
+    public String receiptTo = "";  // 宛名
+    public String receiptNote = "お品代として";  // 但し書き
+
+    public int subtotal;
+    public int serviceTax;
+    public int consumptionTax;
+    public int roundingAdjustment;
+    public int roundedTotal;
+    public int cardFeeRate;
+    public int cardFee;
+    public int paymentCash;
+    public int paymentCard;
+    public int paymentOther;
+    public String paymentOtherMethod = "";
+    public int change;
+
+    // 収入印紙設定
+    public boolean showRevenueStamp = true;
+    public int revenueStampThreshold = 50000;
+
+    // 変換済みのラスター画像（RasterCacheから取得、nullなら印字しない）
+    public byte[] logo;  // 店舗ロゴ（先頭）
+    public byte[] footerImage;  // QRコード・印影など（発行者情報の下）
+
+    public List<OrderItem> items = new ArrayList<>();
+
+    // 印刷呼び出しのデータから読み込む（明細はOrderItemDecoder、画像は呼び出し側で設定する）
+    public static ReceiptDocument read(JSONObject data) {
+        ReceiptDocument doc = new ReceiptDocument();
+        doc.storeName = data.optString("storeName", "");
+        doc.storeAddress = data.optString("storeAddress", "");
+        doc.storePhone = data.optString("storePhone", "");
+        doc.storePostalCode = data.optString("storePostalCode", "");
+        doc.storeRegistrationNumber = data.optString("storeRegistrationNumber", "");
+        doc.receiptNumber = data.optString("receiptNumber", "");
+        doc.tableName = data.optString("tableName", "");
+        doc.guestName = data.optString("guestName", "");
+        doc.castName = data.optString("castName", "");
+        doc.timestamp = data.optString("timestamp", "");
+        doc.receiptTo = data.optString("receiptTo", "");  // 宛名
+        doc.receiptNote = data.optString("receiptNote", "お品代として");  // 但し書き
+
+        doc.subtotal = data.optInt("subtotal", 0);
+        doc.serviceTax = data.optInt("serviceTax", 0);
+        doc.consumptionTax = data.optInt("consumptionTax", 0);
+        doc.roundingAdjustment = data.optInt("roundingAdjustment", 0);
+        doc.roundedTotal = data.optInt("roundedTotal", 0);
+        doc.cardFeeRate = data.optInt("cardFeeRate", 0);
+        doc.cardFee = data.optInt("cardFee", 0);
+        doc.paymentCash = data.optInt("paymentCash", 0);
+        doc.paymentCard = data.optInt("paymentCard", 0);
+        doc.paymentOther = data.optInt("paymentOther", 0);
+        doc.paymentOtherMethod = data.optString("paymentOtherMethod", "");
+        doc.change = data.optInt("change", 0);
+
+        // 収入印紙設定
+        doc.showRevenueStamp = data.optBoolean("showRevenueStamp", true);
+        doc.revenueStampThreshold = data.optInt("revenueStampThreshold", 50000);
+        return doc;
+    }
+
+    // テンプレートから参照する値（計算済みの値も含む）
+    @Override
+    public Object value(String field) {
+        switch (field) {
+            case "storeName": return storeName;
+            case "storeAddress": return storeAddress;
+            case "storePhone": return storePhone;
+            case "storePostalCode": return storePostalCode;
+            case "storeRegistrationNumber": return storeRegistrationNumber;
+            case "receiptNumber": return receiptNumber;
+            case "tableName": return tableName;
+            case "guestName": return guestName;
+            case "castName": return castName;
+            case "timestamp": return timestamp;
+            case "receiptTo": return receiptTo;
+            case "receiptNote": return receiptNote;
+            case "subtotal": return subtotal;
+            case "serviceTax": return serviceTax;
+            case "consumptionTax": return consumptionTax;
+            case "roundingAdjustment": return roundingAdjustment;
+            case "roundedTotal": return roundedTotal;
+            case "cardFeeRate": return cardFeeRate;
+            case "cardFee": return cardFee;
+            case "paymentCash": return paymentCash;
+            case "paymentCard": return paymentCard;
+            case "paymentOther": return paymentOther;
+            case "paymentOtherMethod": return paymentOtherMethod;
+            case "change": return change;
+            case "showRevenueStamp": return showRevenueStamp;
+            case "revenueStampThreshold": return revenueStampThreshold;
+            case "needsRevenueStamp": return showRevenueStamp && roundedTotal >= revenueStampThreshold;
+            case "revenueStampAmount": return PaymentMath.revenueStampAmount(roundedTotal);
+            case "taxIncluded": return subtotal + serviceTax + consumptionTax;
+            case "logo": return logo;
+            case "footerImage": return footerImage;
+            default: return null;
+        }
+    }
+
+    @Override
+    public List<? extends TemplateBinding> rows(String field) {
+        return "items".equals(field) ? items : null;
+    }
+}
@@ -0,0 +1,162 @@
+package com.vydray.pos.printer;
+
+import java.util.List;
+
+// 領収書をESC/POSバイト列に描画する（金額は32桁目に右寄せ、長い名前や住所は折り返す）
+public final class ReceiptRenderer {
+    // 収入印紙が必要な場合（MP-B20用: 32文字幅）
+    private static final byte[] STAMP_HEADER = EscPos.encode(
+            "\n"
+            + "       領 収 書       ┌────┐\n"
+            + "                     │      │\n"
+            + "                     │ 収入 │\n"
+            + "                     │ 印紙 │\n");
+    private static final byte[] STAMP_ROW_OPEN = EscPos.encode("                     │");
+    private static final byte[] STAMP_ROW_CLOSE = EscPos.encode("│\n");
+    private static final byte[] STAMP_FOOTER = EscPos.encode("                     └────┘\n");
+    // 収入印紙が不要な場合
+    private static final byte[] PLAIN_HEADER = EscPos.concat(
+            EscPos.encode("\n"), EscPos.ALIGN_CENTER, EscPos.encode("領 収 書\n"), EscPos.ALIGN_LEFT,
+            EscPos.encode("\n"));
+
+    private static final byte[] HONORIFIC = EscPos.encode(" 様\n");
+    private static final byte[] BLANK_ADDRESSEE = EscPos.encode("                    様\n");
+    private static final byte[] AMOUNT_OPEN = EscPos.encode("  金額  ￥");
+    private static final byte[] AMOUNT_CLOSE = EscPos.encode("－  \n");
+    private static final byte[] NOTE = EscPos.encode("但し ");
+    private static final byte[] BREAKDOWN_HEADER = EscPos.encode("【内訳】\n");
+    private static final byte[] TAX_INCLUDED = EscPos.encode("税込金額:");
+    private static final byte[] TAX_OPEN = EscPos.encode("（内消費税等:");
+    private static final byte[] TAX_CLOSE = EscPos.encode("）");
+    private static final byte[] RECEIVED = EscPos.encode("\n上記正に領収いたしました\n\n");
+    private static final byte[] PAYMENT_HEADER = EscPos.encode("【お支払い内訳】\n");
+    private static final byte[] CASH = EscPos.encode("現金:");
+    private static final byte[] CARD = EscPos.encode("カード:");
+    private static final byte[] CARD_FEE_OPEN = EscPos.encode("カード手数料(");
+    private static final byte[] CARD_FEE_CLOSE = EscPos.encode("%):");
+    private static final byte[] POSTAL = EscPos.encode("〒");
+    private static final byte[] TEL = EscPos.encode("TEL: ");
+    private static final byte[] REGISTRATION = EscPos.encode("登録番号: ");
+    private static final byte[] NUMBER = EscPos.encode("\nNo. ");
+    private static final byte[] TABLE_OPEN = EscPos.encode("(卓: ");
+    private static final byte[] STAFF = EscPos.encode(" / 担当: ");
+    private static final byte[] TAIL = EscPos.encode(")\n\n\n");
+
+    private ReceiptRenderer() {
+    }
+
+    public static void render(ReceiptDocument doc, EscPosWriter out) {
+        // 店舗ロゴ
+        if (doc.logo != null) {
+            writeImage(doc.logo, out);
+        }
+
+        // ヘッダー部分（領収書タイトルと収入印紙欄）
+        if (doc.showRevenueStamp && doc.roundedTotal >= doc.revenueStampThreshold) {
+            out.bytes(STAMP_HEADER);
+            // 金額に応じた印紙額を右寄せ6桁で表示
+            String stampAmount = PaymentMath.revenueStampAmount(doc.roundedTotal);
+            out.bytes(STAMP_ROW_OPEN);
+            int cell = out.size();
+            out.text(stampAmount).pad(cell, 6, EscPosWriter.Align.RIGHT).bytes(STAMP_ROW_CLOSE);
+            out.bytes(STAMP_FOOTER);
+        } else {
+            out.bytes(PLAIN_HEADER);
+        }
+        out.newline();
+
+        // 発行日
+        out.text(doc.timestamp).newline().newline();
+
+        // 宛名
+        if (!doc.receiptTo.isEmpty()) {
+            out.fitted(doc.receiptTo, TextWidth.LINE_WIDTH - (HONORIFIC.length - 1)).bytes(HONORIFIC);
+        } else {
+            out.bytes(BLANK_ADDRESSEE);
+        }
+        out.newline();
+
+        // 金額（大きく表示）
+        out.bytes(EscPos.RULE_DOUBLE);
+        out.bytes(AMOUNT_OPEN).grouped(doc.roundedTotal).bytes(AMOUNT_CLOSE);
+        out.bytes(EscPos.RULE_DOUBLE);
+        out.newline();
+
+        // 但し書き
+        out.bytes(NOTE).wrapped(doc.receiptNote, TextWidth.LINE_WIDTH - NOTE.length, NOTE.length).newline();
+
+        // 内訳
+        out.bytes(BREAKDOWN_HEADER).bytes(EscPos.RULE_SINGLE);
+        List<OrderItem> items = doc.items;
+        for (int i = 0, n = items.size(); i < n; i++) {
+            OrderItem item = items.get(i);
+            String line = item.cast != null && !item.cast.isEmpty()
+                    ? item.name + " (" + item.cast + ")" : item.name;
+            out.wrapped(line, TextWidth.LINE_WIDTH, OrderSlipRenderer.ITEM_INDENT);
+            OrderSlipRenderer.writeQuantityLine(item, out);
+        }
+        out.bytes(EscPos.RULE_SINGLE);
+
+        // 小計・税金
+        int taxBase = doc.subtotal + doc.serviceTax;  // 税込金額
+        OrderSlipRenderer.writeAmount(TAX_INCLUDED, taxBase + doc.consumptionTax, out);
+        int start = out.size();
+        out.bytes(TAX_OPEN);
+        int value = out.size();
+        out.yen(doc.consumptionTax).bytes(TAX_CLOSE).alignRight(start, value).newline();
+        if (doc.roundingAdjustment != 0) {
+            OrderSlipRenderer.writeRounding(doc.roundingAdjustment, out);
+        }
+        out.bytes(RECEIVED);
+
+        // 支払い内訳（カード手数料が設定されている場合のみ表示）
+        if (doc.cardFeeRate > 0) {
+            out.bytes(PAYMENT_HEADER);
+            OrderSlipRenderer.writeAmount(CASH, doc.paymentCash, out);
+            OrderSlipRenderer.writeAmount(CARD, doc.paymentCard, out);
+            if (doc.cardFee > 0) {
+                start = out.size();
+                out.bytes(CARD_FEE_OPEN).number(doc.cardFeeRate).bytes(CARD_FEE_CLOSE);
+                value = out.size();
+                out.yen(doc.cardFee).alignRight(start, value).newline();
+            }
+            out.newline();
+        }
+
+        // 発行者情報
+        out.bytes(EscPos.RULE_DOUBLE);
+        out.wrapped(doc.storeName, TextWidth.LINE_WIDTH, 0);
+        if (!doc.storePostalCode.isEmpty()) {
+            out.bytes(POSTAL).text(doc.storePostalCode).newline();
+        }
+        if (!doc.storeAddress.isEmpty()) {
+            out.wrapped(doc.storeAddress, TextWidth.LINE_WIDTH, 0);
+        }
+        if (!doc.storePhone.isEmpty()) {
+            out.bytes(TEL).text(doc.storePhone).newline();
+        }
+        // インボイス登録番号
+        if (!doc.storeRegistrationNumber.isEmpty()) {
+            out.bytes(REGISTRATION).text(doc.storeRegistrationNumber).newline();
+        }
+        out.bytes(EscPos.RULE_DOUBLE);
+        if (doc.footerImage != null) {
+            writeImage(doc.footerImage, out);
+        }
+
+        // 領収書番号（下部に小さく）
+        out.bytes(NUMBER).text(doc.receiptNumber).newline();
+
+        // テーブル・担当情報（控え用）
+        out.bytes(TABLE_OPEN).text(doc.tableName);
+        if (!doc.castName.isEmpty()) {
+            out.bytes(STAFF).text(doc.castName);
+        }
+        out.bytes(TAIL);
+    }
+
+    // 変換済みのラスターを中央寄せで送る（印刷時の画像処理はしない）
+    private static void writeImage(byte[] raster, EscPosWriter out) {
+        out.bytes(EscPos.ALIGN_CENTER).bytes(raster).bytes(EscPos.ALIGN_LEFT);
+    }
+}
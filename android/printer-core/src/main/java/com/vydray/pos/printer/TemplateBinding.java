@@ -0,0 +1,12 @@
+package com.vydray.pos.printer;
+
+import java.util.List;
+
+// テンプレートに値を渡す側（帳票や明細行）
+public interface TemplateBinding {
+    // String / Number / Boolean / byte[]（ラスター画像）のいずれか。未定義ならnull
+    Object value(String field);
+
+    // #each で繰り返す行（未定義ならnull）
+    List<? extends TemplateBinding> rows(String field);
+}
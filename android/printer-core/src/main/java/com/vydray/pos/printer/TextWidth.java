@@ -0,0 +1,99 @@
+package com.vydray.pos.printer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+// MP-B20での印字幅（半角=1桁、全角=2桁、1行32桁）を事前計算した表で引く
+public final class TextWidth {
+    public static final int LINE_WIDTH = 32;
+
+    // BMPの各文字の桁数（Shift-JISで2バイトになる文字が2）
+    private static final byte[] WIDTHS = buildTable();
+
+    private TextWidth() {
+    }
+
+    public static int of(char c) {
+        return WIDTHS[c];
+    }
+
+    public static int of(CharSequence text) {
+        int width = 0;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            width += WIDTHS[text.charAt(i)];
+        }
+        return width;
+    }
+
+    // fromから幅maxWidthに収まる終端位置（サロゲートペアは分割しない）
+    public static int fit(CharSequence text, int from, int maxWidth) {
+        int width = 0;
+        int end = from;
+        int n = text.length();
+        while (end < n) {
+            char c = text.charAt(end);
+            int next = end + 1;
+            if (Character.isHighSurrogate(c) && next < n && Character.isLowSurrogate(text.charAt(next))) {
+                next++;
+            }
+            width += WIDTHS[c];
+            if (width > maxWidth) {
+                break;
+            }
+            end = next;
+        }
+        return end;
+    }
+
+    // Shift-JISの2バイト文字を全て復号して2桁の文字に印を付ける（起動時に1回、数ミリ秒）。それ以外（ASCII・半角カナ・
+    // 変換できず?になる文字）は1桁。サロゲートペアは?1文字になるので下位側を0桁にする
+    private static byte[] buildTable() {
+        byte[] widths = new byte[65536];
+        Arrays.fill(widths, (byte) 1);
+        for (int c = Character.MIN_LOW_SURROGATE; c <= Character.MAX_LOW_SURROGATE; c++) {
+            widths[c] = 0;
+        }
+
+        // 2バイトずつ個別に復号する（まとめて復号すると不正な組で位置がずれる）
+        CharsetDecoder decoder = EscPos.SHIFT_JIS.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        byte[] pair = new byte[2];
+        ByteBuffer in = ByteBuffer.wrap(pair);
+        CharBuffer out = CharBuffer.allocate(2);
+        for (int lead = 0x81; lead <= 0xFC; lead++) {
+            if (lead > 0x9F && lead < 0xE0) {
+                continue;
+            }
+            pair[0] = (byte) lead;
+            for (int trail = 0x40; trail <= 0xFC; trail++) {
+                pair[1] = (byte) trail;
+                in.clear();
+                out.clear();
+                decoder.reset();
+                CoderResult result = decoder.decode(in, out, true);
+                if (result.isError() || out.position() != 1) {
+                    continue;
+                }
+                char c = out.get(0);
+                if (!Character.isSurrogate(c)) {
+                    widths[c] = 2;
+                }
+            }
+        }
+        // 1バイトで表せる文字（ASCII・¥・‾・半角カナ）は必ず1桁
+        for (int c = 0; c < 0x80; c++) {
+            widths[c] = 1;
+        }
+        widths['\u00A5'] = 1;
+        widths['\u203E'] = 1;
+        for (int c = 0xFF61; c <= 0xFF9F; c++) {
+            widths[c] = 1;
+        }
+        return widths;
+    }
+}
@@ -0,0 +1,236 @@
+package com.vydray.pos.printer.sim;
+
+import com.vydray.pos.printer.FlowControlledTransport;
+import com.vydray.pos.printer.PrintException;
+import com.vydray.pos.printer.PrinterStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// MP-B20を模したPrinterTransport（実機なしでスループット・障害時の動きを確かめる）
+//
+// 受け取ったバイト列をカット単位で記録し、次を再現する
+// ・Bluetoothの帯域（送信はバイト数に比例して時間がかかる）
+// ・受信バッファ（印字が追いつかずバッファが満杯になると送信が待たされる）
+// ・用紙切れ（一定量を印字すると以降の送信が失敗する）
+// ・切断（送信中に一定確率でリンクが切れ、送りかけの帳票は途中まで印字される）
+//
+// 時間は内部の仮想時計で進め、timeScale倍して実際に待つ（0なら待たずに仮想時間だけ進める）
+public class SimulatedPrinterTransport implements FlowControlledTransport {
+    // 既定値はMP-B20の実測に近い値
+    public static final class Config {
+        // Bluetooth SPPの実効帯域（バイト/秒）
+        public long bandwidthBytesPerSec = 20_000;
+        // プリンターの受信バッファ
+        public int bufferBytes = 8 * 1024;
+        // 印字速度（バッファから消費するバイト/秒）
+        public long printBytesPerSec = 6_000;
+        // 送信の単位（切断時はここまで届く）
+        public int chunkBytes = 512;
+        public long cutMillis = 300;
+        public long connectMillis = 1_500;
+        // ステータス問い合わせの往復時間
+        public long statusMillis = 30;
+        // バッファがこの割合を超えたら残りわずかと答える
+        public double nearFullRatio = 0.75;
+        // 実時間への倍率（0.01なら100倍速、0なら待たない）
+        public double timeScale = 1.0;
+        // 送信単位ごとの切断確率
+        public double disconnectProbability = 0;
+        // 用紙1本で印字できるバイト数
+        public long paperBytes = Long.MAX_VALUE;
+        public long seed = 1;
+    }
+
+    private final Config config;
+    private final Random random;
+    private final long realStartNanos = System.nanoTime();
+
+    private long clockNanos;
+    private long sleepDebtNanos;
+    private double bufferLevel;
+    private boolean connected;
+    private boolean paperOut;
+    private long printedBytes;
+
+    private final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream current = new ByteArrayOutputStream();
+    private final List<byte[]> documents = new ArrayList<>();
+    private final List<byte[]> tornDocuments = new ArrayList<>();
+    private int disconnects;
+    private int opens;
+
+    public SimulatedPrinterTransport(Config config) {
+        this.config = config;
+        this.random = new Random(config.seed);
+    }
+
+    @Override
+    public synchronized void open(String address) throws PrintException {
+        advance(config.connectMillis * 1_000_000L);
+        connected = true;
+        opens++;
+    }
+
+    @Override
+    public synchronized void close() {
+        connected = false;
+    }
+
+    @Override
+    public synchronized void probe() throws PrintException {
+        checkReady();
+    }
+
+    @Override
+    public synchronized PrinterStatus readStatus() throws PrintException {
+        if (!connected) {
+            throw new PrintException(PrintException.Reason.NOT_CONNECTED, "Printer is not connected");
+        }
+        advance(config.statusMillis * 1_000_000);
+        boolean nearFull = bufferLevel > config.bufferBytes * config.nearFullRatio;
+        return new PrinterStatus(false, paperOut, false, nearFull, 0);
+    }
+
+    @Override
+    public synchronized void send(byte[] data) throws PrintException {
+        checkReady();
+        for (int offset = 0; offset < data.length; offset += config.chunkBytes) {
+            int length = Math.min(config.chunkBytes, data.length - offset);
+            if (config.disconnectProbability > 0 && random.nextDouble() < config.disconnectProbability) {
+                linkLost();
+                throw new PrintException(PrintException.Reason.SEND, "Bluetooth link lost");
+            }
+            if (printedBytes + bufferLevel + length > config.paperBytes) {
+                paperOut = true;
+                throw new PrintException(PrintException.Reason.PAPER_OUT, "Paper out");
+            }
+
+            // 送信時間（帯域）
+            advance(length * 1_000_000_000L / config.bandwidthBytesPerSec);
+            // バッファに空きができるまで待つ（フロー制御）
+            double overflow = bufferLevel + length - config.bufferBytes;
+            if (overflow > 0) {
+                advance((long) (overflow * 1_000_000_000L / config.printBytesPerSec));
+            }
+            bufferLevel += length;
+            stream.write(data, offset, length);
+            current.write(data, offset, length);
+        }
+    }
+
+    @Override
+    public synchronized void cutPaper() throws PrintException {
+        checkReady();
+        // バッファの印字が終わってからカットする
+        advance((long) (bufferLevel * 1_000_000_000L / config.printBytesPerSec));
+        advance(config.cutMillis * 1_000_000L);
+        documents.add(current.toByteArray());
+        current.reset();
+    }
+
+    // 強制的にリンクを切る
+    public synchronized void disconnect() {
+        if (connected) {
+            linkLost();
+        }
+    }
+
+    // 用紙を補充する（印字済みバイト数を0に戻す）
+    public synchronized void loadPaper() {
+        paperOut = false;
+        printedBytes = 0;
+        bufferLevel = 0;
+    }
+
+    // カットで区切った帳票（最後のカット以降の送りかけは含まない）
+    public synchronized List<byte[]> getDocuments() {
+        return new ArrayList<>(documents);
+    }
+
+    // リンクが切れてカットされずに終わった送りかけの帳票
+    public synchronized List<byte[]> getTornDocuments() {
+        return new ArrayList<>(tornDocuments);
+    }
+
+    // 受け取った全バイト列
+    public synchronized byte[] getStream() {
+        return stream.toByteArray();
+    }
+
+    public synchronized long getSimulatedNanos() {
+        return clockNanos;
+    }
+
+    public synchronized int getDisconnects() {
+        return disconnects;
+    }
+
+    public synchronized int getOpens() {
+        return opens;
+    }
+
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    // 送りかけの分はそこまで印字されたものとして区切る
+    private void linkLost() {
+        connected = false;
+        disconnects++;
+        if (current.size() > 0) {
+            tornDocuments.add(current.toByteArray());
+            current.reset();
+        }
+    }
+
+    private void checkReady() throws PrintException {
+        if (!connected) {
+            throw new PrintException(PrintException.Reason.NOT_CONNECTED, "Printer is not connected");
+        }
+        if (paperOut) {
+            throw new PrintException(PrintException.Reason.PAPER_OUT, "Paper out");
+        }
+    }
+
+    // 仮想時計を進め、その間に印字が進んだ分だけバッファを減らす
+    private void advance(long nanos) throws PrintException {
+        long from = clockNanos;
+        // 呼び出しの合間に実時間が過ぎていれば、その分も印字が進んでいる
+        if (config.timeScale > 0) {
+            long realElapsed = (long) ((System.nanoTime() - realStartNanos) / config.timeScale);
+            from = Math.max(from, realElapsed);
+        }
+        long to = from + nanos;
+        drain(to - clockNanos);
+        clockNanos = to;
+        sleep(nanos);
+    }
+
+    private void drain(long elapsedNanos) {
+        double consumed = Math.min(bufferLevel, elapsedNanos / 1e9 * config.printBytesPerSec);
+        bufferLevel -= consumed;
+        printedBytes += (long) consumed;
+    }
+
+    private void sleep(long simulatedNanos) throws PrintException {
+        if (config.timeScale <= 0) {
+            return;
+        }
+        sleepDebtNanos += (long) (simulatedNanos * config.timeScale);
+        // 1ms未満はまとめて待つ
+        if (sleepDebtNanos < 1_000_000) {
+            return;
+        }
+        long millis = sleepDebtNanos / 1_000_000;
+        sleepDebtNanos -= millis * 1_000_000;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PrintException(PrintException.Reason.UNEXPECTED, "Interrupted", e);
+        }
+    }
+}
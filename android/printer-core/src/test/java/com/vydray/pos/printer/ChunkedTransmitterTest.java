@@ -0,0 +1,249 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ChunkedTransmitterTest {
+
+    @Test
+    public void splitsAtLineBreaksAndDeliversEverything() throws Exception {
+        byte[] document = lines(200);
+        FakeTransport transport = new FakeTransport();
+        ChunkedTransmitter transmitter = new ChunkedTransmitter(transport);
+        transmitter.setChunking(256, 256, 100);
+
+        transmitter.send(job(document), document);
+
+        assertTrue(transport.chunks.size() > 1);
+        for (int i = 0; i < transport.chunks.size() - 1; i++) {
+            byte[] chunk = transport.chunks.get(i);
+            assertTrue(chunk.length <= 256);
+            assertEquals('\n', chunk[chunk.length - 1]);
+        }
+        assertArrayEquals(document, transport.received());
+    }
+
+    @Test
+    public void resumesFromLastConfirmedBreakAfterFailure() throws Exception {
+        byte[] document = lines(200);
+        FakeTransport transport = new FakeTransport();
+        ChunkedTransmitter transmitter = new ChunkedTransmitter(transport);
+        transmitter.setChunking(256, 256, 100);
+        transmitter.setFlowControl(256, 1, 1000);
+        PrintJob job = job(document);
+
+        transport.failAt = 5;
+        try {
+            transmitter.send(job, document);
+            fail();
+        } catch (PrintException expected) {
+        }
+        int resumeOffset = job.getResumeOffset();
+        assertTrue(resumeOffset > 0);
+        assertEquals('\n', document[resumeOffset - 1]);
+
+        transport.chunks.clear();
+        transmitter.send(job, document);
+
+        // 再開時は文字揃え・太字を戻すコマンドから始まり、確認済みの位置より前は送り直さない
+        assertArrayEquals(EscPosBreaks.scan(document).resumePrefix(EscPosBreaks.scan(document).floor(resumeOffset)),
+                transport.chunks.get(0));
+        byte[] rest = Arrays.copyOfRange(document, resumeOffset, document.length);
+        transport.chunks.remove(0);
+        assertArrayEquals(rest, transport.received());
+    }
+
+    @Test
+    public void pausesWhileBufferIsNearlyFull() throws Exception {
+        byte[] document = lines(200);
+        FakeTransport transport = new FakeTransport();
+        transport.nearFullReads = 3;
+        ChunkedTransmitter transmitter = new ChunkedTransmitter(transport);
+        transmitter.setChunking(256, 256, 100);
+        transmitter.setFlowControl(512, 1, 1000);
+
+        transmitter.send(job(document), document);
+
+        assertEquals(3, transmitter.getPauseCount());
+        assertArrayEquals(document, transport.received());
+    }
+
+    @Test
+    public void failsWhenBufferStaysFull() throws Exception {
+        byte[] document = lines(200);
+        FakeTransport transport = new FakeTransport();
+        transport.nearFullReads = Integer.MAX_VALUE;
+        ChunkedTransmitter transmitter = new ChunkedTransmitter(transport);
+        transmitter.setChunking(256, 256, 100);
+        transmitter.setFlowControl(256, 1, 20);
+
+        try {
+            transmitter.send(job(document), document);
+            fail();
+        } catch (PrintException e) {
+            assertEquals(PrintException.Reason.SEND, e.getReason());
+        }
+    }
+
+    @Test
+    public void stopsOnPaperOut() throws Exception {
+        byte[] document = lines(200);
+        FakeTransport transport = new FakeTransport();
+        transport.status = new PrinterStatus(false, true, false, false, 0);
+        ChunkedTransmitter transmitter = new ChunkedTransmitter(transport);
+        transmitter.setChunking(256, 256, 100);
+        transmitter.setFlowControl(256, 1, 1000);
+
+        try {
+            transmitter.send(job(document), document);
+            fail();
+        } catch (PrintException e) {
+            assertEquals(PrintException.Reason.PAPER_OUT, e.getReason());
+        }
+    }
+
+    @Test
+    public void neverBreaksInsideRasterData() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("head\n".getBytes(StandardCharsets.US_ASCII));
+        // GS v 0: 幅2バイト × 高さ100ライン、中身は全て改行コード
+        out.write(new byte[] {0x1D, 0x76, 0x30, 0x00, 0x02, 0x00, 100, 0x00});
+        byte[] raster = new byte[200];
+        Arrays.fill(raster, (byte) '\n');
+        out.write(raster);
+        out.write("tail\n".getBytes(StandardCharsets.US_ASCII));
+        byte[] document = out.toByteArray();
+
+        EscPosBreaks breaks = EscPosBreaks.scan(document);
+        int rasterStart = 5;
+        int rasterEnd = rasterStart + 8 + raster.length;
+        for (int i = 0; i < breaks.size(); i++) {
+            int offset = breaks.offset(i);
+            assertFalse("break inside raster at " + offset, offset > rasterStart && offset <= rasterEnd);
+        }
+    }
+
+    @Test
+    public void rawCommandsItCannotParseMoveResumeBackBeforeThem() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(lines(20));
+        int commandStart = out.size();
+        // GS ( k pL pH ...: 引数の中に改行コードを含む（1バイト引数とみなすと途中に区切りができる）
+        out.write(new byte[] {0x1D, 0x28, 0x6B, 0x06, 0x00, 0x31, 0x50, 0x30, '\n', '\n', '\n'});
+        out.write(lines(200));
+        byte[] document = out.toByteArray();
+
+        EscPosBreaks breaks = EscPosBreaks.scan(document);
+        assertTrue(breaks.size() > 0);
+        assertTrue(breaks.offset(breaks.size() - 1) <= commandStart);
+
+        FakeTransport transport = new FakeTransport();
+        ChunkedTransmitter transmitter = new ChunkedTransmitter(transport);
+        transmitter.setChunking(256, 256, 100);
+        transmitter.setFlowControl(256, 1, 1000);
+        PrintJob job = job(document);
+        transport.failAt = 5;
+        try {
+            transmitter.send(job, document);
+            fail();
+        } catch (PrintException expected) {
+        }
+        assertTrue(job.getResumeOffset() <= commandStart);
+    }
+
+    @Test
+    public void rawDocumentWithoutKnownBreaksResumesFromTheStart() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // ESC @ で始まる生データ（状態を戻せないので途中から再開しない）
+        out.write(new byte[] {0x1B, 0x40});
+        out.write(lines(200));
+        byte[] document = out.toByteArray();
+        FakeTransport transport = new FakeTransport();
+        ChunkedTransmitter transmitter = new ChunkedTransmitter(transport);
+        transmitter.setChunking(256, 256, 100);
+        transmitter.setFlowControl(256, 1, 1000);
+        PrintJob job = job(document);
+
+        transport.failAt = 5;
+        try {
+            transmitter.send(job, document);
+            fail();
+        } catch (PrintException expected) {
+        }
+        assertEquals(0, job.getResumeOffset());
+
+        transport.chunks.clear();
+        transmitter.send(job, document);
+        assertArrayEquals(document, transport.received());
+    }
+
+    private static PrintJob job(byte[] document) {
+        return new PrintJob(1, "text", document, 0);
+    }
+
+    private static byte[] lines(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static class FakeTransport implements FlowControlledTransport {
+        final List<byte[]> chunks = new ArrayList<>();
+        PrinterStatus status = PrinterStatus.READY;
+        int nearFullReads;
+        // この番号の送信で1度だけ失敗させる（0なら無効）
+        int failAt;
+        int sends;
+
+        @Override
+        public void open(String address) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void probe() {
+        }
+
+        @Override
+        public PrinterStatus readStatus() {
+            if (nearFullReads > 0) {
+                nearFullReads--;
+                return new PrinterStatus(false, false, false, true, 0);
+            }
+            return status;
+        }
+
+        @Override
+        public void send(byte[] data) throws PrintException {
+            sends++;
+            if (sends == failAt) {
+                throw new PrintException(PrintException.Reason.SEND, "link lost");
+            }
+            chunks.add(data);
+        }
+
+        @Override
+        public void cutPaper() {
+        }
+
+        byte[] received() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            for (byte[] chunk : chunks) {
+                out.write(chunk, 0, chunk.length);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class DailySalesAggregatorTest {
+
+    @Test
+    public void sumsPagesWithoutKeepingRows() throws Exception {
+        DailySalesAggregator aggregator = new DailySalesAggregator();
+        aggregator.addPage(new JSONObject("{"
+                + "\"orderTotals\":[11000,5500],\"orderCash\":[20000,0],\"orderChange\":[9000,0],"
+                + "\"orderCard\":[0,5500],\"orderCardFees\":[0,550],\"orderRounding\":[-30,0],"
+                + "\"orderVisitTypes\":[\"初回\",null],"
+                + "\"itemCasts\":[\"あやか\",\"あやか,みく\",null],\"itemCategories\":[\"指名\",\"ドリンク\",\"\"],"
+                + "\"itemAmounts\":[3000,1001,500],\"itemQuantities\":[1,1,2]}"));
+        aggregator.addPage(new JSONObject("{\"orderTotals\":[2200],\"orderOther\":[2200],"
+                + "\"orderVisitTypes\":[\"初回\"]}"));
+        assertEquals(3, aggregator.getOrderCount());
+
+        DailyReportDocument doc = aggregator.summarize(
+                DailyReportDocument.read(new JSONObject("{\"businessDate\":\"2026-10-17\"}")));
+        assertEquals(18700, doc.totalSales);
+        assertEquals(11000, doc.cashSales);
+        assertEquals(5500, doc.cardSales);
+        assertEquals(2200, doc.otherSales);
+        assertEquals(550, doc.cardFees);
+        assertEquals(-30, doc.roundingAdjustment);
+        assertEquals(4, doc.itemQuantity);
+
+        List<DailyReportDocument.Line> visits = doc.visitTypes;
+        assertEquals(1, visits.size());
+        assertEquals("初回", visits.get(0).name);
+        assertEquals(2, visits.get(0).quantity);
+
+        // 複数キャストの明細は等分し、端数は先頭のキャストに付く
+        List<DailyReportDocument.Line> casts = doc.casts;
+        assertEquals("あやか", casts.get(0).name);
+        assertEquals(3501, casts.get(0).amount);
+        assertEquals("指名なし", casts.get(1).name);
+        assertEquals("みく", casts.get(2).name);
+        assertEquals(500, casts.get(2).amount);
+        assertEquals("未分類", doc.categories.get(2).name);
+    }
+
+    @Test
+    public void rendersSectionsAlignedToLineWidth() throws Exception {
+        DailySalesAggregator aggregator = new DailySalesAggregator();
+        aggregator.addOrder(11000, 11000, 0, 0, 0, 0, 0, 0, 1000, 1000, "再訪");
+        aggregator.addItem("あやか", "指名", 3000, 1);
+        DailyReportDocument doc = aggregator.summarize(DailyReportDocument.read(
+                new JSONObject("{\"storeName\":\"Memorable\",\"businessDate\":\"2026-10-17\"}")));
+
+        EscPosWriter writer = new EscPosWriter();
+        DailyReportRenderer.render(doc, writer);
+        String text = new String(writer.toByteArray(), EscPos.SHIFT_JIS).replace('\\', '¥');
+
+        assertTrue(text.contains("営業日: 2026-10-17\n"));
+        assertTrue(text.contains("【キャスト別】"));
+        for (String line : text.split("\n")) {
+            if (line.startsWith("総売上:") || line.startsWith("あやか")) {
+                assertEquals(TextWidth.LINE_WIDTH, TextWidth.of(line));
+                assertTrue(line.endsWith("¥11,000") || line.endsWith("¥3,000"));
+            }
+        }
+    }
+}
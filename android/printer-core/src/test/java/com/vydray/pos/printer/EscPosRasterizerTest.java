@@ -0,0 +1,88 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class EscPosRasterizerTest {
+
+    // 空白以外はセル全体を塗る
+    private final List<String> drawn = new ArrayList<>();
+    private final GlyphAtlas atlas = new GlyphAtlas(new GlyphAtlas.Rasterizer() {
+        @Override
+        public void draw(String text, int width, int height, boolean bold, boolean[] dots) {
+            drawn.add(text);
+            if (!text.trim().isEmpty()) {
+                for (int i = 0; i < width * height; i++) {
+                    dots[i] = true;
+                }
+            }
+        }
+    });
+
+    @Test
+    public void centersLinesAndReusesCachedGlyphs() {
+        EscPosWriter writer = new EscPosWriter();
+        writer.bytes(EscPos.ALIGN_CENTER).text("AA").newline().bytes(EscPos.ALIGN_LEFT).text("A").newline();
+        MonoBitmap bitmap = new EscPosRasterizer(atlas).render(writer.toByteArray(), new MonoBitmap(384));
+
+        // 2文字（24ドット）を384ドットの中央に置く
+        assertFalse(bitmap.get(179, 10));
+        assertTrue(bitmap.get(180, 10));
+        assertTrue(bitmap.get(203, 10));
+        assertFalse(bitmap.get(204, 10));
+        // 2行目は左寄せ
+        assertTrue(bitmap.get(0, EscPosRasterizer.LINE_HEIGHT));
+        assertFalse(bitmap.get(12, EscPosRasterizer.LINE_HEIGHT));
+        assertEquals(EscPosRasterizer.LINE_HEIGHT + GlyphAtlas.CELL_HEIGHT, bitmap.getHeight());
+        assertEquals(1, drawn.size());
+    }
+
+    @Test
+    public void wrapsFullWidthTextAtThePaperWidth() {
+        EscPosWriter writer = new EscPosWriter();
+        writer.text("領収書領収書領収書領収書領収書領収").newline();
+        MonoBitmap bitmap = new EscPosRasterizer(atlas).render(writer.toByteArray(), new MonoBitmap(384));
+
+        // 全角16文字で1行が埋まり、17文字目は次の行の先頭
+        assertTrue(bitmap.get(383, 0));
+        assertTrue(bitmap.get(0, EscPosRasterizer.LINE_HEIGHT));
+        assertFalse(bitmap.get(24, EscPosRasterizer.LINE_HEIGHT));
+        assertEquals(3, drawn.size());
+    }
+
+    @Test
+    public void encodesReceiptWithImageAsOneBitPng() throws Exception {
+        ReceiptDocument doc = new ReceiptDocument();
+        doc.storeName = "テスト店";
+        doc.receiptNumber = "R-1";
+        doc.tableName = "A1";
+        doc.roundedTotal = 12000;
+        int[] logo = new int[16 * 8];
+        Arrays.fill(logo, 0xFF000000);
+        doc.logo = RasterImage.encode(logo, 16, 8, RasterImage.MAX_WIDTH);
+        EscPosWriter writer = new EscPosWriter();
+        ReceiptRenderer.render(doc, writer);
+
+        MonoBitmap bitmap = new EscPosRasterizer(atlas).render(writer.toByteArray(), new MonoBitmap(384));
+        // ロゴは中央寄せで先頭に置く
+        assertTrue(bitmap.get(184, 0));
+        assertTrue(bitmap.get(199, 7));
+        assertFalse(bitmap.get(183, 0));
+
+        byte[] png = MonoPng.encode(bitmap, 2, 8);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertEquals((384 + 16) * 2, image.getWidth());
+        assertEquals((bitmap.getHeight() + 16) * 2, image.getHeight());
+        assertEquals(0xFFFFFFFF, image.getRGB(0, 0));
+        assertEquals(0xFF000000, image.getRGB((184 + 8) * 2 + 1, 8 * 2 + 1));
+    }
+}
@@ -0,0 +1,111 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class EscPosWriterTest {
+
+    @Test
+    public void formatsYenWithThousandsSeparators() {
+        assertEquals("¥0", render(new EscPosWriter().yen(0)));
+        assertEquals("¥999", render(new EscPosWriter().yen(999)));
+        assertEquals("¥1,000", render(new EscPosWriter().yen(1000)));
+        assertEquals("¥1,234,567", render(new EscPosWriter().yen(1234567)));
+        assertEquals("-¥50", render(new EscPosWriter().yen(-50)));
+        assertEquals("9,223,372,036,854,775,807", render(new EscPosWriter().grouped(Long.MAX_VALUE)));
+        assertEquals("-9223372036854775808", render(new EscPosWriter().number(Long.MIN_VALUE)));
+    }
+
+    @Test
+    public void encodesTextAsShiftJis() {
+        EscPosWriter writer = new EscPosWriter(4);
+        writer.text("ABC").text("小計:").text("ｶﾗｵｹ");
+        assertArrayEquals(EscPos.encode("ABC小計:ｶﾗｵｹ"), writer.toByteArray());
+    }
+
+    @Test
+    public void reusesBufferAfterReset() {
+        EscPosWriter writer = new EscPosWriter(8);
+        writer.text("一二三四五六七八九十");
+        writer.reset().text("OK");
+        assertArrayEquals(new byte[] {'O', 'K'}, writer.toByteArray());
+    }
+
+    @Test
+    public void rendersOrderSlipLines() {
+        OrderSlipDocument doc = new OrderSlipDocument();
+        doc.tableName = "A1";
+        doc.items = Arrays.asList(
+                new OrderItem("ビール", "あやか", 2, 1000),
+                new OrderItem("チャーム", "", 1, 500));
+        doc.subtotal = 2500;
+        doc.serviceTax = 375;
+        doc.roundedTotal = 2900;
+        doc.roundingAdjustment = 25;
+        doc.cardFeeRate = 10;
+        doc.roundingUnit = 100;
+
+        EscPosWriter writer = new EscPosWriter();
+        OrderSlipRenderer.render(doc, writer);
+        String slip = render(writer);
+
+        assertTrue(slip.contains("卓番号: A1\n"));
+        // 金額は32桁目に右寄せ（全角は2桁）
+        assertTrue(slip.contains("ビール\n  (あやか)\n  2 × ¥1,000             ¥2,000\n"));
+        assertTrue(slip.contains("チャーム\n  1 × ¥500                 ¥500\n"));
+        assertTrue(slip.contains("小計:                     ¥2,500\n"));
+        assertTrue(slip.contains("端数調整:                   +¥25\n"));
+        assertTrue(slip.contains("カードの場合:             ¥3,200\n"));
+        assertTrue(slip.contains("  (カード手数料10%含む)\n"));
+    }
+
+    @Test
+    public void wrapsLongNamesAtColumnBoundary() {
+        OrderSlipDocument doc = new OrderSlipDocument();
+        doc.items = Arrays.asList(new OrderItem("ドンペリニヨン ロゼ Vintage 2008 Magnum", "", 1, 150000));
+
+        EscPosWriter writer = new EscPosWriter();
+        OrderSlipRenderer.render(doc, writer);
+        String slip = render(writer);
+
+        assertTrue(slip.contains("ドンペリニヨン ロゼ Vintage 2008\n  Magnum\n"));
+        for (String line : slip.split("\n")) {
+            // 中央寄せコマンドを含む行は除く
+            if (line.indexOf(EscPos.ESC) >= 0) {
+                continue;
+            }
+            assertTrue(line, TextWidth.of(line) <= TextWidth.LINE_WIDTH);
+        }
+    }
+
+    @Test
+    public void padsAndTruncatesByPrintWidth() {
+        EscPosWriter writer = new EscPosWriter();
+        int start = writer.size();
+        writer.text("ｶﾗｵｹ").pad(start, 8, EscPosWriter.Align.RIGHT);
+        assertEquals("    ｶﾗｵｹ", render(writer));
+
+        writer.reset().fitted("あいうえお", 5);
+        assertEquals("あい", render(writer));
+    }
+
+    @Test
+    public void measuresFullAndHalfWidthCharacters() {
+        assertEquals(6, TextWidth.of("ビール"));
+        assertEquals(4, TextWidth.of("ｶﾗｵｹ"));
+        assertEquals(3, TextWidth.of("A¥1"));
+        assertEquals(4, TextWidth.of("１２"));
+        // 変換できない絵文字は?1文字になる
+        assertEquals(1, TextWidth.of("\uD83C\uDF7E"));
+        assertEquals(2, TextWidth.fit("あいう", 0, 5));
+        assertEquals(0, TextWidth.fit("\uD83C\uDF7E", 0, 0));
+    }
+
+    // Shift-JISの0x5Cは日本向け設定のプリンターでは¥として印字される
+    private static String render(EscPosWriter writer) {
+        return new String(writer.toByteArray(), EscPos.SHIFT_JIS).replace('\\', '¥');
+    }
+}
@@ -0,0 +1,150 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OrderDeltaTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void firstRoundPrintsEverything() {
+        List<OrderDelta.Change> changes = OrderDelta.compute(Collections.<OrderItem>emptyList(),
+                Arrays.asList(item("ハイボール", "", 2, 800), item("指名料", "あやか", 1, 3000)));
+
+        assertEquals(2, changes.size());
+        assertEquals(OrderDelta.Kind.ADDED, changes.get(0).kind);
+        assertEquals(2, changes.get(0).quantityDelta);
+        assertEquals("あやか", changes.get(1).cast);
+    }
+
+    @Test
+    public void reportsOnlyWhatChanged() {
+        List<OrderItem> printed = Arrays.asList(
+                item("ハイボール", "", 2, 800),
+                item("ウーロン茶", "", 3, 500),
+                item("シャンパン", "みゆ", 1, 38000),
+                item("指名料", "あやか", 1, 3000));
+        List<OrderItem> current = Arrays.asList(
+                item("指名料", "あやか", 1, 3000),
+                item("ハイボール", "", 4, 800),
+                item("ウーロン茶", "", 1, 500),
+                item("フルーツ盛り合わせ", "", 1, 5000));
+
+        List<OrderDelta.Change> changes = OrderDelta.compute(printed, current);
+
+        assertEquals(4, changes.size());
+        assertChange(changes.get(0), OrderDelta.Kind.INCREASED, "ハイボール", 2, 4);
+        assertChange(changes.get(1), OrderDelta.Kind.DECREASED, "ウーロン茶", -2, 1);
+        assertChange(changes.get(2), OrderDelta.Kind.ADDED, "フルーツ盛り合わせ", 1, 1);
+        assertChange(changes.get(3), OrderDelta.Kind.CANCELLED, "シャンパン", -1, 0);
+    }
+
+    @Test
+    public void mergesDuplicateLinesAndKeepsCastsApart() {
+        List<OrderItem> printed = Arrays.asList(item("キャストドリンク", "あやか", 1, 1000));
+        List<OrderItem> current = Arrays.asList(
+                item("キャストドリンク", "あやか", 1, 1000),
+                item("キャストドリンク", "あやか", 1, 1000),
+                item("キャストドリンク", "みゆ", 1, 1000));
+
+        List<OrderDelta.Change> changes = OrderDelta.compute(printed, current);
+
+        assertEquals(2, changes.size());
+        assertChange(changes.get(0), OrderDelta.Kind.INCREASED, "キャストドリンク", 1, 2);
+        assertEquals("みゆ", changes.get(1).cast);
+        assertEquals(OrderDelta.Kind.ADDED, changes.get(1).kind);
+        assertTrue(OrderDelta.compute(current, current).isEmpty());
+    }
+
+    @Test
+    public void snapshotsSurviveReopen() throws Exception {
+        File file = new File(folder.getRoot(), "snapshots/order-snapshots.bin");
+        OrderSnapshotStore store = new OrderSnapshotStore(file);
+        store.put("VIP-1", Arrays.asList(item("ハイボール", "", 2, 800)));
+        store.put("T02", Arrays.asList(item("指名料", "あやか", 1, 3000)));
+        store.clear("T02");
+
+        OrderSnapshotStore reopened = new OrderSnapshotStore(file);
+        assertEquals(Collections.singletonList("VIP-1"), reopened.getTableNames());
+        List<OrderItem> items = reopened.get("VIP-1");
+        assertEquals(1, items.size());
+        assertEquals("ハイボール", items.get(0).name);
+        assertEquals(2, items.get(0).quantity);
+        assertTrue(reopened.get("T02").isEmpty());
+    }
+
+    @Test
+    public void snapshotAdvancesWhenTheJobPrintsAndFollowsTheGuest() throws Exception {
+        File file = new File(folder.getRoot(), "order-snapshots.bin");
+        OrderSnapshotStore store = new OrderSnapshotStore(file);
+        List<OrderItem> first = Arrays.asList(item("ハイボール", "", 2, 800));
+        List<OrderItem> second = Arrays.asList(item("ハイボール", "", 2, 800), item("ウーロン茶", "", 1, 500));
+
+        // 印刷待ちの伝票も次の差分の基準になり、再起動しても残る
+        store.submitted("A1", 10, first);
+        store.submitted("A1", 11, second);
+        assertEquals(2, new OrderSnapshotStore(file).get("A1").size());
+
+        // 2枚目を取り消すと、1枚目が印刷されてもウーロン茶は次の差分に載る
+        store.dropped(11);
+        store.completed(10);
+        assertTrue(OrderDelta.compute(first, store.get("A1")).isEmpty());
+
+        // 1枚目を取り消すと、それを前提にした2枚目も基準から外れる
+        store.submitted("A1", 12, second);
+        store.submitted("A1", 13, Arrays.asList(item("シャンパン", "", 1, 38000)));
+        store.dropped(12);
+        assertTrue(OrderDelta.compute(first, store.get("A1")).isEmpty());
+
+        // 席移動で基準ごと移り、移動元は空になる
+        store.move("A1", "VIP-1");
+        assertTrue(store.get("A1").isEmpty());
+        assertTrue(OrderDelta.compute(first, new OrderSnapshotStore(file).get("VIP-1")).isEmpty());
+        store.clear("VIP-1");
+        assertTrue(new OrderSnapshotStore(file).get("VIP-1").isEmpty());
+    }
+
+    @Test
+    public void rendersTicketWithReductionsMarked() {
+        OrderDeltaTicket ticket = new OrderDeltaTicket();
+        ticket.tableName = "A1";
+        ticket.timestamp = "23:58";
+        ticket.changes = OrderDelta.compute(
+                Arrays.asList(item("ウーロン茶", "", 3, 500), item("シャンパン", "", 1, 38000)),
+                Arrays.asList(item("ウーロン茶", "", 1, 500), item("ハイボール", "", 2, 800)));
+
+        EscPosWriter writer = new EscPosWriter();
+        OrderDeltaRenderer.render(ticket, writer);
+        String text = new String(writer.toByteArray(), EscPos.SHIFT_JIS);
+
+        assertTrue(text.contains("注文変更"));
+        assertTrue(text.contains("卓番号: A1"));
+        assertTrue(text.contains("【減】ウーロン茶"));
+        assertTrue(text.contains("-2 (計1)\n"));
+        assertTrue(text.contains("ハイボール\n  数量"));
+        assertTrue(text.contains("【取消】シャンパン"));
+        assertFalse(text.contains("お客様"));
+    }
+
+    private static void assertChange(OrderDelta.Change change, OrderDelta.Kind kind, String name,
+                                     int delta, int quantity) {
+        assertEquals(kind, change.kind);
+        assertEquals(name, change.name);
+        assertEquals(delta, change.quantityDelta);
+        assertEquals(quantity, change.quantity);
+    }
+
+    private static OrderItem item(String name, String cast, int quantity, int price) {
+        return new OrderItem(name, cast, quantity, price);
+    }
+}
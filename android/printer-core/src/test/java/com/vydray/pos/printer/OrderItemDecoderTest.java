@@ -0,0 +1,69 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONArray;
+import org.junit.Test;
+
+public class OrderItemDecoderTest {
+
+    @Test
+    public void decodesObjectItems() throws Exception {
+        JSONArray array = new JSONArray(
+                "[{\"name\":\"ビール\",\"cast\":[\"あやか\",\"みく\"],\"quantity\":2,\"price\":1000},"
+                + "{\"name\":\"チャーム\",\"price\":500}]");
+
+        OrderItemDecoder.Result result = OrderItemDecoder.decode(array);
+
+        assertTrue(result.isValid());
+        assertEquals(2, result.items.size());
+        assertEquals("あやか, みく", result.items.get(0).cast);
+        assertEquals(2000, result.items.get(0).total());
+        assertEquals("", result.items.get(1).cast);
+        assertEquals(1, result.items.get(1).quantity);
+    }
+
+    @Test
+    public void reportsInvalidItemsInsteadOfDroppingAll() throws Exception {
+        JSONArray array = new JSONArray(
+                "[{\"name\":\"ビール\",\"quantity\":1,\"price\":1000},"
+                + "{\"name\":\"\",\"quantity\":1,\"price\":1000},"
+                + "{\"name\":\"焼酎\",\"quantity\":\"2\",\"price\":800},"
+                + "{\"name\":\"値引き\",\"quantity\":1,\"price\":-500},"
+                + "null]");
+
+        OrderItemDecoder.Result result = OrderItemDecoder.decode(array);
+
+        assertFalse(result.isValid());
+        assertEquals(2, result.items.size());
+        assertEquals(3, result.errors.size());
+        assertEquals(1, result.errors.get(0).index);
+        assertEquals(2, result.errors.get(1).index);
+        assertEquals(4, result.errors.get(2).index);
+    }
+
+    @Test
+    public void decodesColumnForm() throws Exception {
+        OrderItemDecoder.Result result = OrderItemDecoder.decodeColumns(
+                new JSONArray("[\"ビール\",\"指名料\"]"),
+                new JSONArray("[3,1]"),
+                new JSONArray("[1000,3000]"),
+                new JSONArray("[\"\",\"あやか\"]"));
+
+        assertTrue(result.isValid());
+        assertEquals(3000, result.items.get(0).total());
+        assertEquals("あやか", result.items.get(1).cast);
+    }
+
+    @Test
+    public void rejectsMismatchedColumns() throws Exception {
+        OrderItemDecoder.Result result = OrderItemDecoder.decodeColumns(
+                new JSONArray("[\"ビール\",\"指名料\"]"),
+                new JSONArray("[3]"),
+                new JSONArray("[1000,3000]"),
+                null);
+
+        assertFalse(result.isValid());
+        assertEquals(-1, result.errors.get(0).index);
+    }
+}
@@ -0,0 +1,85 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PrintFlightRecorderTest {
+
+    @Test
+    public void keepsOnlyTheMostRecentSessions() {
+        PrintFlightRecorder recorder = new PrintFlightRecorder(3, 64, 64);
+        for (long id = 1; id <= 5; id++) {
+            recorder.submitted(id, null, "orderSlip", PrintLane.SLIP, new byte[][] {{(byte) id}}, "{}", null, null);
+        }
+
+        List<PrintFlightRecorder.Record> records = recorder.records();
+        assertEquals(3, records.size());
+        assertEquals(5, records.get(0).jobId);
+        assertEquals(4, records.get(1).jobId);
+        assertEquals(3, records.get(2).jobId);
+        assertArrayEquals(new byte[] {5}, records.get(0).data);
+    }
+
+    @Test
+    public void truncatesPayloadAndBytesToTheSlotSize() {
+        PrintFlightRecorder recorder = new PrintFlightRecorder(2, 8, 6);
+        byte[][] documents = {{1, 2, 3, 4}, {5, 6, 7, 8}};
+        recorder.submitted(1, null, "batch", PrintLane.BULK, documents, "{\"tableName\":\"A1\"}", null, null);
+
+        PrintFlightRecorder.Record record = recorder.records().get(0);
+        assertTrue(record.payloadTruncated);
+        assertNull(record.payloadText());
+        assertEquals(8, record.payload.length);
+        assertTrue(record.isDataTruncated());
+        assertEquals(8, record.dataLength);
+        assertEquals(2, record.documentCount);
+        List<byte[]> stored = record.documents();
+        assertArrayEquals(new byte[] {1, 2, 3, 4}, stored.get(0));
+        assertArrayEquals(new byte[] {5, 6}, stored.get(1));
+    }
+
+    @Test
+    public void dumpRoundTripsOutcomeErrorsAndBytes() throws Exception {
+        PrintFlightRecorder recorder = new PrintFlightRecorder();
+        PrintMetrics.CallTiming timing = new PrintMetrics.CallTiming();
+        timing.decoded();
+        timing.rendered();
+        byte[][] documents = {"伝票".getBytes(StandardCharsets.UTF_8)};
+        recorder.submitted(7, null, "orderSlip", PrintLane.SLIP, documents, "{\"tableName\":\"卓1\"}", "v2", timing);
+
+        PrintJob job = new PrintJob(7, "orderSlip", documents, 0);
+        job.incrementAttempts();
+        recorder.failed(null, job, new PrintException(PrintException.Reason.SEND, "Send failed",
+                new IllegalStateException("socket closed")), true);
+        // 再起動前に積まれたジョブは完了時に記録する
+        recorder.completed(null, new PrintJob(3, "receipt", new byte[] {9}, 0));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        recorder.dump(out);
+        List<PrintFlightRecorder.Record> records = PrintFlightRecorder.read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(2, records.size());
+        PrintFlightRecorder.Record restored = records.get(0);
+        assertEquals(3, restored.jobId);
+        assertEquals(PrintFlightRecorder.Outcome.PRINTED, restored.outcome);
+        assertArrayEquals(new byte[] {9}, restored.data);
+
+        PrintFlightRecorder.Record failed = records.get(1);
+        assertEquals(7, failed.jobId);
+        assertEquals("slip", failed.lane);
+        assertEquals("v2", failed.template);
+        assertEquals(PrintFlightRecorder.Outcome.RETRYING, failed.outcome);
+        assertEquals(1, failed.attempts);
+        assertEquals("SEND", failed.errorReason);
+        assertEquals("java.lang.IllegalStateException: socket closed", failed.cause);
+        assertEquals("{\"tableName\":\"卓1\"}", failed.payloadText());
+        assertArrayEquals(documents[0], failed.data);
+        assertEquals(timing.renderNanos, failed.renderNanos);
+    }
+}
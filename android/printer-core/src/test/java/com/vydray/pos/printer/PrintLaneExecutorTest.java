@@ -0,0 +1,115 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PrintLaneExecutorTest {
+
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+    private final List<PrintException.Reason> rejected =
+            Collections.synchronizedList(new ArrayList<PrintException.Reason>());
+    private final CountDownLatch rejections = new CountDownLatch(2);
+    private final PrintLaneExecutor executor = new PrintLaneExecutor("test");
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void runsHigherLanesFirst() throws Exception {
+        CountDownLatch release = block();
+        executor.execute(PrintLane.BULK, task("reprint", null));
+        executor.execute(PrintLane.SLIP, task("slip", null));
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(PrintLane.BULK, task("last", done));
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("blocker", "slip", "reprint", "last"), ran);
+    }
+
+    @Test
+    public void receiptDoesNotWaitForRunningBulkWork() throws Exception {
+        CountDownLatch release = block();
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(PrintLane.RECEIPT, task("receipt", done));
+
+        // まとめ再印刷の処理が終わる前に領収書を処理する
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("blocker", "receipt"), ran);
+        release.countDown();
+    }
+
+    @Test
+    public void rejectsWhenFullAndDropsStaleOrCancelledRequests() throws Exception {
+        executor.setLaneLimits(PrintLane.BULK, 1, 20);
+        CountDownLatch release = block();
+        executor.execute(PrintLane.BULK, task("stale", null));
+        try {
+            executor.execute(PrintLane.BULK, task("overflow", null));
+            fail("expected QUEUE_FULL");
+        } catch (PrintException e) {
+            assertEquals(PrintException.Reason.QUEUE_FULL, e.getReason());
+        }
+        executor.execute(PrintLane.SLIP, task("cancelled", null));
+        assertEquals(1, executor.cancelLane(PrintLane.SLIP));
+
+        Thread.sleep(50);
+        release.countDown();
+        assertTrue(rejections.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("blocker"), ran);
+        assertEquals(Arrays.asList(PrintException.Reason.CANCELLED, PrintException.Reason.TIMEOUT), rejected);
+    }
+
+    // 伝票・まとめ再印刷のワーカーを長い処理で止めておく（戻り値をcountDownすると再開する）
+    private CountDownLatch block() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(PrintLane.BULK, new PrintLaneExecutor.Task() {
+            @Override
+            public void run() {
+                ran.add("blocker");
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void reject(PrintException error) {
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private PrintLaneExecutor.Task task(final String name, final CountDownLatch done) {
+        return new PrintLaneExecutor.Task() {
+            @Override
+            public void run() {
+                ran.add(name);
+                if (done != null) {
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void reject(PrintException error) {
+                rejected.add(error.getReason());
+                rejections.countDown();
+            }
+        };
+    }
+}
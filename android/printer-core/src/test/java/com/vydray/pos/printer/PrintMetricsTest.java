@@ -0,0 +1,126 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class PrintMetricsTest {
+
+    private static final long SLOT = 60_000;
+
+    @Test
+    public void histogramPercentilesStayWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(100_000, histogram.getMax());
+        assertWithin(50_000, histogram.getValueAtPercentile(50));
+        assertWithin(99_000, histogram.getValueAtPercentile(99));
+        assertEquals(100_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void histogramKeepsSmallValuesExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3);
+        histogram.record(7);
+        assertEquals(3, histogram.getValueAtPercentile(50));
+        assertEquals(7, histogram.getValueAtPercentile(99));
+    }
+
+    @Test
+    public void bucketIndexesAreMonotonic() {
+        int last = -1;
+        for (long value = 0; value < 1_000_000; value += 37) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(index >= last);
+            assertTrue(LatencyHistogram.highestEquivalent(index) >= value);
+            last = index;
+        }
+        assertTrue(LatencyHistogram.highestEquivalent(LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE))
+            >= LatencyHistogram.MAX_VALUE);
+    }
+
+    @Test
+    public void recordsStagesByTypeAndPrinter() throws Exception {
+        PrintMetrics metrics = new PrintMetrics(SLOT, 3);
+        for (int i = 1; i <= 10; i++) {
+            metrics.recordJob("orderSlip", "kitchen", job(ms(5), ms(40 * i), ms(2)), null, 0, 1000);
+        }
+
+        JSONObject snapshot = metrics.snapshot(1000);
+        JSONObject send = snapshot.getJSONObject("documentTypes").getJSONObject("orderSlip")
+            .getJSONObject("stages").getJSONObject("send");
+        assertEquals(10, send.getInt("count"));
+        assertEquals(200, send.getDouble("p50"), 200 * 0.04);
+        assertEquals(400, send.getDouble("max"), 0.01);
+
+        JSONObject total = snapshot.getJSONObject("printers").getJSONObject("kitchen")
+            .getJSONObject("stages").getJSONObject("total");
+        assertEquals(10, total.getInt("count"));
+        // 計測値が無いジョブはスプーラー側の合計
+        assertEquals(5 + 400 + 2, total.getDouble("max"), 0.01);
+        assertFalse(snapshot.getJSONObject("printers").getJSONObject("kitchen")
+            .getJSONObject("stages").has("decode"));
+    }
+
+    @Test
+    public void countsFailuresByCause() throws Exception {
+        PrintMetrics metrics = new PrintMetrics(SLOT, 3);
+        metrics.recordFailure("receipt", "register", "SEND", 1000);
+        metrics.recordFailure("receipt", "register", "SEND", 2000);
+        metrics.recordFailure("receipt", null, "INVALID_ITEMS", 3000);
+
+        JSONObject snapshot = metrics.snapshot(3000);
+        JSONObject byType = snapshot.getJSONObject("documentTypes").getJSONObject("receipt").getJSONObject("failures");
+        assertEquals(2, byType.getInt("SEND"));
+        assertEquals(1, byType.getInt("INVALID_ITEMS"));
+        JSONObject byPrinter = snapshot.getJSONObject("printers").getJSONObject("register").getJSONObject("failures");
+        assertFalse(byPrinter.has("INVALID_ITEMS"));
+    }
+
+    @Test
+    public void dropsSamplesOutsideWindow() throws Exception {
+        PrintMetrics metrics = new PrintMetrics(SLOT, 3);
+        metrics.recordJob("text", "default", job(0, ms(900), 0), null, 0, 0);
+        metrics.recordJob("text", "default", job(0, ms(100), 0), null, 0, 2 * SLOT);
+
+        JSONObject inWindow = metrics.snapshot(2 * SLOT).getJSONObject("documentTypes")
+            .getJSONObject("text").getJSONObject("stages").getJSONObject("send");
+        assertEquals(2, inWindow.getInt("count"));
+
+        // 最初のスロットが窓から外れる
+        JSONObject later = metrics.snapshot(3 * SLOT).getJSONObject("documentTypes")
+            .getJSONObject("text").getJSONObject("stages").getJSONObject("send");
+        assertEquals(1, later.getInt("count"));
+        assertEquals(100, later.getDouble("max"), 0.01);
+
+        // スロットを使い回した時に古い値を消す
+        metrics.recordJob("text", "default", job(0, ms(50), 0), null, 0, 3 * SLOT);
+        JSONObject reused = metrics.snapshot(3 * SLOT).getJSONObject("documentTypes")
+            .getJSONObject("text").getJSONObject("stages").getJSONObject("send");
+        assertEquals(2, reused.getInt("count"));
+        assertEquals(100, reused.getDouble("max"), 0.01);
+    }
+
+    private static PrintJob job(long queueNanos, long sendNanos, long cutNanos) {
+        PrintJob job = new PrintJob(1, "text", new byte[0], 0);
+        job.startAttempt(job.enqueuedNanos + queueNanos);
+        job.addSendNanos(sendNanos);
+        job.addCutNanos(cutNanos);
+        return job;
+    }
+
+    private static long ms(long millis) {
+        return millis * 1_000_000;
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual, Math.abs(actual - expected) <= expected * 0.04);
+    }
+}
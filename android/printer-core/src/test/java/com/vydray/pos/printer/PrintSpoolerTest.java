@@ -0,0 +1,428 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PrintSpoolerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FakeTransport transport;
+    private RecordingListener listener;
+    private PrintSpooler spooler;
+
+    @Before
+    public void setUp() {
+        transport = new FakeTransport();
+        listener = new RecordingListener();
+    }
+
+    @After
+    public void tearDown() {
+        if (spooler != null) {
+            spooler.stop();
+        }
+    }
+
+    @Test
+    public void printsJobsInSubmissionOrder() throws Exception {
+        spooler = newSpooler();
+        listener.expect(3);
+        spooler.start();
+
+        spooler.submit("text", bytes("a"));
+        spooler.submit("text", bytes("b"));
+        spooler.submit("text", bytes("c"));
+
+        assertTrue(listener.await());
+        assertEquals(Arrays.asList("a", "b", "c"), transport.printed);
+        assertEquals(3, transport.cuts);
+        assertEquals(0, spooler.getStatus().pendingJobIds.length);
+    }
+
+    @Test
+    public void recoversPendingJobsFromJournal() throws Exception {
+        transport.failing = true;
+        spooler = newSpooler();
+        spooler.setRetryPolicy(1, 0);
+        listener.expectFailures(1);
+        spooler.start();
+        long id = spooler.submit("receipt", bytes("領収書"));
+        assertTrue(listener.awaitFailures());
+        spooler.stop();
+
+        // 再起動相当：新しいスプーラーがジャーナルから復元する
+        transport.failing = false;
+        listener = new RecordingListener();
+        listener.expect(1);
+        spooler = newSpooler();
+        spooler.start();
+
+        assertTrue(listener.await());
+        assertEquals(Collections.singletonList(id), listener.completedIds);
+        assertEquals(Collections.singletonList("領収書"), transport.printed);
+    }
+
+    @Test
+    public void pausesAfterMaxAttemptsAndResumes() throws Exception {
+        transport.failing = true;
+        spooler = newSpooler();
+        spooler.setRetryPolicy(2, 0);
+        listener.expectFailures(2);
+        spooler.start();
+        spooler.submit("orderSlip", bytes("slip"));
+
+        assertTrue(listener.awaitFailures());
+        assertTrue(spooler.getStatus().paused);
+        assertEquals(1, spooler.getStatus().pendingJobIds.length);
+
+        transport.failing = false;
+        listener.expect(1);
+        spooler.resume();
+        assertTrue(listener.await());
+        assertFalse(spooler.getStatus().paused);
+    }
+
+    @Test
+    public void holdsJobWhilePaperIsOut() throws Exception {
+        transport.paperOut = true;
+        spooler = newSpooler();
+        spooler.setRetryPolicy(1, 0);
+        listener.expectFailures(1);
+        spooler.start();
+        spooler.submit("receipt", bytes("receipt"));
+
+        assertTrue(listener.awaitFailures());
+        PrintSpooler.Status status = spooler.getStatus();
+        assertEquals("paperOut", status.holdReason);
+        assertFalse(status.paused);
+        assertEquals(1, status.pendingJobIds.length);
+
+        // 接続の再開では解除されない
+        spooler.resume();
+        assertEquals("paperOut", spooler.getStatus().holdReason);
+
+        transport.paperOut = false;
+        listener.expect(1);
+        spooler.release();
+        assertTrue(listener.await());
+        assertEquals(Collections.singletonList("receipt"), transport.printed);
+        assertNull(spooler.getStatus().holdReason);
+    }
+
+    @Test
+    public void cancelsPendingJob() throws Exception {
+        transport.failing = true;
+        spooler = newSpooler();
+        spooler.setRetryPolicy(1, 0);
+        listener.expectFailures(1);
+        spooler.start();
+        long first = spooler.submit("text", bytes("first"));
+        long second = spooler.submit("text", bytes("second"));
+        assertTrue(listener.awaitFailures());
+
+        assertTrue(spooler.cancel(second));
+        assertFalse(spooler.cancel(second));
+        assertArrayEquals(new long[] {first}, spooler.getStatus().pendingJobIds);
+        assertEquals(1, new PrintJournal(journalDir()).load().size());
+    }
+
+    @Test
+    public void printsBatchInOneSessionWithCutsBetweenDocuments() throws Exception {
+        spooler = newSpooler();
+        spooler.setSessionPreamble(bytes("setup"));
+        listener.expect(1);
+        spooler.start();
+
+        byte[] receipt = bytes("receipt");
+        spooler.submit("batch", new byte[][] {receipt, receipt, bytes("slip")});
+
+        assertTrue(listener.await());
+        assertEquals(Arrays.asList("setup", "receipt", "receipt", "slip"), transport.printed);
+        assertEquals(3, transport.cuts);
+        assertEquals(Arrays.asList(1, 2, 3), listener.progress);
+    }
+
+    @Test
+    public void retryResumesBatchAfterLastPrintedDocument() throws Exception {
+        transport.failAfter = 2;
+        spooler = newSpooler();
+        spooler.setRetryPolicy(2, 0);
+        listener.expectFailures(1);
+        listener.expect(1);
+        spooler.start();
+
+        spooler.submit("batch", new byte[][] {bytes("a"), bytes("b"), bytes("c")});
+
+        assertTrue(listener.awaitFailures());
+        assertTrue(listener.await());
+        assertEquals(Arrays.asList("a", "b", "c"), transport.printed);
+    }
+
+    @Test
+    public void restartResumesBatchAfterLastCutDocument() throws Exception {
+        transport.failAfter = 2;
+        spooler = newSpooler();
+        spooler.setRetryPolicy(1, 0);
+        listener.expectFailures(1);
+        spooler.start();
+        long id = spooler.submit("batch", new byte[][] {bytes("a"), bytes("b"), bytes("c")});
+        assertTrue(listener.awaitFailures());
+        spooler.stop();
+
+        // 再起動相当：印刷済みの2枚は出さず、3枚目から続ける
+        listener = new RecordingListener();
+        listener.expect(1);
+        spooler = newSpooler();
+        spooler.start();
+
+        assertTrue(listener.await());
+        assertEquals(Collections.singletonList(id), listener.completedIds);
+        assertEquals(Arrays.asList("a", "b", "c"), transport.printed);
+        assertEquals(0, journalDir().list().length);
+    }
+
+    @Test
+    public void journalKeepsAllDocumentsOfBatch() throws Exception {
+        PrintJournal journal = new PrintJournal(journalDir());
+        journal.write(new PrintJob(7, "batch", PrintLane.RECEIPT, new byte[][] {bytes("x"), bytes("yz")}, 0));
+
+        PrintJob loaded = journal.load().get(0);
+        assertEquals(2, loaded.getDocumentCount());
+        assertEquals("yz", new String(loaded.getDocuments()[1], StandardCharsets.UTF_8));
+        assertEquals(PrintLane.RECEIPT, loaded.getLane());
+    }
+
+    @Test
+    public void printsHigherLanesFirst() throws Exception {
+        spooler = newSpooler();
+        spooler.pause();
+        listener.expect(3);
+        spooler.start();
+
+        spooler.submit("batch", new byte[][] {bytes("reprint")});
+        spooler.submit("orderSlip", bytes("slip"));
+        spooler.submit("receipt", bytes("receipt"));
+        assertEquals(1, spooler.getStatus().lanePendingCounts[PrintLane.RECEIPT.ordinal()]);
+        spooler.resume();
+
+        assertTrue(listener.await());
+        assertEquals(Arrays.asList("receipt", "slip", "reprint"), transport.printed);
+    }
+
+    @Test
+    public void bulkBatchYieldsToReceiptBetweenDocuments() throws Exception {
+        spooler = newSpooler();
+        listener.expect(2);
+        listener.onProgress = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    listener.onProgress = null;
+                    spooler.submit("receipt", bytes("receipt"));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        spooler.start();
+
+        spooler.submit("batch", new byte[][] {bytes("a"), bytes("b"), bytes("c")});
+
+        assertTrue(listener.await());
+        assertEquals(Arrays.asList("a", "receipt", "b", "c"), transport.printed);
+        assertEquals(4, transport.cuts);
+    }
+
+    @Test
+    public void rejectsWhenLaneIsFull() throws Exception {
+        spooler = newSpooler();
+        spooler.setLaneLimits(PrintLane.BULK, 1, 0);
+        spooler.pause();
+        spooler.start();
+
+        spooler.submit("batch", new byte[][] {bytes("a")});
+        try {
+            spooler.submit("raw", new byte[][] {bytes("b")});
+            fail("expected QUEUE_FULL");
+        } catch (PrintException e) {
+            assertEquals(PrintException.Reason.QUEUE_FULL, e.getReason());
+        }
+        // 他のレーンは影響を受けない
+        long receipt = spooler.submit("receipt", bytes("receipt"));
+        assertEquals(2, spooler.getStatus().pendingJobIds.length);
+
+        assertEquals(1, spooler.cancelLane(PrintLane.BULK).size());
+        assertArrayEquals(new long[] {receipt}, spooler.getStatus().pendingJobIds);
+    }
+
+    @Test
+    public void concurrentSubmitsNeverExceedLaneCapacity() throws Exception {
+        spooler = newSpooler();
+        spooler.setLaneLimits(PrintLane.BULK, 4, 0);
+        spooler.pause();
+        spooler.start();
+
+        final CountDownLatch go = new CountDownLatch(1);
+        final AtomicInteger accepted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                        spooler.submit("batch", new byte[][] {bytes("a")});
+                        accepted.incrementAndGet();
+                    } catch (Exception e) {
+                        // QUEUE_FULL
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join(5000);
+        }
+
+        assertEquals(4, accepted.get());
+        assertEquals(4, spooler.getStatus().pendingJobIds.length);
+    }
+
+    @Test
+    public void dropsBulkJobsThatWaitTooLong() throws Exception {
+        spooler = newSpooler();
+        spooler.setLaneLimits(PrintLane.BULK, 4, 50);
+        spooler.pause();
+        listener.expectFailures(1);
+        spooler.start();
+
+        spooler.submit("batch", new byte[][] {bytes("a")});
+        spooler.submit("receipt", bytes("receipt"));
+
+        assertTrue(listener.awaitFailures());
+        assertEquals(PrintException.Reason.TIMEOUT, listener.lastError.getReason());
+        assertEquals(1, spooler.getStatus().pendingJobIds.length);
+        assertEquals(1, new PrintJournal(journalDir()).load().size());
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private PrintSpooler newSpooler() {
+        PrintSpooler created = new PrintSpooler(transport, new PrintJournal(journalDir()), listener);
+        created.setSessionPreamble(new byte[0]);
+        return created;
+    }
+
+    private File journalDir() {
+        return new File(folder.getRoot(), "journal");
+    }
+
+    private static class FakeTransport implements PrinterTransport {
+        final List<String> printed = Collections.synchronizedList(new ArrayList<String>());
+        volatile boolean failing;
+        volatile boolean paperOut;
+        volatile int cuts;
+        // 指定回数送信した後に1度だけ失敗させる（0なら無効）
+        volatile int failAfter;
+
+        @Override
+        public void open(String address) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void probe() {
+        }
+
+        @Override
+        public void send(byte[] data) throws PrintException {
+            if (failing) {
+                throw new PrintException("offline");
+            }
+            if (paperOut) {
+                throw new PrintException(PrintException.Reason.PAPER_OUT, "Paper out");
+            }
+            if (failAfter > 0 && printed.size() == failAfter) {
+                failAfter = 0;
+                throw new PrintException("paper jam");
+            }
+            printed.add(new String(data, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void cutPaper() {
+            cuts++;
+        }
+    }
+
+    private static class RecordingListener implements PrintSpooler.Listener {
+        final List<Long> completedIds = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Integer> progress = Collections.synchronizedList(new ArrayList<Integer>());
+        private CountDownLatch completed = new CountDownLatch(0);
+        private CountDownLatch failed = new CountDownLatch(0);
+        volatile PrintException lastError;
+        // 1帳票印刷するごとに呼ぶ
+        volatile Runnable onProgress;
+
+        void expect(int count) {
+            completed = new CountDownLatch(count);
+        }
+
+        void expectFailures(int count) {
+            failed = new CountDownLatch(count);
+        }
+
+        boolean await() throws InterruptedException {
+            return completed.await(5, TimeUnit.SECONDS);
+        }
+
+        boolean awaitFailures() throws InterruptedException {
+            return failed.await(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void onJobCompleted(PrintJob job) {
+            completedIds.add(job.getId());
+            completed.countDown();
+        }
+
+        @Override
+        public void onJobFailed(PrintJob job, PrintException error, boolean willRetry) {
+            lastError = error;
+            failed.countDown();
+        }
+
+        @Override
+        public void onDocumentPrinted(PrintJob job, int printedCount) {
+            progress.add(printedCount);
+            Runnable hook = onProgress;
+            if (hook != null) {
+                hook.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class PrintTemplateTest {
+
+    // 組み込みの会計伝票と同じレイアウト
+    private static final String ORDER_SLIP = ""
+            + "#align center\n"
+            + "会計伝票\n"
+            + "#align left\n"
+            + "#rule double\n"
+            + "卓番号: {{tableName}}\n"
+            + "お客様: {{guestName}}\n"
+            + "推し: {{castName}}\n"
+            + "滞在時間: {{elapsedTime}}\n"
+            + "印刷時刻: {{timestamp}}\n"
+            + "#rule double\n"
+            + "【注文明細】\n"
+            + "#each items\n"
+            + "{{name}}\n"
+            + "#if cast\n"
+            + "  ({{cast}})\n"
+            + "#end\n"
+            + "  {{quantity}} × {{price|yen}} {{total|yen:>}}\n"
+            + "#end\n"
+            + "#rule single\n"
+            + "小計:{{subtotal|yen:>}}\n"
+            + "サービス料:{{serviceTax|yen:>}}\n"
+            + "#if roundingAdjustment\n"
+            + "端数調整:{{roundingAdjustment|signed:>}}\n"
+            + "#end\n"
+            + "#rule double\n"
+            + "合計金額:{{roundedTotal|yen:>}}\n"
+            + "#rule double\n"
+            + "#if cardFeeRate\n"
+            + "\n"
+            + "【お支払い方法】\n"
+            + "現金の場合:{{roundedTotal|yen:>}}\n"
+            + "カードの場合:{{cardAmount|yen:>}}\n"
+            + "  (カード手数料{{cardFeeRate}}%含む)\n"
+            + "#rule double\n"
+            + "#end\n";
+
+    @Test
+    public void orderSlipTemplateMatchesBuiltInLayout() {
+        OrderSlipDocument doc = sampleSlip();
+        EscPosWriter expected = new EscPosWriter();
+        OrderSlipRenderer.render(doc, expected);
+
+        EscPosWriter actual = new EscPosWriter();
+        PrintTemplate.compile("1", ORDER_SLIP).render(doc, actual);
+
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+
+        // 条件が偽の部分は出力しない
+        doc.cardFeeRate = 0;
+        doc.roundingAdjustment = 0;
+        doc.items = Arrays.asList(new OrderItem("チャーム", "", 1, 500));
+        expected.reset();
+        OrderSlipRenderer.render(doc, expected);
+        PrintTemplate.compile("1", ORDER_SLIP).render(doc, actual.reset());
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void padsColumnsByPrintedWidth() {
+        String source = "{{name:<8}}|{{price|yen:>8}}\\\n"
+                + "#if !cast\n"
+                + "|{{quantity:^5}}|\n"
+                + "#else\n"
+                + "|{{cast}}|\n"
+                + "#end\n";
+        OrderItem item = new OrderItem("焼酎", "", 3, 800);
+
+        EscPosWriter writer = new EscPosWriter();
+        PrintTemplate.compile("1", source).render(item, writer);
+
+        // 全角は2桁として数える
+        assertEquals("焼酎    |    ¥800|  3  |\n", render(writer));
+    }
+
+    @Test
+    public void mergesLiteralsIntoFewOps() {
+        PrintTemplate template = PrintTemplate.compile("1", "#align center\n#bold on\n領 収 書\n#bold off\n#align left\n");
+        assertEquals(1, template.opCount());
+    }
+
+    @Test
+    public void reportsSyntaxErrorsWithLineNumber() {
+        assertCompileError("line 2: #end without block", "text\n#end\n");
+        assertCompileError("line 1: unknown format: euro", "{{total|euro}}\n");
+        assertCompileError("line 2: missing #end", "#each items\n{{name}}\n");
+        assertCompileError("line 1: unclosed {{", "{{name\n");
+    }
+
+    @Test
+    public void cacheRecompilesOnlyOnVersionChange() {
+        PrintTemplateCache cache = new PrintTemplateCache();
+        PrintTemplate first = cache.put("receipt", "v1", "A\n");
+        assertSame(first, cache.put("receipt", "v1", "ignored\n"));
+        assertNotSame(first, cache.put("receipt", "v2", "B\n"));
+        assertEquals("v2", cache.get("receipt").getVersion());
+    }
+
+    private static void assertCompileError(String message, String source) {
+        try {
+            PrintTemplate.compile("1", source);
+            fail("expected compile error");
+        } catch (IllegalArgumentException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private static OrderSlipDocument sampleSlip() {
+        OrderSlipDocument doc = new OrderSlipDocument();
+        doc.tableName = "A1";
+        doc.guestName = "田中";
+        doc.items = Arrays.asList(
+                new OrderItem("ビール", "あやか", 2, 1000),
+                new OrderItem("チャーム", "", 1, 500));
+        doc.subtotal = 2500;
+        doc.serviceTax = 375;
+        doc.roundedTotal = 2900;
+        doc.roundingAdjustment = 25;
+        doc.cardFeeRate = 10;
+        doc.roundingUnit = 100;
+        return doc;
+    }
+
+    private static String render(EscPosWriter writer) {
+        return new String(writer.toByteArray(), EscPos.SHIFT_JIS).replace('\\', '¥');
+    }
+}
@@ -0,0 +1,120 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PrinterConnectionManagerTest {
+
+    private final LinkTransport transport = new LinkTransport();
+    private final BlockingQueue<PrinterConnectionManager.State> states = new LinkedBlockingQueue<>();
+    private final PrinterConnectionManager manager = new PrinterConnectionManager(transport,
+            new PrinterConnectionManager.Listener() {
+                @Override
+                public void onStateChanged(PrinterConnectionManager.State state, String address, String error) {
+                    states.add(state);
+                }
+            });
+
+    @After
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Test
+    public void connectsAndReportsCachedState() throws Exception {
+        manager.setTiming(1000, 10, 40);
+        manager.connect("00:11:22:33:44:55", null);
+
+        assertEquals(PrinterConnectionManager.State.CONNECTING, next());
+        assertEquals(PrinterConnectionManager.State.CONNECTED, next());
+        assertTrue(manager.isConnected());
+        assertEquals("00:11:22:33:44:55", manager.getAddress());
+    }
+
+    @Test
+    public void reconnectsAfterProbeFailure() throws Exception {
+        manager.setTiming(20, 10, 40);
+        manager.connect("00:11:22:33:44:55", null);
+        assertEquals(PrinterConnectionManager.State.CONNECTING, next());
+        assertEquals(PrinterConnectionManager.State.CONNECTED, next());
+
+        // リンク切れ → 2回失敗した後に復帰
+        transport.linkUp = false;
+        transport.failOpens.set(2);
+        assertEquals(PrinterConnectionManager.State.RECONNECTING, next());
+        transport.linkUp = true;
+
+        PrinterConnectionManager.State state;
+        do {
+            state = next();
+        } while (state == PrinterConnectionManager.State.RECONNECTING);
+        assertEquals(PrinterConnectionManager.State.CONNECTED, state);
+        assertTrue(transport.opens.get() >= 4);
+    }
+
+    @Test
+    public void disconnectStopsReconnecting() throws Exception {
+        manager.setTiming(1000, 10, 40);
+        transport.failOpens.set(Integer.MAX_VALUE);
+        manager.connect("00:11:22:33:44:55", null);
+        assertEquals(PrinterConnectionManager.State.CONNECTING, next());
+        assertEquals(PrinterConnectionManager.State.RECONNECTING, next());
+
+        manager.disconnect(null);
+        PrinterConnectionManager.State state;
+        do {
+            state = next();
+        } while (state == PrinterConnectionManager.State.RECONNECTING);
+        assertEquals(PrinterConnectionManager.State.DISCONNECTED, state);
+
+        int opens = transport.opens.get();
+        Thread.sleep(100);
+        assertEquals(opens, transport.opens.get());
+    }
+
+    private PrinterConnectionManager.State next() throws InterruptedException {
+        PrinterConnectionManager.State state = states.poll(5, TimeUnit.SECONDS);
+        assertNotNull(state);
+        return state;
+    }
+
+    private static class LinkTransport implements PrinterTransport {
+        final AtomicInteger opens = new AtomicInteger();
+        final AtomicInteger failOpens = new AtomicInteger();
+        volatile boolean linkUp = true;
+
+        @Override
+        public void open(String address) throws PrintException {
+            opens.incrementAndGet();
+            if (failOpens.getAndDecrement() > 0) {
+                throw new PrintException("connect failed");
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void probe() throws PrintException {
+            if (!linkUp) {
+                throw new PrintException("link down");
+            }
+        }
+
+        @Override
+        public void send(byte[] data) {
+        }
+
+        @Override
+        public void cutPaper() {
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PrinterRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> completed = Collections.synchronizedList(new ArrayList<String>());
+    private PrinterRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new PrinterRegistry(folder.getRoot(), new PrinterRegistry.TransportFactory() {
+            @Override
+            public PrinterTransport create(String role) {
+                return new NullTransport();
+            }
+        }, new PrinterRegistry.Listener() {
+            @Override
+            public void onJobCompleted(String role, PrintJob job) {
+                completed.add(role + ":" + job.getDocumentType());
+            }
+
+            @Override
+            public void onJobFailed(String role, PrintJob job, PrintException error, boolean willRetry) {
+            }
+
+            @Override
+            public void onDocumentPrinted(String role, PrintJob job, int printedCount) {
+            }
+
+            @Override
+            public void onStateChanged(String role, PrinterConnectionManager.State state, String address,
+                                       String error) {
+            }
+
+            @Override
+            public void onPrinterStatusChanged(String role, PrinterStatus status) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    public void routesDocumentTypesToRoles() throws Exception {
+        registry.register(PrinterRegistry.DEFAULT_ROLE);
+        registry.register("floor");
+        registry.register("register");
+        registry.setRoute("orderSlip", "floor");
+        registry.setRoute("receipt", "register");
+
+        assertEquals("floor", registry.route("orderSlip").getRole());
+        assertEquals("register", registry.route("receipt").getRole());
+        assertEquals(PrinterRegistry.DEFAULT_ROLE, registry.route("text").getRole());
+    }
+
+    @Test
+    public void failsOverToOnlineBackup() throws Exception {
+        registry.register("register");
+        registry.register("backup");
+        registry.setRoute("receipt", "register");
+        registry.setBackup("register", "backup");
+
+        // 予備がオフラインなら主プリンターに積む
+        assertEquals("register", registry.route("receipt").getRole());
+
+        connect("backup");
+        assertEquals("backup", registry.route("receipt").getRole());
+
+        connect("register");
+        assertEquals("register", registry.route("receipt").getRole());
+    }
+
+    @Test
+    public void printsOnEachPrinterIndependently() throws Exception {
+        registry.register("floor");
+        registry.register("register");
+        registry.setRoute("orderSlip", "floor");
+        registry.setRoute("receipt", "register");
+        connect("floor");
+        connect("register");
+
+        registry.submit("orderSlip", new byte[] {1});
+        registry.submit("receipt", new byte[] {2});
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (completed.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(completed.contains("floor:orderSlip"));
+        assertTrue(completed.contains("register:receipt"));
+    }
+
+    @Test
+    public void sleepsIdleLinksAndReconnectsOnNextPrint() throws Exception {
+        registry.register("register");
+        registry.setRoute("receipt", "register");
+        connect("register");
+        PrinterUnit unit = registry.get("register");
+
+        assertEquals(0, registry.sleepIdleLinks(60000, unit.getLastActivityMillis() + 1000));
+        assertEquals(1, registry.sleepIdleLinks(60000, unit.getLastActivityMillis() + 60000));
+        assertFalse(unit.isOnline());
+        assertTrue(registry.isSleeping("register"));
+
+        registry.submit("receipt", new byte[] {1});
+        assertFalse(registry.isSleeping("register"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (completed.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("addr-register", unit.getConnection().getAddress());
+        assertTrue(completed.contains("register:receipt"));
+    }
+
+    @Test(expected = PrintException.class)
+    public void rejectsWhenNoPrinterIsConfigured() throws Exception {
+        registry.submit("receipt", new byte[] {1});
+    }
+
+    private void connect(String role) throws InterruptedException {
+        PrinterUnit unit = registry.get(role);
+        unit.getConnection().connect("addr-" + role, null);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!unit.isOnline() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(unit.isOnline());
+    }
+
+    private static class NullTransport implements PrinterTransport {
+        @Override
+        public void open(String address) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void probe() {
+        }
+
+        @Override
+        public void send(byte[] data) {
+        }
+
+        @Override
+        public void cutPaper() {
+        }
+    }
+}
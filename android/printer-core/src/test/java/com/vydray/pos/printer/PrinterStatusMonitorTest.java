@@ -0,0 +1,106 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class PrinterStatusMonitorTest {
+
+    private final List<PrinterStatus> changes = Collections.synchronizedList(new ArrayList<PrinterStatus>());
+    private PrinterStatusMonitor monitor;
+
+    @After
+    public void tearDown() {
+        if (monitor != null) {
+            monitor.shutdown();
+        }
+    }
+
+    @Test
+    public void notifiesOnlyWhenStateChanges() {
+        monitor = new PrinterStatusMonitor(new FakeTransport(), recorder());
+        assertNull(monitor.getStatus());
+
+        monitor.update(PrinterStatus.READY);
+        monitor.update(new PrinterStatus(false, false, false, true, 0));
+        PrinterStatus paperOut = new PrinterStatus(false, true, false, false, false, PrinterStatus.BATTERY_LOW, 2);
+        monitor.update(paperOut);
+        monitor.update(paperOut);
+        // 読み取った状態が同じなら、生の値のほかのビットが変わっても通知しない
+        monitor.update(new PrinterStatus(false, true, false, false, false, PrinterStatus.BATTERY_LOW, 0x82));
+
+        // バッファ残量だけの違いは通知しない
+        assertEquals(2, changes.size());
+        assertEquals(0x82, monitor.getStatus().code);
+        assertEquals("paperOut", monitor.getStatus().holdReason());
+        assertEquals("low", monitor.getStatus().batteryName());
+    }
+
+    @Test
+    public void pollsWhileStartedAndForgetsStatusWhenStopped() throws Exception {
+        FakeTransport transport = new FakeTransport();
+        transport.status = new PrinterStatus(false, false, true, false, false, PrinterStatus.BATTERY_FULL, 1);
+        final CountDownLatch notified = new CountDownLatch(1);
+        monitor = new PrinterStatusMonitor(transport, new PrinterStatusMonitor.Listener() {
+            @Override
+            public void onStatusChanged(PrinterStatus status) {
+                changes.add(status);
+                notified.countDown();
+            }
+        });
+        monitor.setPollInterval(10);
+        monitor.start();
+
+        assertTrue(notified.await(5, TimeUnit.SECONDS));
+        assertTrue(monitor.getStatus().coverOpen);
+        assertEquals("coverOpen", monitor.getStatus().holdReason());
+
+        monitor.stop();
+        assertNull(monitor.getStatus());
+    }
+
+    private PrinterStatusMonitor.Listener recorder() {
+        return new PrinterStatusMonitor.Listener() {
+            @Override
+            public void onStatusChanged(PrinterStatus status) {
+                changes.add(status);
+            }
+        };
+    }
+
+    private static class FakeTransport implements FlowControlledTransport {
+        volatile PrinterStatus status = PrinterStatus.READY;
+
+        @Override
+        public PrinterStatus readStatus() {
+            return status;
+        }
+
+        @Override
+        public void open(String address) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void probe() {
+        }
+
+        @Override
+        public void send(byte[] data) {
+        }
+
+        @Override
+        public void cutPaper() {
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.vydray.pos.printer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RasterImageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void scalesWideImageToPrinterWidth() {
+        int[] pixels = filled(768, 100, 0xFF000000);
+
+        byte[] command = RasterImage.encode(pixels, 768, 100, RasterImage.MAX_WIDTH);
+
+        // GS v 0, 48バイト幅 x 50行
+        assertEquals(EscPos.GS, command[0]);
+        assertEquals('v', command[1]);
+        assertEquals(48, command[4]);
+        assertEquals(0, command[5]);
+        assertEquals(50, command[6]);
+        assertEquals(8 + 48 * 50, command.length);
+        assertEquals((byte) 0xFF, command[8]);
+    }
+
+    @Test
+    public void transparentPixelsPrintAsWhite() {
+        byte[] command = RasterImage.encode(filled(16, 2, 0x00000000), 16, 2, RasterImage.MAX_WIDTH);
+
+        for (int i = 8; i < command.length; i++) {
+            assertEquals(0, command[i]);
+        }
+    }
+
+    @Test
+    public void midGrayDithersToHalfTheDots() {
+        int width = 64;
+        int height = 64;
+        byte[] command = RasterImage.encode(filled(width, height, 0xFF808080), width, height, RasterImage.MAX_WIDTH);
+
+        int black = 0;
+        for (int i = 8; i < command.length; i++) {
+            black += Integer.bitCount(command[i] & 0xFF);
+        }
+        double ratio = black / (double) (width * height);
+        assertTrue("ratio=" + ratio, ratio > 0.45 && ratio < 0.55);
+    }
+
+    @Test
+    public void cacheStoresRasterByContentHash() throws Exception {
+        File dir = new File(folder.getRoot(), "raster");
+        String hash = RasterCache.hash("logo.png".getBytes(StandardCharsets.UTF_8));
+        new RasterCache(dir).put(hash, new byte[] {1, 2, 3});
+
+        // 再起動後もファイルから読める
+        RasterCache reopened = new RasterCache(dir);
+        assertArrayEquals(new byte[] {1, 2, 3}, reopened.get(hash));
+        assertNull(reopened.get(RasterCache.hash(new byte[] {0})));
+        assertNull(reopened.get("../journal"));
+        assertEquals(64, hash.length());
+    }
+
+    private static int[] filled(int width, int height, int argb) {
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, argb);
+        return pixels;
+    }
+}
@@ -0,0 +1,197 @@
+package com.vydray.pos.printer.sim;
+
+import static org.junit.Assert.*;
+
+import com.vydray.pos.printer.PrintException;
+import com.vydray.pos.printer.PrintJob;
+import com.vydray.pos.printer.PrintJournal;
+import com.vydray.pos.printer.PrintSpooler;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SimulatedPrinterTransportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void capturesDocumentsSplitByCuts() throws Exception {
+        SimulatedPrinterTransport sim = new SimulatedPrinterTransport(instant());
+        sim.open("sim");
+        sim.send(bytes("注文"));
+        sim.send(bytes("票"));
+        sim.cutPaper();
+        sim.send(bytes("領収書"));
+        sim.cutPaper();
+        sim.send(bytes("途中"));
+
+        List<byte[]> documents = sim.getDocuments();
+        assertEquals(2, documents.size());
+        assertEquals("注文票", text(documents.get(0)));
+        assertEquals("領収書", text(documents.get(1)));
+        assertEquals("注文票領収書途中", text(sim.getStream()));
+    }
+
+    @Test
+    public void sendTimeFollowsBandwidthUntilBufferFills() throws Exception {
+        SimulatedPrinterTransport.Config config = instant();
+        config.bandwidthBytesPerSec = 10_000;
+        config.printBytesPerSec = 1_000;
+        config.bufferBytes = 2_000;
+        config.connectMillis = 0;
+        SimulatedPrinterTransport sim = new SimulatedPrinterTransport(config);
+        sim.open("sim");
+
+        // バッファに収まる間は帯域どおり（1000バイト = 100ms）
+        sim.send(new byte[1_000]);
+        assertEquals(100, millis(sim));
+
+        // バッファを超える分は印字待ちになる
+        sim.send(new byte[4_000]);
+        assertTrue("flow control should stall sends: " + millis(sim), millis(sim) >= 2_500);
+
+        // カットはバッファが空になるまで待つ
+        long beforeCut = millis(sim);
+        sim.cutPaper();
+        assertTrue(millis(sim) - beforeCut >= config.cutMillis + 1_000);
+    }
+
+    @Test
+    public void paperOutFailsUntilReloaded() throws Exception {
+        SimulatedPrinterTransport.Config config = instant();
+        config.paperBytes = 1_000;
+        SimulatedPrinterTransport sim = new SimulatedPrinterTransport(config);
+        sim.open("sim");
+        sim.send(new byte[800]);
+        sim.cutPaper();
+
+        try {
+            sim.send(new byte[800]);
+            fail("expected paper out");
+        } catch (PrintException e) {
+            assertEquals(PrintException.Reason.PAPER_OUT, e.getReason());
+        }
+        try {
+            sim.probe();
+            fail("expected paper out");
+        } catch (PrintException e) {
+            assertEquals(PrintException.Reason.PAPER_OUT, e.getReason());
+        }
+
+        sim.loadPaper();
+        sim.send(new byte[800]);
+        sim.cutPaper();
+        assertEquals(2, sim.getDocuments().size());
+    }
+
+    @Test
+    public void disconnectRequiresReopen() throws Exception {
+        SimulatedPrinterTransport sim = new SimulatedPrinterTransport(instant());
+        sim.open("sim");
+        sim.send(bytes("送りかけ"));
+        sim.disconnect();
+        // カット前に切れた分は途中まで印字された帳票として残る
+        assertEquals(0, sim.getDocuments().size());
+        assertEquals(1, sim.getTornDocuments().size());
+        assertEquals("送りかけ", text(sim.getTornDocuments().get(0)));
+        try {
+            sim.send(bytes("a"));
+            fail("expected not connected");
+        } catch (PrintException e) {
+            assertEquals(PrintException.Reason.NOT_CONNECTED, e.getReason());
+        }
+        sim.open("sim");
+        sim.send(bytes("a"));
+        assertEquals(1, sim.getDisconnects());
+        assertEquals(2, sim.getOpens());
+    }
+
+    @Test
+    public void randomDisconnectsAreReproducibleBySeed() throws Exception {
+        assertEquals(countDisconnects(42), countDisconnects(42));
+        assertTrue(countDisconnects(42) > 0);
+    }
+
+    @Test
+    public void spoolerPrintsEveryJobOnceInOrder() throws Exception {
+        SimulatedPrinterTransport.Config config = instant();
+        SimulatedPrinterTransport sim = new SimulatedPrinterTransport(config);
+        sim.open("sim");
+        final CountDownLatch done = new CountDownLatch(20);
+        PrintSpooler spooler = new PrintSpooler(sim, new PrintJournal(folder.newFolder("journal")),
+                new PrintSpooler.Listener() {
+                    @Override
+                    public void onJobCompleted(PrintJob job) {
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onJobFailed(PrintJob job, PrintException error, boolean willRetry) {
+                    }
+
+                    @Override
+                    public void onDocumentPrinted(PrintJob job, int printedCount) {
+                    }
+                });
+        spooler.setSessionPreamble(new byte[0]);
+        spooler.start();
+        try {
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                expected.add("slip-" + i);
+                spooler.submit("order_slip", bytes("slip-" + i));
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+
+            List<String> printed = new ArrayList<>();
+            for (byte[] document : sim.getDocuments()) {
+                printed.add(text(document));
+            }
+            assertEquals(expected, printed);
+        } finally {
+            spooler.stop();
+        }
+    }
+
+    private static int countDisconnects(long seed) throws PrintException {
+        SimulatedPrinterTransport.Config config = instant();
+        config.disconnectProbability = 0.1;
+        config.seed = seed;
+        SimulatedPrinterTransport sim = new SimulatedPrinterTransport(config);
+        for (int i = 0; i < 50; i++) {
+            sim.open("sim");
+            try {
+                sim.send(new byte[config.chunkBytes * 4]);
+            } catch (PrintException e) {
+                assertEquals(PrintException.Reason.SEND, e.getReason());
+            }
+        }
+        return sim.getDisconnects();
+    }
+
+    private static SimulatedPrinterTransport.Config instant() {
+        SimulatedPrinterTransport.Config config = new SimulatedPrinterTransport.Config();
+        config.timeScale = 0;
+        return config;
+    }
+
+    private static long millis(SimulatedPrinterTransport sim) {
+        return TimeUnit.NANOSECONDS.toMillis(sim.getSimulatedNanos());
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] data) {
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
@@ -1,5 +1,14 @@
 import { CapacitorConfig } from '@capacitor/cli';
 
+// 従来どおりVercelのサイトを直接読み込む場合は CAPACITOR_REMOTE_SHELL=true で cap sync する
+//
+// 注意: 同梱版ではページのオリジンがVercelのURLから https://localhost に変わる。
+// localStorageはオリジンごとに別なので、リモート版から更新した端末では
+// isLoggedIn / currentStoreId / userId などが引き継がれず、初回起動時に1度ログアウトした状態になる。
+// 更新後は各端末でログインし直して店舗を選び直すこと（避けたい場合はリモート版のままにする）
+const useRemoteShell = process.env.CAPACITOR_REMOTE_SHELL === 'true';
+const remoteUrl = 'https://table-management-system-seven.vercel.app';
+
 const config: CapacitorConfig = {
   appId: 'com.vydray.pos',
   appName: 'POS System',
@@ -8,12 +17,23 @@ const config: CapacitorConfig = {
     allowMixedContent: true,
     webContentsDebuggingEnabled: true
   },
-  server: {
-    // APK版はVercelのサイトを直接読み込む（APIルート経由でログイン）
-    url: 'https://table-management-system-seven.vercel.app',
-    cleartext: false,
-    androidScheme: 'https'
+  server: useRemoteShell
+    ? {
+        // APK版はVercelのサイトを直接読み込む（APIルート経由でログイン）
+        url: remoteUrl,
+        cleartext: false,
+        androidScheme: 'https'
+      }
+    : {
+        // APKに同梱したout/から起動する（APIだけNEXT_PUBLIC_API_BASE_URLへ送る）
+        androidScheme: 'https'
+      },
+  plugins: {
+    // 同梱版ではページとAPIのオリジンが異なるため、fetchをネイティブ経由にしてCORSを避ける
+    CapacitorHttp: {
+      enabled: !useRemoteShell
+    }
   }
 };
 
-export default config;
\ No newline at end of file
+export default config;
@@ -26,7 +26,11 @@ export default function ReceiptSettings() {
   const {
     addTemplate,
     removeTemplate,
-    updateTemplate
+    updateTemplate,
+    layoutTemplate,
+    setLayoutTemplate,
+    loadLayoutTemplate,
+    saveLayoutTemplate
   } = useReceiptTemplate(settings, setSettings)
 
   const {
@@ -36,7 +40,9 @@ export default function ReceiptSettings() {
     checkPrinterConnection,
     connectBluetoothPrinter,
     disconnectPrinter,
-    testDirectPrint
+    testDirectPrint,
+    printMetrics,
+    loadPrintMetrics
   } = usePrinterConnection()
 
   // 初期ロード
@@ -46,9 +52,11 @@ export default function ReceiptSettings() {
       if (logoUrl) {
         setLogoPreview(logoUrl)
       }
+      await loadLayoutTemplate()
     }
     loadData()
     checkPrinterConnection()
+    loadPrintMetrics()
     // eslint-disable-next-line react-hooks/exhaustive-deps
   }, [])
 
@@ -58,6 +66,11 @@ export default function ReceiptSettings() {
       // ロゴをアップロード（ファイルが選択されている場合）
       const logoUrl = await uploadLogo()
 
+      // レイアウトテンプレートを保存（プリンター側でコンパイルしてから）
+      if (!(await saveLayoutTemplate())) {
+        return
+      }
+
       // 設定を保存（ロゴURLを渡す）
       const result = await saveSettings(logoUrl || undefined)
 
@@ -72,6 +85,14 @@ export default function ReceiptSettings() {
     }
   }
 
+  // 帳票種別・プリンターごとの印刷時間の表示名
+  const metricsLabels: { [key: string]: string } = {
+    orderSlip: '伝票',
+    receipt: '領収書',
+    text: 'テキスト',
+    batch: 'まとめ印刷'
+  }
+
   // プリンター印刷テストのラッパー関数
   const handleTestPrint = async () => {
     await testDirectPrint(settings)
@@ -213,6 +234,63 @@ export default function ReceiptSettings() {
               🔄 状態確認
             </button>
           </div>
+
+          {/* 印刷時間（直近1時間、呼び出しから最後のカットまで） */}
+          {printMetrics && (
+            <div style={{ marginTop: '20px', fontSize: '13px' }}>
+              <div style={{ display: 'flex', alignItems: 'center', gap: '10px', marginBottom: '8px' }}>
+                <span style={{ fontWeight: 'bold' }}>印刷時間（直近1時間）</span>
+                <button
+                  onClick={loadPrintMetrics}
+                  style={{
+                    padding: '4px 10px',
+                    backgroundColor: '#9E9E9E',
+                    color: 'white',
+                    border: 'none',
+                    borderRadius: '5px',
+                    fontSize: '12px',
+                    cursor: 'pointer'
+                  }}
+                >
+                  更新
+                </button>
+              </div>
+              <table style={{ borderCollapse: 'collapse', width: '100%' }}>
+                <thead>
+                  <tr style={{ color: '#666', textAlign: 'right' }}>
+                    <th style={{ textAlign: 'left', padding: '4px' }}>種別 / プリンター</th>
+                    <th style={{ padding: '4px' }}>件数</th>
+                    <th style={{ padding: '4px' }}>p50</th>
+                    <th style={{ padding: '4px' }}>p99</th>
+                    <th style={{ padding: '4px' }}>送信p99</th>
+                    <th style={{ padding: '4px' }}>失敗</th>
+                  </tr>
+                </thead>
+                <tbody>
+                  {[
+                    ...Object.entries(printMetrics.documentTypes).map(([key, entry]) => [metricsLabels[key] || key, entry] as const),
+                    ...Object.entries(printMetrics.printers).map(([key, entry]) => [`🖨️ ${key}`, entry] as const)
+                  ].map(([label, entry]) => {
+                    const total = entry.stages.total
+                    const send = entry.stages.send
+                    const failures = Object.entries(entry.failures)
+                    return (
+                      <tr key={label} style={{ borderTop: '1px solid #f0f0f0', textAlign: 'right' }}>
+                        <td style={{ textAlign: 'left', padding: '4px' }}>{label}</td>
+                        <td style={{ padding: '4px' }}>{total?.count ?? 0}</td>
+                        <td style={{ padding: '4px' }}>{total ? `${Math.round(total.p50)}ms` : '-'}</td>
+                        <td style={{ padding: '4px' }}>{total ? `${Math.round(total.p99)}ms` : '-'}</td>
+                        <td style={{ padding: '4px' }}>{send ? `${Math.round(send.p99)}ms` : '-'}</td>
+                        <td style={{ padding: '4px', color: failures.length > 0 ? '#f44336' : '#666' }}>
+                          {failures.length > 0 ? failures.map(([cause, count]) => `${cause}:${count}`).join(' ') : '0'}
+                        </td>
+                      </tr>
+                    )
+                  })}
+                </tbody>
+              </table>
+            </div>
+          )}
         </div>
       </div>
 
@@ -662,6 +740,32 @@ export default function ReceiptSettings() {
             }}
           />
         </div>
+
+        <div style={{ marginBottom: '20px' }}>
+          <label style={{ 
+            display: 'block',
+            marginBottom: '8px',
+            fontWeight: 'bold',
+            fontSize: '14px'
+          }}>
+            領収書レイアウト（空欄で標準レイアウト）
+          </label>
+          <textarea
+            value={layoutTemplate}
+            onChange={(e) => setLayoutTemplate(e.target.value)}
+            placeholder={'例：\n#align center\n{{storeName}}\n#align left\n#each items\n{{name:<20}}{{total|yen:>12}}\n#end'}
+            style={{
+              width: '100%',
+              maxWidth: '400px',
+              padding: '10px',
+              fontSize: '13px',
+              fontFamily: 'monospace',
+              border: '1px solid #ddd',
+              borderRadius: '5px',
+              minHeight: '160px'
+            }}
+          />
+        </div>
       </div>
 
       {/* インボイス設定 */}
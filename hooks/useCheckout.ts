@@ -1,5 +1,8 @@
+import { useRef } from 'react'
 import { getCurrentStoreId } from '../utils/storeContext'
 import { getJapanTimeString } from '../utils/dateTime'
+import { apiUrl } from '../utils/appShell'
+import { printer } from '../utils/bluetoothPrinter'
 
 interface OrderItem {
   name: string
@@ -31,38 +34,81 @@ interface CheckoutResult {
   data?: Record<string, any>
 }
 
+// オフライン会計プラグイン（APKのみ）
+export const getOfflineCheckoutPlugin = () => {
+  if (typeof window === 'undefined') {
+    return null
+  }
+  // @ts-ignore
+  return window.Capacitor?.Plugins?.OfflineCheckout || null
+}
+
 export const useCheckout = () => {
+  // 会計ごとの伝票番号（卓と入店時刻 → 伝票番号）。登録できるまで同じ番号で送り直す
+  // 二度押しや応答が遅いときのやり直しも同じ番号になり、サーバーの一意制約で二重登録されない
+  const pendingReceiptNumbers = useRef(new Map<string, string>())
+
   // 会計処理を実行
   const executeCheckout = async (
     currentTable: string,
     orderItems: OrderItem[],
     formData: FormData,
     paymentData: PaymentData,
-    totalAmount: number
+    totalAmount: number,
+    entryTime?: string
   ): Promise<CheckoutResult | null> => {
     try {
       const checkoutTime = getJapanTimeString(new Date())
       const storeId = getCurrentStoreId()
 
+      const body = {
+        tableId: currentTable,
+        checkoutTime,
+        orderItems: orderItems,
+        guestName: formData.guestName,
+        castName: formData.castName,
+        visitType: formData.visitType,
+        paymentCash: paymentData.cash,
+        paymentCard: paymentData.card,
+        paymentOther: paymentData.other,
+        paymentOtherMethod: paymentData.otherMethod,
+        cardFee: paymentData.cardFee || 0,
+        discountAmount: paymentData.discount || 0,
+        totalAmount: totalAmount,
+        storeId: storeId,
+        // 同期が遅れても、会計した客の入店時刻で記録し、その客のときだけテーブルを片付ける
+        entryTime: entryTime || undefined
+      }
+
+      const attemptKey = `${currentTable}|${entryTime || ''}`
+      let receiptNumber = pendingReceiptNumbers.current.get(attemptKey)
+      if (!receiptNumber) {
+        receiptNumber = `${currentTable}-${Date.now()}`
+        pendingReceiptNumbers.current.set(attemptKey, receiptNumber)
+      }
+
+      // APKではローカルに記録してすぐ返す（同期は端末側で再送、通信が不安定でも会計を止めない）
+      const offlineCheckout = getOfflineCheckoutPlugin()
+      if (offlineCheckout) {
+        try {
+          await offlineCheckout.submit({
+            url: apiUrl('/api/tables/checkout'),
+            idempotencyKey: encodeURIComponent(receiptNumber),
+            body
+          })
+          pendingReceiptNumbers.current.delete(attemptKey)
+          void printer.clearOrderSnapshot(currentTable)
+          return { receiptNumber, status: 'queued', data: { totalAmount } }
+        } catch (error) {
+          // 記録できなければ従来どおり直接送信
+          console.error('Offline journal error:', error)
+        }
+      }
+
       const response = await fetch('/api/tables/checkout', {
         method: 'POST',
-        headers: { 'Content-Type': 'application/json' },
-        body: JSON.stringify({
-          tableId: currentTable,
-          checkoutTime,
-          orderItems: orderItems,
-          guestName: formData.guestName,
-          castName: formData.castName,
-          visitType: formData.visitType,
-          paymentCash: paymentData.cash,
-          paymentCard: paymentData.card,
-          paymentOther: paymentData.other,
-          paymentOtherMethod: paymentData.otherMethod,
-          cardFee: paymentData.cardFee || 0,
-          discountAmount: paymentData.discount || 0,
-          totalAmount: totalAmount,
-          storeId: storeId
-        })
+        headers: { 'Content-Type': 'application/json', 'Idempotency-Key': encodeURIComponent(receiptNumber) },
+        body: JSON.stringify(body)
       })
 
       const result = await response.json()
@@ -71,6 +117,9 @@ export const useCheckout = () => {
         throw new Error(result.error || 'Checkout failed')
       }
 
+      pendingReceiptNumbers.current.delete(attemptKey)
+      // 追加伝票の差分の基準を次の客のために消す
+      void printer.clearOrderSnapshot(currentTable)
       return result
     } catch (error) {
       console.error('Error checkout:', error)
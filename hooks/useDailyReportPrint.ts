@@ -0,0 +1,157 @@
+import { useState } from 'react'
+import { supabase } from '@/lib/supabase'
+import { getCurrentStoreId } from '../utils/storeContext'
+import { printer, DailyReportPage } from '../utils/bluetoothPrinter'
+
+// 1回に読む会計数（明細を含めても1ページが数百KBに収まる程度）
+const PAGE_SIZE = 200
+
+interface PaymentRow {
+  cash_amount: number | null
+  change_amount: number | null
+  credit_card_amount: number | null
+  other_payment_amount: number | null
+  card_fee: number | null
+}
+
+interface OrderRow {
+  total_incl_tax: number | null
+  service_charge: number | null
+  tax_amount: number | null
+  rounding_adjustment: number | null
+  discount_amount: number | null
+  visit_type: string | null
+  payments: PaymentRow[] | PaymentRow | null
+  order_items: Array<{
+    cast_name: string[] | string | null
+    category: string | null
+    subtotal: number | null
+    quantity: number | null
+  }> | null
+}
+
+// 1ページ分の会計を列ごとの配列に変換
+const toDailyReportPage = (orders: OrderRow[]): DailyReportPage => {
+  const page: DailyReportPage = {
+    orderTotals: [],
+    orderCash: [],
+    orderChange: [],
+    orderCard: [],
+    orderOther: [],
+    orderCardFees: [],
+    orderRounding: [],
+    orderDiscounts: [],
+    orderServiceCharges: [],
+    orderTaxes: [],
+    orderVisitTypes: [],
+    itemCasts: [],
+    itemCategories: [],
+    itemAmounts: [],
+    itemQuantities: []
+  }
+  for (const order of orders) {
+    const payments = Array.isArray(order.payments) ? order.payments : (order.payments ? [order.payments] : [])
+    let cash = 0, change = 0, card = 0, other = 0, cardFee = 0
+    for (const payment of payments) {
+      cash += payment.cash_amount || 0
+      change += payment.change_amount || 0
+      card += payment.credit_card_amount || 0
+      other += payment.other_payment_amount || 0
+      cardFee += payment.card_fee || 0
+    }
+    page.orderTotals.push(order.total_incl_tax || 0)
+    page.orderCash.push(cash)
+    page.orderChange.push(change)
+    page.orderCard.push(card)
+    page.orderOther.push(other)
+    page.orderCardFees.push(cardFee)
+    page.orderRounding.push(order.rounding_adjustment || 0)
+    page.orderDiscounts.push(order.discount_amount || 0)
+    page.orderServiceCharges.push(order.service_charge || 0)
+    page.orderTaxes.push(order.tax_amount || 0)
+    page.orderVisitTypes.push(order.visit_type)
+
+    for (const item of order.order_items || []) {
+      page.itemCasts.push(Array.isArray(item.cast_name) ? item.cast_name.join(',') : item.cast_name)
+      page.itemCategories.push(item.category)
+      page.itemAmounts.push(item.subtotal || 0)
+      page.itemQuantities.push(item.quantity || 0)
+    }
+  }
+  return page
+}
+
+export const useDailyReportPrint = (
+  getBusinessDateRange: (dateStr: string, businessDayStartHour: number) => { start: string; end: string }
+) => {
+  const [isPrintingReport, setIsPrintingReport] = useState(false)
+
+  // 営業日の会計をページごとに読む（読み終えたページはネイティブ側に渡して捨てる）
+  async function* fetchOrderPages(dateStr: string, businessDayStartHour: number): AsyncGenerator<DailyReportPage> {
+    const storeId = getCurrentStoreId()
+    const { start, end } = getBusinessDateRange(dateStr, businessDayStartHour)
+
+    for (let from = 0; ; from += PAGE_SIZE) {
+      const { data: orders, error } = await supabase
+        .from('orders')
+        .select('id, total_incl_tax, service_charge, tax_amount, rounding_adjustment, discount_amount, visit_type, payments(cash_amount, change_amount, credit_card_amount, other_payment_amount, card_fee), order_items(cast_name, category, subtotal, quantity)')
+        .eq('store_id', storeId)
+        .is('deleted_at', null)
+        .gte('checkout_datetime', start)
+        .lt('checkout_datetime', end)
+        .order('id')
+        .range(from, from + PAGE_SIZE - 1)
+
+      if (error) throw error
+      if (!orders || orders.length === 0) return
+      yield toDailyReportPage(orders as OrderRow[])
+      if (orders.length < PAGE_SIZE) return
+    }
+  }
+
+  // 日報印刷（集計はネイティブ側で行う）
+  const printDailyReport = async (
+    dateStr: string,
+    businessDayStartHour: number,
+    eventName: string
+  ) => {
+    setIsPrintingReport(true)
+    try {
+      const isConnected = await printer.checkConnection()
+      if (!isConnected) {
+        alert('プリンターが接続されていません')
+        return
+      }
+
+      const { data: storeSettings } = await supabase
+        .from('receipt_settings')
+        .select('store_name')
+        .eq('store_id', getCurrentStoreId())
+        .single()
+
+      const timestamp = new Date().toLocaleString('ja-JP', {
+        month: '2-digit',
+        day: '2-digit',
+        hour: '2-digit',
+        minute: '2-digit',
+        hour12: false
+      })
+      await printer.printDailyReport({
+        storeName: storeSettings?.store_name || '',
+        businessDate: dateStr,
+        eventName: eventName,
+        timestamp: timestamp
+      }, fetchOrderPages(dateStr, businessDayStartHour))
+    } catch (error) {
+      console.error('Daily report print error:', error)
+      alert('日報の印刷に失敗しました')
+    } finally {
+      setIsPrintingReport(false)
+    }
+  }
+
+  return {
+    isPrintingReport,
+    printDailyReport
+  }
+}
@@ -0,0 +1,92 @@
+import { useCallback, useEffect, useState } from 'react'
+import { getOfflineCheckoutPlugin } from './useCheckout'
+
+// サーバーに拒否された会計（端末のジャーナルに残っている）
+export interface RejectedCheckout {
+  id: number
+  idempotencyKey: string
+  createdAt: number
+  tableId?: string
+  totalAmount?: number
+  checkoutTime?: string
+  // 拒否されたときの応答（アプリを再起動すると分からない）
+  status?: number
+  response?: string
+}
+
+// 端末に記録した会計の同期状況（APKのみ）
+// 拒否された会計はレジ担当が確認するまで残し、通信エラーで再送待ちの件数も知らせる
+export const useOfflineCheckouts = () => {
+  const [rejected, setRejected] = useState<RejectedCheckout[]>([])
+  const [pendingCount, setPendingCount] = useState(0)
+  const [syncError, setSyncError] = useState<string | null>(null)
+
+  const refresh = useCallback(async () => {
+    const plugin = getOfflineCheckoutPlugin()
+    if (!plugin) {
+      return
+    }
+
+    try {
+      const result = await plugin.getPending()
+      setPendingCount(result.pending.length)
+      setRejected(prev => result.rejected.map((entry: RejectedCheckout) => {
+        const known = prev.find(p => p.id === entry.id)
+        return known ? { ...entry, status: known.status, response: known.response } : entry
+      }))
+      if (result.pending.length === 0) {
+        setSyncError(null)
+      }
+    } catch (error) {
+      console.error('Offline checkout status error:', error)
+    }
+  }, [])
+
+  useEffect(() => {
+    const plugin = getOfflineCheckoutPlugin()
+    if (!plugin) {
+      return
+    }
+
+    const handles: Array<Promise<{ remove: () => void }>> = [
+      plugin.addListener('checkoutRejected', (entry: RejectedCheckout) => {
+        setRejected(prev => [...prev.filter(p => p.id !== entry.id), entry])
+        refresh()
+      }),
+      plugin.addListener('checkoutSynced', () => {
+        refresh()
+      }),
+      plugin.addListener('syncError', (event: { error: string; pending: number }) => {
+        setSyncError(event.error)
+        setPendingCount(event.pending)
+      })
+    ]
+    refresh()
+
+    return () => {
+      handles.forEach(handle => handle.then(h => h.remove()).catch(() => {}))
+    }
+  }, [refresh])
+
+  // 拒否された会計を確認済みにしてジャーナルから消す
+  const discardRejected = async (id: number) => {
+    const plugin = getOfflineCheckoutPlugin()
+    if (!plugin) {
+      return
+    }
+
+    try {
+      await plugin.discard({ id })
+      setRejected(prev => prev.filter(p => p.id !== id))
+    } catch (error) {
+      console.error('Discard checkout error:', error)
+    }
+  }
+
+  return {
+    rejected,
+    pendingCount,
+    syncError,
+    discardRejected
+  }
+}
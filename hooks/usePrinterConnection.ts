@@ -1,11 +1,12 @@
 import { useState } from 'react'
-import { printer } from '../utils/bluetoothPrinter'
+import { printer, PrintMetrics } from '../utils/bluetoothPrinter'
 import { ReceiptSettings } from './useReceiptSettingsData'
 
 export const usePrinterConnection = () => {
   const [isConnecting, setIsConnecting] = useState(false)
   const [printerConnected, setPrinterConnected] = useState(false)
   const [printerAddress, setPrinterAddress] = useState<string>('')
+  const [printMetrics, setPrintMetrics] = useState<PrintMetrics | null>(null)
 
   // プリンター接続状態を確認する関数
   const checkPrinterConnection = async () => {
@@ -134,7 +135,7 @@ export const usePrinterConnection = () => {
     }
 
     try {
-      await printer.printReceipt({
+      const { jobId } = await printer.printReceipt({
         storeName: settings.store_name || 'テスト店舗',
         storeAddress: settings.store_address || '',
         storePhone: settings.store_phone || '',
@@ -171,6 +172,7 @@ export const usePrinterConnection = () => {
         paymentOtherMethod: '',
         change: 0
       })
+      await printer.awaitJob(jobId)
 
       alert('テスト印刷完了')
       return true
@@ -181,13 +183,24 @@ export const usePrinterConnection = () => {
     }
   }
 
+  // 印刷時間の統計を取得（p50/p99でプリンターやBluetoothの劣化に気付けるようにする）
+  const loadPrintMetrics = async () => {
+    try {
+      setPrintMetrics(await printer.getPrintMetrics())
+    } catch (error) {
+      console.error('印刷統計取得エラー:', error)
+    }
+  }
+
   return {
     isConnecting,
     printerConnected,
     printerAddress,
+    printMetrics,
     checkPrinterConnection,
     connectBluetoothPrinter,
     disconnectPrinter,
-    testDirectPrint
+    testDirectPrint,
+    loadPrintMetrics
   }
 }
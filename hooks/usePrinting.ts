@@ -123,7 +123,11 @@ export const usePrinting = () => {
         timestamp: timestamp
       }
 
-      await printer.printOrderSlip(orderData)
+      // キューに積んだだけでは印刷できたか分からないので、印刷し終わるまで待つ
+      const { jobId } = await printer.printOrderSlip(orderData)
+      await printer.awaitJob(jobId, {
+        onRetry: failure => alert('印刷が止まっています: ' + failure.error + '\n直ると自動で続きから印刷します')
+      })
       alert('会計伝票を印刷しました')
     } catch (error) {
       console.error('Print error:', error)
@@ -135,6 +139,37 @@ export const usePrinting = () => {
     }
   }
 
+  // 追加伝票を印刷（前回の追加伝票から増えた・減った分だけ）
+  const printOrderDelta = async (
+    currentTable: string,
+    formData: FormData,
+    orderItems: OrderItem[]
+  ) => {
+    try {
+      const timestamp = new Date().toLocaleString('ja-JP', {
+        hour: '2-digit',
+        minute: '2-digit',
+        hour12: false
+      })
+      const result = await printer.printOrderDelta({
+        tableName: currentTable,
+        guestName: formData.guestName,
+        orderItems: orderItems,
+        timestamp: timestamp
+      })
+      if (!result.printed) {
+        alert('前回の追加伝票から変更はありません')
+      }
+    } catch (error) {
+      console.error('Print error:', error)
+      if (error instanceof Error) {
+        alert('印刷に失敗しました: ' + error.message)
+      } else {
+        alert('印刷に失敗しました: Unknown error')
+      }
+    }
+  }
+
   // 領収書を印刷
   const printReceipt = async (
     currentTable: string,
@@ -194,7 +229,6 @@ export const usePrinting = () => {
 
       if (mpb20) {
         await printer.connect(mpb20.address)
-        await new Promise(resolve => setTimeout(resolve, 500))
 
         const now = new Date()
         const timestamp = now.toLocaleString('ja-JP', {
@@ -220,12 +254,13 @@ export const usePrinting = () => {
 
         const totalWithCardFee = roundedTotal + cardFee
 
-        await printer.printReceipt({
+        const { jobId } = await printer.printReceipt({
           storeName: storeSettings?.store_name || '店舗名',
           storeAddress: storeSettings?.store_address || '',
           storePhone: storeSettings?.store_phone || '',
           storePostalCode: storeSettings?.store_postal_code || '',
           storeRegistrationNumber: storeSettings?.store_registration_number || '',
+          logoHash: await printer.registerImageUrl(storeSettings?.logo_url),
           receiptNumber: checkoutResult?.receiptNumber || 'R' + Date.now(),
           receiptTo: receiptTo,
           receiptNote: receiptNote,
@@ -250,7 +285,11 @@ export const usePrinting = () => {
           change: (paymentData.cash + paymentData.card + paymentData.other) - totalWithCardFee
         })
 
-        await printer.disconnect()
+        // 接続は切らずに保持する（印刷はネイティブ側のキューで続く）
+        // 会計の流れは止めず、印刷できずに諦めたときだけ知らせる
+        printer.awaitJob(jobId).catch(error => {
+          alert('領収書印刷に失敗しました。\n' + (error instanceof Error ? error.message : String(error)))
+        })
         return true
       } else {
         alert('MP-B20が見つかりません。')
@@ -268,6 +307,7 @@ export const usePrinting = () => {
 
   return {
     printOrderSlip,
+    printOrderDelta,
     printReceipt
   }
 }
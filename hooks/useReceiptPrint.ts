@@ -84,6 +84,7 @@ export const useReceiptPrint = () => {
         storePhone: storeSettings?.store_phone || '',
         storePostalCode: storeSettings?.store_postal_code || '',
         storeRegistrationNumber: storeSettings?.store_registration_number || '',
+        logoHash: await printer.registerImageUrl(storeSettings?.logo_url),
 
         // 領収書情報
         receiptNumber: selectedReceipt.receipt_number,
@@ -131,7 +132,10 @@ export const useReceiptPrint = () => {
       }
 
       // 印刷実行
-      await printer.printReceipt(receiptData)
+      const { jobId } = await printer.printReceipt(receiptData)
+      await printer.awaitJob(jobId, {
+        onRetry: failure => alert('印刷が止まっています: ' + failure.error + '\n直ると自動で続きから印刷します')
+      })
       alert('領収書を印刷しました')
     } catch (error) {
       console.error('Print error:', error)
@@ -185,8 +189,15 @@ export const useReceiptPrint = () => {
         })
       }
 
-      // 印刷実行
-      await printer.printOrderSlip(orderData)
+      // 同じ内容を印刷済みなら描画済みのバイト列を送り直す（明細を編集した後は描画し直す）
+      const cacheKey = `slip:${selectedReceipt.id}:${JSON.stringify(orderData)}`
+      let jobId = await printer.reprint(cacheKey, 'orderSlip')
+      if (jobId === null) {
+        jobId = (await printer.printOrderSlip(orderData, { cacheKey })).jobId
+      }
+      await printer.awaitJob(jobId, {
+        onRetry: failure => alert('印刷が止まっています: ' + failure.error + '\n直ると自動で続きから印刷します')
+      })
       alert('会計伝票を印刷しました')
     } catch (error) {
       console.error('Print error:', error)
@@ -1,9 +1,19 @@
+import { useState } from 'react'
+import { supabase } from '@/lib/supabase'
+import { getCurrentStoreId } from '../utils/storeContext'
+import { printer } from '../utils/bluetoothPrinter'
 import { ReceiptSettings } from './useReceiptSettingsData'
 
+// 領収書レイアウトはsystem_settingsに保存する
+const LAYOUT_SETTING_KEY = 'receipt_layout_template'
+
 export const useReceiptTemplate = (
   settings: ReceiptSettings,
   setSettings: (settings: ReceiptSettings) => void
 ) => {
+  const [layoutTemplate, setLayoutTemplate] = useState('')
+  const [savedLayoutTemplate, setSavedLayoutTemplate] = useState('')
+
   // 但し書きテンプレートの追加
   const addTemplate = () => {
     setSettings({
@@ -34,9 +44,81 @@ export const useReceiptTemplate = (
     setSettings({ ...settings, receipt_templates: newTemplates })
   }
 
+  // 領収書レイアウトの読み込み（プリンターにも反映する。同じ内容なら再コンパイルされない）
+  const loadLayoutTemplate = async () => {
+    try {
+      const storeId = getCurrentStoreId()
+      const { data } = await supabase
+        .from('system_settings')
+        .select('setting_value')
+        .eq('store_id', storeId)
+        .eq('setting_key', LAYOUT_SETTING_KEY)
+        .maybeSingle()
+
+      const source = data?.setting_value || ''
+      setLayoutTemplate(source)
+      setSavedLayoutTemplate(source)
+      await printer.setReceiptTemplate('receipt', source)
+    } catch (error) {
+      console.error('Error loading layout template:', error)
+    }
+  }
+
+  // 領収書レイアウトの保存（プリンター側でコンパイルできたものだけ保存する）
+  const saveLayoutTemplate = async (): Promise<boolean> => {
+    if (layoutTemplate === savedLayoutTemplate) {
+      return true
+    }
+
+    try {
+      await printer.setReceiptTemplate('receipt', layoutTemplate)
+    } catch (error) {
+      const errorMessage = error instanceof Error ? error.message : String(error)
+      alert(`領収書レイアウトに誤りがあります\n${errorMessage}`)
+      return false
+    }
+
+    try {
+      const storeId = getCurrentStoreId()
+      const { data: existing } = await supabase
+        .from('system_settings')
+        .select('id')
+        .eq('store_id', storeId)
+        .eq('setting_key', LAYOUT_SETTING_KEY)
+        .maybeSingle()
+
+      const { error } = existing
+        ? await supabase
+          .from('system_settings')
+          .update({ setting_value: layoutTemplate })
+          .eq('store_id', storeId)
+          .eq('setting_key', LAYOUT_SETTING_KEY)
+        : await supabase
+          .from('system_settings')
+          .insert({
+            store_id: storeId,
+            setting_key: LAYOUT_SETTING_KEY,
+            setting_value: layoutTemplate
+          })
+
+      if (error) throw error
+      setSavedLayoutTemplate(layoutTemplate)
+      return true
+    } catch (error) {
+      console.error('Error saving layout template:', error)
+      const errorMessage = error instanceof Error ? error.message : String(error)
+      alert(`領収書レイアウトの保存に失敗しました\n${errorMessage}`)
+      return false
+    }
+  }
+
   return {
     addTemplate,
     removeTemplate,
-    updateTemplate
+    updateTemplate,
+    layoutTemplate,
+    setLayoutTemplate,
+    loadLayoutTemplate,
+    saveLayoutTemplate
   }
 }
@@ -3,6 +3,7 @@ import useSWR from 'swr'
 import { supabase } from '@/lib/supabase'
 import { TableData } from '../types'
 import { getCurrentStoreId } from '../utils/storeContext'
+import { printer } from '../utils/bluetoothPrinter'
 
 // SWR用フェッチャー
 const fetcher = (url: string) => fetch(url).then(res => res.json())
@@ -201,6 +202,9 @@ export const useTableManagement = () => {
         throw new Error('移動に失敗しました')
       }
 
+      // 追加伝票の記録も客と一緒に移す（移動先で全品が新規として出ないように）
+      void printer.moveOrderSnapshot(moveFromTable, toTable)
+
       endMoveMode()
 
       // SWRキャッシュを再取得
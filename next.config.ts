@@ -14,6 +14,11 @@ const nextConfig: NextConfig = {
   env: {
     NEXT_PUBLIC_SUPABASE_URL: process.env.NEXT_PUBLIC_SUPABASE_URL,
     NEXT_PUBLIC_SUPABASE_ANON_KEY: process.env.NEXT_PUBLIC_SUPABASE_ANON_KEY,
+    // APK同梱版がAPIを呼ぶ先（Webで配信する場合は同一オリジンなので空）
+    NEXT_PUBLIC_API_BASE_URL: process.env.NEXT_PUBLIC_API_BASE_URL
+      || (isCapacitorBuild ? 'https://table-management-system-seven.vercel.app' : ''),
+    // 同梱版の更新マニフェスト {version, url, sha256}（未設定なら更新を確認しない）
+    NEXT_PUBLIC_APP_SHELL_MANIFEST_URL: process.env.NEXT_PUBLIC_APP_SHELL_MANIFEST_URL || '',
   }
 };
 
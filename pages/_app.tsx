@@ -5,6 +5,12 @@ import '../styles/globals.css'
 import { KeyboardProvider, useKeyboard } from '../contexts/KeyboardContext'
 import JapaneseKeyboard from '../components/JapaneseKeyboard'
 import { useKeyboardAutoAttach } from '../hooks/useKeyboardAutoAttach'
+import { installApiBase, reportShellReady } from '../utils/appShell'
+
+// APK同梱版ではAPIをリモートへ向ける（最初のfetchより前に設定する）
+if (typeof window !== 'undefined') {
+  installApiBase()
+}
 
 function AppContent({ Component, pageProps }: AppProps) {
   const keyboard = useKeyboard();
@@ -40,6 +46,13 @@ function AppContent({ Component, pageProps }: AppProps) {
     // eslint-disable-next-line react-hooks/exhaustive-deps
   }, [router.isReady, router.pathname])
 
+  // 最初の画面が表示できたらネイティブへ通知（起動時間の計測）
+  useEffect(() => {
+    if (!isCheckingAuth || router.pathname === '/login') {
+      reportShellReady()
+    }
+  }, [isCheckingAuth, router.pathname])
+
   // 認証チェック中は何も表示しない（白い画面を防ぐ）
   if (isCheckingAuth && router.pathname !== '/login') {
     return (
@@ -11,6 +11,78 @@ interface OrderItem {
   price: number
 }
 
+interface SavedCheckout {
+  order_id: number
+  duplicate: boolean
+  total_incl_tax: number
+}
+
+// 再送キーは伝票番号（卓名-時刻）をencodeURIComponentしたもの（ヘッダーはASCIIしか安全に送れない）
+const IDEMPOTENCY_KEY_PATTERN = /^[A-Za-z0-9%_.!~*'()-]{1,256}$/
+const MAX_RECEIPT_NUMBER_LENGTH = 64
+
+// 伝票番号として保存できる再送キーなら戻す（不正ならnull）
+const decodeIdempotencyKey = (header: string): string | null => {
+  if (!IDEMPOTENCY_KEY_PATTERN.test(header)) {
+    return null
+  }
+  try {
+    const key = decodeURIComponent(header)
+    return key.length <= MAX_RECEIPT_NUMBER_LENGTH && !/[\u0000-\u001f\u007f]/.test(key) ? key : null
+  } catch {
+    return null
+  }
+}
+
+// checkout_order（CHECKOUT_RPC.sql）がまだ適用されていない
+const isMissingRpc = (error: { code?: string } | null) =>
+  error?.code === 'PGRST202' || error?.code === '42883'
+
+// CHECKOUT_RPC.sql を適用する前の登録方法（注文・明細・支払いを順に登録する）
+// 明細・支払いの登録に失敗したら注文を消し、再送で二重登録にも取りこぼしにもならないようにする
+const saveCheckoutWithoutRpc = async (
+  order: Record<string, any>,
+  items: Record<string, any>[],
+  payment: Record<string, any>
+): Promise<SavedCheckout> => {
+  const { data: existing, error: existingError } = await supabase
+    .from('orders')
+    .select('id, total_incl_tax')
+    .eq('receipt_number', order.receipt_number)
+    .eq('store_id', order.store_id)
+    .limit(1)
+
+  if (existingError) throw existingError
+
+  if (existing && existing.length > 0) {
+    return { order_id: existing[0].id, duplicate: true, total_incl_tax: existing[0].total_incl_tax }
+  }
+
+  const { data: orderData, error: orderError } = await supabase
+    .from('orders')
+    .insert(order)
+    .select('id')
+    .single()
+
+  if (orderError) throw orderError
+
+  const orderId = (orderData as { id: number }).id
+  const { error: itemsError } = items.length > 0
+    ? await supabase.from('order_items').insert(items.map(item => ({ ...item, order_id: orderId })))
+    : { error: null }
+  const { error: paymentError } = itemsError
+    ? { error: null }
+    : await supabase.from('payments').insert({ ...payment, order_id: orderId })
+
+  if (itemsError || paymentError) {
+    await supabase.from('order_items').delete().eq('order_id', orderId)
+    await supabase.from('orders').delete().eq('id', orderId)
+    throw itemsError || paymentError
+  }
+
+  return { order_id: orderId, duplicate: false, total_incl_tax: order.total_incl_tax }
+}
+
 export default async function handler(req: NextApiRequest, res: NextApiResponse) {
   if (req.method === 'POST') {
     const {
@@ -26,13 +98,24 @@ export default async function handler(req: NextApiRequest, res: NextApiResponse)
       cardFee,
       totalAmount,
       discountAmount,  // 割引金額を追加
-      storeId  // 店舗IDを追加
+      storeId,  // 店舗IDを追加
+      entryTime  // 会計した客の入店時刻（同期が遅れて次の客が座っていても取り違えない）
     } = req.body
 
     if (!storeId) {
       return res.status(400).json({ error: 'storeId is required' })
     }
 
+    // 端末のオフライン同期からの再送は同じキーで届く（キーを伝票番号に使い、二重登録しない）
+    const idempotencyHeader = typeof req.headers['idempotency-key'] === 'string'
+      ? req.headers['idempotency-key']
+      : null
+    const idempotencyKey = idempotencyHeader === null ? null : decodeIdempotencyKey(idempotencyHeader)
+
+    if (idempotencyHeader !== null && idempotencyKey === null) {
+      return res.status(400).json({ error: 'Invalid Idempotency-Key' })
+    }
+
     try {
       // 現在のテーブル情報を取得（店舗IDでフィルタ）
       const { data: tableData, error: fetchError } = await supabase
@@ -99,110 +182,122 @@ export default async function handler(req: NextApiRequest, res: NextApiResponse)
       const checkoutDate = new Date(checkoutTime)
       const orderDate = getBusinessDateFromDateTime(checkoutDate, Number(businessDayCutoffHour))
 
-      // 1. ordersテーブルに注文を保存（店舗IDを含む）
-      const { data: orderData, error: orderError } = await supabase
-        .from('orders')
-        .insert({
-          receipt_number: `${tableId}-${Date.now()}`,
-          visit_datetime: currentData.entry_time,
-          checkout_datetime: checkoutTime,
-          order_date: orderDate + 'T00:00:00.000Z',
-          table_number: tableId,
-          staff_name: Array.isArray(castName) ? castName.join(', ') : (castName || (Array.isArray(currentData.cast_name) ? currentData.cast_name.join(', ') : currentData.cast_name)),
-          guest_name: guestName || currentData.guest_name,
-          visit_type: visitType || currentData.visit_type,
-          subtotal_excl_tax: subtotal,
-          tax_amount: consumptionTax,
-          service_charge: serviceTax,
-          rounding_adjustment: roundingAdjustment,
-          discount_amount: discountAmount || 0,  // 割引金額を追加
-          total_incl_tax: totalAmount,
-          store_id: storeId  // 店舗IDを追加
-        })
-        .select()
-        .single()
+      const receiptNumber = idempotencyKey || `${tableId}-${Date.now()}`
 
-      if (orderError) {
-        console.error('注文保存エラー:', orderError)
-        throw orderError
+      // 1. ordersテーブルに保存する注文（店舗IDを含む）
+      const order = {
+        receipt_number: receiptNumber,
+        visit_datetime: entryTime || currentData.entry_time,
+        checkout_datetime: checkoutTime,
+        order_date: orderDate + 'T00:00:00.000Z',
+        table_number: tableId,
+        staff_name: Array.isArray(castName) ? castName.join(', ') : (castName || (Array.isArray(currentData.cast_name) ? currentData.cast_name.join(', ') : currentData.cast_name)),
+        guest_name: guestName || currentData.guest_name,
+        visit_type: visitType || currentData.visit_type,
+        subtotal_excl_tax: subtotal,
+        tax_amount: consumptionTax,
+        service_charge: serviceTax,
+        rounding_adjustment: roundingAdjustment,
+        discount_amount: discountAmount || 0,  // 割引金額を追加
+        total_incl_tax: totalAmount,
+        store_id: storeId  // 店舗IDを追加
       }
 
-      // 2. order_itemsに明細を保存（店舗IDを含む）
-      if (orderItems && orderItems.length > 0 && orderData) {
-        const itemsToInsert = orderItems.map((item: OrderItem) => {
-          const unitPriceExclTax = Math.round(item.price / (1 + consumptionTaxRate))
-          const taxAmount = item.price - unitPriceExclTax
-
-          // 商品名からカテゴリーを検索
-          const product = products?.find(p => p.name === item.name)
-          const category = categoriesData?.find(c => c.id === product?.category_id)
-
-          return {
-            order_id: orderData.id,
-            category: category?.name || null,
-            product_name: item.name,
-            // cast_nameを配列として保存（DBがtext[]型の場合はそのまま、空配列はnullに）
-            cast_name: item.cast && item.cast.length > 0 ? item.cast : null,
-            unit_price: item.price,
-            unit_price_excl_tax: unitPriceExclTax,
-            tax_amount: taxAmount,
-            quantity: item.quantity,
-            subtotal: item.price * item.quantity,
-            pack_number: 0,
-            store_id: storeId  // 店舗IDを追加
-          }
-        })
+      // 2. order_itemsに保存する明細（店舗IDを含む）
+      const itemsToInsert = (orderItems || []).map((item: OrderItem) => {
+        const unitPriceExclTax = Math.round(item.price / (1 + consumptionTaxRate))
+        const taxAmount = item.price - unitPriceExclTax
 
-        const { error: itemsError } = await supabase
-          .from('order_items')
-          .insert(itemsToInsert)
+        // 商品名からカテゴリーを検索
+        const product = products?.find(p => p.name === item.name)
+        const category = categoriesData?.find(c => c.id === product?.category_id)
 
-        if (itemsError) {
-          console.error('注文明細保存エラー:', itemsError)
-          throw itemsError
+        return {
+          category: category?.name || null,
+          product_name: item.name,
+          // cast_nameを配列として保存（DBがtext[]型の場合はそのまま、空配列はnullに）
+          cast_name: item.cast && item.cast.length > 0 ? item.cast : null,
+          unit_price: item.price,
+          unit_price_excl_tax: unitPriceExclTax,
+          tax_amount: taxAmount,
+          quantity: item.quantity,
+          subtotal: item.price * item.quantity,
+          pack_number: 0,
+          store_id: storeId  // 店舗IDを追加
         }
+      })
+
+      // 3. paymentsテーブルに保存する支払い情報（店舗IDを含む）
+      const payment = {
+        cash_amount: paymentCash || 0,
+        credit_card_amount: paymentCard || 0,
+        other_payment_amount: paymentOther || 0,
+        card_fee: cardFee || 0,
+        change_amount: Math.max(0, (paymentCash + paymentCard + paymentOther) - totalAmount),
+        payment_method: paymentCash > 0 ? 'cash' : paymentCard > 0 ? 'card' : 'other',
+        store_id: storeId  // 店舗IDを追加
       }
 
-      // 3. paymentsテーブルに支払い情報を保存（店舗IDを含む）
-      const { error: paymentError } = await supabase
-        .from('payments')
-        .insert({
-          order_id: orderData.id,
-          cash_amount: paymentCash || 0,
-          credit_card_amount: paymentCard || 0,
-          other_payment_amount: paymentOther || 0,
-          card_fee: cardFee || 0,
-          change_amount: Math.max(0, (paymentCash + paymentCard + paymentOther) - totalAmount),
-          payment_method: paymentCash > 0 ? 'cash' : paymentCard > 0 ? 'card' : 'other',
-          store_id: storeId  // 店舗IDを追加
-        })
+      // 注文・明細・支払いを1トランザクションで登録する（CHECKOUT_RPC.sql）
+      // 同じ伝票番号の再送は一意制約で弾かれ、duplicateが返る（先の登録がテーブルも片付けている）
+      const { data: savedData, error: saveError } = await supabase
+        .rpc('checkout_order', { p_order: order, p_items: itemsToInsert, p_payment: payment })
+        .single()
 
-      if (paymentError) {
-        console.error('支払い情報保存エラー:', paymentError)
+      let saved: SavedCheckout
+      if (isMissingRpc(saveError)) {
+        // SQLを適用する前にデプロイされても会計を止めない
+        console.warn('checkout_order is not installed; run CHECKOUT_RPC.sql')
+        saved = await saveCheckoutWithoutRpc(order, itemsToInsert, payment)
+      } else if (saveError) {
+        console.error('注文保存エラー:', saveError)
+        throw saveError
+      } else {
+        saved = savedData as SavedCheckout
       }
 
-      // 4. current_order_itemsをクリア（店舗IDでフィルタ）
-      await supabase
-        .from('current_order_items')
-        .delete()
-        .eq('table_id', tableId)
-        .eq('store_id', storeId)  // 店舗IDでフィルタ
-
-      // 5. table_statusをクリア（店舗IDでフィルタ）
-      const { error: updateError } = await supabase
-        .from('table_status')
-        .update({
-          guest_name: null,
-          cast_name: null,
-          entry_time: null,
-          visit_type: null
+      if (saved.duplicate) {
+        return res.status(200).json({
+          success: true,
+          duplicate: true,
+          receiptNumber,
+          totalAmount: saved.total_incl_tax
         })
-        .eq('table_name', tableId)
-        .eq('store_id', storeId)  // 店舗IDでフィルタ
+      }
 
-      if (updateError) throw updateError
+      // 端末から遅れて同期された会計なら、テーブルにまだ同じ客がいるときだけ片付ける
+      // （もう次の客が座っていれば、その客の注文と状態を消さない）
+      const sameSession = !entryTime || (currentData.entry_time != null
+        && new Date(currentData.entry_time).getTime() === new Date(entryTime).getTime())
+
+      if (sameSession) {
+        // 4. current_order_itemsをクリア（店舗IDでフィルタ）
+        await supabase
+          .from('current_order_items')
+          .delete()
+          .eq('table_id', tableId)
+          .eq('store_id', storeId)  // 店舗IDでフィルタ
+
+        // 5. table_statusをクリア（店舗IDでフィルタ）
+        let clearQuery = supabase
+          .from('table_status')
+          .update({
+            guest_name: null,
+            cast_name: null,
+            entry_time: null,
+            visit_type: null
+          })
+          .eq('table_name', tableId)
+          .eq('store_id', storeId)  // 店舗IDでフィルタ
+        if (entryTime) {
+          clearQuery = clearQuery.eq('entry_time', currentData.entry_time)
+        }
+        const { error: updateError } = await clearQuery
+
+        if (updateError) throw updateError
+      }
 
-      res.status(200).json({ success: true, totalAmount })
+      res.status(200).json({ success: true, totalAmount, receiptNumber })
     } catch (error) {
       console.error('Checkout error:', error)
       const errorMessage = error instanceof Error ? error.message : 'Unknown error'
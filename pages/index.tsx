@@ -26,6 +26,8 @@ import { useModalState } from '../hooks/useModalState'
 import { useCurrentTime } from '../hooks/useCurrentTime'
 import { usePrinting } from '../hooks/usePrinting'
 import { useCheckout } from '../hooks/useCheckout'
+import { useOfflineCheckouts } from '../hooks/useOfflineCheckouts'
+import { printer, PrinterStatus } from '../utils/bluetoothPrinter'
 
 export default function Home() {
   const router = useRouter()
@@ -106,10 +108,11 @@ export default function Home() {
   const currentTime = useCurrentTime()
 
   // カスタムフック - 印刷
-  const { printOrderSlip: printOrderSlipFromHook, printReceipt } = usePrinting()
+  const { printOrderSlip: printOrderSlipFromHook, printOrderDelta: printOrderDeltaFromHook, printReceipt } = usePrinting()
 
   // カスタムフック - 会計処理
   const { executeCheckout } = useCheckout()
+  const { rejected: rejectedCheckouts, pendingCount, syncError, discardRejected } = useOfflineCheckouts()
 
   // カスタムフック - 支払い
   const {
@@ -347,6 +350,11 @@ export default function Home() {
     )
   }
 
+  // 追加伝票印刷のラッパー関数
+  const printOrderDelta = async () => {
+    await printOrderDeltaFromHook(currentTable, formData, orderItems)
+  }
+
   
  const adjustLayoutScale = () => {
     const layout = document.getElementById('layout')
@@ -519,6 +527,44 @@ export default function Home() {
     // eslint-disable-next-line react-hooks/exhaustive-deps
   }, [formData.guestName, formData.castName, formData.editYear, formData.editMonth, formData.editDate, formData.editHour, formData.editMinute])
 
+  // プリンターの用紙切れ・カバー開き・電池切れを会計前に知らせる
+  const [printerWarning, setPrinterWarning] = useState<string | null>(null)
+  useEffect(() => {
+    const describe = (status: PrinterStatus) => {
+      if (status.paperOut) return 'プリンターの用紙が切れています（補充すると続きから印刷します）'
+      if (status.coverOpen) return 'プリンターのカバーが開いています'
+      if (status.error) return 'プリンターでエラーが発生しています'
+      if (status.battery === 'low' || status.battery === 'empty') return 'プリンターの電池残量が少なくなっています'
+      return null
+    }
+
+    let unsubscribe: (() => void) | undefined
+    let cancelled = false
+    printer.onPrinterStatusChanged((status) => {
+      if (!status.role || status.role === 'default') {
+        setPrinterWarning(describe(status))
+      }
+    }).then((remove) => {
+      if (cancelled) {
+        remove()
+      } else {
+        unsubscribe = remove
+      }
+    })
+    printer.getPrinterStatus().then((status) => {
+      if (status && !cancelled) {
+        setPrinterWarning(describe(status))
+      }
+    }).catch(() => {})
+
+    return () => {
+      cancelled = true
+      if (unsubscribe) {
+        unsubscribe()
+      }
+    }
+  }, [])
+
   // 注文内容が変更されたら自動保存
   useEffect(() => {
     if (modalMode === 'edit' && currentTable && showModal && orderItems.length >= 0) {
@@ -692,7 +738,8 @@ const completeCheckout = async () => {
       orderItems,
       formData,
       { ...paymentData, cardFee },
-      totalWithCardFee
+      totalWithCardFee,
+      tables[currentTable]?.time
     )
 
     // SWRキャッシュを再取得してテーブル状態を更新
@@ -781,6 +828,8 @@ const finishCheckout = () => {
         storeId: storeId
       })
     })
+    // 次の客の追加伝票に前の客の注文が取消として載らないようにする
+    void printer.clearOrderSnapshot(currentTable)
     
     document.body.classList.remove('modal-open')  // 追加
     setOrderItems([])
@@ -848,6 +897,53 @@ const finishCheckout = () => {
         <title>テーブル管理</title>
       </Head>
 
+      {(printerWarning || rejectedCheckouts.length > 0 || (syncError && pendingCount > 0)) && (
+        <div style={{
+          position: 'fixed',
+          top: 0,
+          left: 0,
+          right: 0,
+          zIndex: 2000,
+          color: 'white',
+          fontWeight: 'bold',
+          textAlign: 'center'
+        }}>
+          {printerWarning && (
+            <div style={{ padding: '6px 12px', backgroundColor: '#ff9800' }}>
+              {printerWarning}
+            </div>
+          )}
+          {/* 端末に記録した会計がサーバーに拒否された（売上に入っていないので確認が必要） */}
+          {rejectedCheckouts.map(entry => (
+            <div key={entry.id} style={{ padding: '6px 12px', backgroundColor: '#f44336' }}>
+              会計が登録できませんでした：{entry.tableId || entry.idempotencyKey}
+              {entry.totalAmount !== undefined && ` ¥${entry.totalAmount.toLocaleString()}`}
+              {entry.checkoutTime && `（${entry.checkoutTime}）`}
+              {entry.response && ` - ${entry.response}`}
+              <button
+                onClick={() => discardRejected(entry.id)}
+                style={{
+                  marginLeft: '12px',
+                  padding: '2px 10px',
+                  border: '1px solid white',
+                  borderRadius: '4px',
+                  backgroundColor: 'transparent',
+                  color: 'white',
+                  cursor: 'pointer'
+                }}
+              >
+                確認済み
+              </button>
+            </div>
+          ))}
+          {syncError && pendingCount > 0 && (
+            <div style={{ padding: '6px 12px', backgroundColor: '#607d8b' }}>
+              未送信の会計が{pendingCount}件あります（通信が戻ると自動で送信します）
+            </div>
+          )}
+        </div>
+      )}
+
       <div id="layout" className="responsive-layout" onClick={(e) => {
       if (moveMode && e.target === e.currentTarget) {
       endMoveMode()
@@ -1474,29 +1570,52 @@ const finishCheckout = () => {
                 </div>
               </div>
 
-              {/* 会計伝票印刷ボタン - Apple風 */}
+              {/* 追加伝票・会計伝票印刷ボタン - Apple風 */}
               {orderItems.length > 0 && (
-                <button
-                  onClick={printOrderSlip}
-                  style={{
-                    padding: '10px 18px',
-                    backgroundColor: '#007AFF',
-                    color: 'white',
-                    border: 'none',
-                    borderRadius: '10px',
-                    fontSize: '14px',
-                    fontWeight: '600',
-                    cursor: 'pointer',
-                    display: 'flex',
-                    alignItems: 'center',
-                    gap: '6px',
-                    whiteSpace: 'nowrap',
-                    boxShadow: '0 2px 8px rgba(0, 122, 255, 0.3)',
-                    transition: 'all 0.2s ease'
-                  }}
-                >
-                  会計伝票印刷
-                </button>
+                <div style={{ display: 'flex', gap: '8px' }}>
+                  <button
+                    onClick={printOrderDelta}
+                    style={{
+                      padding: '10px 18px',
+                      backgroundColor: '#FF9500',
+                      color: 'white',
+                      border: 'none',
+                      borderRadius: '10px',
+                      fontSize: '14px',
+                      fontWeight: '600',
+                      cursor: 'pointer',
+                      display: 'flex',
+                      alignItems: 'center',
+                      gap: '6px',
+                      whiteSpace: 'nowrap',
+                      boxShadow: '0 2px 8px rgba(255, 149, 0, 0.3)',
+                      transition: 'all 0.2s ease'
+                    }}
+                  >
+                    追加伝票
+                  </button>
+                  <button
+                    onClick={printOrderSlip}
+                    style={{
+                      padding: '10px 18px',
+                      backgroundColor: '#007AFF',
+                      color: 'white',
+                      border: 'none',
+                      borderRadius: '10px',
+                      fontSize: '14px',
+                      fontWeight: '600',
+                      cursor: 'pointer',
+                      display: 'flex',
+                      alignItems: 'center',
+                      gap: '6px',
+                      whiteSpace: 'nowrap',
+                      boxShadow: '0 2px 8px rgba(0, 122, 255, 0.3)',
+                      transition: 'all 0.2s ease'
+                    }}
+                  >
+                    会計伝票印刷
+                  </button>
+                </div>
               )}
             </div>
           )}
@@ -8,6 +8,7 @@ import { useReportData } from '../hooks/useReportData'
 import { useDailyReport } from '../hooks/useDailyReport'
 import { useReportSettings } from '../hooks/useReportSettings'
 import { useDailyReportOperations } from '../hooks/useDailyReportOperations'
+import { useDailyReportPrint } from '../hooks/useDailyReportPrint'
 
 // スタイル
 import {
@@ -32,7 +33,8 @@ export default function Report() {
     loadMonthlyData,
     getLatestSalesData,
     getAttendanceCountsAndPayments,
-    calculateMonthlyTotal
+    calculateMonthlyTotal,
+    getBusinessDateRange
   } = useReportData()
 
   // カスタムフック - 日報管理
@@ -88,6 +90,9 @@ export default function Report() {
     loadMonthlyData
   )
 
+  // カスタムフック - 日報印刷
+  const { isPrintingReport, printDailyReport } = useDailyReportPrint(getBusinessDateRange)
+
   // 初回: 全ての設定値を一括で読み込み
   useEffect(() => {
     loadAllSettings()
@@ -423,24 +428,44 @@ export default function Report() {
                 <h2 style={{ margin: 0, fontSize: '20px', flex: 1, textAlign: 'center' }}>
                   業務日報 - {selectedDate}
                 </h2>
-                <button
-                  onClick={updateToLatestData}
-                  disabled={isUpdating}
-                  style={{
-                    padding: '8px 16px',
-                    backgroundColor: isUpdating ? '#e0e0e0' : '#fff',
-                    color: isUpdating ? '#999' : '#2196F3',
-                    cursor: isUpdating ? 'not-allowed' : 'pointer',
-                    fontSize: '14px',
-                    display: 'inline-flex',
-                    alignItems: 'center',
-                    gap: '5px',
-                    border: '1px solid #ddd',
-                    borderRadius: '4px'
-                  }}
-                >
-                  {isUpdating ? '更新中...' : '🔄 最新データを取得'}
-                </button>
+                <div style={{ display: 'flex', gap: '10px' }}>
+                  <button
+                    onClick={() => printDailyReport(selectedDate, businessDayStartHour, dailyReportData.eventName)}
+                    disabled={isPrintingReport}
+                    style={{
+                      padding: '8px 16px',
+                      backgroundColor: isPrintingReport ? '#e0e0e0' : '#fff',
+                      color: isPrintingReport ? '#999' : '#4CAF50',
+                      cursor: isPrintingReport ? 'not-allowed' : 'pointer',
+                      fontSize: '14px',
+                      display: 'inline-flex',
+                      alignItems: 'center',
+                      gap: '5px',
+                      border: '1px solid #ddd',
+                      borderRadius: '4px'
+                    }}
+                  >
+                    {isPrintingReport ? '印刷中...' : '🖨 日報印刷'}
+                  </button>
+                  <button
+                    onClick={updateToLatestData}
+                    disabled={isUpdating}
+                    style={{
+                      padding: '8px 16px',
+                      backgroundColor: isUpdating ? '#e0e0e0' : '#fff',
+                      color: isUpdating ? '#999' : '#2196F3',
+                      cursor: isUpdating ? 'not-allowed' : 'pointer',
+                      fontSize: '14px',
+                      display: 'inline-flex',
+                      alignItems: 'center',
+                      gap: '5px',
+                      border: '1px solid #ddd',
+                      borderRadius: '4px'
+                    }}
+                  >
+                    {isUpdating ? '更新中...' : '🔄 最新データを取得'}
+                  </button>
+                </div>
               </div>
 
               {/* モーダルコンテンツ */}
@@ -0,0 +1,79 @@
+// APK同梱のWebバンドルで動かすための処理（APIのリモート化・起動完了の通知・バンドル更新）
+
+const API_BASE_URL = (process.env.NEXT_PUBLIC_API_BASE_URL || '').replace(/\/$/, '')
+const MANIFEST_URL = process.env.NEXT_PUBLIC_APP_SHELL_MANIFEST_URL || ''
+
+const getAppShellPlugin = () => {
+  if (typeof window === 'undefined') {
+    return null
+  }
+  // @ts-ignore
+  return window.Capacitor?.Plugins?.AppShell || null
+}
+
+// 同梱版ではページのオリジンがlocalhostになるため、APIはリモートのURLにする
+const isBundledShell = () =>
+  typeof window !== 'undefined' &&
+  API_BASE_URL !== '' &&
+  !API_BASE_URL.startsWith(window.location.origin)
+
+export const apiUrl = (path: string): string => {
+  if (isBundledShell()) {
+    return API_BASE_URL + path
+  }
+  return typeof window !== 'undefined' ? new URL(path, window.location.origin).toString() : path
+}
+
+// 相対パスの /api/ 呼び出しをリモートへ向ける（各画面のfetchはそのまま使える）
+let fetchPatched = false
+export const installApiBase = () => {
+  if (fetchPatched || !isBundledShell()) {
+    return
+  }
+  fetchPatched = true
+  const originalFetch = window.fetch.bind(window)
+  window.fetch = (input: RequestInfo | URL, init?: RequestInit) => {
+    if (typeof input === 'string' && input.startsWith('/api/')) {
+      return originalFetch(API_BASE_URL + input, init)
+    }
+    return originalFetch(input, init)
+  }
+}
+
+// 最初の描画が終わったらネイティブへ通知し（起動時間の記録）、裏で更新を確認する
+let readyReported = false
+export const reportShellReady = () => {
+  const plugin = getAppShellPlugin()
+  if (!plugin || readyReported) {
+    return
+  }
+  readyReported = true
+  requestAnimationFrame(() => {
+    requestAnimationFrame(async () => {
+      try {
+        const timing = await plugin.reportReady()
+        console.log('Startup timing (ms):', timing)
+      } catch (error) {
+        console.error('reportReady error:', error)
+      }
+
+      if (isBundledShell() && MANIFEST_URL) {
+        try {
+          // 取り込んだ更新は次回起動時に切り替わる
+          await plugin.checkForUpdate({ manifestUrl: MANIFEST_URL })
+        } catch (error) {
+          console.error('App shell update check failed:', error)
+        }
+      }
+    })
+  })
+}
+
+// 強制再レイアウトの回数と所要時間（APK以外ではnull）
+export const getLayoutStats = async () => {
+  const plugin = getAppShellPlugin()
+  if (!plugin) {
+    return null
+  }
+  return plugin.getLayoutStats()
+}
@@ -10,9 +10,135 @@ const LEFT = `${ESC}a\x00`
 const BOLD_ON = `${ESC}E\x01`
 const BOLD_OFF = `${ESC}E\x00`
 
+// 注文明細を列ごとの配列に変換（ネイティブ側で行ごとのJSONオブジェクトを組み立てずに済む）
+const toItemColumns = (orderItems: Array<{
+  name: string
+  cast?: string[] | string
+  quantity: number
+  price: number
+}>) => {
+  const itemNames: string[] = []
+  const itemCasts: string[] = []
+  const itemQuantities: number[] = []
+  const itemPrices: number[] = []
+  for (const item of orderItems) {
+    itemNames.push(item.name)
+    itemCasts.push(Array.isArray(item.cast) ? item.cast.join(', ') : (item.cast || ''))
+    itemQuantities.push(item.quantity)
+    itemPrices.push(item.price)
+  }
+  return { itemNames, itemCasts, itemQuantities, itemPrices }
+}
+
+// 画像URL→登録済みハッシュ（同じ画像を毎回ダウンロード・送信しない）
+const IMAGE_HASH_STORAGE_KEY = 'printerImageHashes'
+
+// 再印刷用に保持する描画済みバイト列（base64）の件数
+const RAW_CACHE_SIZE = 20
+
+// 誰も待っていないジョブの結果を保持する件数（待ち始める前に終わったジョブ用）
+const JOB_RESULT_CACHE_SIZE = 50
+
+// バイト列をbase64に変換（大きな配列でも引数の上限を超えないよう分けて変換する）
+const toBase64 = (bytes: Uint8Array) => {
+  let binary = ''
+  for (let i = 0; i < bytes.length; i += 0x8000) {
+    binary += String.fromCharCode(...Array.from(bytes.subarray(i, i + 0x8000)))
+  }
+  return btoa(binary)
+}
+
+export interface StageLatency {
+  count: number
+  p50: number
+  p90: number
+  p99: number
+  max: number
+  mean: number
+}
+
+export interface PrintMetricsEntry {
+  // decode / render / queue / send / cut / total
+  stages: { [stage: string]: StageLatency }
+  failures: { [cause: string]: number }
+}
+
+export interface PrintMetrics {
+  windowMs: number
+  documentTypes: { [documentType: string]: PrintMetricsEntry }
+  printers: { [role: string]: PrintMetricsEntry }
+}
+
+// 印刷の優先レーン（領収書 → 伝票 → まとめ再印刷の順に処理・印刷する）
+export type PrintLane = 'receipt' | 'slip' | 'bulk'
+
+// プリンター本体の状態（ネイティブ側の状態監視がキャッシュしている値）
+export interface PrinterStatus {
+  role?: string
+  offline: boolean
+  paperOut: boolean
+  coverOpen: boolean
+  error: boolean
+  battery: 'full' | 'middle' | 'low' | 'empty' | 'unknown'
+  code: number
+}
+
+// 日報用の会計データ1ページ分（列ごとの配列。明細は会計と別の並びでよい）
+export interface DailyReportPage {
+  orderTotals: number[]
+  orderCash: number[]
+  orderChange: number[]
+  orderCard: number[]
+  orderOther: number[]
+  orderCardFees: number[]
+  orderRounding: number[]
+  orderDiscounts: number[]
+  orderServiceCharges: number[]
+  orderTaxes: number[]
+  orderVisitTypes: Array<string | null>
+  // 複数キャストはカンマ区切り（金額は等分される）
+  itemCasts: Array<string | null>
+  itemCategories: Array<string | null>
+  itemAmounts: number[]
+  itemQuantities: number[]
+}
+
+// 印刷ジョブの失敗（printJobFailedイベント）。willRetryがfalseならそのジョブはもう自動では印刷されない
+export interface PrintJobFailure {
+  jobId: number
+  documentType: string
+  role: string
+  error: string
+  attempts: number
+  willRetry: boolean
+}
+
+// 印字と同じ見た目の領収書画像（LINEで送るデジタル控え）。dataは1ビットのPNGのbase64
+export interface ReceiptImage {
+  jobId?: number
+  data: string
+  width: number
+  height: number
+  elapsedMs: number
+}
+
 export class BluetoothPrinter {
   private isConnected: boolean = false;
   private currentAddress: string = '';  // 接続中のアドレスを保存
+  private imageHashes: { [url: string]: string } | null = null;
+  // 再印刷用キー→描画済みバイト列（古いものから捨てる）
+  private rawCache = new Map<string, string>();
+  // 印刷と並行して作った領収書画像の受け取り待ち（jobId → コールバック）。先に届いた画像は置いておく
+  private receiptImageWaiters = new Map<number, (image: ReceiptImage | null) => void>();
+  private receiptImages = new Map<number, ReceiptImage | null>();
+  private receiptImageListener: Promise<unknown> | null = null;
+  // 印刷ジョブの結果待ち（jobId → 待っている側）。待ち始める前に届いた結果は置いておく（成功はnull）
+  private jobWaiters = new Map<number, {
+    onRetry?: (failure: PrintJobFailure) => void
+    done: (failure: PrintJobFailure | null) => void
+  }>();
+  private jobResults = new Map<number, PrintJobFailure | null>();
+  private jobListener: Promise<unknown> | null = null;
 
   // プラグインを取得
   private getPlugin() {
@@ -55,65 +181,36 @@ export class BluetoothPrinter {
     }
   }
 
-  // プリンターに接続（改善版 - タイムアウトとリトライ追加）
-  async connect(address: string, retries: number = 2): Promise<void> {
+  // プリンターに接続（リトライと再接続はネイティブ側の接続管理が行う）
+  async connect(address: string): Promise<void> {
     const plugin = this.getPlugin();
     if (!plugin) {
       throw new Error('SiiPrinter plugin not available');
     }
 
-    for (let attempt = 1; attempt <= retries + 1; attempt++) {
-      try {
-        // 既に接続されている場合は一度切断
-        if (this.isConnected) {
-          try {
-            await plugin.disconnect();
-            // 切断後少し待つ
-            await new Promise(resolve => setTimeout(resolve, 500));
-          } catch (e) {
-            console.error('切断エラー（無視）:', e);
-          }
-          this.isConnected = false;
-        }
-
-        await plugin.connect({ address });
-
-        // 接続成功後、少し待って確認
-        await new Promise(resolve => setTimeout(resolve, 1000));
-
-        this.isConnected = true;
-        this.currentAddress = address;
-        return; // 成功したら終了
-
-      } catch (error: any) {
-        console.error(`✗ 接続試行 ${attempt} 失敗:`, error);
+    try {
+      await plugin.connect({ address });
+      this.isConnected = true;
+      this.currentAddress = address;
+    } catch (error: any) {
+      console.error('接続エラー:', error);
 
-        this.isConnected = false;
-        this.currentAddress = '';
+      this.isConnected = false;
 
-        // 最後の試行でなければリトライ
-        if (attempt < retries + 1) {
-          await new Promise(resolve => setTimeout(resolve, attempt * 1000));
-        } else {
-          // 全ての試行が失敗
-          console.error('全ての接続試行が失敗しました');
-
-          // より詳細なエラーメッセージ
-          if (error.message?.includes('already connected')) {
-            throw new Error('プリンターは既に他のデバイスに接続されています。プリンターを再起動してください。');
-          } else if (error.message?.includes('connection refused')) {
-            throw new Error('プリンターが接続を拒否しました。プリンターの電源を確認してください。');
-          } else if (error.message?.includes('timeout')) {
-            throw new Error('接続がタイムアウトしました。プリンターの電源とBluetooth設定を確認してください。');
-          } else {
-            throw new Error(`接続エラー: ${error.message || '不明なエラー'}`);
-          }
-        }
+      // より詳細なエラーメッセージ
+      if (error.message?.includes('already connected')) {
+        throw new Error('プリンターは既に他のデバイスに接続されています。プリンターを再起動してください。');
+      } else if (error.message?.includes('connection refused')) {
+        throw new Error('プリンターが接続を拒否しました。プリンターの電源を確認してください。');
+      } else if (error.message?.includes('timeout')) {
+        throw new Error('接続がタイムアウトしました。プリンターの電源とBluetooth設定を確認してください。');
+      } else {
+        throw new Error(`接続エラー: ${error.message || '不明なエラー'}`);
       }
     }
   }
 
-  // 接続状態を確認（改善版）
+  // 接続状態を確認（ネイティブ側でキャッシュしている状態を読むだけ）
   async checkConnection(): Promise<boolean> {
     // プラグインがない場合はfalse
     const plugin = this.getPlugin();
@@ -121,33 +218,11 @@ export class BluetoothPrinter {
       this.isConnected = false;
       return false;
     }
-    
-    // 実際にプリンターと通信して接続を確認する方法
-    // （簡易的な実装：内部状態を返す）
-    // より確実にしたい場合は、実際にプリンターにpingを送るなどの実装が必要
-    
+
     try {
-      // Bluetoothが有効か確認
-      await plugin.enable();
-      
-      // 現在のアドレスが設定されていて、接続フラグがtrueの場合
-      if (this.currentAddress && this.isConnected) {
-        // ペアリング済みデバイスを確認
-        const result = await plugin.getPairedDevices();
-        const devices = result.devices || [];
-        
-        // 現在のアドレスがペアリング済みデバイスに存在するか確認
-        const deviceExists = devices.some((device: any) => 
-          device.address === this.currentAddress
-        );
-        
-        if (!deviceExists) {
-          // デバイスが見つからない場合は切断されたとみなす
-          this.isConnected = false;
-          this.currentAddress = '';
-        }
-      }
-      
+      const result = await plugin.checkConnection();
+      this.isConnected = result.connected === true;
+      this.currentAddress = result.address || '';
       return this.isConnected;
     } catch (error) {
       console.error('接続確認エラー:', error);
@@ -219,24 +294,20 @@ export class BluetoothPrinter {
     paymentOther?: number  // その他支払い
     paymentOtherMethod?: string  // その他支払い方法
     timestamp: string
-  }): Promise<void> {
+  }, options?: { cacheKey?: string }): Promise<{ jobId: number; role: string }> {
     const plugin = this.getPlugin();
     if (!plugin) {
       throw new Error('SiiPrinter plugin not available');
     }
 
     try {
-      // castを文字列に変換してプラグインに渡す
-      const orderItemsForPrint = orderData.orderItems.map(item => ({
-        ...item,
-        cast: item.cast && item.cast.length > 0 ? item.cast.join(', ') : undefined
-      }))
-      await plugin.printOrderSlip({
+      await this.listenJobEvents(plugin);
+      const result = await plugin.printOrderSlip({
         tableName: orderData.tableName,
         guestName: orderData.guestName,
         castName: orderData.castName,
         elapsedTime: orderData.elapsedTime,
-        orderItems: orderItemsForPrint,
+        ...toItemColumns(orderData.orderItems),
         subtotal: orderData.subtotal,
         serviceTax: orderData.serviceTax,
         roundedTotal: orderData.roundedTotal,
@@ -249,14 +320,76 @@ export class BluetoothPrinter {
         paymentCard: orderData.paymentCard,
         paymentOther: orderData.paymentOther,
         paymentOtherMethod: orderData.paymentOtherMethod,
-        timestamp: orderData.timestamp
+        timestamp: orderData.timestamp,
+        returnRaw: !!options?.cacheKey
       });
+      this.cacheRaw(options?.cacheKey, result.raw);
+      return { jobId: result.jobId, role: result.role };
     } catch (error) {
       console.error('Print order slip error:', error);
       throw error;
     }
   }
 
+  // 追加伝票（キッチン・バー向け）: 卓ごとに前回印刷した分との差分だけを印刷する
+  // 変更がなければ印刷せず printed: false を返す
+  async printOrderDelta(orderData: {
+    tableName: string
+    guestName?: string
+    orderItems: Array<{
+      name: string
+      cast?: string[]
+      quantity: number
+      price: number
+    }>
+    timestamp: string
+  }): Promise<{ printed: boolean; changes: number; jobId?: number; role?: string }> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      throw new Error('SiiPrinter plugin not available');
+    }
+
+    try {
+      return await plugin.printOrderDelta({
+        tableName: orderData.tableName,
+        guestName: orderData.guestName ?? '',
+        ...toItemColumns(orderData.orderItems),
+        timestamp: orderData.timestamp
+      });
+    } catch (error) {
+      console.error('Print order delta error:', error);
+      throw error;
+    }
+  }
+
+  // 会計・卓のクリア後に追加伝票の記録を消す（次の客は全品から始まる）
+  async clearOrderSnapshot(tableName: string): Promise<void> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      return;
+    }
+
+    try {
+      await plugin.clearOrderSnapshot({ tableName });
+    } catch (error) {
+      console.error('Clear order snapshot error:', error);
+    }
+  }
+
+  // 卓の移動後に追加伝票の記録も移す（移動先で全品を印字し直さない）
+  async moveOrderSnapshot(fromTable: string, toTable: string): Promise<void> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      return;
+    }
+
+    try {
+      await plugin.moveOrderSnapshot({ fromTable, toTable });
+    } catch (error) {
+      console.error('Move order snapshot error:', error);
+    }
+  }
+
   // 領収書兼レシート印刷
   async printReceipt(receiptData: {
     storeName: string
@@ -271,6 +404,8 @@ export class BluetoothPrinter {
     timestamp: string
     receiptTo?: string  // 追加（宛名）
     receiptNote?: string  // 追加（但し書き）
+    logoHash?: string  // 登録済みロゴ画像（registerImageUrlの戻り値）
+    footerImageHash?: string  // 登録済みのQRコード・印影など
     showRevenueStamp?: boolean  // 追加（収入印紙表示）
     revenueStampThreshold?: number  // 追加（収入印紙閾値）
     orderItems: Array<{
@@ -291,28 +426,435 @@ export class BluetoothPrinter {
     paymentOther: number
     paymentOtherMethod?: string
     change: number
-  }): Promise<void> {
+  }, options?: {
+    cacheKey?: string
+    // 印刷と並行してネイティブで領収書画像を作り、できたら呼ぶ（失敗したらnull）
+    onImage?: (image: ReceiptImage | null) => void
+    // 1ドットを何ピクセルにするか（既定2）
+    imageScale?: number
+  }): Promise<{ jobId: number; role: string }> {
     const plugin = this.getPlugin();
     if (!plugin) {
       throw new Error('SiiPrinter plugin not available');
     }
 
     try {
-      // castを文字列に変換してプラグインに渡す
-      const orderItemsForPrint = receiptData.orderItems.map(item => ({
-        ...item,
-        cast: item.cast && item.cast.length > 0 ? item.cast.join(', ') : undefined
-      }))
-      await plugin.printReceipt({
-        ...receiptData,
-        orderItems: orderItemsForPrint
+      await this.listenJobEvents(plugin);
+      if (options?.onImage) {
+        await this.listenReceiptImages(plugin);
+      }
+      const { orderItems, ...fields } = receiptData
+      const result = await plugin.printReceipt({
+        ...fields,
+        ...toItemColumns(orderItems),
+        returnRaw: !!options?.cacheKey,
+        image: !!options?.onImage,
+        imageScale: options?.imageScale
       });
+      this.cacheRaw(options?.cacheKey, result.raw);
+      if (options?.onImage) {
+        this.takeReceiptImage(result.jobId, options.onImage);
+      }
+      return { jobId: result.jobId, role: result.role };
     } catch (error) {
       console.error('Print receipt error:', error);
       throw error;
     }
   }
 
+  // 印刷せずに領収書画像だけを作る（印字と同じレイアウト）
+  async renderReceiptImage(receiptData: Parameters<BluetoothPrinter['printReceipt']>[0],
+    imageScale?: number): Promise<ReceiptImage> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      throw new Error('SiiPrinter plugin not available');
+    }
+
+    const { orderItems, ...fields } = receiptData
+    return await plugin.renderReceiptImage({
+      ...fields,
+      ...toItemColumns(orderItems),
+      imageScale
+    });
+  }
+
+  private listenReceiptImages(plugin: any): Promise<unknown> {
+    if (!this.receiptImageListener) {
+      this.receiptImageListener = plugin.addListener('receiptImageReady', (event: ReceiptImage & { error?: string }) => {
+        const image = event.error ? null : event;
+        if (event.error) {
+          console.error('Receipt image error:', event.error);
+        }
+        const waiter = this.receiptImageWaiters.get(event.jobId!);
+        if (waiter) {
+          this.receiptImageWaiters.delete(event.jobId!);
+          waiter(image);
+        } else {
+          this.receiptImages.set(event.jobId!, image);
+        }
+      });
+    }
+    return this.receiptImageListener!;
+  }
+
+  private takeReceiptImage(jobId: number, callback: (image: ReceiptImage | null) => void) {
+    if (this.receiptImages.has(jobId)) {
+      const image = this.receiptImages.get(jobId)!;
+      this.receiptImages.delete(jobId);
+      callback(image);
+    } else {
+      this.receiptImageWaiters.set(jobId, callback);
+    }
+  }
+
+  // 領収書・伝票のレイアウトテンプレートを設定（ネイティブ側でコンパイルしてバージョンごとにキャッシュ）
+  // sourceが空なら組み込みのレイアウトに戻す
+  async setReceiptTemplate(documentType: 'receipt' | 'orderSlip', source: string): Promise<void> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      return;
+    }
+
+    // 内容から版を決める（同じ内容なら再コンパイルされない）
+    let hash = 0;
+    for (let i = 0; i < source.length; i++) {
+      hash = (hash * 31 + source.charCodeAt(i)) | 0;
+    }
+    const version = `${source.length}-${(hash >>> 0).toString(16)}`;
+    await plugin.setReceiptTemplate({ documentType, version, source });
+    // レイアウトが変わったので描画済みの再印刷データは使えない
+    this.rawCache.clear();
+  }
+
+  // 描画済みのESC/POSバイト列をそのまま印刷（項目ごとの変換をしないので再印刷・テスト印刷が速い）
+  async printRaw(data: string | Uint8Array, options?: {
+    documentType?: string
+    copies?: number
+    // 既定は帳票種別で決まる（'receipt' → 'receipt'、'raw'（種別なし）・'batch'・'dailyReport' → 'bulk'、それ以外 → 'slip'）
+    // 再印刷・テスト印刷は種別を付けて、まとめ再印刷の後ろに並ばないようにする
+    lane?: PrintLane
+  }): Promise<{ jobId: number; role: string }> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      throw new Error('SiiPrinter plugin not available');
+    }
+
+    try {
+      await this.listenJobEvents(plugin);
+      return await plugin.printRaw({
+        data: typeof data === 'string' ? data : toBase64(data),
+        documentType: options?.documentType ?? 'raw',
+        copies: options?.copies ?? 1,
+        lane: options?.lane
+      });
+    } catch (error) {
+      console.error('Print raw error:', error);
+      throw error;
+    }
+  }
+
+  // cacheKeyを付けて印刷した帳票を再印刷する（積んだジョブのID。保持していなければnull）
+  async reprint(cacheKey: string, documentType?: string): Promise<number | null> {
+    const raw = this.rawCache.get(cacheKey);
+    if (!raw) {
+      return null;
+    }
+    // 最近使ったものを後ろに回す
+    this.rawCache.delete(cacheKey);
+    this.rawCache.set(cacheKey, raw);
+    const result = await this.printRaw(raw, { documentType });
+    return result.jobId;
+  }
+
+  private cacheRaw(cacheKey: string | undefined, raw: string | undefined) {
+    if (!cacheKey || !raw) {
+      return;
+    }
+    this.rawCache.delete(cacheKey);
+    this.rawCache.set(cacheKey, raw);
+    while (this.rawCache.size > RAW_CACHE_SIZE) {
+      const oldest = this.rawCache.keys().next().value;
+      if (oldest === undefined) break;
+      this.rawCache.delete(oldest);
+    }
+  }
+
+  // 画像を登録（ネイティブ側で1ビットのラスターに変換して保存し、ハッシュを返す）
+  async registerImage(data: string): Promise<string> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      throw new Error('SiiPrinter plugin not available');
+    }
+
+    const result = await plugin.registerImage({ data });
+    return result.hash;
+  }
+
+  // URLの画像を登録（登録済みならダウンロードせずにハッシュを返す）。失敗時は画像なしで印刷できるようundefined
+  async registerImageUrl(url?: string): Promise<string | undefined> {
+    if (!url || !this.getPlugin()) {
+      return undefined;
+    }
+
+    if (this.imageHashes === null) {
+      try {
+        this.imageHashes = JSON.parse(localStorage.getItem(IMAGE_HASH_STORAGE_KEY) || '{}');
+      } catch {
+        this.imageHashes = {};
+      }
+    }
+    const hashes = this.imageHashes as { [url: string]: string };
+    if (hashes[url]) {
+      return hashes[url];
+    }
+
+    try {
+      const blob = await (await fetch(url)).blob();
+      const data = await new Promise<string>((resolve, reject) => {
+        const reader = new FileReader();
+        reader.onloadend = () => resolve(reader.result as string);
+        reader.onerror = () => reject(reader.error);
+        reader.readAsDataURL(blob);
+      });
+      const hash = await this.registerImage(data);
+      hashes[url] = hash;
+      localStorage.setItem(IMAGE_HASH_STORAGE_KEY, JSON.stringify(hashes));
+      return hash;
+    } catch (error) {
+      console.error('Register image error:', error);
+      return undefined;
+    }
+  }
+
+  // 複数帳票をまとめて印刷（1日分の再印刷、領収書＋控えなど）
+  // プリンター設定は1回だけ行い、帳票の間でカットする。進捗は printJobProgress イベントで通知
+  async printBatch(batch: {
+    documents: Array<
+      | ({ type: 'receipt' } & Parameters<BluetoothPrinter['printReceipt']>[0])
+      | ({ type: 'orderSlip' } & Parameters<BluetoothPrinter['printOrderSlip']>[0])
+      | { type: 'text'; text: string }
+    >
+    copies?: number
+    // 既定は 'bulk'（1日分の再印刷など）。お客様に渡す領収書＋控えは 'receipt' を指定する
+    lane?: PrintLane
+  }): Promise<{ jobId: number; role: string }> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      throw new Error('SiiPrinter plugin not available');
+    }
+
+    try {
+      const documents = batch.documents.map(document => {
+        if (document.type === 'text') {
+          return document
+        }
+        const { orderItems, ...fields } = document
+        return { ...fields, ...toItemColumns(orderItems) }
+      })
+      await this.listenJobEvents(plugin);
+      return await plugin.printBatch({ documents, copies: batch.copies ?? 1, lane: batch.lane ?? 'bulk' });
+    } catch (error) {
+      console.error('Print batch error:', error);
+      throw error;
+    }
+  }
+
+  // 日報印刷: 会計データをページごとにネイティブへ渡して集計し、WebView側には1ページ分しか持たない
+  // 振り分け先は帳票種別 "dailyReport"
+  async printDailyReport(header: {
+    storeName?: string
+    businessDate: string
+    eventName?: string
+    timestamp: string
+  }, pages: AsyncIterable<DailyReportPage>): Promise<{ jobId: number; role: string; orderCount: number; totalSales: number }> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      throw new Error('SiiPrinter plugin not available');
+    }
+
+    try {
+      const { reportId } = await plugin.startDailyReport();
+      for await (const page of pages) {
+        await plugin.appendDailyReport({ reportId, ...page });
+      }
+      return await plugin.printDailyReport({
+        reportId,
+        storeName: header.storeName ?? '',
+        businessDate: header.businessDate,
+        eventName: header.eventName ?? '',
+        timestamp: header.timestamp
+      });
+    } catch (error) {
+      console.error('Print daily report error:', error);
+      throw error;
+    }
+  }
+
+  // 複数プリンターの役割と帳票ごとの振り分けを設定（例: 伝票→フロア、領収書→レジ）
+  async configurePrinters(config: {
+    printers: Array<{ role: string; address?: string; backupRole?: string }>
+    routes: { [documentType: string]: string }
+    busyThreshold?: number
+  }): Promise<void> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      throw new Error('SiiPrinter plugin not available');
+    }
+
+    await plugin.configurePrinters(config);
+  }
+
+  // 印刷キューの状態を取得（印刷はネイティブ側のキューで非同期に行われる）
+  async getQueueStatus(): Promise<{
+    pendingJobIds: number[]
+    pendingCount: number
+    // レーンごとの待ち件数
+    lanes: { [lane in PrintLane]: number }
+    currentJobId: number
+    paused: boolean
+    // 用紙切れ・カバー開きで保留中ならその理由（直れば自動で続きから印刷）
+    holdReason?: 'paperOut' | 'coverOpen'
+    lastError?: string
+  }> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      throw new Error('SiiPrinter plugin not available');
+    }
+
+    return await plugin.getQueueStatus();
+  }
+
+  // キャッシュ済みのプリンター状態（接続直後でまだ読めていなければnull）
+  async getPrinterStatus(role?: string): Promise<PrinterStatus | null> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      return null;
+    }
+
+    const result = await plugin.checkConnection(role ? { role } : undefined);
+    return result.printerStatus || null;
+  }
+
+  // 用紙切れ・カバー開き・電池残量などが変わったときに呼ばれる（戻り値で登録解除）
+  async onPrinterStatusChanged(callback: (status: PrinterStatus) => void): Promise<() => void> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      return () => {};
+    }
+
+    const handle = await plugin.addListener('printerStatusChanged', callback);
+    return () => handle.remove();
+  }
+
+  // 未印刷のジョブを取り消す
+  async cancelJob(jobId: number): Promise<boolean> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      throw new Error('SiiPrinter plugin not available');
+    }
+
+    const result = await plugin.cancelJob({ jobId });
+    return result.cancelled === true;
+  }
+
+  // レーンの未処理・未印刷の分をまとめて取り消す（まとめ再印刷の中止など）
+  async cancelLane(lane: PrintLane): Promise<number> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      throw new Error('SiiPrinter plugin not available');
+    }
+
+    const result = await plugin.cancelLane({ lane });
+    return result.cancelled;
+  }
+
+  // 印刷がない時間がこの分数続いたらプリンターとの接続を切り、電池を節約する（0で切らない）
+  // 切れていても次の印刷で自動的に繋ぎ直す
+  async setIdleTimeout(minutes: number): Promise<void> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      throw new Error('SiiPrinter plugin not available');
+    }
+
+    await plugin.setIdleTimeout({ minutes });
+  }
+
+  // 印刷ジョブが印刷し終わるまで待つ（キューに積んだだけでは印刷できたか分からない）
+  // 再試行を諦めたら失敗の内容でrejectする。用紙切れなどで再試行になったときは最初の1回だけ onRetry を呼んで待ち続ける
+  awaitJob(jobId: number, options?: { onRetry?: (failure: PrintJobFailure) => void }): Promise<void> {
+    if (this.jobResults.has(jobId)) {
+      const failure = this.jobResults.get(jobId)!;
+      this.jobResults.delete(jobId);
+      return failure ? Promise.reject(new Error(failure.error)) : Promise.resolve();
+    }
+    return new Promise((resolve, reject) => {
+      let onRetry = options?.onRetry;
+      this.jobWaiters.set(jobId, {
+        onRetry: failure => {
+          const callback = onRetry;
+          onRetry = undefined;
+          callback?.(failure);
+        },
+        done: failure => failure ? reject(new Error(failure.error)) : resolve()
+      });
+    });
+  }
+
+  // 印刷ジョブの結果イベントを受け始める（ジョブを積む前に呼び、すぐ終わったジョブの結果も取りこぼさない）
+  private listenJobEvents(plugin: any): Promise<unknown> {
+    if (!this.jobListener) {
+      this.jobListener = Promise.all([
+        plugin.addListener('printJobCompleted', (event: { jobId: number }) => {
+          this.finishJob(event.jobId, null);
+        }),
+        plugin.addListener('printJobFailed', (event: PrintJobFailure) => {
+          if (event.willRetry) {
+            this.jobWaiters.get(event.jobId)?.onRetry?.(event);
+          } else {
+            this.finishJob(event.jobId, event);
+          }
+        })
+      ]);
+    }
+    return this.jobListener!;
+  }
+
+  private finishJob(jobId: number, failure: PrintJobFailure | null) {
+    const waiter = this.jobWaiters.get(jobId);
+    if (waiter) {
+      this.jobWaiters.delete(jobId);
+      waiter.done(failure);
+      return;
+    }
+    this.jobResults.set(jobId, failure);
+    while (this.jobResults.size > JOB_RESULT_CACHE_SIZE) {
+      const oldest = this.jobResults.keys().next().value;
+      if (oldest === undefined) break;
+      this.jobResults.delete(oldest);
+    }
+  }
+
+  // 段階ごとの印刷時間（ミリ秒のp50/p90/p99）と原因別の失敗回数（直近1時間）
+  async getPrintMetrics(): Promise<PrintMetrics | null> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      return null;
+    }
+
+    return await plugin.getPrintMetrics();
+  }
+
+  // 直近の印刷の記録（入力・送ったバイト列・段階ごとの時間・例外・接続状態）
+  // dataはgzipしたバイナリのbase64。デコードしてファイルに保存し、printer-benchの flightReplay で再生する
+  async exportFlightRecord(): Promise<{ records: number; data: string } | null> {
+    const plugin = this.getPlugin();
+    if (!plugin) {
+      return null;
+    }
+
+    return await plugin.exportFlightRecord();
+  }
+
   // テスト印刷
   async printTest(): Promise<void> {
     const plugin = this.getPlugin();
@@ -321,7 +863,15 @@ export class BluetoothPrinter {
     }
     
     try {
-      await plugin.printText({ text: 'MP-B20 テスト印刷\n\n接続成功!\n\n\n' });
+      // 2回目以降は描画済みのバイト列を送るだけ
+      let jobId = await this.reprint('test', 'text');
+      if (jobId === null) {
+        await this.listenJobEvents(plugin);
+        const result = await plugin.printText({ text: 'MP-B20 テスト印刷\n\n接続成功!\n\n\n', returnRaw: true });
+        this.cacheRaw('test', result.raw);
+        jobId = result.jobId as number;
+      }
+      await this.awaitJob(jobId);
     } catch (error) {
       console.error('Test print error:', error);
       throw error;